@@ -25,6 +25,18 @@ public final class ChronixSolrStorageConstants {
     public static final String QUERY_START_LONG = "query_start_long";
     public static final String QUERY_END_LONG = "query_end_long";
 
+    /**
+     * Set to true on an analysis query to stream the analyzed time series, e.g. with queryAndStreamResponse.
+     * The server writes every time series as soon as it is serialized.
+     */
+    public static final String CHRONIX_STREAM = "cs";
+
+    /**
+     * Set to true on a query for the data without functions to receive the stored chunks instead of merged time series.
+     * The chunks of a time series have the same join key, {@link ChronixSolrStorage} merges them with its reduce function.
+     */
+    public static final String CHRONIX_PASS_THROUGH = "cpt";
+
     private ChronixSolrStorageConstants() {
         //avoid instances
     }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.client.columnar;
+
+import org.apache.solr.client.solrj.ResponseParser;
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Parses the columnar binary response of the chronix server (wt=columnar).
+ * The timestamps (delta-of-delta) and values (XOR encoded) of every time series are decoded
+ * directly into primitive arrays, see {@link ColumnarTimeSeries}. E.g.:
+ * <pre>
+ * QueryRequest request = new QueryRequest(query);
+ * request.setResponseParser(new ColumnarResponseParser());
+ * List&lt;ColumnarTimeSeries&gt; timeSeries = ColumnarResponseParser.getTimeSeries(solrClient.request(request));
+ * </pre>
+ *
+ * @author f.lautenschlager
+ */
+public class ColumnarResponseParser extends ResponseParser {
+
+    /**
+     * The value of the wt parameter
+     */
+    public static final String WRITER_TYPE = "columnar";
+
+    /**
+     * The key of the parsed time series in the response
+     */
+    public static final String TIME_SERIES = "timeSeries";
+
+    private static final byte VERSION = 1;
+    private static final int EQUAL_VALUE = 0x80;
+
+    /**
+     * @param response the response parsed by this parser
+     * @return the time series of the response
+     */
+    @SuppressWarnings("unchecked")
+    public static List<ColumnarTimeSeries> getTimeSeries(NamedList<Object> response) {
+        List<ColumnarTimeSeries> timeSeries = (List<ColumnarTimeSeries>) response.get(TIME_SERIES);
+        return timeSeries == null ? Collections.emptyList() : timeSeries;
+    }
+
+    @Override
+    public String getWriterType() {
+        return WRITER_TYPE;
+    }
+
+    @Override
+    public String getContentType() {
+        return BinaryResponseParser.BINARY_CONTENT_TYPE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public NamedList<Object> processResponse(InputStream body, String encoding) {
+        try {
+            DataInputStream input = new DataInputStream(body);
+            byte version = input.readByte();
+            if (version != VERSION) {
+                throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Unknown version of the columnar format: " + version);
+            }
+
+            JavaBinCodec codec = new JavaBinCodec();
+            NamedList<Object> response = (NamedList<Object>) unmarshal(codec, readBlock(input));
+
+            int size = input.readInt();
+            List<ColumnarTimeSeries> timeSeries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                SolrDocument fields = (SolrDocument) unmarshal(codec, readBlock(input));
+                timeSeries.add(decode(fields, readBlock(input)));
+            }
+            response.add(TIME_SERIES, timeSeries);
+            return response;
+        } catch (IOException e) {
+            throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Parsing the columnar response failed", e);
+        }
+    }
+
+    @Override
+    public NamedList<Object> processResponse(Reader reader) {
+        throw new UnsupportedOperationException("The columnar response parser can not read a character stream.");
+    }
+
+    private static Object unmarshal(JavaBinCodec codec, byte[] block) throws IOException {
+        return codec.unmarshal(new ByteArrayInputStream(block));
+    }
+
+    private static byte[] readBlock(DataInputStream input) throws IOException {
+        byte[] block = new byte[input.readInt()];
+        input.readFully(block);
+        return block;
+    }
+
+    /**
+     * Decodes the columns, see the format of the columnar response writer
+     */
+    private static ColumnarTimeSeries decode(SolrDocument fields, byte[] columns) {
+        if (columns.length == 0) {
+            return new ColumnarTimeSeries(fields, new long[0], new double[0]);
+        }
+        Columns input = new Columns(columns);
+        int size = input.readInt();
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        if (size == 0) {
+            return new ColumnarTimeSeries(fields, timestamps, values);
+        }
+
+        timestamps[0] = input.readLong();
+        long delta = 0;
+        for (int i = 1; i < size; i++) {
+            delta += input.readVarLong();
+            timestamps[i] = timestamps[i - 1] + delta;
+        }
+
+        long bits = input.readLong();
+        values[0] = Double.longBitsToDouble(bits);
+        for (int i = 1; i < size; i++) {
+            bits ^= input.readXor();
+            values[i] = Double.longBitsToDouble(bits);
+        }
+        return new ColumnarTimeSeries(fields, timestamps, values);
+    }
+
+    /**
+     * Reads the encoded columns of a time series
+     */
+    private static final class Columns {
+        private final byte[] bytes;
+        private int position;
+
+        private Columns(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private long readXor() {
+            int control = readByte();
+            if (control == EQUAL_VALUE) {
+                return 0;
+            }
+            int trailingZeroBytes = control & 0x0F;
+            int meaningfulBytes = 8 - (control >>> 4) - trailingZeroBytes;
+            long xor = 0;
+            for (int i = 0; i < meaningfulBytes; i++) {
+                xor = (xor << 8) | readByte();
+            }
+            return xor << (trailingZeroBytes << 3);
+        }
+
+        private long readVarLong() {
+            long zigZag = 0;
+            int shift = 0;
+            int current;
+            do {
+                current = readByte();
+                zigZag |= (long) (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            return (zigZag >>> 1) ^ -(zigZag & 1);
+        }
+
+        private int readInt() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        private long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        private int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+    }
+}
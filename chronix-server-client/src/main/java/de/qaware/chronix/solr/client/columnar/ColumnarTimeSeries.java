@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.client.columnar;
+
+import org.apache.solr.common.SolrDocument;
+
+/**
+ * A time series read from a columnar response. The points are held in primitive arrays sorted by time.
+ *
+ * @author f.lautenschlager
+ */
+public final class ColumnarTimeSeries {
+
+    private final SolrDocument fields;
+    private final long[] timestamps;
+    private final double[] values;
+
+    /**
+     * @param fields     the fields of the time series, e.g. the name, type, attributes and function results
+     * @param timestamps the timestamps
+     * @param values     the values
+     */
+    public ColumnarTimeSeries(SolrDocument fields, long[] timestamps, double[] values) {
+        this.fields = fields;
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    /**
+     * @return the fields of the time series without its data
+     */
+    public SolrDocument getFields() {
+        return fields;
+    }
+
+    /**
+     * @param name the name of the field
+     * @return the first value of the field or null if the field is not set
+     */
+    public Object getField(String name) {
+        return fields.getFirstValue(name);
+    }
+
+    /**
+     * @return the timestamps, the array is not copied
+     */
+    public long[] getTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * @return the values, the array is not copied
+     */
+    public double[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return the number of points, zero if the data was not returned
+     */
+    public int size() {
+        return timestamps.length;
+    }
+}
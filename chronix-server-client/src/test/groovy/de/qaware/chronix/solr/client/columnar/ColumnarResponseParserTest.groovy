@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.client.columnar
+
+import org.apache.solr.common.SolrDocument
+import org.apache.solr.common.SolrException
+import org.apache.solr.common.util.JavaBinCodec
+import org.apache.solr.common.util.NamedList
+import spock.lang.Specification
+
+/**
+ * Unit test for the columnar response parser
+ * @author f.lautenschlager
+ */
+class ColumnarResponseParserTest extends Specification {
+
+    //the columns as written by the chronix server
+    def columns = "0000000600000000000003e8d00f00e707e05d97753ff000000000000080067ff406801506bfe9067ff8".decodeHex()
+
+    def "test process response"() {
+        given:
+        def header = new NamedList<Object>()
+        header.add("status", 0)
+        def values = new NamedList<Object>()
+        values.add("responseHeader", header)
+
+        def cpu = new SolrDocument()
+        cpu.setField("name", "cpu")
+        cpu.setField("host", "laptop")
+        def memory = new SolrDocument()
+        memory.setField("name", "memory")
+        memory.setField("0_function_max", 4.5d)
+
+        def body = response(values, [cpu, memory], [columns, new byte[0]])
+
+        when:
+        def result = new ColumnarResponseParser().processResponse(new ByteArrayInputStream(body), "UTF-8")
+        def timeSeries = ColumnarResponseParser.getTimeSeries(result)
+
+        then:
+        result.get("responseHeader").get("status") == 0
+        timeSeries.size() == 2
+
+        timeSeries[0].getField("name") == "cpu"
+        timeSeries[0].getField("host") == "laptop"
+        timeSeries[0].size() == 6
+        timeSeries[0].getTimestamps() == [1000, 2000, 3000, 3500, 10000, 9000] as long[]
+        timeSeries[0].getValues()[0..3] == [1.0d, 1.0d, 2.5d, -4.25d]
+        Double.isNaN(timeSeries[0].getValues()[4])
+        timeSeries[0].getValues()[5] == 0.0d
+
+        timeSeries[1].getField("name") == "memory"
+        timeSeries[1].getField("0_function_max") == 4.5d
+        timeSeries[1].size() == 0
+    }
+
+    def "test process response without time series"() {
+        when:
+        def result = new ColumnarResponseParser().processResponse(new ByteArrayInputStream(response(new NamedList<Object>(), [], [])), "UTF-8")
+
+        then:
+        ColumnarResponseParser.getTimeSeries(result).isEmpty()
+        ColumnarResponseParser.getTimeSeries(new NamedList<Object>()).isEmpty()
+    }
+
+    def "test process response with unknown version"() {
+        when:
+        new ColumnarResponseParser().processResponse(new ByteArrayInputStream([2, 0, 0, 0, 0] as byte[]), "UTF-8")
+
+        then:
+        thrown SolrException
+    }
+
+    def "test process character stream"() {
+        when:
+        new ColumnarResponseParser().processResponse(new StringReader(""))
+
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def "test writer type and content type"() {
+        when:
+        def parser = new ColumnarResponseParser()
+
+        then:
+        parser.getWriterType() == "columnar"
+        parser.getContentType() == "application/octet-stream"
+    }
+
+    def response(NamedList<Object> values, List<SolrDocument> documents, List<byte[]> columns) {
+        def bytes = new ByteArrayOutputStream()
+        def output = new DataOutputStream(bytes)
+        output.writeByte(1)
+        block(output, marshal(values))
+        output.writeInt(documents.size())
+        documents.eachWithIndex { document, i ->
+            block(output, marshal(document))
+            block(output, columns[i])
+        }
+        output.flush()
+        bytes.toByteArray()
+    }
+
+    def marshal(Object value) {
+        def bytes = new ByteArrayOutputStream()
+        new JavaBinCodec().marshal(value, bytes)
+        bytes.toByteArray()
+    }
+
+    def block(DataOutputStream output, byte[] block) {
+        output.writeInt(block.length)
+        output.write(block)
+    }
+}
@@ -15,9 +15,11 @@
  */
 package de.qaware.chronix.solr.compaction;
 
+import de.qaware.chronix.solr.type.metric.Rollup;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.search.*;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.handler.RequestHandlerBase;
 import org.apache.solr.request.SolrQueryRequest;
@@ -29,8 +31,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.LongSummaryStatistics;
 import java.util.Objects;
 
 import static de.qaware.chronix.Schema.START;
@@ -51,6 +57,8 @@ public class ChronixCompactionHandler extends RequestHandlerBase {
     private static final Logger LOGGER = LoggerFactory.getLogger(ChronixCompactionHandler.class);
     private final DependencyProvider depProvider;
     private static final Sort SORT = new Sort(new SortField(START, LONG));
+    private static final String ROLLUP_DOCS = Rollup.RESOLUTION + ":[* TO *]";
+    private static final String RAW_DOCS = "*:* -" + ROLLUP_DOCS;
 
     /**
      * Creates a new instance. Constructor used by Solr.
@@ -80,6 +88,14 @@ public class ChronixCompactionHandler extends RequestHandlerBase {
         String fq = req.getParams().get(FQ);
         int ppc = req.getParams().getInt(POINTS_PER_CHUNK, 10000);
         int pageSize = req.getParams().getInt(PAGE_SIZE, 100);
+        List<Long> rollups;
+        try {
+            rollups = rollups(req.getParams().get(ROLLUPS));
+        } catch (DateTimeParseException e) {
+            LOGGER.error("Invalid rollups given.", e);
+            rsp.add("error", join("", "Invalid rollups '", req.getParams().get(ROLLUPS), "' given. Expected ISO-8601 durations, e.g. PT1M,PT1H,P1D."));
+            return;
+        }
 
         depProvider.init(req, rsp);
 
@@ -96,7 +112,7 @@ public class ChronixCompactionHandler extends RequestHandlerBase {
 
         //no join key => compact documents matching fq
         if (isBlank(joinKey)) {
-            compact(documentLoader, compactor, rsp, fq, fq);
+            compact(documentLoader, compactor, rsp, fq, fq, rollups);
             depProvider.solrUpdateService().commit();
             return;
         }
@@ -109,14 +125,33 @@ public class ChronixCompactionHandler extends RequestHandlerBase {
         //compact each time series' constituting documents
         facetService.toTimeSeriesIds(pivotResult)
                 .parallelStream()
-                .forEach(tsId -> compact(documentLoader, compactor, rsp, tsId.toString(), and(tsId.toQuery(), fq)));
+                .forEach(tsId -> compact(documentLoader, compactor, rsp, tsId.toString(), and(tsId.toQuery(), fq), rollups));
 
         depProvider.solrUpdateService().commit();
     }
 
-    private void compact(LazyDocumentLoader loader, LazyCompactor compactor, SolrQueryResponse rsp, String tsId, String q) {
+    /**
+     * @param rollups the comma separated ISO-8601 durations, may be null
+     * @return the resolutions of the rollups in milliseconds
+     */
+    private static List<Long> rollups(String rollups) {
+        List<Long> resolutions = new ArrayList<>();
+        if (isBlank(rollups)) {
+            return resolutions;
+        }
+        for (String rollup : rollups.split(",")) {
+            long resolution = Duration.parse(rollup.trim()).toMillis();
+            if (resolution <= 0) {
+                throw new DateTimeParseException("The duration must be positive.", rollup, 0);
+            }
+            resolutions.add(resolution);
+        }
+        return resolutions;
+    }
+
+    private void compact(LazyDocumentLoader loader, LazyCompactor compactor, SolrQueryResponse rsp, String tsId, String q, List<Long> rollups) {
         try {
-            doCompact(loader, compactor, rsp, tsId, q);
+            doCompact(loader, compactor, rsp, tsId, q, rollups);
         } catch (IOException | SyntaxError e) {
             // throw unchecked in order to call method from lambda expressions
             throw new IllegalStateException(e);
@@ -127,11 +162,16 @@ public class ChronixCompactionHandler extends RequestHandlerBase {
                            LazyCompactor compactor,
                            SolrQueryResponse rsp,
                            String tsId,
-                           String q) throws IOException, SyntaxError {
-        Query query = depProvider.parser(q).getQuery();
+                           String q,
+                           List<Long> rollups) throws IOException, SyntaxError {
+        Query query = depProvider.parser(and(q, RAW_DOCS)).getQuery();
+
+        //the rollups are built from all points of the time series while they are compacted
+        List<Rollup.Builder> rollupBuilders = new ArrayList<>(rollups.size());
+        rollups.forEach(resolution -> rollupBuilders.add(new Rollup.Builder(resolution)));
 
         Iterable<Document> docs = documentLoader.load(query, SORT);
-        Iterable<CompactionResult> compactionResults = compactor.compact(docs);
+        Iterable<CompactionResult> compactionResults = compactor.compact(docs, timeSeries -> rollupBuilders.forEach(it -> it.add(timeSeries)));
 
         List<Document> docsToDelete = new LinkedList<>();
         List<SolrInputDocument> docsToAdd = new LinkedList<>();
@@ -146,6 +186,44 @@ public class ChronixCompactionHandler extends RequestHandlerBase {
 
         rsp.add("timeseries " + tsId + " oldNumDocs:", docsToDelete.size());
         rsp.add("timeseries " + tsId + " newNumDocs:", docsToAdd.size());
+
+        if (!rollupBuilders.isEmpty()) {
+            //the rollups are built from the written records, the update processor sets their versions
+            LongSummaryStatistics versions = docsToAdd.stream()
+                    .map(it -> it.getFieldValue(CommonParams.VERSION_FIELD))
+                    .filter(Number.class::isInstance)
+                    .mapToLong(it -> ((Number) it).longValue())
+                    .summaryStatistics();
+            if (versions.getCount() == docsToAdd.size() && versions.getCount() > 0) {
+                rollupBuilders.forEach(it -> it.versions(versions.getMin(), versions.getMax()));
+            }
+            replaceRollups(documentLoader, rsp, tsId, q, rollupBuilders);
+        }
+    }
+
+    /**
+     * Replaces the rollup documents of the time series with the rebuilt ones.
+     * Rollups without the versions of the written records are not used by queries.
+     */
+    private void replaceRollups(LazyDocumentLoader documentLoader,
+                                SolrQueryResponse rsp,
+                                String tsId,
+                                String q,
+                                List<Rollup.Builder> rollupBuilders) throws IOException, SyntaxError {
+        List<Document> rollupsToDelete = new LinkedList<>();
+        documentLoader.load(depProvider.parser(and(q, ROLLUP_DOCS)).getQuery(), SORT).forEach(rollupsToDelete::add);
+
+        List<SolrInputDocument> rollupsToAdd = new LinkedList<>();
+        for (Rollup.Builder rollup : rollupBuilders) {
+            if (!rollup.isEmpty()) {
+                rollupsToAdd.add(rollup.toInputDocument());
+            }
+        }
+
+        depProvider.solrUpdateService().add(rollupsToAdd);
+        depProvider.solrUpdateService().delete(rollupsToDelete);
+
+        rsp.add("timeseries " + tsId + " newNumRollups:", rollupsToAdd.size());
     }
 
     private String and(String... clauses) {
@@ -56,4 +56,11 @@ public final class CompactionHandlerParams {
      * (i.e.: the same values for the given join key fields) *and* matching the filter query will be compacted.
      */
     public static final String FQ = "fq";
-}
\ No newline at end of file
+
+    /**
+     * Comma separated list of ISO-8601 durations, e.g. PT1M,PT1H,P1D.
+     * The rollup documents of every compacted time series are rebuilt with the minimum, maximum, sum and count
+     * of the data points per bucket of the given durations. No rollups are maintained if the parameter is missing.
+     */
+    public static final String ROLLUPS = "rollups";
+}
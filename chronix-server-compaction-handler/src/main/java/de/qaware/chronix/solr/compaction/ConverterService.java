@@ -17,6 +17,7 @@ package de.qaware.chronix.solr.compaction;
 
 import de.qaware.chronix.converter.BinaryTimeSeries;
 import de.qaware.chronix.converter.MetricTimeSeriesConverter;
+import de.qaware.chronix.solr.type.metric.ChunkBlocks;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.lucene.document.Document;
 import org.apache.solr.common.SolrDocument;
@@ -75,6 +76,8 @@ public class ConverterService {
      * @return time series representing the given solr document
      */
     public MetricTimeSeries toTimeSeries(SolrDocument solrDoc) {
+        //the converter only reads a single chunk
+        ChunkBlocks.unblock(solrDoc);
         BinaryTimeSeries.Builder btsBuilder = new BinaryTimeSeries.Builder();
         solrDoc.forEach(field -> btsBuilder.field(field.getKey(), field.getValue()));
         BinaryTimeSeries bts = btsBuilder.build();
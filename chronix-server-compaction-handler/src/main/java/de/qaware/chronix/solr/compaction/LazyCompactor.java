@@ -25,6 +25,7 @@ import org.apache.solr.schema.IndexSchema;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import static de.qaware.chronix.solr.compaction.ListUtils.subList;
 import static de.qaware.chronix.solr.compaction.ListUtils.sublist;
@@ -57,20 +58,34 @@ public class LazyCompactor {
      * @return the compaction result
      */
     public Iterable<CompactionResult> compact(Iterable<Document> documents) {
-        return new LazyCompactionResultSet(documents, schema);
+        return compact(documents, timeSeries -> {
+        });
+    }
+
+    /**
+     * Merges documents into larger ones
+     *
+     * @param documents the documents to compact
+     * @param listener  receives the decoded time series of every document while it is compacted
+     * @return the compaction result
+     */
+    public Iterable<CompactionResult> compact(Iterable<Document> documents, Consumer<MetricTimeSeries> listener) {
+        return new LazyCompactionResultSet(documents, schema, listener);
     }
 
     private final class LazyCompactionResultSet implements Iterator<CompactionResult>, Iterable<CompactionResult> {
         private final Iterator<Document> documents;
         private final ConverterService converterService;
         private final IndexSchema schema;
+        private final Consumer<MetricTimeSeries> listener;
         private LongList timestamps;
         private DoubleList values;
         private MetricTimeSeries currTs;
 
-        private LazyCompactionResultSet(Iterable<Document> documents, IndexSchema schema) {
+        private LazyCompactionResultSet(Iterable<Document> documents, IndexSchema schema, Consumer<MetricTimeSeries> listener) {
             this.documents = documents.iterator();
             this.schema = schema;
+            this.listener = listener;
             this.converterService = new ConverterService();
             this.timestamps = new LongList();
             this.values = new DoubleList();
@@ -96,6 +111,7 @@ public class LazyCompactor {
                 inputDocs.add(doc);
 
                 currTs = converterService.toTimeSeries(doc, schema);
+                listener.accept(currTs);
                 timestamps.addAll(currTs.getTimestamps());
                 values.addAll(currTs.getValues());
 
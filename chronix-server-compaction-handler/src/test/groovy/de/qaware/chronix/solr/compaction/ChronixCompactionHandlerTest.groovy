@@ -15,6 +15,7 @@
  */
 package de.qaware.chronix.solr.compaction
 
+import de.qaware.chronix.timeseries.MetricTimeSeries
 import org.apache.lucene.document.Document
 import org.apache.solr.common.SolrInputDocument
 import org.apache.solr.common.params.ModifiableSolrParams
@@ -78,7 +79,7 @@ class ChronixCompactionHandlerTest extends Specification {
         facetService.toTimeSeriesIds(_) >> [new TimeSeriesId([metric: 'cpu'])]
         def inputDocs = [new Document()] as Set
         def outputDocs = [new SolrInputDocument()] as Set
-        compactor.compact(_) >> [new CompactionResult(inputDocs, outputDocs)]
+        compactor.compact(*_) >> [new CompactionResult(inputDocs, outputDocs)]
         params.add(JOIN_KEY, 'metric,host')
 
         when:
@@ -93,10 +94,59 @@ class ChronixCompactionHandlerTest extends Specification {
         1 * dependencyProvider.compactor(10000, _) >> compactor
     }
 
+    def "test rollups are rebuilt"() {
+        given:
+        facetService.toTimeSeriesIds(_) >> [new TimeSeriesId([metric: 'cpu'])]
+        def oldRollup = new Document()
+        def ts = new MetricTimeSeries.Builder('cpu', 'metric').point(60000, 1).point(61000, 3).point(120000, 2).build()
+        //the update processor sets the versions of the written records
+        def written = [new SolrInputDocument(), new SolrInputDocument()]
+        written[0].setField('_version_', 7l)
+        written[1].setField('_version_', 5l)
+        compactor.compact(_, _) >> { args ->
+            args[1].accept(ts)
+            [new CompactionResult([] as Set, written as Set)]
+        }
+        documentLoader.load(_, _) >>> [[], [oldRollup]]
+        params.add(JOIN_KEY, 'metric')
+        params.add(ROLLUPS, 'PT1M, PT1H')
+        List<SolrInputDocument> rollups = null
+
+        when:
+        handler.handleRequestBody(req, rsp)
+
+        then:
+        1 * dependencyProvider.documentLoader(_, _) >> documentLoader
+        1 * dependencyProvider.compactor(_, _) >> compactor
+        1 * dependencyProvider.parser({ it.contains('*:* -rollup:[* TO *]') }) >> Mock(QParser)
+        1 * dependencyProvider.parser({ it.endsWith('AND (rollup:[* TO *])') }) >> Mock(QParser)
+        1 * updateService.add({ it.size() == 2 && it[0].containsKey('rollup') }) >> { args -> rollups = args[0] }
+        1 * updateService.delete([oldRollup])
+        1 * rsp.add('timeseries [metric:cpu] newNumRollups:', 2)
+        rollups*.getFieldValue('rollup') == [60000l, 3600000l]
+        rollups*.getFieldValue('start') == [60000l, 0l]
+        rollups*.getFieldValue('end') == [120000l, 120000l]
+        rollups*.getFieldValue('rollup_first_version') == [5l, 5l]
+        rollups*.getFieldValue('rollup_last_version') == [7l, 7l]
+    }
+
+    def "test invalid rollups"() {
+        given:
+        params.add(JOIN_KEY, 'metric')
+        params.add(ROLLUPS, 'PT1M,1h')
+
+        when:
+        handler.handleRequestBody(req, rsp)
+
+        then:
+        1 * rsp.add('error', _)
+        0 * facetService.pivot(*_)
+    }
+
     def "test parameters"() {
         given:
         facetService.toTimeSeriesIds(_) >> [new TimeSeriesId([:])]
-        compactor.compact(_) >> [new CompactionResult([] as Set, [] as Set)]
+        compactor.compact(*_) >> [new CompactionResult([] as Set, [] as Set)]
         params.add(JOIN_KEY, 'metric,host')
         params.add(PAGE_SIZE, '112')
         params.add(POINTS_PER_CHUNK, '327')
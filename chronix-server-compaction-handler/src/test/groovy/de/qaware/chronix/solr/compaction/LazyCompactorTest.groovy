@@ -69,6 +69,19 @@ class LazyCompactorTest extends Specification {
         outDoc1 hasAttributes((START): 1, (END): 4, (NAME): 'load_avg', (DATA): compress(1: 10, 2: 20, 3: 30, 4: 40))
     }
 
+    def "test the listener receives every decoded document"() {
+        given:
+        def doc1 = doc 'load_avg', [1: 10, 2: 20]
+        def doc2 = doc 'load_avg', [3: 30]
+        def decoded = []
+
+        when:
+        new LazyCompactor(4, schema).compact([doc1, doc2], { decoded << it.getTimestampsAsArray() }).toList()
+
+        then:
+        decoded == [[1, 2] as long[], [3] as long[]]
+    }
+
     def "test 3 documents compacted into 2"() {
         given:
         def doc1 = doc 'load_avg', [1: 10, 2: 20]
@@ -66,6 +66,16 @@ public interface ChronixFunction<T> {
      */
     FunctionType getFunctionType();
 
+    /**
+     * If a function handles every time series of the list independently of the others,
+     * it is executed per time series and the time series are processed in parallel.
+     *
+     * @return true if every time series is handled independently of the other time series, default is false
+     */
+    default boolean isIndependentPerTimeSeries() {
+        return false;
+    }
+
     enum FunctionType {
         AGGREGATION,
         TRANSFORMATION,
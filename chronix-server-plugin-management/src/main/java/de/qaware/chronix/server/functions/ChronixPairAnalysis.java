@@ -15,10 +15,56 @@
  */
 package de.qaware.chronix.server.functions;
 
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+
+import java.util.List;
+
 /**
+ * An analysis that compares pairs of time series. The pairs are independent of each other,
+ * hence the analysis handler evaluates them in parallel.
+ *
  * @param <T> the type to apply the analysis on
  * @author f.lautenschlager
  */
 public interface ChronixPairAnalysis<T> extends ChronixAnalysis<T> {
 
+    /**
+     * Builds the pairs of the given time series that are compared
+     *
+     * @param timeSeriesList the time series list with all time series
+     * @return the pairs in the order their results are added to the function context
+     */
+    List<Pair> pairs(List<ChronixTimeSeries<T>> timeSeriesList);
+
+    /**
+     * Compares the time series of the pair. It is called concurrently for different pairs.
+     *
+     * @param pair a pair built by {@link #pairs(List)}
+     * @return the result of the analysis for the pair
+     */
+    boolean evaluate(Pair pair);
+
+    /**
+     * Evaluates the pairs one after another
+     *
+     * @param timeSeriesList the time series list with all time series
+     * @param functionCtx    context holding the function values
+     */
+    @Override
+    default void execute(List<ChronixTimeSeries<T>> timeSeriesList, FunctionCtx functionCtx) {
+        for (Pair pair : pairs(timeSeriesList)) {
+            functionCtx.add(this, evaluate(pair), pair.getJoinKey());
+        }
+    }
+
+    /**
+     * A pair of time series
+     */
+    interface Pair {
+
+        /**
+         * @return the join key of the time series the result of the pair belongs to
+         */
+        String getJoinKey();
+    }
 }
@@ -80,9 +80,8 @@ public class FunctionCtx {
     }
 
     private void addEntryIfNotExist(String joinKey) {
-        if (!functionCtxEntries.containsKey(joinKey)) {
-            functionCtxEntries.put(joinKey, new FunctionCtxEntry(maxAmountOfTransformations, maxAmountOfAggregations, maxAmountOfAnalyses));
-        }
+        //functions run in parallel, hence the check and the put have to be atomic
+        functionCtxEntries.computeIfAbsent(joinKey, key -> new FunctionCtxEntry(maxAmountOfTransformations, maxAmountOfAggregations, maxAmountOfAnalyses));
     }
 
     /**
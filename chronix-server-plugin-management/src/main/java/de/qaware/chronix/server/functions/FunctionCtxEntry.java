@@ -38,7 +38,7 @@ public class FunctionCtxEntry {
 
     }
 
-    public void add(ChronixTransformation transformation) {
+    public synchronized void add(ChronixTransformation transformation) {
         if (transformationSize < transformations.length) {
             transformations[transformationSize] = transformation;
             transformationSize++;
@@ -72,7 +72,7 @@ public class FunctionCtxEntry {
         return analysisSize + transformationSize + aggregationSize;
     }
 
-    public void add(ChronixAggregation aggregation, double value) {
+    public synchronized void add(ChronixAggregation aggregation, double value) {
 
         if (aggregationSize < aggregations.length) {
             aggregations[aggregationSize] = aggregation;
@@ -90,7 +90,7 @@ public class FunctionCtxEntry {
         return aggregationSize;
     }
 
-    public void add(ChronixAnalysis analysis, boolean value) {
+    public synchronized void add(ChronixAnalysis analysis, boolean value) {
         if (analysisSize < analyses.length) {
             analyses[analysisSize] = analysis;
             analysisValues[analysisSize] = value;
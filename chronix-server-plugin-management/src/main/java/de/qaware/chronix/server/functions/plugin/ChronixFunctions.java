@@ -16,6 +16,7 @@
 package de.qaware.chronix.server.functions.plugin;
 
 import com.google.inject.Inject;
+import com.google.inject.Injector;
 import de.qaware.chronix.server.functions.ChronixFunction;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
@@ -32,12 +33,15 @@ import java.util.Set;
 public final class ChronixFunctions {
 
     private Map<String, Set<ChronixFunction>> typePluginFunctions = new HashMap<>();
+    private final Injector injector;
 
     /**
      * @param chronixPlugins the plugged-in functions
+     * @param injector       the injector used to create new instances of the plugged-in functions
      */
     @Inject
-    ChronixFunctions(Set<ChronixFunction> chronixPlugins) {
+    ChronixFunctions(Set<ChronixFunction> chronixPlugins, Injector injector) {
+        this.injector = injector;
         for (ChronixFunction pluginFunction : chronixPlugins) {
             if (!typePluginFunctions.containsKey(pluginFunction.getType())) {
                 typePluginFunctions.put(pluginFunction.getType(), new HashSet<>());
@@ -48,14 +52,17 @@ public final class ChronixFunctions {
 
 
     /**
-     * @param queryName the query name of the function
-     * @return the function for the query name, otherwise null
+     * Functions are mutable (arguments), hence every call returns a new instance of the plugged-in function.
+     *
+     * @param timeSeriesType the type of the time series
+     * @param queryName      the query name of the function
+     * @return a new instance of the function for the query name, otherwise null
      */
     public ChronixFunction getFunctionForQueryName(String timeSeriesType, String queryName) {
         if (typePluginFunctions.containsKey(timeSeriesType)) {
             for (ChronixFunction function : typePluginFunctions.get(timeSeriesType)) {
                 if (function.getQueryName().equals(queryName)) {
-                    return function;
+                    return injector.getInstance(function.getClass());
                 }
             }
         }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Loads records of the current request again, e.g. the data of summarized records that has to be decoded after all,
+ * see {@link Summarizable#summaryAccumulator}. The records are identified by their lucene doc ids.
+ * The loader is safe to be used by time series that are built concurrently.
+ *
+ * @author f.lautenschlager
+ */
+public interface ChronixRecordLoader {
+
+    /**
+     * @return the doc id of the record that is currently added to an accumulator
+     */
+    int current();
+
+    /**
+     * Loads the data fields of the given records, i.e. the start, end and data and the data fields of the types.
+     * The record map is only valid during the call of the consumer and may be reused for the next record.
+     *
+     * @param docIds   the doc ids of the records, see {@link #current()}
+     * @param consumer the consumer of the records (field name to value)
+     */
+    void load(int[] docIds, Consumer<Map<String, Object>> consumer);
+}
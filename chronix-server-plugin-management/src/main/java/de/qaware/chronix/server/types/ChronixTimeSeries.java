@@ -65,6 +65,27 @@ public interface ChronixTimeSeries<T> {
      */
     byte[] dataAsBlob();
 
+    /**
+     * The columnar binary format holds the timestamps and values of the time series in separate columns,
+     * see the columnar response writer. The default implementation does not support it,
+     * the type of a time series that overrides it is marked {@link Columnar}.
+     *
+     * @return the data in the columnar binary format
+     */
+    default byte[] dataAsColumns() {
+        throw new UnsupportedOperationException("Type '" + getType() + "' does not support the columnar format.");
+    }
+
+    /**
+     * The number of points is used to limit the memory of a request.
+     * The default implementation returns -1, i.e. the number is unknown and the points are not limited.
+     *
+     * @return the number of points, -1 if unknown
+     */
+    default int size() {
+        return -1;
+    }
+
     /**
      * @return the join key
      */
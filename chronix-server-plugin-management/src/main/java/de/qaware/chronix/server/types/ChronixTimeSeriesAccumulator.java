@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types;
+
+import java.util.Map;
+
+/**
+ * Accumulates the records (chunks) of a single time series one by one.
+ * The records are handed over while the index is read, hence an implementation
+ * should decode a record immediately and must not keep a reference to the record map.
+ *
+ * @author f.lautenschlager
+ */
+public interface ChronixTimeSeriesAccumulator<T> {
+
+    /**
+     * Adds the given record to the time series.
+     * The record map is only valid during the call and may be reused by the callee afterwards.
+     *
+     * @param record the stored fields of a record (field name to value)
+     */
+    void add(Map<String, Object> record);
+
+    /**
+     * The number of decoded points is used to limit the memory of a request.
+     * It is read after every added record and after the time series is built.
+     * The default implementation returns 0, i.e. the points are not limited.
+     *
+     * @return the number of points decoded by the added records, including the points decoded by {@link #build()}
+     */
+    default long decodedPoints() {
+        return 0;
+    }
+
+    /**
+     * @return the time series holding all accumulated records
+     */
+    ChronixTimeSeries<T> build();
+}
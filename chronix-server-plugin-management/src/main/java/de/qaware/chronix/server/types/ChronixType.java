@@ -18,7 +18,9 @@ package de.qaware.chronix.server.types;
 import de.qaware.chronix.server.functions.ChronixFunction;
 import org.apache.solr.common.SolrDocument;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * The interface defines a Chronix type.
@@ -44,8 +46,34 @@ public interface ChronixType<T> {
     ChronixTimeSeries<T> convert(String joinKey, List<SolrDocument> records, long queryStart, long queryEnd, boolean rawDataIsRequested);
 
     /**
+     * Creates an accumulator that converts the records of a single time series while they are read.
+     * The default implementation collects the records and calls {@link #convert} on build.
+     * Types should override this to decode the records directly into the time series.
+     *
+     * @param joinKey            the join key that defines the group criteria
+     * @param queryStart         the start of the query, use it to filter the records
+     * @param queryEnd           the end of the query, use it fo filter the records
+     * @param rawDataIsRequested true if the data of the records is needed
+     * @return an accumulator for the records of a time series of type <t>
+     */
+    default ChronixTimeSeriesAccumulator<T> accumulator(String joinKey, long queryStart, long queryEnd, boolean rawDataIsRequested) {
+        return new ConvertingAccumulator<>(this, joinKey, queryStart, queryEnd, rawDataIsRequested);
+    }
+
+    /**
+     * @return the stored fields that are read together with the data of a record, e.g. an index of the encoded data.
+     * They are no attributes of the time series, e.g. a trimmed record is encoded again without them, see {@link #convert}.
+     * The default implementation returns an empty set.
+     */
+    default Set<String> dataFields() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Functions are mutable (arguments), hence an implementation must return a new instance for every call.
+     *
      * @param function the query name of the function
-     * @return the matching function
+     * @return a new instance of the matching function
      */
     ChronixFunction<T> getFunction(String function);
 }
@@ -18,6 +18,7 @@ package de.qaware.chronix.server.types;
 import com.google.inject.Inject;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -45,6 +46,17 @@ public final class ChronixTypes {
         return null;
     }
 
+    /**
+     * @return the data fields of all types, see {@link ChronixType#dataFields()}
+     */
+    public Set<String> dataFields() {
+        Set<String> fields = new HashSet<>();
+        for (ChronixType type : chronixTypes) {
+            fields.addAll(type.dataFields());
+        }
+        return fields;
+    }
+
 
     @Override
     public String toString() {
@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types;
+
+/**
+ * Marks a {@link ChronixType} whose time series are returned in the columnar binary format,
+ * see {@link ChronixTimeSeries#dataAsColumns()}. A request for the columnar format of a type without
+ * this marker is rejected before the response is written.
+ *
+ * @author f.lautenschlager
+ */
+public interface Columnar {
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types;
+
+import org.apache.solr.common.SolrDocument;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default accumulator for types that do not support a streaming conversion.
+ * It copies the records into solr documents and calls {@link ChronixType#convert} on build.
+ *
+ * @author f.lautenschlager
+ */
+final class ConvertingAccumulator<T> implements ChronixTimeSeriesAccumulator<T> {
+
+    private final ChronixType<T> type;
+    private final String joinKey;
+    private final long queryStart;
+    private final long queryEnd;
+    private final boolean rawDataIsRequested;
+    private final List<SolrDocument> records = new ArrayList<>();
+    private long decodedPoints;
+
+    ConvertingAccumulator(ChronixType<T> type, String joinKey, long queryStart, long queryEnd, boolean rawDataIsRequested) {
+        this.type = type;
+        this.joinKey = joinKey;
+        this.queryStart = queryStart;
+        this.queryEnd = queryEnd;
+        this.rawDataIsRequested = rawDataIsRequested;
+    }
+
+    @Override
+    public void add(Map<String, Object> record) {
+        //the record map could be reused, hence we have to copy it
+        SolrDocument doc = new SolrDocument();
+        doc.putAll(record);
+        records.add(doc);
+    }
+
+    @Override
+    public long decodedPoints() {
+        return decodedPoints;
+    }
+
+    @Override
+    public ChronixTimeSeries<T> build() {
+        //the records are decoded by the conversion, the points of a time series with an unknown size are not counted
+        ChronixTimeSeries<T> timeSeries = type.convert(joinKey, records, queryStart, queryEnd, rawDataIsRequested);
+        decodedPoints = Math.max(0, timeSeries.size());
+        return timeSeries;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types;
+
+import de.qaware.chronix.server.functions.ChronixAggregation;
+import de.qaware.chronix.server.functions.ChronixTransformation;
+
+import java.util.List;
+
+/**
+ * An optional capability of a {@link ChronixType} that optimizes the functions of a request,
+ * e.g. by computing several of them in a single pass over a time series.
+ * The functions of a type without this capability are executed as requested.
+ *
+ * @param <T> the type of the time series
+ * @author f.lautenschlager
+ */
+public interface Fusing<T> {
+
+    /**
+     * Optimizes the given chain of transformations, e.g. by fusing consecutive transformations into a single pass.
+     * Executing the result must be equal to the sequential execution of the given transformations.
+     *
+     * @param transformations the transformations in the order of execution
+     * @return the optimized transformations in the order of execution
+     */
+    List<ChronixTransformation<T>> fuseTransformations(List<ChronixTransformation<T>> transformations);
+
+    /**
+     * Optimizes the given aggregations, e.g. by computing several aggregations in a single pass over a time series.
+     * Executing the result must add the same values for the given aggregations to the function context.
+     *
+     * @param aggregations the requested aggregations
+     * @return the optimized aggregations
+     */
+    List<ChronixAggregation<T>> fuseAggregations(List<ChronixAggregation<T>> aggregations);
+}
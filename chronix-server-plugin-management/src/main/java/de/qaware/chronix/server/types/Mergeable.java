@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types;
+
+import java.util.List;
+
+/**
+ * An optional capability of a {@link ChronixType} that merges the time series of a group into a single time series.
+ * A request that groups the time series of a type without this capability is rejected.
+ *
+ * @param <T> the type of the time series
+ * @author f.lautenschlager
+ */
+public interface Mergeable<T> {
+
+    /**
+     * Merges the time series of a group into a single time series, e.g. the sum of several hosts per minute.
+     * The timestamps are aligned to the start of their bucket and the values of all time series within
+     * a bucket are combined with the aggregation.
+     *
+     * @param groupKey       the group key, it is the join key of the merged time series
+     * @param timeSeriesList the time series of the group
+     * @param aggregation    the aggregation of the values in a bucket: SUM, AVG, MIN, MAX, COUNT or P
+     * @param percentile     the percentile (0 - 1] if the aggregation is P
+     * @param bucket         the width of a bucket in milliseconds, 1 merges the values with equal timestamps
+     * @return the merged time series
+     */
+    ChronixTimeSeries<T> merge(String groupKey, List<ChronixTimeSeries<T>> timeSeriesList, String aggregation, double percentile, long bucket);
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types;
+
+import de.qaware.chronix.server.functions.ChronixTransformation;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An optional capability of a {@link ChronixType} that computes transformations from pre-aggregated rollup records,
+ * e.g. the minimum, maximum, sum and count per minute that are maintained by the compaction. Rollup records are marked
+ * with the field {@code rollup} that holds their resolution in milliseconds.
+ * The rollup records are ignored for a type without this capability and all of its raw records are decoded.
+ *
+ * @param <T> the type of the time series
+ * @author f.lautenschlager
+ */
+public interface RollupAware<T> {
+
+    /**
+     * Checks if the given transformations can be computed from the rollup records.
+     *
+     * @param transformations the requested transformations in the order of execution
+     * @return the width of the buckets in milliseconds that a rollup resolution must divide, 0 if rollups can not be used
+     */
+    long rollupBucket(List<ChronixTransformation<T>> transformations);
+
+    /**
+     * @return the stored fields holding the pre-aggregated values of a rollup record, see {@link #rollupBucket},
+     * and the fields of the raw records that tell if a record is part of a rollup
+     */
+    Set<String> rollupFields();
+
+    /**
+     * Creates an accumulator that combines the rollup records of the given resolution with the raw records.
+     * The rollup records are added before the raw records. Raw records are only decoded where no rollup covers
+     * the query range. The resulting time series is only valid for the transformations that were checked
+     * with {@link #rollupBucket}.
+     *
+     * @param joinKey    the join key that defines the group criteria
+     * @param queryStart the start of the query, use it to filter the records
+     * @param queryEnd   the end of the query, use it fo filter the records
+     * @param resolution the resolution of the rollup records in milliseconds
+     * @param bucket     the width of the buckets in milliseconds, see {@link #rollupBucket}
+     * @return an accumulator for the records of a time series of type <t>
+     */
+    ChronixTimeSeriesAccumulator<T> rollupAccumulator(String joinKey, long queryStart, long queryEnd, long resolution, long bucket);
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types;
+
+import de.qaware.chronix.server.functions.ChronixAggregation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An optional capability of a {@link ChronixType} that computes aggregations from summaries that are stored with
+ * the records, e.g. the count, minimum, maximum, sum, first and last value of a record.
+ * Then the records within the query range are not decoded. The records of a type without this capability are decoded.
+ *
+ * @param <T> the type of the time series
+ * @author f.lautenschlager
+ */
+public interface Summarizable<T> {
+
+    /**
+     * Checks if the given aggregations can be computed from the summaries of the records, see {@link #summaryAccumulator}.
+     * The aggregations are executed as returned by {@link Fusing#fuseAggregations}, which has to combine the summaries.
+     *
+     * @param aggregations the requested aggregations, the only functions of the request
+     * @return true if the aggregations can be computed from the summaries of the records
+     */
+    boolean canAggregateFromSummaries(List<ChronixAggregation<T>> aggregations);
+
+    /**
+     * @return the fields holding the summaries of a record, see {@link #canAggregateFromSummaries}.
+     * They are read from their doc values if the schema declares them, otherwise from the stored fields.
+     */
+    Set<String> summaryFields();
+
+    /**
+     * Checks if the summary accumulator needs the data of the given record, see {@link #summaryAccumulator}.
+     * The record holds all fields but the data and the data fields. The data of a record that is summarized is not read.
+     *
+     * @param record     the fields of the record without its data
+     * @param queryStart the start of the query
+     * @param queryEnd   the end of the query
+     * @return true if the data of the record has to be read
+     */
+    boolean summaryNeedsData(Map<String, Object> record, long queryStart, long queryEnd);
+
+    /**
+     * Creates an accumulator that uses the summaries of the records within the query range instead of decoding them.
+     * The records are read without their data if it is not needed, see {@link #summaryNeedsData}. If the accumulator
+     * needs the data of a summarized record after all, e.g. if the records overlap, it loads the record again with the loader.
+     * The resulting time series is only valid for aggregations that can be computed from summaries,
+     * see {@link #canAggregateFromSummaries}.
+     *
+     * @param joinKey    the join key that defines the group criteria
+     * @param queryStart the start of the query, use it to filter the records
+     * @param queryEnd   the end of the query, use it fo filter the records
+     * @param loader     loads the data of the records of the request again
+     * @return an accumulator for the records of a time series of type <t>
+     */
+    ChronixTimeSeriesAccumulator<T> summaryAccumulator(String joinKey, long queryStart, long queryEnd, ChronixRecordLoader loader);
+}
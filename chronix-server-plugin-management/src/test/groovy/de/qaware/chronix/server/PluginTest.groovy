@@ -57,5 +57,7 @@ class PluginTest extends Specification {
         then:
         function != null
         function.queryName == "noop"
+        //every call returns a new instance
+        !function.is(functions.getFunctionForQueryName("metric", "noop"))
     }
 }
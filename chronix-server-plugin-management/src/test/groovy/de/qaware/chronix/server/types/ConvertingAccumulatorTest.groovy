@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.server.types
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the converting accumulator
+ * @author f.lautenschlager
+ */
+class ConvertingAccumulatorTest extends Specification {
+
+    def "test the points are counted when the records are converted"() {
+        given:
+        def timeSeries = Stub(ChronixTimeSeries)
+        timeSeries.size() >> 3
+        def type = Mock(ChronixType)
+        def accumulator = new ConvertingAccumulator(type, "cpu", 0, 100, false)
+
+        when:
+        accumulator.add([name: "cpu", start: 0l, end: 100l])
+        accumulator.add([name: "cpu", start: 100l, end: 200l])
+
+        then:
+        accumulator.decodedPoints() == 0
+
+        when:
+        def built = accumulator.build()
+
+        then:
+        1 * type.convert("cpu", { it.size() == 2 }, 0, 100, false) >> timeSeries
+        built.is(timeSeries)
+        accumulator.decodedPoints() == 3
+    }
+
+    def "test the points of a time series with an unknown size are not counted"() {
+        given:
+        def timeSeries = Stub(ChronixTimeSeries)
+        timeSeries.size() >> -1
+        def type = Stub(ChronixType)
+        type.convert(_, _, _, _, _) >> timeSeries
+        def accumulator = new ConvertingAccumulator(type, "cpu", 0, 100, true)
+
+        when:
+        accumulator.add([name: "cpu", start: 0l, end: 100l])
+        accumulator.build()
+
+        then:
+        accumulator.decodedPoints() == 0
+    }
+
+    def "test the size of a plugged-in time series is unknown by default"() {
+        given:
+        //a time series of a type that was written before the size was added
+        def timeSeries = new ChronixTimeSeries<String>() {
+            String getType() { "plugin" }
+
+            String getName() { "cpu" }
+
+            long getStart() { 0 }
+
+            long getEnd() { 0 }
+
+            Map<String, Object> getAttributes() { [:] }
+
+            void sort() {}
+
+            String dataAsJson() { "" }
+
+            byte[] dataAsBlob() { new byte[0] }
+
+            String getJoinKey() { "cpu" }
+
+            String getRawTimeSeries() { "" }
+        }
+
+        expect:
+        timeSeries.size() == -1
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.query;
+
+import org.apache.solr.client.solrj.impl.BinaryResponseParser;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.util.JavaBinCodec;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.BinaryQueryResponseWriter;
+import org.apache.solr.response.BinaryResponseWriter;
+import org.apache.solr.response.ResultContext;
+import org.apache.solr.response.SolrQueryResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes the time series of a response in a compact columnar binary format (wt=columnar).
+ * The data of a time series is not serialized as json or as compressed protocol buffers, its timestamps and values
+ * are written as separate columns (delta-of-delta timestamps and XOR encoded values), see
+ * {@link de.qaware.chronix.server.types.ChronixTimeSeries#dataAsColumns()}. A client decodes them directly into
+ * primitive arrays. All numbers are big endian.
+ * <pre>
+ * byte   the version of the format
+ * block  all values of the response besides the documents, e.g. the response header, as javabin
+ * int    the number of documents
+ * per document:
+ *   block  the fields of the document without the data as javabin
+ *   block  the data of the time series in the columnar format, empty if the data is not returned
+ * </pre>
+ * A block is an int holding its length followed by the bytes.
+ *
+ * @author f.lautenschlager
+ */
+public class ChronixColumnarResponseWriter implements BinaryQueryResponseWriter {
+
+    /**
+     * The name of the writer, i.e. the value of the wt parameter
+     */
+    public static final String NAME = "columnar";
+
+    /**
+     * The version of the format
+     */
+    public static final byte VERSION = 1;
+
+    private static final String RESPONSE = "response";
+
+    @Override
+    public void write(OutputStream out, SolrQueryRequest request, SolrQueryResponse response) throws IOException {
+        DataOutputStream output = new DataOutputStream(out);
+        output.writeByte(VERSION);
+
+        //everything besides the documents, e.g. the response header or an error
+        NamedList<Object> values = new NamedList<>();
+        Object documents = null;
+        for (Map.Entry<String, Object> entry : (Iterable<Map.Entry<String, Object>>) response.getValues()) {
+            if (RESPONSE.equals(entry.getKey())) {
+                documents = entry.getValue();
+            } else {
+                values.add(entry.getKey(), entry.getValue());
+            }
+        }
+        writeBlock(output, marshal(new JavaBinCodec(new BinaryResponseWriter.Resolver(request, response.getReturnFields())), values));
+
+        JavaBinCodec codec = new JavaBinCodec();
+        if (documents instanceof ResultContext) {
+            //the documents are processed while they are written, e.g. if they are streamed
+            ResultContext resultContext = (ResultContext) documents;
+            output.writeInt(resultContext.getDocList().size());
+            Iterator<SolrDocument> processedDocuments = resultContext.getProcessedDocuments();
+            while (processedDocuments.hasNext()) {
+                writeDocument(output, codec, processedDocuments.next());
+            }
+        } else if (documents instanceof SolrDocumentList) {
+            SolrDocumentList documentList = (SolrDocumentList) documents;
+            output.writeInt(documentList.size());
+            for (SolrDocument document : documentList) {
+                writeDocument(output, codec, document);
+            }
+        } else {
+            output.writeInt(0);
+        }
+        output.flush();
+    }
+
+    private static void writeDocument(DataOutputStream output, JavaBinCodec codec, SolrDocument document) throws IOException {
+        byte[] columns = (byte[]) document.getFirstValue(ChronixQueryParams.DATA_AS_COLUMNS);
+        document.removeFields(ChronixQueryParams.DATA_AS_COLUMNS);
+
+        writeBlock(output, marshal(codec, document));
+        writeBlock(output, columns == null ? new byte[0] : columns);
+    }
+
+    private static byte[] marshal(JavaBinCodec codec, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.marshal(value, bytes);
+        return bytes.toByteArray();
+    }
+
+    private static void writeBlock(DataOutputStream output, byte[] block) throws IOException {
+        output.writeInt(block.length);
+        output.write(block);
+    }
+
+    @Override
+    public void write(Writer writer, SolrQueryRequest request, SolrQueryResponse response) throws IOException {
+        throw new UnsupportedOperationException("The columnar response writer can not write to a character stream.");
+    }
+
+    @Override
+    public String getContentType(SolrQueryRequest request, SolrQueryResponse response) {
+        return BinaryResponseParser.BINARY_CONTENT_TYPE;
+    }
+
+    @Override
+    public void init(NamedList args) {
+        //nothing to configure
+    }
+}
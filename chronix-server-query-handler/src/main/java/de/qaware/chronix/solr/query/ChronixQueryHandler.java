@@ -106,13 +106,29 @@ public class ChronixQueryHandler extends RequestHandlerBase implements SolrCoreA
         final String chronixJoin = modifiableSolrParams.get(ChronixQueryParams.CHRONIX_JOIN);
 
 
-        //if we have an function query or someone wants the data as json or a join query
-        if (arrayIsNotEmpty(chronixFunctions) || contains(ChronixQueryParams.DATA_AS_JSON, fields) || !StringUtils.isEmpty(chronixJoin)) {
+        //the columnar format is written from the decoded time series
+        final boolean columnar = ChronixColumnarResponseWriter.NAME.equals(modifiableSolrParams.get(CommonParams.WT));
+
+        //the boundary chunks of a pass through request are trimmed
+        final boolean passThrough = modifiableSolrParams.getBool(ChronixQueryParams.CHRONIX_PASS_THROUGH, false);
+
+        //if we have an function query or someone wants the data as json or columns or a join query
+        if (arrayIsNotEmpty(chronixFunctions) || contains(ChronixQueryParams.DATA_AS_JSON, fields) || columnar || passThrough
+                || !StringUtils.isEmpty(chronixJoin)) {
             LOGGER.debug("Request is an analysis request.");
             analysisHandler.handleRequestBody(req, rsp);
         } else {
-            //let the default search handler do its work
+            //let the default search handler do its work, the rollup records are no time series chunks
             LOGGER.debug("Request is a default request");
+            if (req.getSchema().getFieldOrNull(ChronixQueryParams.ROLLUP) != null) {
+                modifiableSolrParams.add(CommonParams.FQ, ChronixQueryParams.WITHOUT_ROLLUPS);
+            }
+            //the clients only read records with a single chunk, if the schema opts in to the block layout
+            final String requested = modifiableSolrParams.get(CommonParams.FL);
+            if (req.getSchema().getFieldOrNull(ChronixQueryParams.CHUNK_BLOCKS) != null && returnsData(requested)) {
+                modifiableSolrParams.set(CommonParams.FL, (StringUtils.isEmpty(requested) ? "*" : requested)
+                        + CQLJoinFunction.JOIN_SEPARATOR + ChronixQueryParams.UNBLOCK_TRANSFORMER);
+            }
             searchHandler.handleRequestBody(req, rsp);
         }
 
@@ -191,6 +207,22 @@ public class ChronixQueryHandler extends RequestHandlerBase implements SolrCoreA
         }
     }
 
+    /**
+     * @param fl the requested fields
+     * @return true if the data of the records is returned, i.e. all fields or the data field are requested
+     */
+    private boolean returnsData(String fl) {
+        if (StringUtils.isEmpty(fl)) {
+            return true;
+        }
+        for (String field : fl.split("[,\\s]+")) {
+            if ("*".equals(field) || Schema.DATA.equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean contains(String field, String fields) {
         return !(StringUtils.isEmpty(field) || StringUtils.isEmpty(fields)) && fields.contains(field);
     }
@@ -26,6 +26,31 @@ public final class ChronixQueryParams {
 
     public static final String CHRONIX_JOIN = "cj";
 
+    /**
+     * Merges the time series with equal values of the given fields, e.g. cg=name,type;SUM;1,MINUTES
+     */
+    public static final String CHRONIX_GROUP = "cg";
+
+    /**
+     * The maximal number of threads used to analyze the request.
+     * It is bounded by the request parallelism of the handler configuration.
+     */
+    public static final String CHRONIX_PARALLELISM = "cp";
+
+    /**
+     * Streams the analyzed time series, e.g. cs=true. A time series is serialized and written to the client
+     * as soon as the writer is ready for it, instead of building the whole response in memory.
+     */
+    public static final String CHRONIX_STREAM = "cs";
+
+    /**
+     * Returns the stored chunks of the time series instead of merged time series, e.g. cpt=true.
+     * Chunks within the query range are returned as they are stored, only chunks at the boundaries of the
+     * query range are trimmed. The client merges the chunks of a time series by their join key.
+     * It is only used if the data is returned without functions.
+     */
+    public static final String CHRONIX_PASS_THROUGH = "cpt";
+
     /**
      * The function: aggregation or analysis
      */
@@ -70,6 +95,32 @@ public final class ChronixQueryParams {
 
     public static final String DATA_AS_JSON = "dataAsJson";
 
+    /**
+     * The field of a result document that holds the data in the columnar binary format.
+     * It is set if the response is written by the {@link ChronixColumnarResponseWriter}.
+     */
+    public static final String DATA_AS_COLUMNS = "dataAsColumns";
+
+    /**
+     * The field that marks a rollup record, it holds the resolution of the rollup in milliseconds
+     */
+    public static final String ROLLUP = "rollup";
+
+    /**
+     * The query that excludes the rollup records
+     */
+    public static final String WITHOUT_ROLLUPS = "-" + ROLLUP + ":[* TO *]";
+
+    /**
+     * The field that holds the block index of a record whose data is stored in blocks
+     */
+    public static final String CHUNK_BLOCKS = "data_blocks";
+
+    /**
+     * The transformer that returns the records stored in blocks in the single chunk layout
+     */
+    public static final String UNBLOCK_TRANSFORMER = "[blocks]";
+
     private ChronixQueryParams() {
         //avoid instances
     }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.query.analysis;
+
+import org.apache.solr.common.SolrException;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cooperative cancellation of a single analysis request.
+ * The first failure of a parallel stage cancels the request, the other stages of the request stop at their next
+ * checkpoint instead of finishing work whose result is thrown away. The first failure is kept as the cause.
+ * A request with a time limit is cancelled at the first checkpoint after its deadline.
+ *
+ * @author f.lautenschlager
+ */
+public final class AnalysisCancellation {
+
+    private final long timeLimit;
+    private final long deadline;
+    private volatile RuntimeException cause;
+
+    /**
+     * A cancellation without a time limit
+     */
+    public AnalysisCancellation() {
+        this(0);
+    }
+
+    /**
+     * @param timeLimit the time limit of the request in milliseconds from now on, values below 1 disable it
+     */
+    public AnalysisCancellation(long timeLimit) {
+        this.timeLimit = timeLimit;
+        this.deadline = timeLimit > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeLimit) : 0;
+    }
+
+    /**
+     * Cancels the request. Only the first cause is kept.
+     *
+     * @param cause the failure that cancels the request
+     */
+    public void cancel(RuntimeException cause) {
+        synchronized (this) {
+            if (this.cause == null) {
+                this.cause = cause;
+            }
+        }
+    }
+
+    /**
+     * @return true if the request is cancelled
+     */
+    public boolean isCancelled() {
+        return cause != null;
+    }
+
+    /**
+     * @return the failure that cancelled the request, null if it is not cancelled
+     */
+    public RuntimeException getCause() {
+        return cause;
+    }
+
+    /**
+     * A checkpoint of a stage of the request
+     *
+     * @throws CancellationException if the request is cancelled, its cause is the failure of the request
+     */
+    public void checkpoint() {
+        if (timeLimit > 0 && cause == null && System.nanoTime() - deadline > 0) {
+            cancel(new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                    "Analysis request exceeds the time limit of " + timeLimit + " ms. Please narrow the query."));
+        }
+        RuntimeException failure = cause;
+        if (failure != null) {
+            CancellationException cancelled = new CancellationException("Analysis request is cancelled due to: " + failure.getMessage());
+            cancelled.initCause(failure);
+            throw cancelled;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.query.analysis;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * Executes the parallel stages of an analysis request on a dedicated and bounded fork join pool.
+ * A single request never uses more than the request parallelism, hence one huge query
+ * can not occupy all threads of the pool. The results are written into index-addressed arrays.
+ * <p>
+ * An executor for a single request, see {@link #forRequest()}, shares the pool and cancels the request
+ * on the first failure. Its parallel stages stop at the next index and rethrow the first failure.
+ * The stages of a request share its parallelism, e.g. the stages of several types that are analyzed concurrently.
+ * A stage only gets the helper threads that the other stages of the request do not use, the calling thread
+ * always takes part in the work. Hence nested stages never use more threads than the request parallelism.
+ *
+ * @author f.lautenschlager
+ */
+public final class AnalysisExecutor {
+
+    private final ForkJoinPool pool;
+    private final int maxRequestParallelism;
+    private final AnalysisCancellation cancellation;
+    //the helper threads a request may use in addition to its calling thread, null if not bound to a request
+    private final Semaphore helpers;
+
+    /**
+     * Constructs an analysis executor with its own fork join pool
+     *
+     * @param threads               the number of threads of the pool
+     * @param maxRequestParallelism the maximal number of threads used by a single request
+     */
+    public AnalysisExecutor(int threads, int maxRequestParallelism) {
+        if (threads < 1 || maxRequestParallelism < 1) {
+            throw new IllegalArgumentException("Threads (" + threads + ") and request parallelism (" + maxRequestParallelism + ") have to be >= 1");
+        }
+        this.pool = new ForkJoinPool(threads, AnalysisExecutor::newThread, null, false);
+        this.maxRequestParallelism = Math.min(threads, maxRequestParallelism);
+        this.cancellation = null;
+        this.helpers = null;
+    }
+
+    private AnalysisExecutor(AnalysisExecutor shared, AnalysisCancellation cancellation, int parallelism) {
+        this.pool = shared.pool;
+        this.maxRequestParallelism = shared.maxRequestParallelism;
+        this.cancellation = cancellation;
+        this.helpers = new Semaphore(parallelism - 1);
+    }
+
+    /**
+     * @return an executor for a single request that shares the pool and the parallelism of this executor
+     */
+    public AnalysisExecutor forRequest() {
+        return forRequest(0);
+    }
+
+    /**
+     * @param timeLimit the time limit of the request in milliseconds, values below 1 disable it
+     * @return an executor for a single request that shares the pool and the parallelism of this executor
+     */
+    public AnalysisExecutor forRequest(long timeLimit) {
+        return forRequest(timeLimit, 0);
+    }
+
+    /**
+     * @param timeLimit   the time limit of the request in milliseconds, values below 1 disable it
+     * @param parallelism the parallelism requested by the user that all stages of the request share, see {@link #parallelism(int)}
+     * @return an executor for a single request that shares the pool of this executor
+     */
+    public AnalysisExecutor forRequest(long timeLimit, int parallelism) {
+        return new AnalysisExecutor(this, new AnalysisCancellation(timeLimit), parallelism(parallelism));
+    }
+
+    /**
+     * A checkpoint of a stage of a request
+     *
+     * @throws CancellationException if the request is cancelled, its cause is the failure of the request
+     */
+    public void checkpoint() {
+        if (cancellation != null) {
+            cancellation.checkpoint();
+        }
+    }
+
+    /**
+     * Cancels the request of this executor, e.g. if it failed outside of the executor.
+     * The executor of several requests can not be cancelled.
+     *
+     * @param cause the failure that cancels the request
+     */
+    public void cancel(RuntimeException cause) {
+        if (cancellation != null) {
+            cancellation.cancel(cause);
+        }
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("chronix-analysis-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    /**
+     * @param requested the parallelism requested by the user, values below 1 use the maximum
+     * @return the parallelism for a request, bounded by the max request parallelism
+     */
+    public int parallelism(int requested) {
+        if (requested < 1) {
+            return maxRequestParallelism;
+        }
+        return Math.min(requested, maxRequestParallelism);
+    }
+
+    /**
+     * Applies the action to every index in [0, size) using at most the given parallelism.
+     * The calling thread takes part in the work, the helper threads are taken from the parallelism of the request
+     * that is not used by its other stages. The call returns when all indices are processed.
+     * If an action fails, the first exception is rethrown after all workers have finished.
+     * The request is cancelled, hence its other stages stop, too.
+     *
+     * @param size        the number of indices
+     * @param parallelism the maximal number of concurrent workers
+     * @param action      the action called for every index
+     */
+    public void forEach(int size, int parallelism, IntConsumer action) {
+        int workers = 1 + acquireHelpers(Math.min(size, parallelism(parallelism)) - 1);
+
+        if (workers <= 1) {
+            try {
+                for (int i = 0; i < size; i++) {
+                    checkpoint();
+                    action.accept(i);
+                }
+            } catch (RuntimeException e) {
+                throw failed(e);
+            }
+            return;
+        }
+
+        //The workers take the next index, hence expensive indices do not block a whole slice
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            int i;
+            try {
+                while ((i = next.getAndIncrement()) < size) {
+                    checkpoint();
+                    action.accept(i);
+                }
+            } catch (RuntimeException e) {
+                //stop the other workers and the other stages of the request as soon as possible
+                next.set(size);
+                cancel(e);
+                throw e;
+            }
+        };
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask[workers - 1];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = pool.submit(() -> {
+                try {
+                    worker.run();
+                } finally {
+                    releaseHelper();
+                }
+            });
+        }
+
+        RuntimeException failure = null;
+        try {
+            worker.run();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        for (ForkJoinTask<?> task : tasks) {
+            try {
+                task.join();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else if (!(e instanceof CancellationException)) {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failed(failure);
+        }
+    }
+
+    /**
+     * @param wanted the number of helper threads a stage wants
+     * @return the number of helper threads the stage may use, each one has to be released when it is done
+     */
+    private int acquireHelpers(int wanted) {
+        if (helpers == null || wanted <= 0) {
+            return Math.max(0, wanted);
+        }
+        int acquired = 0;
+        while (acquired < wanted && helpers.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    private void releaseHelper() {
+        if (helpers != null) {
+            helpers.release();
+        }
+    }
+
+    /**
+     * @param failure a failure of the request
+     * @return the failure that cancelled the request or the given failure if the request is not cancelled
+     */
+    public RuntimeException causeOf(RuntimeException failure) {
+        RuntimeException cause = cancellation == null ? null : cancellation.getCause();
+        return cause == null ? failure : cause;
+    }
+
+    /**
+     * Cancels the request on a failure
+     *
+     * @param failure the failure of a stage
+     * @return the first failure of the request, the given failure is suppressed by it
+     */
+    private RuntimeException failed(RuntimeException failure) {
+        cancel(failure);
+        RuntimeException cause = cancellation == null ? null : cancellation.getCause();
+        if (cause == null) {
+            return failure;
+        }
+        //a joined task rethrows a copy of the failure of another thread
+        if (cause == failure || cause == failure.getCause()) {
+            return cause;
+        }
+        if (!(failure instanceof CancellationException)) {
+            cause.addSuppressed(failure);
+        }
+        return cause;
+    }
+
+    /**
+     * Maps every input using at most the given parallelism.
+     *
+     * @param inputs      the inputs
+     * @param parallelism the maximal number of concurrent workers
+     * @param mapper      the mapping function
+     * @param <T>         the type of the inputs
+     * @param <R>         the type of the results
+     * @return the results in the same order as the inputs
+     */
+    @SuppressWarnings("unchecked")
+    public <T, R> List<R> map(List<T> inputs, int parallelism, Function<? super T, ? extends R> mapper) {
+        Object[] results = new Object[inputs.size()];
+        forEach(inputs.size(), parallelism, i -> results[i] = mapper.apply(inputs.get(i)));
+        return new ArrayList<>((List<R>) Arrays.asList(results));
+    }
+
+    /**
+     * Maps the inputs lazily in their order. At most the given parallelism of results is computed ahead of the
+     * consumer, hence a slow consumer slows down the mapping. An input is released as soon as it is mapped.
+     * The results ahead of the consumer are computed by the helper threads of the request that are not used
+     * by its other stages, otherwise the consumer maps the next input itself.
+     * The mapping passes no checkpoints, as the consumer is the response writer that can not report a failure
+     * after it has started. Hence the mapping must not depend on the limits of the request.
+     *
+     * @param inputs      the inputs, the list must support set
+     * @param parallelism the maximal number of results that are computed ahead of the consumer
+     * @param mapper      the mapping function
+     * @param <T>         the type of the inputs
+     * @param <R>         the type of the results
+     * @return an iterator over the results in the same order as the inputs
+     */
+    public <T, R> Iterator<R> stream(List<T> inputs, int parallelism, Function<? super T, ? extends R> mapper) {
+        return new MappingIterator<>(inputs, parallelism(parallelism), mapper);
+    }
+
+    /**
+     * Shuts the pool down. Running requests are completed.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Waits until all running requests are completed after a shutdown
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the pool is terminated
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Submits the next inputs when a result is taken, hence the number of results in flight is bounded
+     */
+    private final class MappingIterator<T, R> implements Iterator<R> {
+
+        private final List<T> inputs;
+        private final int window;
+        private final Function<? super T, ? extends R> mapper;
+        private final Deque<ForkJoinTask<R>> inFlight = new ArrayDeque<>();
+        private int next;
+
+        private MappingIterator(List<T> inputs, int window, Function<? super T, ? extends R> mapper) {
+            this.inputs = inputs;
+            this.window = window;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !inFlight.isEmpty() || next < inputs.size();
+        }
+
+        @Override
+        public R next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (window <= 1) {
+                return map(next++);
+            }
+            while (inFlight.size() < window && next < inputs.size() && acquireHelpers(1) == 1) {
+                final int input = next++;
+                inFlight.add(pool.submit(() -> {
+                    try {
+                        return map(input);
+                    } finally {
+                        releaseHelper();
+                    }
+                }));
+            }
+            //the results in flight are the next ones
+            if (inFlight.isEmpty()) {
+                return map(next++);
+            }
+            return inFlight.poll().join();
+        }
+
+        private R map(int input) {
+            //the input is not referenced any longer, e.g. a time series that is serialized
+            return mapper.apply(inputs.set(input, null));
+        }
+    }
+}
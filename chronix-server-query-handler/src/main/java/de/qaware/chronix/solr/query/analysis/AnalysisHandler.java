@@ -15,48 +15,73 @@
  */
 package de.qaware.chronix.solr.query.analysis;
 
+import com.google.common.collect.Iterators;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.google.inject.Stage;
 import de.qaware.chronix.Schema;
 import de.qaware.chronix.cql.CQL;
 import de.qaware.chronix.cql.CQLCFResult;
+import de.qaware.chronix.cql.CQLGroupFunction;
 import de.qaware.chronix.cql.CQLJoinFunction;
 import de.qaware.chronix.cql.ChronixFunctions;
 import de.qaware.chronix.server.ChronixPluginLoader;
 import de.qaware.chronix.server.functions.ChronixAggregation;
 import de.qaware.chronix.server.functions.ChronixAnalysis;
 import de.qaware.chronix.server.functions.ChronixFunction;
+import de.qaware.chronix.server.functions.ChronixPairAnalysis;
 import de.qaware.chronix.server.functions.ChronixTransformation;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.functions.FunctionCtxEntry;
 import de.qaware.chronix.server.functions.plugin.ChronixFunctionPlugin;
+import de.qaware.chronix.server.types.ChronixRecordLoader;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.server.types.ChronixTimeSeriesAccumulator;
 import de.qaware.chronix.server.types.ChronixType;
+import de.qaware.chronix.server.types.Columnar;
 import de.qaware.chronix.server.types.ChronixTypePlugin;
 import de.qaware.chronix.server.types.ChronixTypes;
+import de.qaware.chronix.server.types.Fusing;
+import de.qaware.chronix.server.types.Mergeable;
+import de.qaware.chronix.server.types.RollupAware;
+import de.qaware.chronix.server.types.Summarizable;
+import de.qaware.chronix.solr.query.ChronixColumnarResponseWriter;
 import de.qaware.chronix.solr.query.ChronixQueryParams;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.core.CloseHook;
+import org.apache.solr.core.PluginInfo;
+import org.apache.solr.core.SolrCore;
 import org.apache.solr.handler.component.SearchHandler;
+import org.apache.solr.metrics.SolrMetricManager;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.response.SolrQueryResponse;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.DocList;
+import org.apache.solr.search.SolrIndexSearcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
@@ -70,6 +95,36 @@ public class AnalysisHandler extends SearchHandler {
     private static final String DATA_WITH_LEADING_AND_TRAILING_COMMA = "," + Schema.DATA + ",";
     private final DocListProvider docListProvider;
 
+    /**
+     * The name of the analysis section in the handler configuration (solrconfig.xml)
+     */
+    public static final String ANALYSIS_CONFIG = "analysis";
+    /**
+     * The number of threads of the analysis pool. Default: the number of available processors
+     */
+    public static final String ANALYSIS_THREADS = "threads";
+    /**
+     * The maximal number of threads used by a single request. Default: the number of threads
+     */
+    public static final String ANALYSIS_REQUEST_PARALLELISM = "requestParallelism";
+    /**
+     * The maximal number of chunks a single request may match. Default: unlimited
+     */
+    public static final String ANALYSIS_MAX_CHUNKS = "maxChunks";
+    /**
+     * The maximal number of points a single request may decode. Default: unlimited
+     */
+    public static final String ANALYSIS_MAX_POINTS = "maxPoints";
+    /**
+     * The maximal wall time of a single request in milliseconds. Default: unlimited
+     */
+    public static final String ANALYSIS_MAX_TIME = "maxTime";
+
+    //The pool that executes the parallel stages of the analyses
+    private volatile AnalysisExecutor executor;
+    //The limits of a single request
+    private volatile AnalysisLimits limits = AnalysisLimits.UNLIMITED;
+
     private static final Injector INJECTOR = Guice.createInjector(Stage.PRODUCTION,
             ChronixPluginLoader.of(ChronixTypePlugin.class),
             ChronixPluginLoader.of(ChronixFunctionPlugin.class));
@@ -87,6 +142,96 @@ public class AnalysisHandler extends SearchHandler {
      */
     public AnalysisHandler(DocListProvider docListProvider) {
         this.docListProvider = docListProvider;
+        int processors = Runtime.getRuntime().availableProcessors();
+        this.executor = new AnalysisExecutor(processors, processors);
+    }
+
+    /**
+     * Initializes the handler and configures the analysis pool and the limits of a request, e.g.:
+     * <pre>
+     * &lt;lst name="analysis"&gt;
+     *     &lt;int name="threads"&gt;8&lt;/int&gt;
+     *     &lt;int name="requestParallelism"&gt;4&lt;/int&gt;
+     *     &lt;long name="maxChunks"&gt;100000&lt;/long&gt;
+     *     &lt;long name="maxPoints"&gt;100000000&lt;/long&gt;
+     *     &lt;long name="maxTime"&gt;60000&lt;/long&gt;
+     * &lt;/lst&gt;
+     * </pre>
+     *
+     * @param info the plugin info of the handler
+     */
+    @Override
+    public void init(PluginInfo info) {
+        super.init(info);
+
+        NamedList config = info == null || info.initArgs == null ? null : (NamedList) info.initArgs.get(ANALYSIS_CONFIG);
+        if (config != null) {
+            int threads = intValue(config.get(ANALYSIS_THREADS), Runtime.getRuntime().availableProcessors());
+            int requestParallelism = intValue(config.get(ANALYSIS_REQUEST_PARALLELISM), threads);
+
+            AnalysisExecutor previous = this.executor;
+            this.executor = new AnalysisExecutor(threads, requestParallelism);
+            previous.shutdown();
+            LOGGER.info("Using {} analysis threads with a request parallelism of {}", threads, requestParallelism);
+
+            this.limits = new AnalysisLimits(longValue(config.get(ANALYSIS_MAX_CHUNKS)), longValue(config.get(ANALYSIS_MAX_POINTS)),
+                    longValue(config.get(ANALYSIS_MAX_TIME)));
+            LOGGER.info("Limiting an analysis request to {} chunks, {} points and {} ms (0 is unlimited)",
+                    limits.getMaxChunks(), limits.getMaxPoints(), limits.getMaxTime());
+        }
+    }
+
+    private static int intValue(Object value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        return Integer.parseInt(value.toString());
+    }
+
+    private static long longValue(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        return Long.parseLong(value.toString());
+    }
+
+    /**
+     * Registers a hook that shuts the analysis pool down when the core is closed
+     *
+     * @param core the solr core
+     */
+    @Override
+    public void inform(SolrCore core) {
+        super.inform(core);
+        core.addCloseHook(new CloseHook() {
+            @Override
+            public void preClose(SolrCore core) {
+                //nothing to do
+            }
+
+            @Override
+            public void postClose(SolrCore core) {
+                executor.shutdown();
+            }
+        });
+    }
+
+    /**
+     * Registers the metrics of the handler and the hits and misses of the parse cache of the chronix query language
+     *
+     * @param manager      the metric manager
+     * @param registryName the name of the registry
+     * @param tag          the tag of the metrics
+     * @param scope        the scope of the metrics
+     */
+    @Override
+    public void initializeMetrics(SolrMetricManager manager, String registryName, String tag, String scope) {
+        super.initializeMetrics(manager, registryName, tag, scope);
+        String category = getCategory().toString();
+        manager.registerGauge(this, registryName, cql::getCFCacheHits, tag, true, "cfCacheHits", category, scope);
+        manager.registerGauge(this, registryName, cql::getCFCacheMisses, tag, true, "cfCacheMisses", category, scope);
+        manager.registerGauge(this, registryName, cql::getCJCacheHits, tag, true, "cjCacheHits", category, scope);
+        manager.registerGauge(this, registryName, cql::getCJCacheMisses, tag, true, "cjCacheMisses", category, scope);
     }
 
     private static boolean hasMatchingAnalyses(FunctionCtxEntry functionCtx) {
@@ -152,46 +297,109 @@ public class AnalysisHandler extends SearchHandler {
         }
     }
 
+    private static ChronixType type(Map<String, Object> record) {
+        return TYPES.getTypeForName((String) record.get("type"));
+    }
+
     /**
-     * Collects the given document and groups them using the join function result
-     *
-     * @param docs         the found documents that should be grouped by the join function
-     * @param joinFunction the join function
-     * @return the grouped documents
+     * @param params    the request parameters
+     * @param functions the chronix functions of the request
+     * @return true if the data is needed, i.e. there are functions, or the data should be returned or the data is requested as json
      */
-    private static Map<ChronixType, Map<String, List<SolrDocument>>> collect(SolrDocumentList docs, Function<SolrDocument, String> joinFunction) {
-        HashMap<ChronixType, Map<String, List<SolrDocument>>> collectedDocs = new HashMap<>();
-
-        for (SolrDocument doc : docs) {
-            ChronixType type = type(doc);
+    private static boolean decompressDataAsItIsRequested(SolrParams params, CQLCFResult functions) {
+        final String fields = params.get(CommonParams.FL, Schema.DATA);
+        final boolean dataAsJson = fields.contains(ChronixQueryParams.DATA_AS_JSON);
 
-            if (type == null) {
-                LOGGER.warn("Type is null.");
-                continue;
-            }
+        return !functions.isEmpty() || dataAsJson || dataShouldReturned(params);
+    }
 
-            //Initialize the map
-            if (!collectedDocs.containsKey(type)) {
-                collectedDocs.put(type, new HashMap<>());
-            }
+    /**
+     * @param params the request parameters
+     * @return true if the data field should be returned. The columnar format returns it if no fields are requested.
+     */
+    private static boolean dataShouldReturned(SolrParams params) {
+        final String fields = params.get(CommonParams.FL);
+        if (fields == null) {
+            return dataAsColumns(params);
+        }
+        return fields.contains(DATA_WITH_LEADING_AND_TRAILING_COMMA);
+    }
 
-            //Calculate the join key.
-            String key = joinFunction.apply(doc);
+    /**
+     * The chunks are passed through if it is requested and the data is returned as it is stored,
+     * i.e. without functions, not grouped and not as json or columns.
+     *
+     * @param params    the request parameters
+     * @param functions the chronix functions of the request
+     * @param group     the group function, may be null
+     * @return true if the stored chunks are returned instead of the merged time series
+     */
+    private static boolean passThrough(SolrParams params, CQLCFResult functions, CQLGroupFunction group) {
+        final String fields = params.get(CommonParams.FL, Schema.DATA);
+        return params.getBool(ChronixQueryParams.CHRONIX_PASS_THROUGH, false) && functions.isEmpty() && group == null
+                && dataShouldReturned(params) && !fields.contains(ChronixQueryParams.DATA_AS_JSON) && !dataAsColumns(params);
+    }
 
-            //Create groups of records.
-            if (!collectedDocs.get(type).containsKey(key)) {
-                collectedDocs.get(type).put(key, new ArrayList<>());
-            }
+    /**
+     * @param params the request parameters
+     * @return true if the response is written by the columnar response writer
+     */
+    private static boolean dataAsColumns(SolrParams params) {
+        return ChronixColumnarResponseWriter.NAME.equals(params.get(CommonParams.WT));
+    }
 
-            collectedDocs.get(type).get(key).add(doc);
+    /**
+     * The aggregations of a type are computed from the summaries of the records if they are its only functions
+     * and the points are not needed otherwise, i.e. the data is not returned and the time series are not grouped.
+     *
+     * @param params    the request parameters
+     * @param functions the chronix functions of the request
+     * @param group     the group function, may be null
+     * @return the types whose records within the query range are not decoded
+     */
+    @SuppressWarnings("unchecked")
+    private static Set<ChronixType> summarizedTypes(SolrParams params, CQLCFResult functions, CQLGroupFunction group) {
+        final String fields = params.get(CommonParams.FL, Schema.DATA);
+        if (group != null || dataShouldReturned(params) || fields.contains(ChronixQueryParams.DATA_AS_JSON)) {
+            return Collections.emptySet();
         }
 
-
-        return collectedDocs;
+        Set<ChronixType> summarized = new HashSet<>();
+        for (ChronixType type : functions.getTypes()) {
+            ChronixFunctions typeFunctions = functions.getChronixFunctionsForType(type);
+            if (type instanceof Summarizable && !typeFunctions.containsTransformations() && !typeFunctions.containsAnalyses()
+                    && ((Summarizable) type).canAggregateFromSummaries(new ArrayList<>(typeFunctions.getAggregations()))) {
+                summarized.add(type);
+            }
+        }
+        return summarized;
     }
 
-    private static ChronixType type(SolrDocument doc) {
-        return TYPES.getTypeForName((String) doc.get("type"));
+    /**
+     * The first transformation of a type is computed from rollup records if the type supports it.
+     * The time series must not be grouped, as the rollups are combined per time series.
+     *
+     * @param functions the chronix functions of the request
+     * @param group     the group function, may be null
+     * @return the types that may use rollups, mapped to the width of the buckets of their first transformation
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<ChronixType, Long> rollupTypes(CQLCFResult functions, CQLGroupFunction group) {
+        if (group != null) {
+            return Collections.emptyMap();
+        }
+
+        Map<ChronixType, Long> rollupTypes = new HashMap<>();
+        for (ChronixType type : functions.getTypes()) {
+            ChronixFunctions typeFunctions = functions.getChronixFunctionsForType(type);
+            if (type instanceof RollupAware && typeFunctions.containsTransformations()) {
+                long bucket = ((RollupAware) type).rollupBucket(typeFunctions.getTransformations());
+                if (bucket > 0) {
+                    rollupTypes.put(type, bucket);
+                }
+            }
+        }
+        return rollupTypes;
     }
 
     /**
@@ -205,6 +413,20 @@ public class AnalysisHandler extends SearchHandler {
     @SuppressWarnings("PMD.SignatureDeclareThrowsException")
     public void handleRequestBody(SolrQueryRequest req, SolrQueryResponse rsp) throws Exception {
         LOGGER.debug("Handling analysis request {}", req);
+
+        //the stages of the request are cancelled on the first failure or if a limit is exceeded, they share its parallelism
+        final AnalysisExecutor requestExecutor = executor.forRequest(limits.timeLimit(req.getParams()),
+                req.getParams().getInt(ChronixQueryParams.CHRONIX_PARALLELISM, 0));
+        try {
+            handleAnalysisRequest(req, rsp, requestExecutor, limits.budget(requestExecutor));
+        } catch (CancellationException e) {
+            //the stage that noticed the cancellation is not its cause
+            throw requestExecutor.causeOf(e);
+        }
+    }
+
+    private void handleAnalysisRequest(SolrQueryRequest req, SolrQueryResponse rsp, AnalysisExecutor requestExecutor,
+                                       AnalysisLimits.Budget budget) throws IOException {
         //First check if the request should return documents => rows > 0
         String rowsParam = req.getParams().get(CommonParams.ROWS, null);
         int rows = -1;
@@ -218,19 +440,45 @@ public class AnalysisHandler extends SearchHandler {
         String chronixJoin = req.getParams().get(ChronixQueryParams.CHRONIX_JOIN);
         final CQLJoinFunction key = cql.parseCJ(chronixJoin);
 
-        //Do a query and collect them on the join function
-        Map<ChronixType, Map<String, List<SolrDocument>>> collectedDocs = collectDocuments(req, key);
-
         //If no rows should returned, we only return the num found
         if (rows == 0) {
-            results.setNumFound(collectedDocs.keySet().size());
+            //Do a query and collect them on the join function, we do not need the data
+            Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries = collectTimeSeries(req, key, null, 0, Long.MAX_VALUE, false, Collections.emptySet(), Collections.emptyMap(), budget);
+            results.setNumFound(collectedTimeSeries.keySet().size());
         } else {
             //Otherwise return the analyzed time series
 
             String chronixFunctions = req.getParams().get(ChronixQueryParams.CHRONIX_FUNCTION);
             final CQLCFResult result = cql.parseCF(chronixFunctions);
 
-            final List<SolrDocument> resultDocuments = analyze(req, result, collectedDocs);
+            final SolrParams params = req.getParams();
+            final long queryStart = Long.parseLong(params.get(ChronixQueryParams.QUERY_START_LONG));
+            final long queryEnd = Long.parseLong(params.get(ChronixQueryParams.QUERY_END_LONG));
+
+            //the fields of the group key have to be loaded
+            final CQLGroupFunction group = cql.parseCG(params.get(ChronixQueryParams.CHRONIX_GROUP));
+
+            //the stored chunks are returned without decoding them, the client merges them
+            if (passThrough(params, result, group)) {
+                final List<SolrDocument> chunks = passThroughChunks(req, key, queryStart, queryEnd, budget);
+                results.addAll(chunks);
+                results.setNumFound(chunks.size());
+                rsp.add("response", results);
+                return;
+            }
+
+            //Do a query and decode the records directly into the time series of the join function
+            Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries = collectTimeSeries(req, key, group,
+                    queryStart, queryEnd, decompressDataAsItIsRequested(params, result), summarizedTypes(params, result, group),
+                    rollupTypes(result, group), budget);
+
+            //the documents are written while they are serialized
+            if (params.getBool(ChronixQueryParams.CHRONIX_STREAM, false)) {
+                rsp.add("response", streamCollected(req, result, group, collectedTimeSeries, requestExecutor, budget));
+                return;
+            }
+
+            final List<SolrDocument> resultDocuments = analyzeCollected(req, result, group, collectedTimeSeries, requestExecutor, budget);
             results.addAll(resultDocuments);
             //As we have to analyze all docs in the query at once,
             // the number of documents is also the number of documents found
@@ -256,94 +504,552 @@ public class AnalysisHandler extends SearchHandler {
         final SolrParams params = req.getParams();
         final long queryStart = Long.parseLong(params.get(ChronixQueryParams.QUERY_START_LONG));
         final long queryEnd = Long.parseLong(params.get(ChronixQueryParams.QUERY_END_LONG));
+        final boolean decompressDataAsItIsRequested = decompressDataAsItIsRequested(params, functions);
 
-        //Check if the data field should be returned - default is true
-        final String fields = params.get(CommonParams.FL, Schema.DATA);
-        final boolean dataShouldReturned = fields.contains(DATA_WITH_LEADING_AND_TRAILING_COMMA);
-        final boolean dataAsJson = fields.contains(ChronixQueryParams.DATA_AS_JSON);
+        final AnalysisExecutor requestExecutor = executor.forRequest(limits.timeLimit(params), params.getInt(ChronixQueryParams.CHRONIX_PARALLELISM, 0));
+        final AnalysisLimits.Budget budget = limits.budget(requestExecutor);
 
-        //the data is needed if there are functions, or the data should be returned or the data is requested as json
-        boolean decompressDataAsItIsRequested = (!functions.isEmpty() || dataAsJson || dataShouldReturned);
+        Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries = new HashMap<>(collectedDocs.size());
+        for (Map.Entry<ChronixType, Map<String, List<SolrDocument>>> typeDocs : collectedDocs.entrySet()) {
+            ChronixType type = typeDocs.getKey();
+            Map<String, ChronixTimeSeriesAccumulator> accumulators = new HashMap<>(typeDocs.getValue().size());
 
-        final List<SolrDocument> resultDocuments = Collections.synchronizedList(new ArrayList<>(collectedDocs.size()));
+            for (Map.Entry<String, List<SolrDocument>> docs : typeDocs.getValue().entrySet()) {
+                ChronixTimeSeriesAccumulator accumulator = type.accumulator(docs.getKey(), queryStart, queryEnd, decompressDataAsItIsRequested);
+                docs.getValue().forEach(accumulator::add);
+                budget.points(accumulator.decodedPoints());
+                accumulators.put(docs.getKey(), accumulator);
+            }
+            collectedTimeSeries.put(type, accumulators);
+        }
 
+        final CQLGroupFunction group = cql.parseCG(params.get(ChronixQueryParams.CHRONIX_GROUP));
+        return analyzeCollected(req, functions, group, collectedTimeSeries, requestExecutor, budget);
+    }
 
-        //loop over the types
-        for (ChronixType type : collectedDocs.keySet()) {
+    /**
+     * Executes the transformations in their order.
+     * Consecutive transformations that are independent per time series are pipelined, i.e. each time series
+     * runs through all of them without waiting for the other time series.
+     * Other transformations are a barrier and executed on the whole list of time series.
+     *
+     * @param transformations the transformations in the order of execution
+     * @param timeSeriesList  the time series
+     * @param functionCtx     the function context of the type
+     * @param executor        the executor of the analysis
+     * @param parallelism     the parallelism of the request
+     */
+    @SuppressWarnings("unchecked")
+    private static void executeTransformations(List<ChronixTransformation> transformations,
+                                               List<ChronixTimeSeries> timeSeriesList,
+                                               FunctionCtx functionCtx,
+                                               AnalysisExecutor executor,
+                                               int parallelism) {
+        int transformation = 0;
+        while (transformation < transformations.size()) {
+            executor.checkpoint();
+
+            if (!transformations.get(transformation).isIndependentPerTimeSeries()) {
+                transformations.get(transformation).execute(timeSeriesList, functionCtx);
+                transformation++;
+                continue;
+            }
 
-            List<ChronixTimeSeries> timeSeriesList = new ArrayList<>(collectedDocs.get(type).size());
+            //collect the run of independent transformations
+            int end = transformation;
+            while (end < transformations.size() && transformations.get(end).isIndependentPerTimeSeries()) {
+                end++;
+            }
+            final List<ChronixTransformation> pipeline = transformations.subList(transformation, end);
 
-            //do this in parallel as it contains deserialization
-            collectedDocs.get(type).entrySet().parallelStream().forEach(docs -> {
-                //convert the documents into a time series
-                timeSeriesList.add(type.convert(
-                        docs.getKey(),
-                        docs.getValue(),
-                        queryStart, queryEnd,
-                        decompressDataAsItIsRequested));
+            executor.forEach(timeSeriesList.size(), parallelism, timeSeries -> {
+                List<ChronixTimeSeries> single = Collections.singletonList(timeSeriesList.get(timeSeries));
+                for (ChronixTransformation chronixTransformation : pipeline) {
+                    chronixTransformation.execute(single, functionCtx);
+                }
             });
+            transformation = end;
+        }
+    }
 
-            //clear the records the free them.
-            collectedDocs.get(type).clear();
+    /**
+     * Executes the aggregations and analyses.
+     * Functions that are independent per time series are executed per time series, i.e. in parallel over the time series.
+     * Other functions are executed on the whole list of time series afterwards, one after another.
+     * They may modify every time series, e.g. sort it in place, hence they must not run in parallel to other functions.
+     *
+     * @param functions      the aggregations and analyses
+     * @param timeSeriesList the time series
+     * @param functionCtx    the function context of the type
+     * @param executor       the executor of the analysis
+     * @param parallelism    the parallelism of the request
+     */
+    @SuppressWarnings("unchecked")
+    private static void executeFunctions(List<ChronixFunction> functions,
+                                         List<ChronixTimeSeries> timeSeriesList,
+                                         FunctionCtx functionCtx,
+                                         AnalysisExecutor executor,
+                                         int parallelism) {
+        final List<ChronixFunction> perTimeSeries = new ArrayList<>(functions.size());
+        final List<ChronixFunction> wholeList = new ArrayList<>(functions.size());
+        for (ChronixFunction function : functions) {
+            if (function.isIndependentPerTimeSeries()) {
+                perTimeSeries.add(function);
+            } else {
+                wholeList.add(function);
+            }
+        }
 
-            //validate the functions
-            ChronixFunctions typeFunctions = functions.getChronixFunctionsForType(type);
-            final FunctionCtx functionCtx = typeFunctions == null ? null : new FunctionCtx(
-                    typeFunctions.sizeOfAggregations(),
-                    typeFunctions.sizeOfAnalyses(),
-                    typeFunctions.sizeOfTransformations());
+        //a task for every time series
+        if (!perTimeSeries.isEmpty()) {
+            executor.forEach(timeSeriesList.size(), parallelism, timeSeries -> {
+                List<ChronixTimeSeries> single = Collections.singletonList(timeSeriesList.get(timeSeries));
+                for (ChronixFunction function : perTimeSeries) {
+                    function.execute(single, functionCtx);
+                }
+            });
+        }
 
-            if (functionCtx != null) {
-                //do them sequentially
-                if (typeFunctions.containsTransformations()) {
-                    for (ChronixTransformation transformation : typeFunctions.getTransformations()) {
-                        transformation.execute(timeSeriesList, functionCtx);
-                    }
+        for (ChronixFunction function : wholeList) {
+            executor.checkpoint();
+            if (function instanceof ChronixPairAnalysis) {
+                executePairs((ChronixPairAnalysis) function, timeSeriesList, functionCtx, executor, parallelism);
+            } else {
+                function.execute(timeSeriesList, functionCtx);
+            }
+        }
+    }
+
+    /**
+     * Evaluates the pairs of a pair analysis in parallel.
+     * The results are added in the order of the pairs, hence they do not depend on the execution.
+     *
+     * @param analysis       the pair analysis
+     * @param timeSeriesList the time series
+     * @param functionCtx    the function context of the type
+     * @param executor       the executor of the analysis
+     * @param parallelism    the parallelism of the request
+     */
+    @SuppressWarnings("unchecked")
+    private static void executePairs(ChronixPairAnalysis analysis,
+                                     List<ChronixTimeSeries> timeSeriesList,
+                                     FunctionCtx functionCtx,
+                                     AnalysisExecutor executor,
+                                     int parallelism) {
+        List<ChronixPairAnalysis.Pair> pairs = analysis.pairs(timeSeriesList);
+        List<Boolean> results = executor.map(pairs, parallelism, analysis::evaluate);
+        for (int pair = 0; pair < pairs.size(); pair++) {
+            functionCtx.add(analysis, results.get(pair), pairs.get(pair).getJoinKey());
+        }
+    }
+
+    /**
+     * Merges the time series with equal group keys into a single time series per group.
+     * The groups are merged in parallel and keep the order of their first time series.
+     *
+     * @param type           the type of the time series
+     * @param timeSeriesList the time series
+     * @param group          the group function
+     * @param executor       the executor of the analysis
+     * @param parallelism    the parallelism of the request
+     * @return the merged time series, one per group
+     */
+    @SuppressWarnings("unchecked")
+    private static List<ChronixTimeSeries> group(ChronixType type,
+                                                 List<ChronixTimeSeries> timeSeriesList,
+                                                 CQLGroupFunction group,
+                                                 AnalysisExecutor executor,
+                                                 int parallelism) {
+        Map<String, List<ChronixTimeSeries>> groups = new LinkedHashMap<>();
+        for (ChronixTimeSeries timeSeries : timeSeriesList) {
+            groups.computeIfAbsent(group.apply(groupFields(timeSeries)), key -> new ArrayList<>()).add(timeSeries);
+        }
+
+        List<Map.Entry<String, List<ChronixTimeSeries>>> members = new ArrayList<>(groups.entrySet());
+        final Mergeable mergeable = (Mergeable) type;
+        return executor.map(members, parallelism, entry -> mergeable.merge(entry.getKey(), (List) entry.getValue(),
+                group.getAggregation(), group.getPercentile(), group.getBucket()));
+    }
+
+    /**
+     * @param timeSeries the time series
+     * @return the attributes, name and type of the time series. Attributes with a single value are unwrapped.
+     */
+    private static Map<String, Object> groupFields(ChronixTimeSeries timeSeries) {
+        Map<String, Object> fields = new HashMap<>();
+        for (Map.Entry<String, Object> attribute : (Set<Map.Entry<String, Object>>) timeSeries.getAttributes().entrySet()) {
+            Object value = attribute.getValue();
+            if (value instanceof Collection && ((Collection) value).size() == 1) {
+                value = ((Collection) value).iterator().next();
+            }
+            fields.put(attribute.getKey(), value);
+        }
+        fields.put(Schema.NAME, timeSeries.getName());
+        fields.put(Schema.TYPE, timeSeries.getType());
+        return fields;
+    }
+
+    /**
+     * Analyzes the given request using the chronix functions on the collected time series.
+     *
+     * @param req                 the solr request with all information
+     * @param functions           the chronix analysis that is applied
+     * @param group               the group function, may be null
+     * @param collectedTimeSeries the time series accumulated while querying the records
+     * @param requestExecutor     the executor of the request
+     * @param budget              counts the points decoded while the time series are built
+     * @return a list containing the analyzed time series as solr documents
+     */
+    private List<SolrDocument> analyzeCollected(SolrQueryRequest req, CQLCFResult functions, CQLGroupFunction group,
+                                                Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries,
+                                                AnalysisExecutor requestExecutor, AnalysisLimits.Budget budget) {
+
+        final SolrParams params = req.getParams();
+
+        //the parallelism of this request, bounded by the configured maximum
+        final int parallelism = requestExecutor.parallelism(params.getInt(ChronixQueryParams.CHRONIX_PARALLELISM, 0));
+
+        final List<SolrDocument> resultDocuments = new ArrayList<>(collectedTimeSeries.size());
+        for (AnalyzedType analyzed : analyzeTypes(req, functions, group, collectedTimeSeries, requestExecutor, budget, parallelism)) {
+            //build the result (serialization) in parallel again.
+            resultDocuments.addAll(requestExecutor.map(analyzed.timeSeriesList, parallelism, analyzed::toSolrDocument));
+        }
+        return resultDocuments;
+    }
+
+    /**
+     * Analyzes the given request like {@link #analyzeCollected}, but the time series are serialized lazily
+     * while the response is written. At most the request parallelism of serialized time series is held in memory.
+     * A serialized time series is released as soon as it is written, hence a slow client slows down the serialization.
+     * The time series of a type whose functions are independent per time series are also built and analyzed
+     * while they are written, one by one. The other types need all their time series at once, e.g. for a pair analysis,
+     * hence they are analyzed before the first document is written, as are all types of a grouped request.
+     * The limits of a request are checked before the response is written, hence all types of a limited request
+     * are analyzed before the first document is written, see {@link AnalysisLimits#isLimited}.
+     * The number of documents is written first, hence a time series that fails while it is written and all time series
+     * after it are written as error documents, see {@link StreamingResultContext}.
+     *
+     * @param req                 the solr request with all information
+     * @param functions           the chronix analysis that is applied
+     * @param group               the group function, may be null
+     * @param collectedTimeSeries the time series accumulated while querying the records
+     * @param requestExecutor     the executor of the request, its limits are checked before the response is written
+     * @param budget              counts the points decoded while the time series are built
+     * @return the result context streaming the analyzed time series as solr documents
+     */
+    private StreamingResultContext streamCollected(SolrQueryRequest req, CQLCFResult functions, CQLGroupFunction group,
+                                                   Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries,
+                                                   AnalysisExecutor requestExecutor, AnalysisLimits.Budget budget) {
+
+        final int parallelism = requestExecutor.parallelism(req.getParams().getInt(ChronixQueryParams.CHRONIX_PARALLELISM, 0));
+
+        //the number of groups is only known after all time series are merged, as the number of documents is written first
+        if (group != null) {
+            int size = 0;
+            List<Iterator<SolrDocument>> resultDocuments = new ArrayList<>(collectedTimeSeries.size());
+            for (AnalyzedType analyzed : analyzeTypes(req, functions, group, collectedTimeSeries, requestExecutor, budget, parallelism)) {
+                size += analyzed.timeSeriesList.size();
+                resultDocuments.add(requestExecutor.stream(analyzed.timeSeriesList, parallelism, analyzed::toSolrDocument));
+            }
+
+            //a failure while the response is written would truncate it, hence the request is not cancelled afterwards
+            requestExecutor.checkpoint();
+            return new StreamingResultContext(req, size, Iterators.concat(resultDocuments.iterator()));
+        }
+
+        //every time series is a document. a limit exceeded while the response is written could not be reported
+        final boolean limited = limits.isLimited(req.getParams());
+        int size = 0;
+        List<ChronixType> types = validatedTypes(req, null, collectedTimeSeries);
+        Map<ChronixType, TypeFunctions> streamed = new HashMap<>();
+        List<ChronixType> analyzedTypes = new ArrayList<>();
+        for (ChronixType type : types) {
+            size += collectedTimeSeries.get(type).size();
+            TypeFunctions typeFunctions = new TypeFunctions(type, functions);
+            if (!limited && typeFunctions.independentPerTimeSeries()) {
+                streamed.put(type, typeFunctions);
+            } else {
+                analyzedTypes.add(type);
+            }
+        }
+
+        //the types that need all their time series or are limited are analyzed before the first document is written
+        Map<ChronixType, AnalyzedType> analyzed = new HashMap<>();
+        List<AnalyzedType> results = requestExecutor.map(analyzedTypes, parallelism,
+                type -> analyzeType(req, type, functions, null, collectedTimeSeries.get(type), requestExecutor, budget, parallelism));
+        for (int index = 0; index < analyzedTypes.size(); index++) {
+            analyzed.put(analyzedTypes.get(index), results.get(index));
+        }
+        requestExecutor.checkpoint();
+
+        //the iterator of a type is created when the documents of the previous types are written
+        Iterator<Iterator<SolrDocument>> resultDocuments = Iterators.<ChronixType, Iterator<SolrDocument>>transform(types.iterator(),
+                type -> analyzed.containsKey(type)
+                        ? requestExecutor.stream(analyzed.get(type).timeSeriesList, parallelism, analyzed.get(type)::toSolrDocument)
+                        : streamType(req, streamed.get(type), collectedTimeSeries.get(type), requestExecutor, budget, parallelism));
+        return new StreamingResultContext(req, size, Iterators.concat(resultDocuments));
+    }
+
+    /**
+     * Builds and analyzes the time series of a type one by one while they are written, see {@link #streamCollected}.
+     * The functions of the type are executed on every time series on its own, hence they have to be independent per time series.
+     *
+     * @param req             the solr request with all information
+     * @param typeFunctions   the functions of the type
+     * @param accumulators    the accumulated time series of the type, they are cleared
+     * @param requestExecutor the executor of the analysis
+     * @param budget          counts the points decoded while the time series are built
+     * @param parallelism     the parallelism of the request
+     * @return the lazily analyzed time series of the type as solr documents
+     */
+    @SuppressWarnings("unchecked")
+    private static Iterator<SolrDocument> streamType(SolrQueryRequest req, TypeFunctions typeFunctions,
+                                                     Map<String, ChronixTimeSeriesAccumulator> accumulators,
+                                                     AnalysisExecutor requestExecutor, AnalysisLimits.Budget budget, int parallelism) {
+        final FunctionCtx functionCtx = typeFunctions.functionCtx;
+        final AnalyzedType analyzed = analyzedType(req.getParams(), Collections.emptyList(), functionCtx);
+
+        //an accumulator is released as soon as its time series is analyzed
+        List<ChronixTimeSeriesAccumulator> inputs = new ArrayList<>(accumulators.values());
+        accumulators.clear();
+
+        return requestExecutor.stream(inputs, parallelism, accumulator -> {
+            List<ChronixTimeSeries> single = Collections.singletonList(build(accumulator, budget));
+            for (ChronixTransformation transformation : typeFunctions.transformations) {
+                transformation.execute(single, functionCtx);
+            }
+            for (ChronixFunction function : typeFunctions.aggregationsAndAnalyses) {
+                function.execute(single, functionCtx);
+            }
+            return analyzed.toSolrDocument(single.get(0));
+        });
+    }
+
+    /**
+     * Analyzes the types concurrently on the shared executor, the types share the parallelism of the request.
+     * A type only uses the helper threads that are not used by the other types, see {@link AnalysisExecutor}.
+     * The analyzed types are ordered by their name, hence the order of the result does not depend on the execution.
+     * The first failing type cancels the request, the other types stop at their next checkpoint.
+     *
+     * @param req                 the solr request with all information
+     * @param functions           the chronix analysis that is applied
+     * @param group               the group function, may be null
+     * @param collectedTimeSeries the time series accumulated while querying the records
+     * @param requestExecutor     the executor of the request
+     * @param budget              counts the points decoded while the time series are built
+     * @param parallelism         the parallelism of the request
+     * @return the analyzed types ordered by their name
+     */
+    private static List<AnalyzedType> analyzeTypes(SolrQueryRequest req, CQLCFResult functions, CQLGroupFunction group,
+                                                   Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries,
+                                                   AnalysisExecutor requestExecutor, AnalysisLimits.Budget budget, int parallelism) {
+        List<ChronixType> types = validatedTypes(req, group, collectedTimeSeries);
+        return requestExecutor.map(types, parallelism, type -> analyzeType(req, type, functions, group, collectedTimeSeries.get(type), requestExecutor, budget, parallelism));
+    }
+
+    /**
+     * Checks that the types support the request before any type is analyzed
+     *
+     * @param req                 the solr request with all information
+     * @param group               the group function, may be null
+     * @param collectedTimeSeries the time series accumulated while querying the records
+     * @return the types ordered by their name
+     */
+    private static List<ChronixType> validatedTypes(SolrQueryRequest req, CQLGroupFunction group,
+                                                    Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries) {
+        List<ChronixType> types = new ArrayList<>(collectedTimeSeries.keySet());
+        types.sort(Comparator.comparing(ChronixType::getType));
+
+        //the time series of all types have to be merged, hence the request is rejected before any type is analyzed
+        if (group != null) {
+            for (ChronixType type : types) {
+                if (!(type instanceof Mergeable)) {
+                    throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                            "Type '" + type.getType() + "' does not support grouping (" + ChronixQueryParams.CHRONIX_GROUP + ").");
+                }
+            }
+        }
+
+        //the columnar writer would fail after the response has started
+        final SolrParams params = req.getParams();
+        if (dataAsColumns(params) && dataShouldReturned(params) && !params.get(CommonParams.FL, Schema.DATA).contains(ChronixQueryParams.DATA_AS_JSON)) {
+            for (ChronixType type : types) {
+                if (!(type instanceof Columnar)) {
+                    throw new SolrException(SolrException.ErrorCode.BAD_REQUEST,
+                            "Type '" + type.getType() + "' does not support the columnar format (wt=" + ChronixColumnarResponseWriter.NAME + ").");
                 }
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Builds the time series of a type and executes its functions.
+     *
+     * @param req             the solr request with all information
+     * @param type            the type of the time series
+     * @param functions       the chronix analysis that is applied
+     * @param group           the group function, may be null
+     * @param accumulators    the accumulated time series of the type, they are cleared
+     * @param requestExecutor the executor of the analysis
+     * @param budget          counts the points decoded while the time series are built
+     * @param parallelism     the parallelism of the request
+     * @return the analyzed time series of the type
+     */
+    private static AnalyzedType analyzeType(SolrQueryRequest req, ChronixType type, CQLCFResult functions, CQLGroupFunction group,
+                                            Map<String, ChronixTimeSeriesAccumulator> accumulators,
+                                            AnalysisExecutor requestExecutor, AnalysisLimits.Budget budget, int parallelism) {
+        final SolrParams params = req.getParams();
+
+        //do this in parallel as building the time series could contain deserialization
+        List<ChronixTimeSeries> timeSeriesList = requestExecutor.map(new ArrayList<>(accumulators.values()), parallelism, accumulator -> build(accumulator, budget));
 
-                //add all aggregations
-                List<ChronixFunction> aggregationsAndAnalyses = new ArrayList<>(typeFunctions.sizeOfAggregations() + typeFunctions.sizeOfAnalyses());
+        //clear the accumulators the free them.
+        accumulators.clear();
+        requestExecutor.checkpoint();
+
+        //merges the time series of a group, e.g. the sum of all hosts per minute.
+        //the functions are executed on the merged time series of the groups
+        if (group != null) {
+            timeSeriesList = group(type, timeSeriesList, group, requestExecutor, parallelism);
+        }
+
+        //validate the functions
+        TypeFunctions typeFunctions = new TypeFunctions(type, functions);
+        final FunctionCtx functionCtx = typeFunctions.functionCtx;
+
+        if (functionCtx != null) {
+            if (!typeFunctions.transformations.isEmpty()) {
+                executeTransformations(typeFunctions.transformations, timeSeriesList, functionCtx, requestExecutor, parallelism);
+            }
+
+            //now, run them all
+            requestExecutor.checkpoint();
+            if (!typeFunctions.aggregationsAndAnalyses.isEmpty()) {
+                executeFunctions(typeFunctions.aggregationsAndAnalyses, timeSeriesList, functionCtx, requestExecutor, parallelism);
+            }
+        }
+        return analyzedType(params, timeSeriesList, functionCtx);
+    }
+
+    /**
+     * @param params         the request parameters
+     * @param timeSeriesList the analyzed time series
+     * @param functionCtx    the results of the functions, may be null
+     * @return the analyzed type that serializes its time series as requested
+     */
+    private static AnalyzedType analyzedType(SolrParams params, List<ChronixTimeSeries> timeSeriesList, FunctionCtx functionCtx) {
+        //Check if the data field should be returned - default is true
+        final String fields = params.get(CommonParams.FL, Schema.DATA);
+        return new AnalyzedType(timeSeriesList, functionCtx,
+                dataShouldReturned(params), fields.contains(ChronixQueryParams.DATA_AS_JSON), dataAsColumns(params));
+    }
+
+    /**
+     * The functions of a type in the order of their execution
+     */
+    private static final class TypeFunctions {
+        private final FunctionCtx functionCtx;
+        private final List<ChronixTransformation> transformations;
+        private final List<ChronixFunction> aggregationsAndAnalyses;
+
+        @SuppressWarnings("unchecked")
+        private TypeFunctions(ChronixType type, CQLCFResult functions) {
+            ChronixFunctions typeFunctions = functions.getChronixFunctionsForType(type);
+            if (typeFunctions == null) {
+                functionCtx = null;
+                transformations = Collections.emptyList();
+                aggregationsAndAnalyses = Collections.emptyList();
+            } else {
+                functionCtx = new FunctionCtx(
+                        typeFunctions.sizeOfAggregations(),
+                        typeFunctions.sizeOfAnalyses(),
+                        typeFunctions.sizeOfTransformations());
+
+                //a type with the capability fuses its functions
+                final Fusing fusing = type instanceof Fusing ? (Fusing) type : null;
+                if (!typeFunctions.containsTransformations()) {
+                    transformations = Collections.emptyList();
+                } else if (fusing != null) {
+                    transformations = fusing.fuseTransformations(typeFunctions.getTransformations());
+                } else {
+                    transformations = new ArrayList<>(typeFunctions.getTransformations());
+                }
+
+                //add all aggregations, the type may compute several of them in a single pass
+                aggregationsAndAnalyses = new ArrayList<>(typeFunctions.sizeOfAggregations() + typeFunctions.sizeOfAnalyses());
                 if (typeFunctions.containsAggregations()) {
-                    aggregationsAndAnalyses.addAll(typeFunctions.getAggregations());
+                    List aggregations = new ArrayList<>(typeFunctions.getAggregations());
+                    aggregationsAndAnalyses.addAll(fusing != null ? fusing.fuseAggregations(aggregations) : aggregations);
                 }
 
                 //add all analyses
                 if (typeFunctions.containsAnalyses()) {
                     aggregationsAndAnalyses.addAll(typeFunctions.getAnalyses());
                 }
-
-                //now, run them all parallel
-                if (!aggregationsAndAnalyses.isEmpty()) {
-                    aggregationsAndAnalyses.parallelStream().forEach(function -> function.execute(timeSeriesList, functionCtx));
-                }
             }
+        }
 
-            //build the result (serialization) in parallel again.
-            timeSeriesList.parallelStream().forEach(timeSeries -> {
-                        //We return the time series if
-                        // 1) the data is explicit requested as json
-                        // 2) there are aggregations / transformations
-                        // 3) there are matching analyses
-                        //Here we have to build the document with the results of the analyses
-                        SolrDocument doc = solrDocumentWithOutTimeSeriesFunctionResults(dataShouldReturned, dataAsJson, timeSeries);
-
-                        if (functionCtx != null) {
-                            FunctionCtxEntry timeSeriesFunctionCtx = functionCtx.getContextFor(timeSeries.getJoinKey());
-                            if (hasTransformationsOrAggregations(timeSeriesFunctionCtx) || hasMatchingAnalyses(timeSeriesFunctionCtx)) {
-                                //Add the function results
-                                addAnalysesAndResults(timeSeriesFunctionCtx, doc);
-                            }
-                        }
-                        resultDocuments.add(doc);
-                    }
-
-            );
+        /**
+         * @return true if every function handles every time series independently of the others
+         */
+        private boolean independentPerTimeSeries() {
+            return transformations.stream().allMatch(ChronixFunction::isIndependentPerTimeSeries)
+                    && aggregationsAndAnalyses.stream().allMatch(ChronixFunction::isIndependentPerTimeSeries);
+        }
+    }
+
+    /**
+     * Builds the time series of the accumulator and counts the points that are decoded while it is built,
+     * e.g. by a type that converts all records at once
+     */
+    private static ChronixTimeSeries build(ChronixTimeSeriesAccumulator accumulator, AnalysisLimits.Budget budget) {
+        long decoded = accumulator.decodedPoints();
+        ChronixTimeSeries timeSeries = accumulator.build();
+        budget.points(accumulator.decodedPoints() - decoded);
+        return timeSeries;
+    }
 
+    /**
+     * The time series of a type with the results of their functions
+     */
+    private static final class AnalyzedType {
+        private final List<ChronixTimeSeries> timeSeriesList;
+        private final FunctionCtx functionCtx;
+        private final boolean dataShouldReturned;
+        private final boolean dataAsJson;
+        private final boolean dataAsColumns;
+
+        private AnalyzedType(List<ChronixTimeSeries> timeSeriesList, FunctionCtx functionCtx, boolean dataShouldReturned,
+                             boolean dataAsJson, boolean dataAsColumns) {
+            this.timeSeriesList = timeSeriesList;
+            this.functionCtx = functionCtx;
+            this.dataShouldReturned = dataShouldReturned;
+            this.dataAsJson = dataAsJson;
+            this.dataAsColumns = dataAsColumns;
+        }
+
+        private SolrDocument toSolrDocument(ChronixTimeSeries timeSeries) {
+            //We return the time series if
+            // 1) the data is explicit requested as json
+            // 2) there are aggregations / transformations
+            // 3) there are matching analyses
+            //Here we have to build the document with the results of the analyses
+            SolrDocument doc = solrDocumentWithOutTimeSeriesFunctionResults(dataShouldReturned, dataAsJson, dataAsColumns, timeSeries);
+
+            if (functionCtx != null) {
+                FunctionCtxEntry timeSeriesFunctionCtx = functionCtx.getContextFor(timeSeries.getJoinKey());
+                if (hasTransformationsOrAggregations(timeSeriesFunctionCtx) || hasMatchingAnalyses(timeSeriesFunctionCtx)) {
+                    //Add the function results
+                    addAnalysesAndResults(timeSeriesFunctionCtx, doc);
+                }
+            }
+            return doc;
         }
-        return resultDocuments;
     }
 
-    private SolrDocument solrDocumentWithOutTimeSeriesFunctionResults(boolean dataShouldReturned, boolean dataAsJson, ChronixTimeSeries timeSeries) {
+    private static SolrDocument solrDocumentWithOutTimeSeriesFunctionResults(boolean dataShouldReturned, boolean dataAsJson,
+                                                                             boolean dataAsColumns, ChronixTimeSeries timeSeries) {
         SolrDocument doc = new SolrDocument();
 
         //add the join key
@@ -363,6 +1069,9 @@ public class AnalysisHandler extends SearchHandler {
             //data should returned serialized as json
             if (dataAsJson) {
                 doc.setField(ChronixQueryParams.DATA_AS_JSON, timeSeries.dataAsJson());
+            } else if (dataAsColumns) {
+                //data is written by the columnar response writer
+                doc.setField(ChronixQueryParams.DATA_AS_COLUMNS, timeSeries.dataAsColumns());
             } else {
                 doc.addField(Schema.DATA, timeSeries.dataAsBlob());
             }
@@ -379,43 +1088,294 @@ public class AnalysisHandler extends SearchHandler {
     }
 
     /**
-     * Collects the document matching the given solr query request by using the given collection key function.
+     * Collects the records matching the given solr query request by using the given collection key function.
+     * The records are read one by one and directly accumulated into the time series of their join key.
+     * Rollup records are only read for the given rollup types, always before the raw records.
      *
      * @param req           the solr query request
-     * @param collectionKey the collection key function to group documents
-     * @return the collected and grouped documents
+     * @param collectionKey the collection key function to group records
+     * @param group         the group function of the time series, may be null
+     * @param queryStart    the query start
+     * @param queryEnd      the query end
+     * @param decompress    marks if the data is requested and should be decompressed
+     * @param summarized    the summarizable types whose records within the query range are summarized instead of decoded
+     * @param rollupTypes   the types that may use rollups, mapped to the width of the buckets
+     * @param budget        counts the chunks and decoded points of the request
+     * @return the accumulated time series grouped by type and join key
      * @throws IOException if bad things happen
      */
-    private Map<ChronixType, Map<String, List<SolrDocument>>> collectDocuments(SolrQueryRequest req, CQLJoinFunction collectionKey) throws IOException {
+    private Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectTimeSeries(SolrQueryRequest req, CQLJoinFunction collectionKey, CQLGroupFunction group,
+                                                                                          long queryStart, long queryEnd, boolean decompress, Set<ChronixType> summarized,
+                                                                                          Map<ChronixType, Long> rollupTypes, AnalysisLimits.Budget budget) throws IOException {
         String query = req.getParams().get(CommonParams.Q);
-        //query and collect all documents
-        return collectDocuments(query, req, collectionKey);
+        Set<String> fields = getFields(req.getParams().get(CommonParams.FL), req.getSchema().getFields());
+
+        //we always need the data field and the fields that describe its layout
+        fields.add(Schema.DATA);
+        fields.addAll(TYPES.dataFields());
+
+        //add the involved fields from in the join key
+        if (!isEmptyArray(collectionKey.involvedFields())) {
+            Collections.addAll(fields, collectionKey.involvedFields());
+        }
+        if (group != null) {
+            Collections.addAll(fields, group.involvedFields());
+        }
+
+        Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries = new HashMap<>();
+
+        //the rollups have to be added before the raw records
+        Map<ChronixType, Long> resolutions = rollupTypes.isEmpty() || !hasRollups(req)
+                ? Collections.emptyMap()
+                : collectRollups(req, query, fields, collectionKey, queryStart, queryEnd, rollupTypes, collectedTimeSeries, budget);
+        for (ChronixType type : resolutions.keySet()) {
+            fields.addAll(((RollupAware) type).rollupFields());
+        }
+
+        //the summarized records are loaded again by their doc ids if their data is needed after all
+        Set<String> dataFields = new HashSet<>(TYPES.dataFields());
+        dataFields.add(Schema.DATA);
+        RecordLoader loader = new RecordLoader(docListProvider, req.getSearcher(), dataFields);
+
+        DocList result = docListProvider.doSimpleQuery(query, rawRecords(req), req, 0, Integer.MAX_VALUE);
+        Consumer<Map<String, Object>> consumer = record -> {
+            budget.chunk();
+            ChronixType type = type(record);
+
+            if (type == null) {
+                LOGGER.warn("Type is null.");
+                return;
+            }
+
+            accumulate(record, type, collectedTimeSeries, collectionKey, budget, k -> {
+                if (resolutions.containsKey(type)) {
+                    return ((RollupAware) type).rollupAccumulator(k, queryStart, queryEnd, resolutions.get(type), rollupTypes.get(type));
+                }
+                return summarized.contains(type)
+                        ? ((Summarizable) type).summaryAccumulator(k, queryStart, queryEnd, loader)
+                        : type.accumulator(k, queryStart, queryEnd, decompress);
+            });
+        };
+
+        if (summarized.isEmpty()) {
+            docListProvider.streamDocList(result, req.getSearcher(), fields, consumer);
+            return collectedTimeSeries;
+        }
+
+        //the summaries are read from their doc values, the data only if the summary does not answer the record
+        Set<String> summaryFields = new HashSet<>();
+        summarized.forEach(type -> summaryFields.addAll(((Summarizable) type).summaryFields()));
+        Set<String> recordFields = new HashSet<>(fields);
+        recordFields.removeAll(dataFields);
+        recordFields.removeAll(summaryFields);
+
+        docListProvider.streamDocList(result, req.getSearcher(), recordFields, summaryFields, dataFields, record -> {
+            ChronixType type = type(record);
+            return type != null && (resolutions.containsKey(type) || !summarized.contains(type)
+                    || ((Summarizable) type).summaryNeedsData(record, queryStart, queryEnd));
+        }, (record, docId) -> {
+            loader.current = docId;
+            consumer.accept(record);
+        });
+        return collectedTimeSeries;
+    }
+
+    /**
+     * Loads the data of records of the request again by their doc ids, e.g. of the summarized records if the records
+     * of a time series overlap. The stored fields are read with the searcher of the request, hence the concurrently
+     * built time series load their records in parallel. The current doc id is set by the collecting thread.
+     */
+    private static final class RecordLoader implements ChronixRecordLoader {
+        private final DocListProvider docListProvider;
+        private final SolrIndexSearcher searcher;
+        private final Set<String> fields;
+        private int current;
+
+        private RecordLoader(DocListProvider docListProvider, SolrIndexSearcher searcher, Set<String> dataFields) {
+            this.docListProvider = docListProvider;
+            this.searcher = searcher;
+            this.fields = new HashSet<>(dataFields);
+            Collections.addAll(fields, Schema.START, Schema.END);
+        }
+
+        @Override
+        public int current() {
+            return current;
+        }
+
+        @Override
+        public void load(int[] docIds, Consumer<Map<String, Object>> consumer) {
+            try {
+                docListProvider.streamDocs(docIds, searcher, fields, consumer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
     }
 
     /**
-     * Collects the document matching the given solr query request by using the given collection key function.
+     * Reads the chunks (records) matching the given solr query request without merging them into time series.
+     * Chunks within the query range are returned as they are stored, e.g. with the index of their blocks.
+     * Only the chunks at the boundaries of the query range are decoded, trimmed to the query range and encoded again.
      *
-     * @param query         the plain solr query
-     * @param req           the request object
-     * @param collectionKey the key to collected documents
-     * @return the collected and grouped documents
+     * @param req           the solr query request
+     * @param collectionKey the collection key function, the client merges the chunks with the same join key
+     * @param queryStart    the query start
+     * @param queryEnd      the query end
+     * @param budget        counts the chunks and the points of the decoded boundary chunks
+     * @return the chunks in the order of the index
      * @throws IOException if bad things happen
      */
-    private Map<ChronixType, Map<String, List<SolrDocument>>> collectDocuments(String query, SolrQueryRequest req, CQLJoinFunction collectionKey) throws IOException {
-        //query and collect all documents
+    private List<SolrDocument> passThroughChunks(SolrQueryRequest req, CQLJoinFunction collectionKey, long queryStart, long queryEnd,
+                                                 AnalysisLimits.Budget budget) throws IOException {
+        String query = req.getParams().get(CommonParams.Q);
         Set<String> fields = getFields(req.getParams().get(CommonParams.FL), req.getSchema().getFields());
 
-        //we always need the data field
-        fields.add(Schema.DATA);
-
-        //add the involved fields from in the join key
+        //the boundary chunks are trimmed by their type
+        Collections.addAll(fields, Schema.DATA, Schema.START, Schema.END, Schema.NAME, Schema.TYPE);
+        fields.addAll(TYPES.dataFields());
         if (!isEmptyArray(collectionKey.involvedFields())) {
             Collections.addAll(fields, collectionKey.involvedFields());
         }
 
-        DocList result = docListProvider.doSimpleQuery(query, req, 0, Integer.MAX_VALUE);
-        SolrDocumentList docs = docListProvider.docListToSolrDocumentList(result, req.getSearcher(), fields, null);
-        return collect(docs, collectionKey);
+        List<SolrDocument> chunks = new ArrayList<>();
+        DocList result = docListProvider.doSimpleQuery(query, rawRecords(req), req, 0, Integer.MAX_VALUE);
+        docListProvider.streamDocList(result, req.getSearcher(), fields, record -> {
+            budget.chunk();
+            ChronixType type = type(record);
+
+            if (type == null) {
+                LOGGER.warn("Type is null.");
+                return;
+            }
+
+            SolrDocument chunk = passThroughChunk(record, type, collectionKey.apply(record), queryStart, queryEnd, budget);
+            if (chunk != null) {
+                chunks.add(chunk);
+            }
+        });
+        return chunks;
+    }
+
+    /**
+     * @return the chunk with its join key, null if the chunk is outside of the query range
+     */
+    @SuppressWarnings("unchecked")
+    private static SolrDocument passThroughChunk(Map<String, Object> record, ChronixType type, String joinKey, long queryStart, long queryEnd,
+                                                 AnalysisLimits.Budget budget) {
+        long start = ((Number) record.get(Schema.START)).longValue();
+        long end = ((Number) record.get(Schema.END)).longValue();
+        if (end < queryStart || start > queryEnd) {
+            return null;
+        }
+
+        SolrDocument chunk = new SolrDocument();
+        chunk.put(ChronixQueryParams.JOIN_KEY, joinKey);
+        for (Map.Entry<String, Object> field : record.entrySet()) {
+            chunk.addField(field.getKey(), field.getValue());
+        }
+
+        //a trimmed chunk is decoded within the query range, e.g. only the overlapping blocks, and encoded in a single chunk
+        if (start < queryStart || end > queryEnd) {
+            ChronixTimeSeries decoded = type.convert(joinKey, Collections.singletonList(new SolrDocument(record)), queryStart, queryEnd, true);
+            budget.points(decoded.size());
+            chunk.setField(Schema.DATA, decoded.dataAsBlob());
+            chunk.setField(Schema.START, decoded.getStart());
+            chunk.setField(Schema.END, decoded.getEnd());
+            //the data fields and the summaries describe the untrimmed chunk
+            chunk.keySet().removeAll(type.dataFields());
+            if (type instanceof Summarizable) {
+                chunk.keySet().removeAll(((Summarizable) type).summaryFields());
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Calculates the join key of the record and adds it to the time series of the join key.
+     * The points decoded by the record are counted.
+     */
+    private static void accumulate(Map<String, Object> record, ChronixType type,
+                                   Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries,
+                                   CQLJoinFunction collectionKey, AnalysisLimits.Budget budget,
+                                   Function<String, ChronixTimeSeriesAccumulator> accumulator) {
+        String key = collectionKey.apply(record);
+        ChronixTimeSeriesAccumulator timeSeries = collectedTimeSeries
+                .computeIfAbsent(type, t -> new HashMap<>())
+                .computeIfAbsent(key, accumulator);
+
+        long decoded = timeSeries.decodedPoints();
+        timeSeries.add(record);
+        budget.points(timeSeries.decodedPoints() - decoded);
+    }
+
+    /**
+     * Reads the rollup records of the given types in a single pass. The coarsest resolution of every type that
+     * divides the width of its buckets is selected and only its rollup records are added to the time series.
+     *
+     * @param req                 the solr query request
+     * @param query               the user query
+     * @param fields              the fields of the raw records
+     * @param collectionKey       the collection key function to group records
+     * @param queryStart          the query start
+     * @param queryEnd            the query end
+     * @param rollupTypes         the types that may use rollups, mapped to the width of the buckets
+     * @param collectedTimeSeries the accumulated time series grouped by type and join key
+     * @param budget              counts the chunks and decoded points of the request
+     * @return the types that use rollups, mapped to the resolution of the rollups
+     * @throws IOException if bad things happen
+     */
+    private Map<ChronixType, Long> collectRollups(SolrQueryRequest req, String query, Set<String> fields, CQLJoinFunction collectionKey,
+                                                  long queryStart, long queryEnd, Map<ChronixType, Long> rollupTypes,
+                                                  Map<ChronixType, Map<String, ChronixTimeSeriesAccumulator>> collectedTimeSeries,
+                                                  AnalysisLimits.Budget budget) throws IOException {
+        Set<String> rollupFields = new HashSet<>(fields);
+        rollupTypes.keySet().forEach(type -> rollupFields.addAll(((RollupAware) type).rollupFields()));
+
+        //the records of the coarsest resolution so far, they are kept until all rollup records are read
+        Map<ChronixType, Long> resolutions = new HashMap<>();
+        Map<ChronixType, List<Map<String, Object>>> records = new HashMap<>();
+        DocList rollups = docListProvider.doSimpleQuery(query, Collections.singletonList(ChronixQueryParams.ROLLUP + ":[* TO *]"),
+                req, 0, Integer.MAX_VALUE);
+        docListProvider.streamDocList(rollups, req.getSearcher(), rollupFields, record -> {
+            budget.chunk();
+            ChronixType type = type(record);
+            Object resolution = record.get(ChronixQueryParams.ROLLUP);
+            if (type == null || !rollupTypes.containsKey(type) || !(resolution instanceof Number)) {
+                return;
+            }
+            long value = ((Number) resolution).longValue();
+            if (value <= 0 || rollupTypes.get(type) % value != 0 || value < resolutions.getOrDefault(type, 0L)) {
+                return;
+            }
+            if (value > resolutions.getOrDefault(type, 0L)) {
+                resolutions.put(type, value);
+                records.put(type, new ArrayList<>());
+            }
+            //the record map is reused for the next doc
+            records.get(type).add(new HashMap<>(record));
+        });
+
+        records.forEach((type, typeRecords) -> typeRecords.forEach(record ->
+                accumulate(record, type, collectedTimeSeries, collectionKey, budget,
+                        k -> ((RollupAware) type).rollupAccumulator(k, queryStart, queryEnd, resolutions.get(type), rollupTypes.get(type)))));
+        return resolutions;
+    }
+
+    /**
+     * @param req the solr query request
+     * @return true if the schema contains rollup records
+     */
+    private static boolean hasRollups(SolrQueryRequest req) {
+        return req.getSchema().getFieldOrNull(ChronixQueryParams.ROLLUP) != null;
+    }
+
+    /**
+     * @param req the solr query request
+     * @return the filter queries that exclude the rollup records if the schema contains them
+     */
+    private static List<String> rawRecords(SolrQueryRequest req) {
+        return hasRollups(req) ? Collections.singletonList(ChronixQueryParams.WITHOUT_ROLLUPS) : Collections.emptyList();
     }
 
     private boolean isEmptyArray(String[] array) {
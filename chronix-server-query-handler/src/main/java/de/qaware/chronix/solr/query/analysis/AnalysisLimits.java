@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.query.analysis;
+
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
+import org.apache.solr.common.params.SolrParams;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The limits of a single analysis request, e.g.:
+ * <pre>
+ * &lt;lst name="analysis"&gt;
+ *     &lt;long name="maxChunks"&gt;100000&lt;/long&gt;
+ *     &lt;long name="maxPoints"&gt;100000000&lt;/long&gt;
+ *     &lt;long name="maxTime"&gt;60000&lt;/long&gt;
+ * &lt;/lst&gt;
+ * </pre>
+ * The matched chunks (records) and the decoded points are counted while the records are collected
+ * and the time series are built.
+ * The time is checked at the checkpoints of all stages, a request may lower it with the timeAllowed parameter.
+ * A request that exceeds a limit is cancelled and answered with an error. Values below 1 disable a limit.
+ * The writer of a streamed response can not report an error, hence a streamed request with a limit is analyzed
+ * before its response is written, see {@link #isLimited}. Only the serialization of its time series is not checked.
+ *
+ * @author f.lautenschlager
+ */
+public final class AnalysisLimits {
+
+    /**
+     * No limits
+     */
+    public static final AnalysisLimits UNLIMITED = new AnalysisLimits(0, 0, 0);
+
+    private final long maxChunks;
+    private final long maxPoints;
+    private final long maxTime;
+
+    /**
+     * @param maxChunks the maximal number of chunks a request may match
+     * @param maxPoints the maximal number of points a request may decode
+     * @param maxTime   the maximal wall time of a request in milliseconds
+     */
+    public AnalysisLimits(long maxChunks, long maxPoints, long maxTime) {
+        this.maxChunks = maxChunks;
+        this.maxPoints = maxPoints;
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * @return the maximal number of chunks a request may match
+     */
+    public long getMaxChunks() {
+        return maxChunks;
+    }
+
+    /**
+     * @return the maximal number of points a request may decode
+     */
+    public long getMaxPoints() {
+        return maxPoints;
+    }
+
+    /**
+     * @return the maximal wall time of a request in milliseconds
+     */
+    public long getMaxTime() {
+        return maxTime;
+    }
+
+    /**
+     * @param params the request parameters
+     * @return the time limit of the request, the lower one of the max time and the timeAllowed parameter
+     */
+    public long timeLimit(SolrParams params) {
+        long timeAllowed = params.getLong(CommonParams.TIME_ALLOWED, 0L);
+        if (timeAllowed <= 0) {
+            return maxTime;
+        }
+        return maxTime <= 0 ? timeAllowed : Math.min(timeAllowed, maxTime);
+    }
+
+    /**
+     * @param params the request parameters
+     * @return true if any limit applies to the request, see {@link #timeLimit}
+     */
+    public boolean isLimited(SolrParams params) {
+        return maxChunks > 0 || maxPoints > 0 || timeLimit(params) > 0;
+    }
+
+    /**
+     * @param requestExecutor the executor of the request, it is cancelled if a limit is exceeded
+     * @return the budget of a single request
+     */
+    Budget budget(AnalysisExecutor requestExecutor) {
+        return new Budget(requestExecutor);
+    }
+
+    /**
+     * Counts the chunks and the points of a request. The chunks are counted while the records are collected
+     * by a single thread, the points are also counted while the time series are built concurrently.
+     */
+    final class Budget {
+        private final AnalysisExecutor requestExecutor;
+        private final AtomicLong points = new AtomicLong();
+        private long chunks;
+
+        private Budget(AnalysisExecutor requestExecutor) {
+            this.requestExecutor = requestExecutor;
+        }
+
+        /**
+         * A checkpoint of the collect stage
+         */
+        void checkpoint() {
+            requestExecutor.checkpoint();
+        }
+
+        /**
+         * Counts a matched chunk
+         */
+        void chunk() {
+            checkpoint();
+            if (maxChunks > 0 && ++chunks > maxChunks) {
+                throw exceeded("Analysis request matches more than " + maxChunks + " chunks.");
+            }
+        }
+
+        /**
+         * @param decoded the number of decoded points, a negative number is unknown and not counted
+         */
+        void points(long decoded) {
+            if (decoded < 0) {
+                return;
+            }
+            if (maxPoints > 0 && points.addAndGet(decoded) > maxPoints) {
+                throw exceeded("Analysis request decodes more than " + maxPoints + " points.");
+            }
+        }
+
+        private SolrException exceeded(String message) {
+            SolrException limitExceeded = new SolrException(SolrException.ErrorCode.BAD_REQUEST, message + " Please narrow the query.");
+            requestExecutor.cancel(limitExceeded);
+            return limitExceeded;
+        }
+    }
+}
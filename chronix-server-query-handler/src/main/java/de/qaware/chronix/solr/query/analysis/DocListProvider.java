@@ -22,8 +22,12 @@ import org.apache.solr.search.DocList;
 import org.apache.solr.search.SolrIndexSearcher;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
 
 /**
  * Provider for better abstraction and testing.
@@ -32,16 +36,17 @@ import java.util.Set;
  */
 public interface DocListProvider {
     /**
-     * Returns a Solr DocList result
+     * Returns a Solr DocList result. The filter queries are cached by solr independent of the user query.
      *
-     * @param q     the user query
-     * @param req   the solr query request object
-     * @param start start of the query
-     * @param limit the document limit
+     * @param q             the user query, all docs match if it is empty
+     * @param filterQueries the filter queries that restrict the result
+     * @param req           the solr query request object
+     * @param start         start of the query
+     * @param limit         the document limit
      * @return DocList matching to the query
      * @throws IOException if there are problems with solr
      */
-    DocList doSimpleQuery(String q, SolrQueryRequest req, int start, int limit) throws IOException;
+    DocList doSimpleQuery(String q, List<String> filterQueries, SolrQueryRequest req, int start, int limit) throws IOException;
 
     /**
      * Convert a DocList to a SolrDocumentList
@@ -59,4 +64,49 @@ public interface DocListProvider {
      */
     SolrDocumentList docListToSolrDocumentList(DocList docs, SolrIndexSearcher searcher, Set<String> fields, Map<SolrDocument, Integer> ids) throws IOException;
 
+    /**
+     * Streams the stored fields of the docs in the DocList to the given consumer.
+     * In contrast to {@link #docListToSolrDocumentList} no documents are created or kept.
+     * The record map is only valid during the call of the consumer and is reused for the next doc.
+     * Fields with multiple values are passed as a list, like in a solr document.
+     *
+     * @param docs     The {@link org.apache.solr.search.DocList} to stream
+     * @param searcher The {@link org.apache.solr.search.SolrIndexSearcher} to use to load the docs from the Lucene index
+     * @param fields   The names of the Fields to load
+     * @param consumer The consumer of the records (field name to value)
+     * @throws java.io.IOException if there was a problem loading the docs
+     */
+    void streamDocList(DocList docs, SolrIndexSearcher searcher, Set<String> fields, Consumer<Map<String, Object>> consumer) throws IOException;
+
+    /**
+     * Streams the docs like {@link #streamDocList(DocList, SolrIndexSearcher, Set, Consumer)}.
+     * The doc values fields are read from their doc values instead of the stored fields, if the schema declares them.
+     * The lazy fields are only read if the record with the other fields needs them, e.g. the data of a record
+     * that is not answered by its summary.
+     *
+     * @param docs           The {@link org.apache.solr.search.DocList} to stream
+     * @param searcher       The {@link org.apache.solr.search.SolrIndexSearcher} to use to load the docs from the Lucene index
+     * @param fields         The names of the stored fields to load
+     * @param docValueFields The names of the fields to read from their doc values
+     * @param lazyFields     The names of the stored fields that are only loaded if the record needs them
+     * @param needsLazy      Checks if a record with the other fields needs the lazy fields
+     * @param consumer       The consumer of the records (field name to value) and their lucene doc ids
+     * @throws java.io.IOException if there was a problem loading the docs
+     */
+    void streamDocList(DocList docs, SolrIndexSearcher searcher, Set<String> fields, Set<String> docValueFields,
+                       Set<String> lazyFields, Predicate<Map<String, Object>> needsLazy, ObjIntConsumer<Map<String, Object>> consumer) throws IOException;
+
+    /**
+     * Streams the stored fields of the docs with the given lucene doc ids to the given consumer,
+     * e.g. to load records of a request again. Concurrent calls with the same searcher are safe.
+     * The record map is only valid during the call of the consumer and is reused for the next doc.
+     *
+     * @param docIds   The lucene doc ids of the docs
+     * @param searcher The {@link org.apache.solr.search.SolrIndexSearcher} to use to load the docs from the Lucene index
+     * @param fields   The names of the Fields to load
+     * @param consumer The consumer of the records (field name to value)
+     * @throws java.io.IOException if there was a problem loading the docs
+     */
+    void streamDocs(int[] docIds, SolrIndexSearcher searcher, Set<String> fields, Consumer<Map<String, Object>> consumer) throws IOException;
+
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.query.analysis;
+
+import org.apache.lucene.search.Query;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.ResultContext;
+import org.apache.solr.search.DocList;
+import org.apache.solr.search.DocSlice;
+import org.apache.solr.search.ReturnFields;
+import org.apache.solr.search.SolrIndexSearcher;
+import org.apache.solr.search.SolrReturnFields;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The result of a streamed analysis request. The response writers pull the documents one by one
+ * and write them to the client. Hence a document is only created when the writer is ready for it
+ * and it is released after it is written. The number of documents has to be known in advance.
+ * The writers can not report a failure after they have written the number of documents, hence a document that fails
+ * and all documents after it are replaced by an error document that holds the message of the failure,
+ * see {@link #ERROR}.
+ *
+ * @author f.lautenschlager
+ */
+public final class StreamingResultContext extends ResultContext {
+
+    /**
+     * The field of an error document that replaces a failed document
+     */
+    public static final String ERROR = "error";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamingResultContext.class);
+
+    private final SolrQueryRequest req;
+    private final DocList docList;
+    private final ReturnFields returnFields = new SolrReturnFields();
+    private Iterator<SolrDocument> documents;
+
+    /**
+     * @param req       the solr query request
+     * @param size      the number of documents
+     * @param documents the lazily created documents, can be iterated once
+     */
+    public StreamingResultContext(SolrQueryRequest req, int size, Iterator<SolrDocument> documents) {
+        this.req = req;
+        //the writers only need the number of documents, e.g. javabin writes it ahead of the documents.
+        //the documents are not part of the index, hence the slice holds no doc ids and must not be iterated
+        this.docList = new DocSlice(0, size, new int[0], null, size, 0f);
+        this.documents = new Documents(size, documents);
+    }
+
+    @Override
+    public DocList getDocList() {
+        return docList;
+    }
+
+    @Override
+    public ReturnFields getReturnFields() {
+        return returnFields;
+    }
+
+    @Override
+    public SolrIndexSearcher getSearcher() {
+        return req.getSearcher();
+    }
+
+    @Override
+    public Query getQuery() {
+        return null;
+    }
+
+    @Override
+    public SolrQueryRequest getRequest() {
+        return req;
+    }
+
+    @Override
+    public Iterator<SolrDocument> getProcessedDocuments() {
+        if (documents == null) {
+            throw new IllegalStateException("The streamed documents can only be written once.");
+        }
+        Iterator<SolrDocument> processed = documents;
+        documents = null;
+        return processed;
+    }
+
+    /**
+     * Hands out exactly the announced number of documents, a failed document and all documents after it are errors
+     */
+    private static final class Documents implements Iterator<SolrDocument> {
+
+        private final Iterator<SolrDocument> documents;
+        private int remaining;
+        private String error;
+
+        private Documents(int size, Iterator<SolrDocument> documents) {
+            this.remaining = size;
+            this.documents = documents;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public SolrDocument next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            remaining--;
+            if (error == null) {
+                try {
+                    return documents.next();
+                } catch (RuntimeException e) {
+                    LOGGER.error("Could not analyze a streamed time series, it and the remaining {} documents are written as errors.", remaining, e);
+                    error = "The analysis failed while the response was written: " + e.getMessage();
+                }
+            }
+            SolrDocument failed = new SolrDocument();
+            failed.setField(ERROR, error);
+            return failed;
+        }
+    }
+}
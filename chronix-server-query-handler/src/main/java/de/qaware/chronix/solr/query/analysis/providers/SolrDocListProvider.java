@@ -16,21 +16,34 @@
 package de.qaware.chronix.solr.query.analysis.providers;
 
 import de.qaware.chronix.solr.query.analysis.DocListProvider;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrException;
 import org.apache.solr.request.SolrQueryRequest;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaField;
 import org.apache.solr.search.DocIterator;
 import org.apache.solr.search.DocList;
+import org.apache.solr.search.QParser;
 import org.apache.solr.search.SolrIndexSearcher;
-import org.apache.solr.util.SolrPluginUtils;
+import org.apache.solr.search.SyntaxError;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
 
 /**
  * Solr DocList provider implementation.
@@ -41,16 +54,26 @@ public class SolrDocListProvider implements DocListProvider {
     /**
      * Calls apache solr to answer the given user request.
      *
-     * @param q     the user query
-     * @param req   the solr query request object
-     * @param start start of the query
-     * @param limit the document limit
+     * @param q             the user query, all docs match if it is empty
+     * @param filterQueries the filter queries that restrict the result
+     * @param req           the solr query request object
+     * @param start         start of the query
+     * @param limit         the document limit
      * @return the result of the query
      * @throws IOException if bad things happen
      */
     @Override
-    public DocList doSimpleQuery(String q, SolrQueryRequest req, int start, int limit) throws IOException {
-        return SolrPluginUtils.doSimpleQuery(q, req, start, limit);
+    public DocList doSimpleQuery(String q, List<String> filterQueries, SolrQueryRequest req, int start, int limit) throws IOException {
+        try {
+            Query query = StringUtils.isBlank(q) ? new MatchAllDocsQuery() : QParser.getParser(q, req).getQuery();
+            List<Query> filters = new ArrayList<>(filterQueries.size());
+            for (String filterQuery : filterQueries) {
+                filters.add(QParser.getParser(filterQuery, req).getQuery());
+            }
+            return req.getSearcher().getDocList(query, filters, null, start, limit, 0);
+        } catch (SyntaxError e) {
+            throw new SolrException(SolrException.ErrorCode.BAD_REQUEST, e);
+        }
     }
 
     /**
@@ -66,10 +89,6 @@ public class SolrDocListProvider implements DocListProvider {
     @Override
     public SolrDocumentList docListToSolrDocumentList(DocList docs, SolrIndexSearcher searcher, Set<String> fields, Map<SolrDocument, Integer> ids) throws IOException {
 
-        //TODO: We can optimize here.
-        //Also do the collection / grouping
-        //Remove unused code
-        //We can convert lucene docs directly into time series
         IndexSchema schema = searcher.getSchema();
 
         SolrDocumentList list = new SolrDocumentList();
@@ -84,8 +103,6 @@ public class SolrDocListProvider implements DocListProvider {
 
             Document luceneDoc = searcher.doc(docid, fields);
 
-            //Instead of creating a SolrDocument, we should create a ChronixTimeSeries
-            
             SolrDocument doc = new SolrDocument();
 
             for (IndexableField field : luceneDoc) {
@@ -107,4 +124,152 @@ public class SolrDocListProvider implements DocListProvider {
         return list;
     }
 
+    /**
+     * Streams the stored fields of the docs into the given consumer.
+     * A single record map is reused for all docs.
+     *
+     * @param docs     The {@link org.apache.solr.search.DocList} to stream
+     * @param searcher The {@link org.apache.solr.search.SolrIndexSearcher} to use to load the docs from the Lucene index
+     * @param fields   The names of the Fields to load
+     * @param consumer The consumer of the records
+     * @throws IOException if bad things happen.
+     */
+    @Override
+    public void streamDocList(DocList docs, SolrIndexSearcher searcher, Set<String> fields, Consumer<Map<String, Object>> consumer) throws IOException {
+        IndexSchema schema = searcher.getSchema();
+        Map<String, Object> record = new HashMap<>();
+
+        DocIterator dit = docs.iterator();
+
+        while (dit.hasNext()) {
+            int docid = dit.nextDoc();
+
+            Document luceneDoc = searcher.doc(docid, fields);
+
+            for (IndexableField field : luceneDoc) {
+                if (null == fields || fields.contains(field.name())) {
+                    SchemaField sf = schema.getField(field.name());
+                    addValue(record, field.name(), sf.getType().toObject(field));
+                }
+            }
+            if (docs.hasScores() && (null == fields || fields.contains("score"))) {
+                record.put("score", dit.score());
+            }
+
+            consumer.accept(record);
+            record.clear();
+        }
+    }
+
+    /**
+     * Streams the stored fields and the doc values of the docs into the given consumer.
+     * The lazy fields are only loaded if the record needs them. A single record map is reused for all docs.
+     *
+     * @param docs           The {@link org.apache.solr.search.DocList} to stream
+     * @param searcher       The {@link org.apache.solr.search.SolrIndexSearcher} to use to load the docs from the Lucene index
+     * @param fields         The names of the stored fields to load
+     * @param docValueFields The names of the fields to read from their doc values
+     * @param lazyFields     The names of the stored fields that are only loaded if the record needs them
+     * @param needsLazy      Checks if a record with the other fields needs the lazy fields
+     * @param consumer       The consumer of the records and their doc ids
+     * @throws IOException if bad things happen.
+     */
+    @Override
+    public void streamDocList(DocList docs, SolrIndexSearcher searcher, Set<String> fields, Set<String> docValueFields,
+                              Set<String> lazyFields, Predicate<Map<String, Object>> needsLazy, ObjIntConsumer<Map<String, Object>> consumer) throws IOException {
+        IndexSchema schema = searcher.getSchema();
+        Map<String, Object> record = new HashMap<>();
+
+        //fields without doc values are read from the stored fields
+        Set<String> storedFields = new HashSet<>(fields);
+        Set<String> valueFields = new HashSet<>();
+        for (String field : docValueFields) {
+            SchemaField sf = schema.getFieldOrNull(field);
+            if (sf != null && sf.hasDocValues()) {
+                valueFields.add(field);
+            } else {
+                storedFields.add(field);
+            }
+        }
+        SolrDocument docValues = new SolrDocument();
+
+        DocIterator dit = docs.iterator();
+
+        while (dit.hasNext()) {
+            int docid = dit.nextDoc();
+
+            addStoredFields(record, schema, searcher.doc(docid, storedFields), storedFields);
+            if (!valueFields.isEmpty()) {
+                searcher.getDocFetcher().decorateDocValueFields(docValues, docid, valueFields);
+                record.putAll(docValues);
+                docValues.clear();
+            }
+            if (docs.hasScores() && storedFields.contains("score")) {
+                record.put("score", dit.score());
+            }
+            if (!lazyFields.isEmpty() && needsLazy.test(record)) {
+                addStoredFields(record, schema, searcher.doc(docid, lazyFields), lazyFields);
+            }
+
+            consumer.accept(record, docid);
+            record.clear();
+        }
+    }
+
+    /**
+     * Streams the stored fields of the docs with the given doc ids into the given consumer.
+     * The docs are read in the order of their doc ids. A single record map is reused for all docs of a call.
+     *
+     * @param docIds   The lucene doc ids of the docs
+     * @param searcher The {@link org.apache.solr.search.SolrIndexSearcher} to use to load the docs from the Lucene index
+     * @param fields   The names of the Fields to load
+     * @param consumer The consumer of the records
+     * @throws IOException if bad things happen.
+     */
+    @Override
+    public void streamDocs(int[] docIds, SolrIndexSearcher searcher, Set<String> fields, Consumer<Map<String, Object>> consumer) throws IOException {
+        IndexSchema schema = searcher.getSchema();
+        Map<String, Object> record = new HashMap<>();
+
+        int[] sorted = docIds.clone();
+        Arrays.sort(sorted);
+        for (int docid : sorted) {
+            addStoredFields(record, schema, searcher.doc(docid, fields), fields);
+            consumer.accept(record);
+            record.clear();
+        }
+    }
+
+    private static void addStoredFields(Map<String, Object> record, IndexSchema schema, Document luceneDoc, Set<String> fields) {
+        for (IndexableField field : luceneDoc) {
+            if (fields.contains(field.name())) {
+                SchemaField sf = schema.getField(field.name());
+                addValue(record, field.name(), sf.getType().toObject(field));
+            }
+        }
+    }
+
+    /**
+     * Adds the value to the record. Multiple values of a field are collected in a list.
+     *
+     * @param record the record
+     * @param name   the field name
+     * @param value  the field value
+     */
+    @SuppressWarnings("unchecked")
+    private static void addValue(Map<String, Object> record, String name, Object value) {
+        Object existing = record.putIfAbsent(name, value);
+        if (existing == null) {
+            return;
+        }
+        if (existing instanceof List) {
+            ((List<Object>) existing).add(value);
+        } else {
+            List<Object> values = new ArrayList<>();
+            values.add(existing);
+            values.add(value);
+            record.put(name, values);
+        }
+    }
+
 }
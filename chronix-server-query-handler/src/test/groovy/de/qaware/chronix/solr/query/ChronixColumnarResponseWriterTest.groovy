@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.query
+
+import de.qaware.chronix.converter.common.Compression
+import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer
+import de.qaware.chronix.solr.query.analysis.AnalysisHandler
+import de.qaware.chronix.solr.query.analysis.DocListProvider
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import org.apache.solr.common.SolrDocument
+import org.apache.solr.common.params.ModifiableSolrParams
+import org.apache.solr.common.util.JavaBinCodec
+import org.apache.solr.request.SolrQueryRequest
+import org.apache.solr.response.SolrQueryResponse
+import org.apache.solr.schema.IndexSchema
+import org.apache.solr.schema.SchemaField
+import org.apache.solr.search.DocSlice
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+/**
+ * Unit test for the columnar response writer
+ * @author f.lautenschlager
+ */
+class ChronixColumnarResponseWriterTest extends Specification {
+
+    @Unroll
+    def "test write the analyzed time series as columns, streamed: #stream"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = new SolrQueryResponse()
+        response.add("responseHeader", [status: 0])
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add("wt", ChronixColumnarResponseWriter.NAME)
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{max}")
+                .add(ChronixQueryParams.CHRONIX_STREAM, String.valueOf(stream))
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _) >> { args -> args[3].accept(record()) }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+        def out = new ByteArrayOutputStream()
+        new ChronixColumnarResponseWriter().write(out, request, response)
+        def input = new DataInputStream(new ByteArrayInputStream(out.toByteArray()))
+
+        then:
+        input.readByte() == ChronixColumnarResponseWriter.VERSION
+        unmarshal(input).get("responseHeader") == [status: 0]
+        input.readInt() == 1
+
+        def fields = unmarshal(input) as SolrDocument
+        fields.get("name") == "cpu"
+        fields.get("0_function_max") == 3d
+        !fields.containsKey(ChronixQueryParams.DATA_AS_COLUMNS)
+
+        def columns = new DataInputStream(new ByteArrayInputStream(block(input)))
+        //number of points and the first timestamp
+        columns.readInt() == 3
+        columns.readLong() == 1000
+        input.read() == -1
+
+        where:
+        stream << [false, true]
+    }
+
+    def "test write a response without time series"() {
+        given:
+        def response = new SolrQueryResponse()
+        response.add("responseHeader", [status: 400])
+        def out = new ByteArrayOutputStream()
+
+        when:
+        new ChronixColumnarResponseWriter().write(out, Mock(SolrQueryRequest), response)
+        def input = new DataInputStream(new ByteArrayInputStream(out.toByteArray()))
+
+        then:
+        input.readByte() == ChronixColumnarResponseWriter.VERSION
+        unmarshal(input).get("responseHeader") == [status: 400]
+        input.readInt() == 0
+        input.read() == -1
+    }
+
+    def "test write to a character stream"() {
+        when:
+        new ChronixColumnarResponseWriter().write(new StringWriter(), Mock(SolrQueryRequest), new SolrQueryResponse())
+
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def "test content type"() {
+        expect:
+        new ChronixColumnarResponseWriter().getContentType(null, null) == "application/octet-stream"
+    }
+
+    def unmarshal(DataInputStream input) {
+        new JavaBinCodec().unmarshal(new ByteArrayInputStream(block(input)))
+    }
+
+    byte[] block(DataInputStream input) {
+        def block = new byte[input.readInt()]
+        input.readFully(block)
+        block
+    }
+
+    SolrDocument record() {
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+                .point(1000, 1)
+                .point(2000, 2)
+                .point(3000, 3)
+                .build()
+        def doc = new SolrDocument([start: 1000l, end: 3000l, name: "cpu", type: "metric", host: "laptop"])
+        doc.put("data", ByteBuffer.wrap(Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(ts.points().iterator()))))
+        doc
+    }
+}
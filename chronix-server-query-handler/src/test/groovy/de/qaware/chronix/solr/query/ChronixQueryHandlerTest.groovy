@@ -120,10 +120,79 @@ class ChronixQueryHandlerTest extends Specification {
                                  new ModifiableSolrParams().add("q", "host:laptop AND start:NOW").add("fl", ""),
                                  new ModifiableSolrParams().add("q", "host:laptop AND start:NOW").add("cf", null),
                                  new ModifiableSolrParams().add("q", "host:laptop AND start:NOW").add("cf", ""),
-                                 new ModifiableSolrParams().add("q", "host:laptop AND start:NOW").add("cj", "host,metric")]
+                                 new ModifiableSolrParams().add("q", "host:laptop AND start:NOW").add("cj", "host,metric"),
+                                 new ModifiableSolrParams().add("q", "host:laptop AND start:NOW").add("wt", "columnar"),
+                                 new ModifiableSolrParams().add("q", "host:laptop AND start:NOW").add("cpt", "true")]
 
-        defaultHandlerCount << [1,1,1,1,1,0]
-        analysisHandlerCount << [0,0,0,0,0,1]
+        defaultHandlerCount << [1,1,1,1,1,0,0,0]
+        analysisHandlerCount << [0,0,0,0,0,1,1,1]
+    }
+
+    @Unroll
+    def "test default request returns the records stored in blocks with a single chunk for fl #fl"() {
+        given:
+        def defaultHandler = Mock(SearchHandler)
+        def chronixQueryHandler = new ChronixQueryHandler()
+        ReflectionHelper.setValueToFieldOfObject(defaultHandler, "searchHandler", chronixQueryHandler)
+
+        def request = Mock(SolrQueryRequest)
+        def response = Mock(SolrQueryResponse)
+        def indexSchema = Mock(IndexSchema)
+        def params = new ModifiableSolrParams().add("q", "host:laptop").add("fl", fl)
+
+        indexSchema.getFields() >> ["data": new SchemaField("data", new TextField())]
+        indexSchema.getFieldOrNull(ChronixQueryParams.CHUNK_BLOCKS) >> new SchemaField(ChronixQueryParams.CHUNK_BLOCKS, new TextField())
+        request.getSchema() >> indexSchema
+        request.getParams() >> params
+        response.getResponseHeader() >> new NamedList<Object>()
+
+        def requested = null
+        request.setParams(_) >> { args -> requested = args[0] }
+
+        when:
+        chronixQueryHandler.handleRequestBody(request, response)
+
+        then:
+        1 * defaultHandler.handleRequestBody(request, response)
+        requested.get("fl").startsWith(prefix + ",")
+        requested.get("fl").endsWith(",[blocks]")
+
+        where:
+        fl << [null, "host"]
+        prefix << ["*", "host"]
+    }
+
+    @Unroll
+    def "test default request does not convert the records for fl #fl and the block index #schema"() {
+        given:
+        def defaultHandler = Mock(SearchHandler)
+        def chronixQueryHandler = new ChronixQueryHandler()
+        ReflectionHelper.setValueToFieldOfObject(defaultHandler, "searchHandler", chronixQueryHandler)
+
+        def request = Mock(SolrQueryRequest)
+        def response = Mock(SolrQueryResponse)
+        def indexSchema = Mock(IndexSchema)
+        def params = new ModifiableSolrParams().add("q", "host:laptop").add("fl", fl)
+
+        indexSchema.getFields() >> ["data": new SchemaField("data", new TextField()), "host": new SchemaField("host", new TextField())]
+        indexSchema.getFieldOrNull(ChronixQueryParams.CHUNK_BLOCKS) >> (schema ? new SchemaField(ChronixQueryParams.CHUNK_BLOCKS, new TextField()) : null)
+        request.getSchema() >> indexSchema
+        request.getParams() >> params
+        response.getResponseHeader() >> new NamedList<Object>()
+
+        def requested = null
+        request.setParams(_) >> { args -> requested = args[0] }
+
+        when:
+        chronixQueryHandler.handleRequestBody(request, response)
+
+        then:
+        1 * defaultHandler.handleRequestBody(request, response)
+        !requested.get("fl", "").contains("[blocks]")
+
+        where:
+        fl << ["-data", null, "host"]
+        schema << [true, false, false]
     }
 
     def "test handle aggregation request"() {
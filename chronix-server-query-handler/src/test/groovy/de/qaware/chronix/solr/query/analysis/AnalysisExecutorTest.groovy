@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.query.analysis
+
+import org.apache.solr.common.SolrException
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.IntBinaryOperator
+
+/**
+ * Unit test for the analysis executor
+ * @author f.lautenschlager
+ */
+class AnalysisExecutorTest extends Specification {
+
+    def "test map keeps the order of the inputs"() {
+        given:
+        def executor = new AnalysisExecutor(4, 4)
+        def inputs = (0..<10000).collect { it }
+
+        when:
+        def results = executor.map(inputs, 4, { it * 2 })
+
+        then:
+        results == inputs.collect { it * 2 }
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    @Unroll
+    def "test stream maps lazily and at most #parallelism inputs ahead"() {
+        given:
+        def executor = new AnalysisExecutor(4, 4)
+        def inputs = (0..<100).collect { it }
+        def mapped = new AtomicInteger()
+
+        when:
+        def results = executor.stream(inputs, parallelism, { mapped.incrementAndGet(); it * 2 })
+        def first = results.next()
+
+        then:
+        first == 0
+        mapped.get() <= parallelism
+        //the mapped inputs are released
+        inputs[0] == null
+
+        when:
+        def all = [first] + results.collect()
+
+        then:
+        all == (0..<100).collect { it * 2 }
+        inputs.every { it == null }
+        !results.hasNext()
+
+        cleanup:
+        executor.shutdown()
+
+        where:
+        parallelism << [1, 3]
+    }
+
+    def "test stream propagates failures"() {
+        given:
+        def executor = new AnalysisExecutor(2, 2)
+
+        when:
+        executor.stream([1, 2, 3], 2, { if (it == 2) { throw new IllegalStateException("failed") }; it }).collect()
+
+        then:
+        def e = thrown IllegalStateException
+        e.message.contains("failed")
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    @Unroll
+    def "test a request uses at most #expected threads (requested: #requested)"() {
+        given:
+        def executor = new AnalysisExecutor(8, 4)
+        def running = new AtomicInteger()
+        def maxRunning = new AtomicInteger()
+        def threads = ConcurrentHashMap.newKeySet()
+
+        when:
+        executor.forEach(200, requested, {
+            def now = running.incrementAndGet()
+            maxRunning.accumulateAndGet(now, { a, b -> Math.max(a, b) })
+            threads.add(Thread.currentThread())
+            Thread.sleep(1)
+            running.decrementAndGet()
+        })
+
+        then:
+        maxRunning.get() <= expected
+        threads.size() <= expected
+
+        cleanup:
+        executor.shutdown()
+
+        where:
+        requested << [0, 2, 1, 16]
+        expected << [4, 2, 1, 4]
+    }
+
+    def "test parallelism is bounded"() {
+        given:
+        def executor = new AnalysisExecutor(2, 8)
+
+        expect:
+        executor.parallelism(0) == 2
+        executor.parallelism(1) == 1
+        executor.parallelism(10) == 2
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "test nested stages share the parallelism of the request"() {
+        given:
+        def executor = new AnalysisExecutor(16, 16)
+        def request = executor.forRequest(0, 4)
+        def running = new AtomicInteger()
+        def peak = new AtomicInteger()
+
+        when:
+        def results = request.map((0..<4).collect { it }, 4, { type ->
+            request.map((0..<32).collect { it }, 4, {
+                def now = running.incrementAndGet()
+                peak.accumulateAndGet(now, { a, b -> Math.max(a, b) } as IntBinaryOperator)
+                Thread.sleep(2)
+                running.decrementAndGet()
+                it
+            }).size()
+        })
+        def streamed = request.stream((0..<32).collect { it }, 4, { it * 2 }).collect()
+
+        then:
+        results == [32, 32, 32, 32]
+        peak.get() <= 4
+        streamed == (0..<32).collect { it * 2 }
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "test failures are propagated after all workers finished"() {
+        given:
+        def executor = new AnalysisExecutor(4, 4)
+        def processed = new AtomicInteger()
+
+        when:
+        executor.forEach(100, 4, {
+            if (it == 10) {
+                throw new IllegalStateException("failed")
+            }
+            processed.incrementAndGet()
+        })
+
+        then:
+        def e = thrown IllegalStateException
+        e.message.contains("failed")
+        processed.get() < 100
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "test a failing stage cancels the other stages of the request"() {
+        given:
+        def executor = new AnalysisExecutor(4, 4)
+        def request = executor.forRequest()
+        def processed = new AtomicInteger()
+
+        when:
+        //two types are analyzed concurrently, the first one fails
+        request.map([0, 1], 2, { type ->
+            if (type == 0) {
+                Thread.sleep(20)
+                throw new IllegalStateException("type failed")
+            }
+            request.forEach(10000, 2, {
+                Thread.sleep(1)
+                processed.incrementAndGet()
+            })
+        })
+
+        then:
+        def e = thrown IllegalStateException
+        e.message == "type failed"
+        processed.get() < 10000
+
+        when:
+        request.checkpoint()
+
+        then:
+        thrown CancellationException
+
+        when:
+        //the shared executor is not cancelled
+        executor.checkpoint()
+        def results = executor.forRequest().map([1, 2], 2, { it * 2 })
+
+        then:
+        results == [2, 4]
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "test a request cancelled while the response is written is not truncated"() {
+        given:
+        def executor = new AnalysisExecutor(2, 2)
+        def request = executor.forRequest(10)
+        def results = request.stream((0..<10).collect { it }, 1, { it })
+
+        when:
+        results.next()
+        request.cancel(new IllegalStateException("limit exceeded"))
+        Thread.sleep(20)
+        def rest = results.collect()
+
+        then:
+        rest == (1..<10).collect { it }
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "test the time limit cancels the request"() {
+        given:
+        def executor = new AnalysisExecutor(2, 2)
+        def request = executor.forRequest(10)
+        def processed = new AtomicInteger()
+
+        when:
+        request.forEach(1000, 2, {
+            Thread.sleep(1)
+            processed.incrementAndGet()
+        })
+
+        then:
+        def e = thrown SolrException
+        e.message.contains("time limit of 10 ms")
+        processed.get() < 1000
+
+        cleanup:
+        executor.shutdown()
+    }
+
+    def "test invalid configuration"() {
+        when:
+        new AnalysisExecutor(threads, requestParallelism)
+
+        then:
+        thrown IllegalArgumentException
+
+        where:
+        threads << [0, 1]
+        requestParallelism << [1, 0]
+    }
+
+    def "test shutdown"() {
+        given:
+        def executor = new AnalysisExecutor(2, 2)
+
+        when:
+        executor.forEach(10, 2, {})
+        executor.shutdown()
+
+        then:
+        executor.awaitTermination(10, TimeUnit.SECONDS)
+    }
+}
@@ -19,22 +19,48 @@ import de.qaware.chronix.converter.common.Compression
 import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer
 import de.qaware.chronix.cql.CQLCFResult
 import de.qaware.chronix.cql.ChronixFunctions
+import de.qaware.chronix.server.functions.ChronixAggregation
+import de.qaware.chronix.server.functions.ChronixAnalysis
+import de.qaware.chronix.server.functions.ChronixPairAnalysis
 import de.qaware.chronix.server.functions.ChronixTransformation
+import de.qaware.chronix.server.functions.FunctionCtx
+import de.qaware.chronix.server.types.ChronixTimeSeries
+import de.qaware.chronix.server.types.ChronixTimeSeriesAccumulator
 import de.qaware.chronix.server.types.ChronixType
+import de.qaware.chronix.solr.query.ChronixColumnarResponseWriter
 import de.qaware.chronix.solr.query.ChronixQueryParams
 import de.qaware.chronix.solr.query.analysis.providers.SolrDocListProvider
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
+import de.qaware.chronix.solr.type.metric.ChunkBlocks
 import de.qaware.chronix.solr.type.metric.MetricType
+import de.qaware.chronix.solr.type.metric.Rollup
+import de.qaware.chronix.solr.type.metric.SolrDocumentBuilder
+import de.qaware.chronix.solr.type.metric.functions.aggregations.Count
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Max
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Min
+import de.qaware.chronix.solr.type.metric.functions.analyses.FastDtw
 import de.qaware.chronix.solr.type.metric.functions.analyses.Trend
 import de.qaware.chronix.solr.type.metric.functions.transformation.Add
+import de.qaware.chronix.solr.type.metric.functions.transformation.Scale
 import de.qaware.chronix.timeseries.MetricTimeSeries
+import groovy.json.JsonSlurper
+import org.apache.solr.client.solrj.StreamingResponseCallback
+import org.apache.solr.client.solrj.impl.StreamingBinaryResponseParser
 import org.apache.solr.common.SolrDocument
+import org.apache.solr.common.SolrDocumentList
+import org.apache.solr.common.SolrException
+import org.apache.solr.common.params.CommonParams
 import org.apache.solr.common.params.ModifiableSolrParams
+import org.apache.solr.common.util.NamedList
 import org.apache.solr.core.PluginInfo
+import org.apache.solr.metrics.SolrMetricManager
 import org.apache.solr.request.SolrQueryRequest
+import org.apache.solr.response.BinaryResponseWriter
+import org.apache.solr.response.JSONResponseWriter
+import org.apache.solr.response.QueryResponseWriterUtil
 import org.apache.solr.response.SolrQueryResponse
 import org.apache.solr.schema.IndexSchema
+import org.apache.solr.schema.LongPointField
 import org.apache.solr.schema.SchemaField
 import org.apache.solr.search.DocSlice
 import spock.lang.Shared
@@ -43,6 +69,9 @@ import spock.lang.Unroll
 
 import java.nio.ByteBuffer
 import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.IntBinaryOperator
 
 /**
  * Unit test for the analysis handler.
@@ -61,7 +90,7 @@ class AnalysisHandlerTest extends Specification {
         request.getParams() >> params
 
         def docListMock = Stub(DocListProvider)
-        docListMock.doSimpleQuery(_, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
 
         def analysisHandler = new AnalysisHandler(docListMock)
 
@@ -89,6 +118,37 @@ class AnalysisHandlerTest extends Specification {
 
     }
 
+    def "test handle function request streams the records into time series"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = Mock(SolrQueryResponse)
+        def start = Instant.now()
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop AND start:NOW")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{max}")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _, _, _, _) >> { args ->
+            def unknownType = new SolrDocument()
+            unknownType.put("type", "unknown")
+            (solrDocument(start) << unknownType).eachWithIndex { record, i -> args[6].accept(record, i) }
+        }
+
+        def analysisHandler = new AnalysisHandler(docListMock)
+
+        when:
+        analysisHandler.handleRequestBody(request, response)
+
+        then:
+        1 * response.add("response", { it.size() == 1 && it.get(0).get("0_function_max") == 4713 && it.get(0).get(ChronixQueryParams.JOIN_KEY) == "test-metric" })
+    }
+
     def "test get fields"() {
         given:
         def docListMock = Stub(DocListProvider)
@@ -162,6 +222,415 @@ class AnalysisHandlerTest extends Specification {
         expectedResult << [4711, 4713, true, ["value=5.0"]]
     }
 
+    def "test convert many time series in parallel"() {
+        given:
+        def analysisHandler = new AnalysisHandler(Stub(DocListProvider))
+        def start = Instant.now()
+        Map<String, List<SolrDocument>> metricTimeSeriesRecords = new HashMap<>()
+        500.times { metricTimeSeriesRecords.put("ts-" + it, solrDocument(start)) }
+        HashMap<ChronixType, Map<String, List<SolrDocument>>> timeSeriesRecords = new HashMap<>()
+        timeSeriesRecords.put(new MetricType(), metricTimeSeriesRecords)
+
+        def request = Mock(SolrQueryRequest)
+        request.params >> new ModifiableSolrParams().add("q", "host:laptop AND start:NOW")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+                .add(ChronixQueryParams.CHRONIX_PARALLELISM, "3")
+
+        def typeFunctions = new CQLCFResult()
+        def maxFunctions = new ChronixFunctions()
+        maxFunctions.addAggregation(new Max())
+        typeFunctions.addChronixFunctionsForType(new MetricType(), maxFunctions)
+
+        when:
+        def result = analysisHandler.analyze(request, typeFunctions, timeSeriesRecords)
+
+        then:
+        result.size() == 500
+        result.collect { it.get(ChronixQueryParams.JOIN_KEY) } as Set == (0..<500).collect { "ts-" + it } as Set
+        result.every { it.get("0_function_max") == 4713 }
+    }
+
+    def "test the types of a request share its parallelism"() {
+        given:
+        def analysisHandler = new AnalysisHandler(Stub(DocListProvider))
+        def start = Instant.now()
+        def running = new AtomicInteger()
+        def peak = new AtomicInteger()
+        HashMap<ChronixType, Map<String, List<SolrDocument>>> timeSeriesRecords = new HashMap<>()
+        4.times { type ->
+            Map<String, List<SolrDocument>> records = new HashMap<>()
+            16.times { records.put("ts-" + it, solrDocument(start)) }
+            timeSeriesRecords.put(new ConcurrencyTrackingType("type-" + type, running, peak), records)
+        }
+
+        def request = Mock(SolrQueryRequest)
+        request.params >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+                .add(ChronixQueryParams.CHRONIX_PARALLELISM, "3")
+
+        when:
+        def result = analysisHandler.analyze(request, new CQLCFResult(), timeSeriesRecords)
+
+        then:
+        result.size() == 64
+        peak.get() <= 3
+    }
+
+    /**
+     * A metric type with another name whose time series count the concurrently built time series
+     */
+    static class ConcurrencyTrackingType extends MetricType {
+        def name
+        def running
+        def peak
+
+        ConcurrencyTrackingType(String name, AtomicInteger running, AtomicInteger peak) {
+            this.name = name
+            this.running = running
+            this.peak = peak
+        }
+
+        @Override
+        String getType() { name }
+
+        @Override
+        ChronixTimeSeriesAccumulator<MetricTimeSeries> accumulator(String joinKey, long queryStart, long queryEnd, boolean rawDataIsRequested) {
+            def accumulator = super.accumulator(joinKey, queryStart, queryEnd, rawDataIsRequested)
+            new ChronixTimeSeriesAccumulator<MetricTimeSeries>() {
+                void add(Map<String, Object> record) { accumulator.add(record) }
+
+                ChronixTimeSeries<MetricTimeSeries> build() {
+                    def now = running.incrementAndGet()
+                    peak.accumulateAndGet(now, { a, b -> Math.max(a, b) } as IntBinaryOperator)
+                    Thread.sleep(5)
+                    running.decrementAndGet()
+                    accumulator.build()
+                }
+            }
+        }
+    }
+
+    def "test pipeline transformations per time series"() {
+        given:
+        def analysisHandler = new AnalysisHandler(Stub(DocListProvider))
+        def start = Instant.now()
+        Map<String, List<SolrDocument>> metricTimeSeriesRecords = new HashMap<>()
+        200.times { metricTimeSeriesRecords.put("ts-" + it, solrDocument(start)) }
+        HashMap<ChronixType, Map<String, List<SolrDocument>>> timeSeriesRecords = new HashMap<>()
+        timeSeriesRecords.put(new MetricType(), metricTimeSeriesRecords)
+
+        def request = Mock(SolrQueryRequest)
+        request.params >> new ModifiableSolrParams().add("q", "host:laptop AND start:NOW")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+                .add(ChronixQueryParams.CHRONIX_PARALLELISM, "4")
+
+        def chainFunctions = new ChronixFunctions()
+        def add = new Add()
+        add.setArguments(["5"] as String[])
+        def scale = new Scale()
+        scale.setArguments(["2"] as String[])
+        chainFunctions.addTransformation(add)
+        chainFunctions.addTransformation(scale)
+        chainFunctions.addAggregation(new Max())
+        def typeFunctions = new CQLCFResult()
+        typeFunctions.addChronixFunctionsForType(new MetricType(), chainFunctions)
+
+        when:
+        def result = analysisHandler.analyze(request, typeFunctions, timeSeriesRecords)
+
+        then:
+        result.size() == 200
+        result.every { it.get("2_function_max") == (4713 + 5) * 2 }
+        result.every { it.get("0_function_add") == ["value=5.0"] }
+        result.every { it.get("1_function_scale") == ["value=2.0"] }
+    }
+
+    def "test fused aggregations per time series"() {
+        given:
+        def analysisHandler = new AnalysisHandler(Stub(DocListProvider))
+        def start = Instant.now()
+        Map<String, List<SolrDocument>> metricTimeSeriesRecords = new HashMap<>()
+        100.times { metricTimeSeriesRecords.put("ts-" + it, solrDocument(start)) }
+        HashMap<ChronixType, Map<String, List<SolrDocument>>> timeSeriesRecords = new HashMap<>()
+        timeSeriesRecords.put(new MetricType(), metricTimeSeriesRecords)
+
+        def request = Mock(SolrQueryRequest)
+        request.params >> new ModifiableSolrParams().add("q", "host:laptop AND start:NOW")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+                .add(ChronixQueryParams.CHRONIX_PARALLELISM, "4")
+
+        def aggregationFunctions = new ChronixFunctions()
+        aggregationFunctions.addAggregation(new Min())
+        aggregationFunctions.addAggregation(new Max())
+        aggregationFunctions.addAggregation(new Count())
+        aggregationFunctions.addAnalysis(new Trend())
+        def typeFunctions = new CQLCFResult()
+        typeFunctions.addChronixFunctionsForType(new MetricType(), aggregationFunctions)
+
+        when:
+        def result = analysisHandler.analyze(request, typeFunctions, timeSeriesRecords)
+
+        then:
+        result.size() == 100
+        result.every { doc ->
+            def values = doc.findAll { it.key.contains("_function_") }
+                    .collectEntries { [(it.key.substring(it.key.lastIndexOf("_") + 1)): it.value] }
+            values == [min: 4711d, max: 4713d, count: 3d, trend: true]
+        }
+    }
+
+    def "test functions on the whole list run after the functions per time series"() {
+        given:
+        def analysisHandler = new AnalysisHandler(Stub(DocListProvider))
+        def start = Instant.now()
+        Map<String, List<SolrDocument>> metricTimeSeriesRecords = new HashMap<>()
+        100.times { metricTimeSeriesRecords.put("ts-" + it, solrDocument(start)) }
+        HashMap<ChronixType, Map<String, List<SolrDocument>>> timeSeriesRecords = new HashMap<>()
+        timeSeriesRecords.put(new MetricType(), metricTimeSeriesRecords)
+
+        def request = Mock(SolrQueryRequest)
+        request.params >> new ModifiableSolrParams().add("q", "host:laptop AND start:NOW")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+                .add(ChronixQueryParams.CHRONIX_PARALLELISM, "4")
+
+        def perTimeSeries = new CountingAggregation()
+        def wholeList = new WholeListAnalysis(perTimeSeries)
+        def mixedFunctions = new ChronixFunctions()
+        mixedFunctions.addAggregation(perTimeSeries)
+        mixedFunctions.addAnalysis(wholeList)
+        def typeFunctions = new CQLCFResult()
+        typeFunctions.addChronixFunctionsForType(new MetricType(), mixedFunctions)
+
+        when:
+        def result = analysisHandler.analyze(request, typeFunctions, timeSeriesRecords)
+
+        then:
+        result.size() == 100
+        wholeList.executedAfter == 100
+    }
+
+    /**
+     * Counts the time series it is executed on
+     */
+    static class CountingAggregation implements ChronixAggregation<MetricTimeSeries> {
+        def executed = new AtomicInteger()
+
+        @Override
+        void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
+            executed.addAndGet(timeSeriesList.size())
+        }
+
+        @Override
+        String getQueryName() { "counting" }
+
+        @Override
+        String getType() { "metric" }
+
+        @Override
+        boolean isIndependentPerTimeSeries() { true }
+    }
+
+    /**
+     * Sorts all time series and records the number of time series the counting aggregation was executed on before
+     */
+    static class WholeListAnalysis implements ChronixAnalysis<MetricTimeSeries> {
+        def counting
+        def executedAfter = -1
+
+        WholeListAnalysis(CountingAggregation counting) {
+            this.counting = counting
+        }
+
+        @Override
+        void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
+            executedAfter = counting.executed.get()
+            timeSeriesList.each { it.sort() }
+        }
+
+        @Override
+        String getQueryName() { "wholeList" }
+
+        @Override
+        String getType() { "metric" }
+    }
+
+    def "test the pairs of a pair analysis are evaluated in parallel"() {
+        given:
+        def random = new Random(42)
+        def timeSeriesList = new ArrayList<ChronixTimeSeries<MetricTimeSeries>>()
+        //three left side and nine right side time series with different offsets
+        12.times { ts ->
+            def builder = new MetricTimeSeries.Builder("FastDTW-" + ts, "metric")
+                    .attribute("host", ts < 3 ? "left" : "right-" + ts)
+            def offset = random.nextInt(3) * 5
+            30.times { builder.point(it * 1000, offset + Math.sin(it / 3d) + random.nextGaussian() * 0.1) }
+            timeSeriesList.add(new ChronixMetricTimeSeries("join-" + ts, builder.build()))
+        }
+        def fastDtw = new FastDtw()
+        fastDtw.setArguments(["compare(host=left)", "2", "0.5"] as String[])
+        def parallel = new RecordingPairAnalysis(fastDtw)
+        def sequentialResult = new FunctionCtx(0, 9, 0)
+        def parallelResult = new FunctionCtx(0, 9, 0)
+
+        when:
+        fastDtw.execute(timeSeriesList, sequentialResult)
+        AnalysisHandler.executePairs(parallel, timeSeriesList, parallelResult, new AnalysisExecutor(4, 4).forRequest(), 4)
+
+        then:
+        parallel.threads.size() > 1
+        3.times { left ->
+            def sequential = sequentialResult.getContextFor("join-" + left)
+            def context = parallelResult.getContextFor("join-" + left)
+            assert context.sizeOfAnalyses() == 9
+            9.times { assert context.getAnalysisValue(it) == sequential.getAnalysisValue(it) }
+        }
+    }
+
+    /**
+     * Records the threads that evaluate the pairs of the delegate
+     */
+    static class RecordingPairAnalysis implements ChronixPairAnalysis<MetricTimeSeries> {
+        def delegate
+        def threads = ConcurrentHashMap.newKeySet()
+
+        RecordingPairAnalysis(ChronixPairAnalysis<MetricTimeSeries> delegate) {
+            this.delegate = delegate
+        }
+
+        @Override
+        List<ChronixPairAnalysis.Pair> pairs(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList) {
+            delegate.pairs(timeSeriesList)
+        }
+
+        @Override
+        boolean evaluate(ChronixPairAnalysis.Pair pair) {
+            threads.add(Thread.currentThread())
+            //a slow pair, hence the other workers take the next pairs
+            Thread.sleep(5)
+            delegate.evaluate(pair)
+        }
+
+        @Override
+        String getQueryName() { "fastdtw" }
+
+        @Override
+        String getType() { "metric" }
+    }
+
+    @Unroll
+    def "test group time series with #group"() {
+        given:
+        def analysisHandler = new AnalysisHandler(Stub(DocListProvider))
+        def start = Instant.parse("2018-01-01T00:00:00Z")
+        Map<String, List<SolrDocument>> metricTimeSeriesRecords = new HashMap<>()
+        10.times {
+            def records = solrDocument(start)
+            records[0].put("host", "host-" + (it % 2))
+            metricTimeSeriesRecords.put("ts-" + it, records)
+        }
+        HashMap<ChronixType, Map<String, List<SolrDocument>>> timeSeriesRecords = new HashMap<>()
+        timeSeriesRecords.put(new MetricType(), metricTimeSeriesRecords)
+
+        def request = Mock(SolrQueryRequest)
+        request.params >> new ModifiableSolrParams().add("q", "host:laptop AND start:NOW")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+                .add(ChronixQueryParams.CHRONIX_GROUP, group)
+
+        def groupFunctions = new ChronixFunctions()
+        groupFunctions.addAggregation(new Max())
+        groupFunctions.addAggregation(new Count())
+        def typeFunctions = new CQLCFResult()
+        typeFunctions.addChronixFunctionsForType(new MetricType(), groupFunctions)
+
+        when:
+        def result = analysisHandler.analyze(request, typeFunctions, timeSeriesRecords)
+
+        then:
+        result.collect { it.get(ChronixQueryParams.JOIN_KEY) } as Set == joinKeys as Set
+        result.every { it.get("0_function_max") == max }
+        result.every { it.get("1_function_count") == count }
+
+        where:
+        group << ["host;SUM", "name;MAX;1,MINUTES", "name,type;P:0.5"]
+        joinKeys << [["host-0", "host-1"], ["test"], ["test-metric"]]
+        max << [4713d * 5, 4713d, 4713d]
+        count << [3d, 1d, 3d]
+    }
+
+    def "test group time series of a type that does not support grouping"() {
+        given:
+        def analysisHandler = new AnalysisHandler(Stub(DocListProvider))
+        def type = Stub(ChronixType) {
+            getType() >> "plugin"
+        }
+        Map<String, List<SolrDocument>> records = new HashMap<>()
+        records.put("ts", [new SolrDocument()])
+        HashMap<ChronixType, Map<String, List<SolrDocument>>> timeSeriesRecords = new HashMap<>()
+        timeSeriesRecords.put(type, records)
+
+        def request = Mock(SolrQueryRequest)
+        request.params >> new ModifiableSolrParams().add("q", "host:laptop AND start:NOW")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+                .add(ChronixQueryParams.CHRONIX_GROUP, "host;SUM")
+
+        when:
+        analysisHandler.analyze(request, new CQLCFResult(), timeSeriesRecords)
+
+        then:
+        def e = thrown(SolrException)
+        e.code() == SolrException.ErrorCode.BAD_REQUEST.code
+        e.message.contains("'plugin' does not support grouping")
+    }
+
+    def "test the columnar format of a type that does not support it"() {
+        given:
+        def analysisHandler = new AnalysisHandler(Stub(DocListProvider))
+        def type = Stub(ChronixType) {
+            getType() >> "plugin"
+        }
+        Map<String, List<SolrDocument>> records = new HashMap<>()
+        records.put("ts", [new SolrDocument()])
+        HashMap<ChronixType, Map<String, List<SolrDocument>>> timeSeriesRecords = new HashMap<>()
+        timeSeriesRecords.put(type, records)
+
+        def request = Mock(SolrQueryRequest)
+        request.params >> new ModifiableSolrParams().add("q", "host:laptop AND start:NOW")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+                .add(CommonParams.WT, ChronixColumnarResponseWriter.NAME)
+
+        when:
+        analysisHandler.analyze(request, new CQLCFResult(), timeSeriesRecords)
+
+        then:
+        def e = thrown(SolrException)
+        e.code() == SolrException.ErrorCode.BAD_REQUEST.code
+        e.message.contains("'plugin' does not support the columnar format")
+    }
+
+    def "test init with analysis configuration"() {
+        given:
+        def analysisConfig = new NamedList()
+        analysisConfig.add(AnalysisHandler.ANALYSIS_THREADS, 2)
+        analysisConfig.add(AnalysisHandler.ANALYSIS_REQUEST_PARALLELISM, 1)
+        def initArgs = new NamedList()
+        initArgs.add(AnalysisHandler.ANALYSIS_CONFIG, analysisConfig)
+        def analysisHandler = new AnalysisHandler(new SolrDocListProvider())
+
+        when:
+        analysisHandler.init(new PluginInfo("requestHandler", [:], initArgs, null))
+
+        then:
+        noExceptionThrown()
+    }
+
     def "test get description"() {
         given:
         def analysisHandler = new AnalysisHandler(new SolrDocListProvider())
@@ -186,6 +655,625 @@ class AnalysisHandlerTest extends Specification {
         thrown NullPointerException
     }
 
+    def "test the parse cache metrics"() {
+        given:
+        def manager = new SolrMetricManager()
+        def analysisHandler = new AnalysisHandler(new SolrDocListProvider())
+
+        when:
+        analysisHandler.initializeMetrics(manager, "solr.core.chronix", "test", "/select")
+        def gauges = manager.registry("solr.core.chronix").getGauges()
+
+        then:
+        ["cfCacheHits", "cfCacheMisses", "cjCacheHits", "cjCacheMisses"].every { name ->
+            gauges["QUERY./select." + name]?.getValue() == 0L
+        }
+    }
+
+    @Unroll
+    def "test aggregations are computed from the record summaries with #functions"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = Mock(SolrQueryResponse)
+        Set<String> loadedFields = null
+        Set<String> docValueFields = null
+        def dataLoaded = false
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add("fl", "name,type")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, functions)
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        //the data of a summarized record is never read
+        def doc = new SolrDocument()
+        doc.put("id", "1")
+        doc.put("start", 10l)
+        doc.put("end", 30l)
+        doc.put("name", "test")
+        doc.put("type", "metric")
+        [chunk_count: 3l, chunk_min: 1d, chunk_max: 5d, chunk_sum: 9d, chunk_first: 3d, chunk_last: 1d].each { doc.put(it.key, it.value) }
+
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _, _, _, _) >> { args ->
+            loadedFields = args[2]
+            docValueFields = args[3]
+            if (args[5].test(doc)) {
+                dataLoaded = true
+                doc.put("data", ByteBuffer.wrap("not compressed".bytes))
+            }
+            args[6].accept(doc, 0)
+        }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+
+        then:
+        1 * response.add("response", { it.size() == 1 && it.get(0).get("0_function_" + name) == expected && !it.get(0).containsKey("chunk_count") })
+        docValueFields.containsAll(["chunk_count", "chunk_sum"])
+        !loadedFields.contains("chunk_count") && !loadedFields.contains("data")
+        !dataLoaded
+
+        where:
+        functions << ["metric{count}", "metric{max;first}", "metric{avg}"]
+        name << ["count", "max", "avg"]
+        expected << [3d, 5d, 3d]
+    }
+
+    def "test the data of overlapping summarized records is loaded again by their doc ids"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = Mock(SolrQueryResponse)
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add("fl", "name,type")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{max}")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        //the summaries are wrong, hence the maximum is only right if the overlapping records are decoded
+        def summary = [chunk_count: 3l, chunk_min: 100d, chunk_max: 100d, chunk_sum: 300d, chunk_first: 100d, chunk_last: 100d]
+        def first = new SolrDocument([start: 10l, end: 30l, name: "test", type: "metric"] + summary)
+        def second = new SolrDocument([start: 20l, end: 40l, name: "test", type: "metric"] + summary)
+        def data = [(7): record(10, 1), (3): record(20, 2)]
+
+        def queries = []
+        def loaded = []
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { args ->
+            queries << args[0]
+            new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0)
+        }
+        docListMock.streamDocList(_, _, _, _, _, _, _) >> { args ->
+            assert !args[5].test(first) && !args[5].test(second)
+            args[6].accept(first, 7)
+            args[6].accept(second, 3)
+        }
+        docListMock.streamDocs(_, _, _, _) >> { args ->
+            assert args[2].containsAll(["start", "end", "data"])
+            (args[0] as int[]).each {
+                loaded << it
+                args[3].accept(data[it])
+            }
+        }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+
+        then:
+        1 * response.add("response", { it.size() == 1 && it.get(0).get("0_function_max") == 4d })
+        queries.size() == 1
+        loaded.sort() == [3, 7]
+    }
+
+    def record(long start, double value) {
+        def ts = new MetricTimeSeries.Builder("test", "metric")
+        3.times { ts.point(start + it * 10, value + it) }
+        new SolrDocument([start: start, end: start + 20, data: ByteBuffer.wrap(Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(ts.build().points().iterator())))])
+    }
+
+    def "test bucket transformations use the rollups"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = Mock(SolrQueryResponse)
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        indexSchema.getFieldOrNull("rollup") >> new SchemaField("rollup", new LongPointField())
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "name:cpu")
+                .add("fl", "name,type")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{bucket:1,SECONDS,SUM;sum;count}")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        //the first three seconds are rolled up from the records with the versions 10 to 20, they are never decompressed
+        def rollup = new Rollup.Builder(1000).add(new MetricTimeSeries.Builder("cpu", "metric").build()).versions(10, 20)
+        (99..2999).step(100) { rollup.add(it, 1) }
+        def rollupDoc = rollup.toInputDocument()
+        def rollupRecord = new SolrDocument()
+        rollupDoc.getFieldNames().each {
+            def value = rollupDoc.getFieldValue(it)
+            rollupRecord.put(it, value instanceof byte[] ? ByteBuffer.wrap(value) : value)
+        }
+        def compacted = new SolrDocument([start: 99l, end: 2999l, name: "cpu", type: "metric", _version_: 15l, data: ByteBuffer.wrap("not compressed".bytes)])
+        def raw = new SolrDocument([start: 3000l, end: 3900l, name: "cpu", type: "metric", _version_: 20l])
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+        (3000..3999).step(100) { ts.point(it, 2) }
+        raw.put("data", ByteBuffer.wrap(Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(ts.build().points().iterator()))))
+        //a record written after the compaction within the range of the rollup
+        def late = new SolrDocument([start: 1500l, end: 1500l, name: "cpu", type: "metric", _version_: 30l])
+        late.put("data", ByteBuffer.wrap(Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(
+                new MetricTimeSeries.Builder("cpu", "metric").point(1500, 5).build().points().iterator()))))
+
+        def queries = []
+        Set<String> loadedFields = null
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { args ->
+            queries << [args[0], args[1]]
+            new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0)
+        }
+        docListMock.streamDocList(_, _, _, _) >> { args ->
+            if (queries.last()[1] == ["rollup:[* TO *]"]) {
+                //the finer and the not dividing resolutions are never decompressed
+                args[3].accept(new SolrDocument([type: "metric", rollup: 500l]))
+                args[3].accept(rollupRecord)
+                args[3].accept(new SolrDocument([type: "metric", rollup: 3000l]))
+            } else {
+                loadedFields = args[2]
+                args[3].accept(compacted)
+                args[3].accept(late)
+                args[3].accept(raw)
+            }
+        }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+
+        then:
+        1 * response.add("response", { it.size() == 1 && it.get(0).get("1_function_sum") == 55d && it.get(0).get("2_function_count") == 4d })
+        queries == [["name:cpu", ["rollup:[* TO *]"]], ["name:cpu", ["-rollup:[* TO *]"]]]
+        loadedFields.contains("_version_")
+    }
+
+    @Unroll
+    def "test the request is cancelled if it exceeds the limit of #limit"() {
+        given:
+        def analysisConfig = new NamedList()
+        analysisConfig.add(limit, value)
+        def initArgs = new NamedList()
+        initArgs.add(AnalysisHandler.ANALYSIS_CONFIG, analysisConfig)
+
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = Mock(SolrQueryResponse)
+        def start = Instant.now()
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{max}")
+                .add("timeAllowed", timeAllowed)
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        def streamed = 0
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _, _, _, _) >> { args ->
+            100.times {
+                Thread.sleep(1)
+                def record = solrDocument(start.plusSeconds(it * 60)).get(0)
+                record.put("name", "cpu-" + it)
+                args[6].accept(record, it)
+                streamed++
+            }
+        }
+        def analysisHandler = new AnalysisHandler(docListMock)
+        analysisHandler.init(new PluginInfo("requestHandler", [:], initArgs, null))
+
+        when:
+        analysisHandler.handleRequestBody(request, response)
+
+        then:
+        def e = thrown SolrException
+        e.code() == SolrException.ErrorCode.BAD_REQUEST.code
+        e.message.contains(message)
+        //the records are no longer collected
+        streamed < 100
+        0 * response.add(_, _)
+
+        where:
+        limit                              | value | timeAllowed || message
+        AnalysisHandler.ANALYSIS_MAX_CHUNKS | 10    | "0"         || "more than 10 chunks"
+        AnalysisHandler.ANALYSIS_MAX_POINTS | 20    | "0"         || "more than 20 points"
+        AnalysisHandler.ANALYSIS_MAX_TIME   | 10    | "0"         || "time limit of 10 ms"
+        AnalysisHandler.ANALYSIS_MAX_TIME   | 60000 | "10"        || "time limit of 10 ms"
+    }
+
+    @Unroll
+    def "test a streamed request that exceeds the #limit while its time series are built is answered with an error"() {
+        given:
+        def analysisConfig = new NamedList()
+        analysisConfig.add(limit, value)
+        def initArgs = new NamedList()
+        initArgs.add(AnalysisHandler.ANALYSIS_CONFIG, analysisConfig)
+
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = Mock(SolrQueryResponse)
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add("fl", "name,type")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{max}")
+                .add(ChronixQueryParams.CHRONIX_STREAM, "true")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        //the data of the overlapping summarized records is loaded when their time series is built
+        def summary = [chunk_count: 3l, chunk_min: 100d, chunk_max: 100d, chunk_sum: 300d, chunk_first: 100d, chunk_last: 100d]
+        def first = new SolrDocument([start: 10l, end: 30l, name: "test", type: "metric"] + summary)
+        def second = new SolrDocument([start: 20l, end: 40l, name: "test", type: "metric"] + summary)
+        def data = [record(10, 1), record(20, 2)]
+
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _, _, _, _) >> { args -> [first, second].eachWithIndex { record, i -> args[6].accept(record, i) } }
+        docListMock.streamDocs(_, _, _, _) >> { args ->
+            Thread.sleep(20)
+            (args[0] as int[]).each { args[3].accept(data[it]) }
+        }
+        def analysisHandler = new AnalysisHandler(docListMock)
+        analysisHandler.init(new PluginInfo("requestHandler", [:], initArgs, null))
+
+        when:
+        analysisHandler.handleRequestBody(request, response)
+
+        then:
+        def e = thrown SolrException
+        e.code() == SolrException.ErrorCode.BAD_REQUEST.code
+        e.message.contains(message)
+        //no partial response is streamed
+        0 * response.add(_, _)
+
+        where:
+        limit                              | value || message
+        AnalysisHandler.ANALYSIS_MAX_POINTS | 5     || "more than 5 points"
+        AnalysisHandler.ANALYSIS_MAX_TIME   | 10    || "time limit of 10 ms"
+    }
+
+    def "test the request within the limits"() {
+        given:
+        def limits = new AnalysisLimits(10, 100, 0)
+
+        expect:
+        limits.timeLimit(new ModifiableSolrParams()) == 0
+        limits.timeLimit(new ModifiableSolrParams().add("timeAllowed", "20")) == 20
+        new AnalysisLimits(0, 0, 10).timeLimit(new ModifiableSolrParams().add("timeAllowed", "20")) == 10
+        AnalysisLimits.UNLIMITED.getMaxChunks() == 0
+    }
+
+    def "test the points of a time series with an unknown size are not counted"() {
+        given:
+        def budget = new AnalysisLimits(0, 2, 0).budget(Mock(AnalysisExecutor))
+
+        when:
+        budget.points(-1)
+        budget.points(-1)
+        budget.points(2)
+
+        then:
+        noExceptionThrown()
+
+        when:
+        budget.points(1)
+
+        then:
+        thrown SolrException
+    }
+
+    def "test pass through the stored chunks"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def response = Mock(SolrQueryResponse)
+        def indexSchema = Mock(IndexSchema)
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "name:cpu")
+                .add("fl", "name,data,start,end,type")
+                .add(ChronixQueryParams.CHRONIX_PASS_THROUGH, "true")
+                .add(ChronixQueryParams.QUERY_START_LONG, "1500")
+                .add(ChronixQueryParams.QUERY_END_LONG, "5000")
+
+        //a chunk within the query range is never decompressed
+        def inner = new SolrDocument([start: 2000l, end: 3000l, name: "cpu", type: "metric", chunk_count: 11l, data: ByteBuffer.wrap("not compressed".bytes)])
+        def boundary = new SolrDocument([start: 1000l, end: 1900l, name: "cpu", type: "metric", chunk_count: 10l, chunk_sum: 14500d])
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+        (1000..1900).step(100) { ts.point(it, it) }
+        boundary.put("data", ByteBuffer.wrap(Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(ts.build().points().iterator()))))
+        def outside = new SolrDocument([start: 6000l, end: 7000l, name: "cpu", type: "metric", data: ByteBuffer.wrap("not compressed".bytes)])
+
+        def queries = []
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { args ->
+            queries << [args[0], args[1]]
+            new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0)
+        }
+        docListMock.streamDocList(_, _, _, _) >> { args -> [boundary, inner, outside].each { args[3].accept(it) } }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+
+        then:
+        1 * response.add("response", { SolrDocumentList chunks ->
+            def trimmed = SolrDocumentBuilder.reduceDocumentToTimeSeries(0, Long.MAX_VALUE,
+                    [new SolrDocument([start: chunks[0].start, end: chunks[0].end, name: "cpu", type: "metric", data: ByteBuffer.wrap(chunks[0].data)])], true)
+
+            chunks.size() == 2 && chunks.getNumFound() == 2 &&
+                    chunks[0].get("join_key") == "cpu-metric" && chunks[0].start == 1500l && chunks[0].end == 1900l &&
+                    trimmed.getTimestampsAsArray() == [1500, 1600, 1700, 1800, 1900] as long[] &&
+                    chunks[1].get("join_key") == "cpu-metric" && chunks[1].data.is(inner.data) && chunks[1].start == 2000l &&
+                    !chunks[0].containsKey("chunk_count") && !chunks[0].containsKey("chunk_sum") && chunks[1].chunk_count == 11l
+        })
+        queries == [["name:cpu", []]]
+    }
+
+    def "test pass through the chunks stored in blocks"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def response = Mock(SolrQueryResponse)
+        def indexSchema = Mock(IndexSchema)
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "name:cpu")
+                .add("fl", "name,data,start,end,type")
+                .add(ChronixQueryParams.CHRONIX_PASS_THROUGH, "true")
+                .add(ChronixQueryParams.QUERY_START_LONG, "1600")
+                .add(ChronixQueryParams.QUERY_END_LONG, "5000")
+
+        //the blocks 1000-1200 and 1300-1500 of the boundary chunk are outside of the query range, hence they are not decoded
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+        (1000..1900).step(100) { ts.point(it, it) }
+        def blocks = ChunkBlocks.encode(ts.build(), 3)
+        def data = blocks.data.clone()
+        Arrays.fill(data, 0, 8, 0 as byte)
+        def boundary = new SolrDocument([start: 1000l, end: 1900l, name: "cpu", type: "metric", chunk_count: 10l,
+                                         data: ByteBuffer.wrap(data), (ChunkBlocks.INDEX): ByteBuffer.wrap(blocks.index)])
+        def inner = new SolrDocument([start: 2000l, end: 2900l, name: "cpu", type: "metric", chunk_count: 10l,
+                                      data: ByteBuffer.wrap("not compressed".bytes), (ChunkBlocks.INDEX): ByteBuffer.wrap(blocks.index)])
+
+        def fields = null
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _) >> { args -> fields = args[2]; [boundary, inner].each { args[3].accept(it) } }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+
+        then:
+        1 * response.add("response", { SolrDocumentList chunks ->
+            def trimmed = SolrDocumentBuilder.reduceDocumentToTimeSeries(0, Long.MAX_VALUE,
+                    [new SolrDocument([start: chunks[0].start, end: chunks[0].end, name: "cpu", type: "metric", data: ByteBuffer.wrap(chunks[0].data)])], true)
+
+            chunks.size() == 2 && !chunks[0].containsKey(ChunkBlocks.INDEX) && !chunks[0].containsKey("chunk_count") &&
+                    chunks[0].start == 1600l && chunks[0].end == 1900l &&
+                    trimmed.getTimestampsAsArray() == [1600, 1700, 1800, 1900] as long[] &&
+                    chunks[1].data.is(inner.data) && chunks[1].get(ChunkBlocks.INDEX).is(inner.get(ChunkBlocks.INDEX)) &&
+                    chunks[1].chunk_count == 10l
+        })
+        fields.contains(ChunkBlocks.INDEX)
+    }
+
+    def "test the points of the trimmed chunks are counted when passing through"() {
+        given:
+        def analysisConfig = new NamedList()
+        analysisConfig.add(AnalysisHandler.ANALYSIS_MAX_POINTS, 4)
+        def initArgs = new NamedList()
+        initArgs.add(AnalysisHandler.ANALYSIS_CONFIG, analysisConfig)
+
+        def request = Mock(SolrQueryRequest)
+        def response = Mock(SolrQueryResponse)
+        def indexSchema = Mock(IndexSchema)
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "name:cpu")
+                .add("fl", "name,data,start,end,type")
+                .add(ChronixQueryParams.CHRONIX_PASS_THROUGH, "true")
+                .add(ChronixQueryParams.QUERY_START_LONG, "1500")
+                .add(ChronixQueryParams.QUERY_END_LONG, "5000")
+
+        def boundary = new SolrDocument([start: 1000l, end: 1900l, name: "cpu", type: "metric"])
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+        (1000..1900).step(100) { ts.point(it, it) }
+        boundary.put("data", ByteBuffer.wrap(Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(ts.build().points().iterator()))))
+
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _) >> { args -> args[3].accept(boundary) }
+        def analysisHandler = new AnalysisHandler(docListMock)
+        analysisHandler.init(new PluginInfo("requestHandler", [:], initArgs, null))
+
+        when:
+        analysisHandler.handleRequestBody(request, response)
+
+        then:
+        def e = thrown SolrException
+        e.code() == SolrException.ErrorCode.BAD_REQUEST.code
+        e.message.contains("more than 4 points")
+        0 * response.add(_, _)
+    }
+
+    @Unroll
+    def "test stream the analyzed time series with the #format writer"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = new SolrQueryResponse()
+        def start = Instant.now()
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{max}")
+                .add(ChronixQueryParams.CHRONIX_STREAM, "true")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _, _, _, _) >> { args ->
+            solrDocument(start).each { args[6].accept(it, 0) }
+            def other = solrDocument(start.plusSeconds(60)).get(0)
+            other.put("name", "other")
+            args[6].accept(other, 1)
+        }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+        def result = response.getValues().get("response")
+        def out = new ByteArrayOutputStream()
+        QueryResponseWriterUtil.writeQueryResponse(out, writer, request, response, writer.getContentType(request, response))
+
+        then:
+        result instanceof StreamingResultContext
+        result.getDocList().size() == 2
+        parse(out.toByteArray()).sort() == ["other", "test"]
+
+        where:
+        writer << [new BinaryResponseWriter(), new JSONResponseWriter()]
+        format << ["javabin", "json"]
+    }
+
+    def "test the streamed time series are built while they are written"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = new SolrQueryResponse()
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add("fl", "name,type")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{max}")
+                .add(ChronixQueryParams.CHRONIX_STREAM, "true")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        //the overlapping summarized records are loaded again when their time series is built
+        def summary = [chunk_count: 3l, chunk_min: 100d, chunk_max: 100d, chunk_sum: 300d, chunk_first: 100d, chunk_last: 100d]
+        def first = new SolrDocument([start: 10l, end: 30l, name: "test", type: "metric"] + summary)
+        def second = new SolrDocument([start: 20l, end: 40l, name: "test", type: "metric"] + summary)
+        def data = [record(10, 1), record(20, 2)]
+
+        def loaded = []
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _, _, _, _) >> { args -> [first, second].eachWithIndex { record, i -> args[6].accept(record, i) } }
+        docListMock.streamDocs(_, _, _, _) >> { args ->
+            (args[0] as int[]).each {
+                loaded << it
+                args[3].accept(data[it])
+            }
+        }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+        def result = response.getValues().get("response") as StreamingResultContext
+        def loadedBeforeWrite = loaded.size()
+        def documents = result.getProcessedDocuments().collect()
+
+        then:
+        result.getDocList().size() == 1
+        result.getDocList().matches() == 1
+        loadedBeforeWrite == 0
+        loaded == [0, 1]
+        documents.size() == 1
+        documents[0].get("0_function_max") == 4d
+    }
+
+    def "test a streamed time series that fails while it is written and all after it are error documents"() {
+        given:
+        def request = Mock(SolrQueryRequest)
+        def indexSchema = Mock(IndexSchema)
+        def response = new SolrQueryResponse()
+        def writer = new BinaryResponseWriter()
+
+        indexSchema.getFields() >> new HashMap<String, SchemaField>()
+        request.getSchema() >> indexSchema
+        request.getParams() >> new ModifiableSolrParams().add("q", "host:laptop")
+                .add("fl", "name,type")
+                .add(ChronixQueryParams.CHRONIX_FUNCTION, "metric{max}")
+                .add(ChronixQueryParams.CHRONIX_STREAM, "true")
+                .add(ChronixQueryParams.CHRONIX_PARALLELISM, "1")
+                .add(ChronixQueryParams.QUERY_START_LONG, "0")
+                .add(ChronixQueryParams.QUERY_END_LONG, String.valueOf(Long.MAX_VALUE))
+
+        //the records of the time series overlap, hence their data is loaded while they are written
+        def summary = [chunk_count: 3l, chunk_min: 100d, chunk_max: 100d, chunk_sum: 300d, chunk_first: 100d, chunk_last: 100d]
+        def records = ["test", "test", "failing", "failing"].withIndex().collect { name, i ->
+            new SolrDocument([start: 10l + i % 2 * 10, end: 30l + i % 2 * 10, name: name, type: "metric"] + summary)
+        }
+        def data = [record(10, 1), record(20, 2)]
+
+        def docListMock = Stub(DocListProvider)
+        docListMock.doSimpleQuery(_, _, _, _, _) >> { new DocSlice(0i, 0, [] as int[], [] as float[], 0, 0) }
+        docListMock.streamDocList(_, _, _, _, _, _, _) >> { args -> records.eachWithIndex { record, i -> args[6].accept(record, i) } }
+        docListMock.streamDocs(_, _, _, _) >> { args ->
+            (args[0] as int[]).each {
+                if (it >= 2) {
+                    throw new IOException("not readable")
+                }
+                args[3].accept(data[it])
+            }
+        }
+
+        when:
+        new AnalysisHandler(docListMock).handleRequestBody(request, response)
+        def out = new ByteArrayOutputStream()
+        QueryResponseWriterUtil.writeQueryResponse(out, writer, request, response, writer.getContentType(request, response))
+        def names = parse(out.toByteArray())
+
+        then:
+        //the number of documents is written first, the error documents have no name
+        names == ["test", null] || names == [null, null]
+    }
+
+    List<String> parse(byte[] response) {
+        def names = []
+        if (response[0] == ('{' as char)) {
+            new JsonSlurper().parse(response).response.docs.each { names << it.name }
+            return names
+        }
+        def callback = new StreamingResponseCallback() {
+            long numFound
+
+            @Override
+            void streamSolrDocument(SolrDocument doc) {
+                names << doc.get("name")
+            }
+
+            @Override
+            void streamDocListInfo(long numFound, long start, Float maxScore) {
+                this.numFound = numFound
+            }
+        }
+        new StreamingBinaryResponseParser(callback).processResponse(new ByteArrayInputStream(response), null)
+        assert callback.numFound == 2
+        names
+    }
+
     List<SolrDocument> solrDocument(Instant start) {
         def result = new ArrayList<SolrDocument>()
         def ts = new MetricTimeSeries.Builder("test", "metric")
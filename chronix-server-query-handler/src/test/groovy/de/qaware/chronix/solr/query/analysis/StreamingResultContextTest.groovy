@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.query.analysis
+
+import org.apache.solr.common.SolrDocument
+import org.apache.solr.request.SolrQueryRequest
+import spock.lang.Specification
+
+/**
+ * Unit test for the streaming result context
+ * @author f.lautenschlager
+ */
+class StreamingResultContextTest extends Specification {
+
+    def "test a failed document and all documents after it are error documents"() {
+        given:
+        def pulled = 0
+        def documents = [
+                hasNext: { true },
+                next   : {
+                    if (++pulled == 2) {
+                        throw new IllegalStateException("not analyzable")
+                    }
+                    new SolrDocument([name: "doc-" + pulled])
+                }
+        ] as Iterator<SolrDocument>
+        def context = new StreamingResultContext(Stub(SolrQueryRequest), 4, documents)
+
+        when:
+        def written = context.getProcessedDocuments().collect()
+
+        then:
+        context.getDocList().size() == 4
+        written.size() == 4
+        written[0].get("name") == "doc-1"
+        written.drop(1).every { (it.get(StreamingResultContext.ERROR) as String).contains("not analyzable") && !it.containsKey("name") }
+        //the documents after the failure are not analyzed
+        pulled == 2
+    }
+
+    def "test the announced number of documents is written"() {
+        given:
+        def context = new StreamingResultContext(Stub(SolrQueryRequest), 2, [new SolrDocument([name: "a"])].iterator())
+
+        when:
+        def written = context.getProcessedDocuments().collect()
+
+        then:
+        written.size() == 2
+        written[0].get("name") == "a"
+        written[1].containsKey(StreamingResultContext.ERROR)
+    }
+
+    def "test the documents can only be written once"() {
+        given:
+        def context = new StreamingResultContext(Stub(SolrQueryRequest), 0, Collections.emptyIterator())
+
+        when:
+        context.getProcessedDocuments()
+        context.getProcessedDocuments()
+
+        then:
+        thrown IllegalStateException
+    }
+}
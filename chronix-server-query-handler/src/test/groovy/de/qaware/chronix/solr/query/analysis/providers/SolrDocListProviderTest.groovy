@@ -15,6 +15,17 @@
  */
 package de.qaware.chronix.solr.query.analysis.providers
 
+import org.apache.lucene.document.Document
+import org.apache.lucene.document.StoredField
+import org.apache.lucene.search.MatchAllDocsQuery
+import org.apache.solr.request.SolrQueryRequest
+import org.apache.solr.schema.FieldType
+import org.apache.solr.schema.IndexSchema
+import org.apache.solr.schema.SchemaField
+import org.apache.solr.search.DocIterator
+import org.apache.solr.search.DocList
+import org.apache.solr.search.SolrDocumentFetcher
+import org.apache.solr.search.SolrIndexSearcher
 import spock.lang.Specification
 
 /**
@@ -26,16 +37,142 @@ class SolrDocListProviderTest extends Specification {
 
     def "test doSimpleQuery"() {
         when:
-        new SolrDocListProvider().doSimpleQuery("", null, 0, 99);
+        new SolrDocListProvider().doSimpleQuery("", [], null, 0, 99);
 
         then:
         thrown NullPointerException
     }
 
+    def "test doSimpleQuery without a user query matches all docs"() {
+        given:
+        def request = Stub(SolrQueryRequest)
+        def searcher = Mock(SolrIndexSearcher)
+        def docList = Stub(DocList)
+        request.getSearcher() >> searcher
+
+        when:
+        def result = new SolrDocListProvider().doSimpleQuery(null, [], request, 0, 99)
+
+        then:
+        1 * searcher.getDocList(new MatchAllDocsQuery(), [], null, 0, 99, 0) >> docList
+        result.is(docList)
+    }
+
     def "test "() {
         when:
         new SolrDocListProvider().docListToSolrDocumentList(null, null, null, null);
         then:
         thrown NullPointerException
     }
+
+    def "test stream doc list"() {
+        given:
+        def docList = Stub(DocList)
+        def iterator = Stub(DocIterator)
+        iterator.hasNext() >>> [true, true, false]
+        iterator.nextDoc() >>> [0, 1]
+        docList.iterator() >> iterator
+
+        def fieldType = Stub(FieldType)
+        fieldType.toObject(_) >> { args -> args[0].stringValue() }
+        def schema = Stub(IndexSchema)
+        schema.getField(_) >> { args -> new SchemaField(args[0], fieldType) }
+
+        def fetcher = Stub(SolrDocumentFetcher)
+        fetcher.doc(0, _ as Set) >> luceneDoc(["name": "cpu", "host": "laptop", "ignored": "x"], "tag", ["a", "b"])
+        fetcher.doc(1, _ as Set) >> luceneDoc(["name": "mem", "host": "server"], "tag", ["c"])
+
+        def searcher = Stub(SolrIndexSearcher)
+        searcher.getSchema() >> schema
+        searcher.getDocFetcher() >> fetcher
+
+        def records = []
+
+        when:
+        new SolrDocListProvider().streamDocList(docList, searcher, ["name", "host", "tag"] as Set, { records << new HashMap<>(it) })
+
+        then:
+        records == [["name": "cpu", "host": "laptop", "tag": ["a", "b"]],
+                    ["name": "mem", "host": "server", "tag": "c"]]
+    }
+
+    def "test stream doc list with doc values and lazy fields"() {
+        given:
+        def docList = Stub(DocList)
+        def iterator = Stub(DocIterator)
+        iterator.hasNext() >>> [true, true, false]
+        iterator.nextDoc() >>> [0, 1]
+        docList.iterator() >> iterator
+
+        def fieldType = Stub(FieldType)
+        fieldType.toObject(_) >> { args -> args[0].stringValue() }
+        def docValues = Stub(SchemaField)
+        docValues.hasDocValues() >> true
+        def schema = Stub(IndexSchema)
+        schema.getField(_) >> { args -> new SchemaField(args[0], fieldType) }
+        schema.getFieldOrNull("chunk_count") >> docValues
+        schema.getFieldOrNull("chunk_sum") >> new SchemaField("chunk_sum", fieldType)
+
+        def stored = [["name": "cpu", "chunk_sum": "9", "data": "x"], ["name": "mem", "chunk_sum": "8", "data": "y"]]
+        def loaded = []
+        def fetcher = Stub(SolrDocumentFetcher)
+        fetcher.doc(_, _ as Set) >> { args ->
+            loaded << args[1]
+            luceneDoc(stored[args[0]].findAll { args[1].contains(it.key) }, "tag", [])
+        }
+        fetcher.decorateDocValueFields(_, _, _) >> { args -> args[0].put("chunk_count", args[1] + 3l) }
+
+        def searcher = Stub(SolrIndexSearcher)
+        searcher.getSchema() >> schema
+        searcher.getDocFetcher() >> fetcher
+
+        def records = []
+        def docIds = []
+
+        when:
+        new SolrDocListProvider().streamDocList(docList, searcher, ["name"] as Set, ["chunk_count", "chunk_sum"] as Set,
+                ["data"] as Set, { it.get("name") == "cpu" }, { record, docId ->
+            records << new HashMap<>(record)
+            docIds << docId
+        })
+
+        then:
+        records == [["name": "cpu", "chunk_sum": "9", "chunk_count": 3l, "data": "x"],
+                    ["name": "mem", "chunk_sum": "8", "chunk_count": 4l]]
+        docIds == [0, 1]
+        //the data is only loaded for the first record, the doc values are never loaded as stored fields
+        loaded == [["name", "chunk_sum"] as Set, ["data"] as Set, ["name", "chunk_sum"] as Set]
+    }
+
+    def "test stream docs by their doc ids"() {
+        given:
+        def fieldType = Stub(FieldType)
+        fieldType.toObject(_) >> { args -> args[0].stringValue() }
+        def schema = Stub(IndexSchema)
+        schema.getField(_) >> { args -> new SchemaField(args[0], fieldType) }
+
+        def stored = [5: ["start": "1", "data": "x", "name": "cpu"], 2: ["start": "2", "data": "y", "name": "mem"]]
+        def fetcher = Stub(SolrDocumentFetcher)
+        fetcher.doc(_, _ as Set) >> { args -> luceneDoc(stored[args[0]], "tag", []) }
+
+        def searcher = Stub(SolrIndexSearcher)
+        searcher.getSchema() >> schema
+        searcher.getDocFetcher() >> fetcher
+
+        def records = []
+
+        when:
+        new SolrDocListProvider().streamDocs([5, 2] as int[], searcher, ["start", "data"] as Set, { records << new HashMap<>(it) })
+
+        then:
+        //the docs are read in the order of their doc ids
+        records == [["start": "2", "data": "y"], ["start": "1", "data": "x"]]
+    }
+
+    def luceneDoc(Map<String, String> fields, String multiValuedField, List<String> values) {
+        def doc = new Document()
+        fields.each { doc.add(new StoredField(it.key, it.value)) }
+        values.each { doc.add(new StoredField(multiValuedField, it)) }
+        doc
+    }
 }
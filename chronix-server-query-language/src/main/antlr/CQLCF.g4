@@ -12,8 +12,12 @@ chronixfunction
         | name ':' parameter (',' parameter)*
         ;
 name: LOWERCASE_STRING;
-parameter: STRING_AND_NUMBERS_UPPERCASE;
+parameter
+        : STRING_AND_NUMBERS_UPPERCASE
+        | COMPARE_FIELDS
+        ;
 
 
+COMPARE_FIELDS : 'compare(' ~[)]* ')' ;
 LOWERCASE_STRING  : [a-z]+ ;
 STRING_AND_NUMBERS_UPPERCASE: [A-Z0-9.]+ ;
@@ -18,10 +18,7 @@ package de.qaware.chronix.cql;
 
 import de.qaware.chronix.cql.antlr.CQLCFLexer;
 import de.qaware.chronix.cql.antlr.CQLCFParser;
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.ChronixAnalysis;
 import de.qaware.chronix.server.functions.ChronixFunction;
-import de.qaware.chronix.server.functions.ChronixTransformation;
 import de.qaware.chronix.server.types.ChronixType;
 import de.qaware.chronix.server.types.ChronixTypes;
 import org.antlr.v4.runtime.*;
@@ -31,26 +28,44 @@ import org.antlr.v4.runtime.dfa.DFA;
 import java.util.BitSet;
 import java.util.List;
 
+/**
+ * The Chronix Query Language parser for the chronix function (cf), chronix join (cj) and chronix group (cg) parameters.
+ * It is safe to use a single instance from multiple threads concurrently.
+ * Every thread uses its own lexer and parser. The generated ANTLR lexer and parser share
+ * their DFA cache across all instances, hence a new thread also benefits from the warmed up cache.
+ * <p>
+ * Parse results are cached in a bounded LRU cache keyed by the raw cf / cj parameter.
+ * The cache holds immutable parse plans, every parse call returns new function instances.
+ */
 public class CQL {
 
-    //First parsing is faster.
-    private final CQLCFLexer lexer = new CQLCFLexer(null);
-    private final CommonTokenStream tokenStream = new CommonTokenStream(lexer);
-    private final CQLCFParser parser = new CQLCFParser(tokenStream);
+    /**
+     * The default number of cached cf and cj parameters
+     */
+    public static final int DEFAULT_CACHE_SIZE = 512;
+
     private final ChronixTypes knownChronixTypes;
     private final de.qaware.chronix.server.functions.plugin.ChronixFunctions knownChronixFunctions;
-    private final CQLErrorListener errorListener;
+    //The lexer and parser are not thread-safe, hence every thread gets its own
+    private final ThreadLocal<ParserState> parserState = ThreadLocal.withInitial(ParserState::new);
+    private final CQLCache<CQLCFPlan> cfCache;
+    private final CQLCache<CQLJoinFunction> cjCache;
 
 
     public CQL(ChronixTypes plugInTypes, de.qaware.chronix.server.functions.plugin.ChronixFunctions plugInFunctions) {
+        this(plugInTypes, plugInFunctions, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param plugInTypes     the known chronix types
+     * @param plugInFunctions the plugged-in functions
+     * @param cacheSize       the number of cached cf and cj parameters, zero disables the cache
+     */
+    public CQL(ChronixTypes plugInTypes, de.qaware.chronix.server.functions.plugin.ChronixFunctions plugInFunctions, int cacheSize) {
         this.knownChronixTypes = plugInTypes;
         this.knownChronixFunctions = plugInFunctions;
-        this.errorListener = new CQLErrorListener();
-        parser.removeErrorListeners();
-        lexer.removeErrorListeners();
-
-        this.parser.addErrorListener(errorListener);
-        this.lexer.addErrorListener(errorListener);
+        this.cfCache = new CQLCache<>(cacheSize);
+        this.cjCache = new CQLCache<>(cacheSize);
     }
 
     /**
@@ -61,7 +76,22 @@ public class CQL {
      * @throws CQLException (not thrown at the moment)
      */
     public CQLJoinFunction parseCJ(String cj) throws CQLException {
-        return new CQLJoinFunction(cj);
+        //the join function is immutable, hence we can share it. null and empty result in the default join.
+        return cjCache.get(cj == null ? "" : cj, CQLJoinFunction::new);
+    }
+
+    /**
+     * Converts the given Chronix Group parameter into a CQLGroupFunction
+     *
+     * @param cg the chronix group parameter
+     * @return a group function or null if the parameter is null or empty
+     * @throws CQLException if the group parameter is invalid
+     */
+    public CQLGroupFunction parseCG(String cg) throws CQLException {
+        if (cg == null || cg.isEmpty()) {
+            return null;
+        }
+        return new CQLGroupFunction(cg);
     }
 
     /**
@@ -75,35 +105,50 @@ public class CQL {
         if (cf == null || cf.isEmpty()) {
             return new CQLCFResult();
         }
-        init(cf);
-
-        return parseChronixFunctionParameter(this.parser.cqlcf());
+        return cfCache.get(cf, this::plan).instantiate();
     }
 
-    private void init(String cql) {
-        this.errorListener.setQuery(cql);
-
-        // Antlr 4.7.1
-        // CodePointCharStream input = CharStreams.fromString(cql);
+    /**
+     * @return the number of cf parameters answered from the cache
+     */
+    public long getCFCacheHits() {
+        return cfCache.hits();
+    }
 
-        CharStream charStream = new ANTLRInputStream(cql);
+    /**
+     * @return the number of cf parameters that were parsed
+     */
+    public long getCFCacheMisses() {
+        return cfCache.misses();
+    }
 
-        this.lexer.setInputStream(charStream);
-        // Antlr 4.7.1
-        //this.tokenStream.setTokenSource(lexer);
+    /**
+     * @return the number of cj parameters answered from the cache
+     */
+    public long getCJCacheHits() {
+        return cjCache.hits();
+    }
 
-        UnbufferedTokenStream tokenStream = new UnbufferedTokenStream(lexer);
+    /**
+     * @return the number of cj parameters that were parsed
+     */
+    public long getCJCacheMisses() {
+        return cjCache.misses();
+    }
 
-        this.parser.setTokenStream(tokenStream);
+    private CQLCFPlan plan(String cf) {
+        ParserState state = parserState.get();
+        state.init(cf);
 
+        return parseChronixFunctionParameter(state.parser.cqlcf(), cf);
     }
 
-    private CQLCFResult parseChronixFunctionParameter(CQLCFParser.CqlcfContext tree) throws CQLException {
+    private CQLCFPlan parseChronixFunctionParameter(CQLCFParser.CqlcfContext tree, String cf) throws CQLException {
 
         CQLCFParser.ChronixTypedFunctionsContext chronixTypedFunctions = tree.chronixTypedFunctions();
         List<CQLCFParser.ChronixTypedFunctionContext> chronixTypedFunction = chronixTypedFunctions.chronixTypedFunction();
 
-        CQLCFResult parseResult = new CQLCFResult();
+        CQLCFPlan.Builder plan = new CQLCFPlan.Builder();
 
         for (CQLCFParser.ChronixTypedFunctionContext typedFunction : chronixTypedFunction) {
 
@@ -111,49 +156,36 @@ public class CQL {
             //Check if Chronix knows the type
             ChronixType chronixType = knownChronixTypes.getTypeForName(type);
             if (chronixType == null) {
-                throw new CQLException("Type '" + type + "' in query '" + this.errorListener.cql + "' is unknown.");
+                throw new CQLException("Type '" + type + "' in query '" + cf + "' is unknown.");
             }
 
-            ChronixFunctions resultingTypeFunctions = new ChronixFunctions();
+            plan.type(chronixType);
 
             //Check if Chronix knows the functions
             List<CQLCFParser.ChronixfunctionContext> chronixFunctions = typedFunction.chronixfunction();
             for (CQLCFParser.ChronixfunctionContext chronixFunction : chronixFunctions) {
 
                 String name = chronixFunction.name().getText();
-                ChronixFunction function = chronixType.getFunction(name);
+                CQLCFPlan.FunctionFactory factory = () -> chronixType.getFunction(name);
+                ChronixFunction function = factory.newInstance();
                 if (function == null) {
                     //check the plugin functions
-                    function = knownChronixFunctions.getFunctionForQueryName(type, name);
+                    factory = () -> knownChronixFunctions.getFunctionForQueryName(type, name);
+                    function = factory.newInstance();
                     if (function == null) {
-                        throw new CQLException("Function '" + name + "' in query '" + this.errorListener.cql + "' is unknown.");
+                        throw new CQLException("Function '" + name + "' in query '" + cf + "' is unknown.");
                     }
                 }
 
                 //if we get here, we have valid type and a valid function
-                //Set the arguments to the function
-                function.setArguments(asStringArray(chronixFunction.parameter()));
-
-                switch (function.getFunctionType()) {
-                    case AGGREGATION:
-                        resultingTypeFunctions.addAggregation((ChronixAggregation) function);
-                        break;
-                    case TRANSFORMATION:
-                        resultingTypeFunctions.addTransformation((ChronixTransformation) function);
-                        break;
-                    case ANALYSIS:
-                        resultingTypeFunctions.addAnalysis((ChronixAnalysis) function);
-                        break;
-                    default:
-                        //ignore
-                        break;
-
-                }
+                //Validate the arguments. The plan creates new instances with the arguments for every request.
+                String[] arguments = asStringArray(chronixFunction.parameter());
+                function.setArguments(arguments);
 
+                plan.function(factory, arguments);
             }
-            parseResult.addChronixFunctionsForType(chronixType, resultingTypeFunctions);
         }
-        return parseResult;
+        return plan.build();
     }
 
 
@@ -167,7 +199,43 @@ public class CQL {
     }
 
 
-    private final class CQLErrorListener implements ANTLRErrorListener {
+    /**
+     * The lexer and parser used by a single thread
+     */
+    private static final class ParserState {
+        //First parsing is faster.
+        private final CQLCFLexer lexer = new CQLCFLexer(null);
+        private final CommonTokenStream tokenStream = new CommonTokenStream(lexer);
+        private final CQLCFParser parser = new CQLCFParser(tokenStream);
+        private final CQLErrorListener errorListener = new CQLErrorListener();
+
+        private ParserState() {
+            parser.removeErrorListeners();
+            lexer.removeErrorListeners();
+
+            this.parser.addErrorListener(errorListener);
+            this.lexer.addErrorListener(errorListener);
+        }
+
+        private void init(String cql) {
+            this.errorListener.setQuery(cql);
+
+            // Antlr 4.7.1
+            // CodePointCharStream input = CharStreams.fromString(cql);
+
+            CharStream charStream = new ANTLRInputStream(cql);
+
+            this.lexer.setInputStream(charStream);
+            // Antlr 4.7.1
+            //this.tokenStream.setTokenSource(lexer);
+
+            UnbufferedTokenStream tokenStream = new UnbufferedTokenStream(lexer);
+
+            this.parser.setTokenStream(tokenStream);
+        }
+    }
+
+    private static final class CQLErrorListener implements ANTLRErrorListener {
         private String cql;
 
         @Override
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.cql;
+
+import de.qaware.chronix.server.functions.ChronixAggregation;
+import de.qaware.chronix.server.functions.ChronixAnalysis;
+import de.qaware.chronix.server.functions.ChronixFunction;
+import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.server.types.ChronixType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The immutable parse plan of a chronix function (cf) parameter.
+ * It holds the validated types, function names and arguments but no function instances,
+ * hence it can be cached and shared. Every call of {@link #instantiate()} creates new function instances.
+ *
+ * @author f.lautenschlager
+ */
+final class CQLCFPlan {
+
+    private final List<TypePlan> types;
+
+    private CQLCFPlan(List<TypePlan> types) {
+        this.types = Collections.unmodifiableList(types);
+    }
+
+    /**
+     * @return a new parse result with new function instances
+     */
+    CQLCFResult instantiate() {
+        CQLCFResult result = new CQLCFResult();
+        for (TypePlan typePlan : types) {
+            ChronixFunctions typeFunctions = new ChronixFunctions();
+            for (FunctionPlan functionPlan : typePlan.functions) {
+                add(typeFunctions, functionPlan.newFunction());
+            }
+            result.addChronixFunctionsForType(typePlan.type, typeFunctions);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the function to the chronix functions depending on its function type
+     *
+     * @param typeFunctions the chronix functions of a type
+     * @param function      the function to add
+     */
+    private static void add(ChronixFunctions typeFunctions, ChronixFunction function) {
+        switch (function.getFunctionType()) {
+            case AGGREGATION:
+                typeFunctions.addAggregation((ChronixAggregation) function);
+                break;
+            case TRANSFORMATION:
+                typeFunctions.addTransformation((ChronixTransformation) function);
+                break;
+            case ANALYSIS:
+                typeFunctions.addAnalysis((ChronixAnalysis) function);
+                break;
+            default:
+                //ignore
+                break;
+        }
+    }
+
+    /**
+     * Builder for a parse plan
+     */
+    static final class Builder {
+        private final List<TypePlan> types = new ArrayList<>();
+
+        /**
+         * Starts the functions of the given type
+         *
+         * @param type the chronix type
+         * @return the builder
+         */
+        Builder type(ChronixType type) {
+            types.add(new TypePlan(type));
+            return this;
+        }
+
+        /**
+         * Adds a function to the last type
+         *
+         * @param factory   creates a new instance of the function
+         * @param arguments the arguments of the function
+         * @return the builder
+         */
+        Builder function(FunctionFactory factory, String[] arguments) {
+            types.get(types.size() - 1).functions.add(new FunctionPlan(factory, arguments));
+            return this;
+        }
+
+        CQLCFPlan build() {
+            return new CQLCFPlan(types);
+        }
+    }
+
+    /**
+     * Creates new instances of a function
+     */
+    @FunctionalInterface
+    interface FunctionFactory {
+        /**
+         * @return a new function instance
+         */
+        ChronixFunction newInstance();
+    }
+
+    private static final class TypePlan {
+        private final ChronixType type;
+        private final List<FunctionPlan> functions = new ArrayList<>();
+
+        private TypePlan(ChronixType type) {
+            this.type = type;
+        }
+    }
+
+    private static final class FunctionPlan {
+        private final FunctionFactory factory;
+        private final String[] arguments;
+
+        private FunctionPlan(FunctionFactory factory, String[] arguments) {
+            this.factory = factory;
+            this.arguments = Arrays.copyOf(arguments, arguments.length);
+        }
+
+        private ChronixFunction newFunction() {
+            ChronixFunction function = factory.newInstance();
+            function.setArguments(Arrays.copyOf(arguments, arguments.length));
+            return function;
+        }
+    }
+}
@@ -17,8 +17,10 @@ package de.qaware.chronix.cql;
 
 import de.qaware.chronix.server.types.ChronixType;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The CQLCFResult holds the chronix functions per type.
@@ -51,6 +53,13 @@ public class CQLCFResult {
         return typeFunctions.get(type);
     }
 
+    /**
+     * @return the Chronix types that have Chronix functions
+     */
+    public Set<ChronixType> getTypes() {
+        return Collections.unmodifiableSet(typeFunctions.keySet());
+    }
+
     /**
      * @return true if empty, otherwise false
      */
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.cql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A bounded least recently used cache for the parse results of the chronix query language.
+ * The cached values must be immutable as they are shared between requests.
+ *
+ * @author f.lautenschlager
+ */
+final class CQLCache<V> {
+
+    private final int maxSize;
+    private final Map<String, V> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize the maximum number of cached entries, zero disables the cache
+     */
+    CQLCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > CQLCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Gets the cached value for the key or loads it.
+     * The loader is called outside of the lock. Failed loads are not cached.
+     *
+     * @param key    the key
+     * @param loader the function to load the value if it is not cached
+     * @return the cached or loaded value
+     */
+    V get(String key, Function<String, V> loader) {
+        if (maxSize > 0) {
+            V value;
+            synchronized (entries) {
+                value = entries.get(key);
+            }
+            if (value != null) {
+                hits.incrementAndGet();
+                return value;
+            }
+        }
+        misses.incrementAndGet();
+        V value = loader.apply(key);
+
+        if (maxSize > 0) {
+            synchronized (entries) {
+                entries.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the number of requests answered from the cache
+     */
+    long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of requests that were not cached
+     */
+    long misses() {
+        return misses.get();
+    }
+}
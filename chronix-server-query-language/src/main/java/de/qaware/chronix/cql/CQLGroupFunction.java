@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.cql;
+
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The chronix group parameter (cg) merges the time series with equal values of the group fields into a single
+ * time series, e.g. the sum of the cpu load of all hosts per minute: cg=name,type;SUM;1,MINUTES
+ * <p>
+ * The parameter has three parts separated by ';':
+ * the fields, the aggregation (SUM, AVG, MIN, MAX, COUNT or P:percentile) and an optional bucket (amount,unit).
+ * Without a bucket the values with equal timestamps are merged.
+ * The function creates the group key of a field map, e.g. the attributes of a time series.
+ *
+ * @author f.lautenschlager
+ */
+public final class CQLGroupFunction implements Function<Map<String, Object>, String> {
+
+    /**
+     * The supported aggregations
+     */
+    public static final String SUM = "SUM";
+    public static final String AVG = "AVG";
+    public static final String MIN = "MIN";
+    public static final String MAX = "MAX";
+    public static final String COUNT = "COUNT";
+    public static final String PERCENTILE = "P";
+
+    private static final String PART_SEPARATOR = ";";
+    private static final String ARGUMENT_SEPARATOR = ":";
+
+    private final CQLJoinFunction key;
+    private final String aggregation;
+    private final double percentile;
+    private final long bucket;
+
+    /**
+     * @param groupParameter the chronix group parameter, e.g. name,type;P:0.99;5,MINUTES
+     * @throws CQLException if the parameter is invalid
+     */
+    public CQLGroupFunction(String groupParameter) {
+        String[] parts = groupParameter.split(PART_SEPARATOR);
+        if (parts.length < 2 || parts.length > 3 || parts[0].trim().isEmpty()) {
+            throw new CQLException("Group '" + groupParameter + "' is invalid. Use fields;aggregation[;amount,unit].");
+        }
+        this.key = new CQLJoinFunction(parts[0]);
+
+        String[] aggregationAndArgument = parts[1].trim().split(ARGUMENT_SEPARATOR);
+        this.aggregation = aggregationAndArgument[0].toUpperCase(Locale.ENGLISH);
+        this.percentile = percentile(groupParameter, aggregationAndArgument);
+        this.bucket = parts.length == 3 ? bucket(groupParameter, parts[2]) : 1;
+    }
+
+    private double percentile(String groupParameter, String[] aggregationAndArgument) {
+        switch (aggregation) {
+            case SUM:
+            case AVG:
+            case MIN:
+            case MAX:
+            case COUNT:
+                if (aggregationAndArgument.length == 1) {
+                    return 0;
+                }
+                break;
+            case PERCENTILE:
+                if (aggregationAndArgument.length == 2) {
+                    double value = parse(groupParameter, aggregationAndArgument[1]);
+                    if (value > 0 && value <= 1) {
+                        return value;
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+        throw new CQLException("Aggregation '" + String.join(ARGUMENT_SEPARATOR, aggregationAndArgument) + "' in group '"
+                + groupParameter + "' is invalid. Use SUM, AVG, MIN, MAX, COUNT or P:percentile with 0 < percentile <= 1.");
+    }
+
+    private static double parse(String groupParameter, String number) {
+        try {
+            return Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw new CQLException("Number '" + number + "' in group '" + groupParameter + "' is invalid.");
+        }
+    }
+
+    private static long bucket(String groupParameter, String bucketPart) {
+        String[] amountAndUnit = bucketPart.split(CQLJoinFunction.JOIN_SEPARATOR);
+        try {
+            long amount = Long.parseLong(amountAndUnit[0].trim());
+            ChronoUnit unit = ChronoUnit.valueOf(amountAndUnit[1].trim().toUpperCase(Locale.ENGLISH));
+            long bucket = unit.getDuration().toMillis() * amount;
+            if (amountAndUnit.length == 2 && bucket > 0) {
+                return bucket;
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            //invalid amount or unit
+        }
+        throw new CQLException("Bucket '" + bucketPart + "' in group '" + groupParameter + "' is invalid. Use amount,unit, e.g. 5,MINUTES.");
+    }
+
+    @Override
+    public String apply(Map<String, Object> fields) {
+        return key.apply(fields);
+    }
+
+    /**
+     * @return the fields of the group key
+     */
+    public String[] involvedFields() {
+        return key.involvedFields();
+    }
+
+    /**
+     * @return the aggregation of the values within a bucket, one of SUM, AVG, MIN, MAX, COUNT and P
+     */
+    public String getAggregation() {
+        return aggregation;
+    }
+
+    /**
+     * @return the percentile (0 - 1] if the aggregation is P
+     */
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * @return the width of a bucket in milliseconds, 1 merges the values with equal timestamps
+     */
+    public long getBucket() {
+        return bucket;
+    }
+}
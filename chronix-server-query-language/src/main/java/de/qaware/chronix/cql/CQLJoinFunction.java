@@ -16,17 +16,18 @@
 package de.qaware.chronix.cql;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.solr.common.SolrDocument;
 
 import java.util.Arrays;
+import java.util.Map;
 import java.util.function.Function;
 
 /**
- * Class to create join function on solr documents
+ * Class to create join function on solr documents.
+ * It works on every field map, e.g. a solr document or the stored fields of a record.
  *
  * @author f.lautenschlager
  */
-public final class CQLJoinFunction implements Function<SolrDocument, String> {
+public final class CQLJoinFunction implements Function<Map<String, Object>, String> {
 
     /**
      * The default join field
@@ -36,7 +37,7 @@ public final class CQLJoinFunction implements Function<SolrDocument, String> {
     public static final String JOIN_SEPARATOR = ",";
 
 
-    private String[] involvedFields;
+    private final String[] involvedFields;
 
     /**
      * The method checks if the filter queries contains a join filter query (join=field1,field2,field3).
@@ -66,7 +67,7 @@ public final class CQLJoinFunction implements Function<SolrDocument, String> {
     }
 
     @Override
-    public String apply(SolrDocument doc) {
+    public String apply(Map<String, Object> doc) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < involvedFields.length; i++) {
             String field = involvedFields[i];
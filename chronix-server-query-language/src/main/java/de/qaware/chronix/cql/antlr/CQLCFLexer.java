@@ -26,9 +26,11 @@ import org.antlr.v4.runtime.dfa.DFA;
 @SuppressWarnings({"all", "warnings", "unchecked", "unused", "cast"})
 public class CQLCFLexer extends Lexer {
     public static final int
-            T__0 = 1, T__1 = 2, T__2 = 3, T__3 = 4, T__4 = 5, LOWERCASE_STRING = 6, STRING_AND_NUMBERS_UPPERCASE = 7;
+            T__0 = 1, T__1 = 2, T__2 = 3, T__3 = 4, T__4 = 5, COMPARE_FIELDS = 6, LOWERCASE_STRING = 7,
+            STRING_AND_NUMBERS_UPPERCASE = 8;
     public static final String[] ruleNames = {
-            "T__0", "T__1", "T__2", "T__3", "T__4", "LOWERCASE_STRING", "STRING_AND_NUMBERS_UPPERCASE"
+            "T__0", "T__1", "T__2", "T__3", "T__4", "COMPARE_FIELDS", "LOWERCASE_STRING",
+            "STRING_AND_NUMBERS_UPPERCASE"
     };
     /**
      * @deprecated Use {@link #VOCABULARY} instead.
@@ -36,17 +38,22 @@ public class CQLCFLexer extends Lexer {
     @Deprecated
     public static final String[] tokenNames;
     public static final String _serializedATN =
-            "\3\u0430\ud6d1\u8206\uad2d\u4417\uaef1\u8d80\uaadd\2\t%\b\1\4\2\t\2\4" +
-                    "\3\t\3\4\4\t\4\4\5\t\5\4\6\t\6\4\7\t\7\4\b\t\b\3\2\3\2\3\3\3\3\3\4\3\4" +
-                    "\3\5\3\5\3\6\3\6\3\7\6\7\35\n\7\r\7\16\7\36\3\b\6\b\"\n\b\r\b\16\b#\2" +
-                    "\2\t\3\3\5\4\7\5\t\6\13\7\r\b\17\t\3\2\4\3\2c|\5\2\60\60\62;C\\&\2\3\3" +
-                    "\2\2\2\2\5\3\2\2\2\2\7\3\2\2\2\2\t\3\2\2\2\2\13\3\2\2\2\2\r\3\2\2\2\2" +
-                    "\17\3\2\2\2\3\21\3\2\2\2\5\23\3\2\2\2\7\25\3\2\2\2\t\27\3\2\2\2\13\31" +
-                    "\3\2\2\2\r\34\3\2\2\2\17!\3\2\2\2\21\22\7=\2\2\22\4\3\2\2\2\23\24\7}\2" +
-                    "\2\24\6\3\2\2\2\25\26\7\177\2\2\26\b\3\2\2\2\27\30\7<\2\2\30\n\3\2\2\2" +
-                    "\31\32\7.\2\2\32\f\3\2\2\2\33\35\t\2\2\2\34\33\3\2\2\2\35\36\3\2\2\2\36" +
-                    "\34\3\2\2\2\36\37\3\2\2\2\37\16\3\2\2\2 \"\t\3\2\2! \3\2\2\2\"#\3\2\2" +
-                    "\2#!\3\2\2\2#$\3\2\2\2$\20\3\2\2\2\5\2\36#\2";
+            "\3\u0430\ud6d1\u8206\uad2d\u4417\uaef1\u8d80\uaadd\2\n8\b\1\4\2\t\2\4" +
+                    "\3\t\3\4\4\t\4\4\5\t\5\4\6\t\6\4\7\t\7\4\b\t\b\4\t\t\t\3\2\3\2\3\3\3\3" +
+                    "\3\4\3\4\3\5\3\5\3\6\3\6\3\7\3\7\3\7\3\7\3\7\3\7\3\7\3\7\3\7\3\7\7\7(" +
+                    "\n\7\f\7\16\7+\13\7\3\7\3\7\3\b\6\b\60\n\b\r\b\16\b\61\3\t\6\t\65\n\t" +
+                    "\r\t\16\t\66\2\2\n\3\3\5\4\7\5\t\6\13\7\r\b\17\t\21\n\3\2\5\3\2++\3\2" +
+                    "c|\5\2\60\60\62;C\\:\2\3\3\2\2\2\2\5\3\2\2\2\2\7\3\2\2\2\2\t\3\2\2\2\2" +
+                    "\13\3\2\2\2\2\r\3\2\2\2\2\17\3\2\2\2\2\21\3\2\2\2\3\23\3\2\2\2\5\25\3" +
+                    "\2\2\2\7\27\3\2\2\2\t\31\3\2\2\2\13\33\3\2\2\2\r\35\3\2\2\2\17/\3\2\2" +
+                    "\2\21\64\3\2\2\2\23\24\7=\2\2\24\4\3\2\2\2\25\26\7}\2\2\26\6\3\2\2\2\27" +
+                    "\30\7\177\2\2\30\b\3\2\2\2\31\32\7<\2\2\32\n\3\2\2\2\33\34\7.\2\2\34\f" +
+                    "\3\2\2\2\35\36\7e\2\2\36\37\7q\2\2\37 \7o\2\2 !\7r\2\2!\"\7c\2\2\"#\7" +
+                    "t\2\2#$\7g\2\2$%\7*\2\2%)\3\2\2\2&(\n\2\2\2\'&\3\2\2\2(+\3\2\2\2)\'\3" +
+                    "\2\2\2)*\3\2\2\2*,\3\2\2\2+)\3\2\2\2,-\7+\2\2-\16\3\2\2\2.\60\t\3\2\2" +
+                    "/.\3\2\2\2\60\61\3\2\2\2\61/\3\2\2\2\61\62\3\2\2\2\62\20\3\2\2\2\63\65" +
+                    "\t\4\2\2\64\63\3\2\2\2\65\66\3\2\2\2\66\64\3\2\2\2\66\67\3\2\2\2\67\22" +
+                    "\3\2\2\2\6\2)\61\66\2";
     public static final ATN _ATN =
             new ATNDeserializer().deserialize(_serializedATN.toCharArray());
     protected static final DFA[] _decisionToDFA;
@@ -56,7 +63,8 @@ public class CQLCFLexer extends Lexer {
             null, "';'", "'{'", "'}'", "':'", "','"
     };
     private static final String[] _SYMBOLIC_NAMES = {
-            null, null, null, null, null, null, "LOWERCASE_STRING", "STRING_AND_NUMBERS_UPPERCASE"
+            null, null, null, null, null, null, "COMPARE_FIELDS", "LOWERCASE_STRING",
+            "STRING_AND_NUMBERS_UPPERCASE"
     };
     public static final Vocabulary VOCABULARY = new VocabularyImpl(_LITERAL_NAMES, _SYMBOLIC_NAMES);
     public static String[] modeNames = {
@@ -30,7 +30,8 @@ import java.util.List;
 @SuppressWarnings({"all", "warnings", "unchecked", "unused", "cast"})
 public class CQLCFParser extends Parser {
     public static final int
-            T__0 = 1, T__1 = 2, T__2 = 3, T__3 = 4, T__4 = 5, LOWERCASE_STRING = 6, STRING_AND_NUMBERS_UPPERCASE = 7;
+            T__0 = 1, T__1 = 2, T__2 = 3, T__3 = 4, T__4 = 5, COMPARE_FIELDS = 6, LOWERCASE_STRING = 7,
+            STRING_AND_NUMBERS_UPPERCASE = 8;
     public static final int
             RULE_cqlcf = 0, RULE_chronixTypedFunctions = 1, RULE_chronixTypedFunction = 2,
             RULE_chronixType = 3, RULE_chronixfunction = 4, RULE_name = 5, RULE_parameter = 6;
@@ -44,21 +45,22 @@ public class CQLCFParser extends Parser {
     @Deprecated
     public static final String[] tokenNames;
     public static final String _serializedATN =
-            "\3\u0430\ud6d1\u8206\uad2d\u4417\uaef1\u8d80\uaadd\3\t<\4\2\t\2\4\3\t" +
+            "\3\u0430\ud6d1\u8206\uad2d\u4417\uaef1\u8d80\uaadd\3\n<\4\2\t\2\4\3\t" +
                     "\3\4\4\t\4\4\5\t\5\4\6\t\6\4\7\t\7\4\b\t\b\3\2\3\2\3\3\3\3\5\3\25\n\3" +
                     "\3\3\7\3\30\n\3\f\3\16\3\33\13\3\3\4\3\4\3\4\3\4\3\4\7\4\"\n\4\f\4\16" +
                     "\4%\13\4\3\4\3\4\3\5\3\5\3\6\3\6\3\6\3\6\3\6\3\6\7\6\61\n\6\f\6\16\6\64" +
-                    "\13\6\5\6\66\n\6\3\7\3\7\3\b\3\b\3\b\2\2\t\2\4\6\b\n\f\16\2\29\2\20\3" +
-                    "\2\2\2\4\22\3\2\2\2\6\34\3\2\2\2\b(\3\2\2\2\n\65\3\2\2\2\f\67\3\2\2\2" +
-                    "\169\3\2\2\2\20\21\5\4\3\2\21\3\3\2\2\2\22\31\5\6\4\2\23\25\7\3\2\2\24" +
-                    "\23\3\2\2\2\24\25\3\2\2\2\25\26\3\2\2\2\26\30\5\6\4\2\27\24\3\2\2\2\30" +
-                    "\33\3\2\2\2\31\27\3\2\2\2\31\32\3\2\2\2\32\5\3\2\2\2\33\31\3\2\2\2\34" +
-                    "\35\5\b\5\2\35\36\7\4\2\2\36#\5\n\6\2\37 \7\3\2\2 \"\5\n\6\2!\37\3\2\2" +
-                    "\2\"%\3\2\2\2#!\3\2\2\2#$\3\2\2\2$&\3\2\2\2%#\3\2\2\2&\'\7\5\2\2\'\7\3" +
-                    "\2\2\2()\7\b\2\2)\t\3\2\2\2*\66\5\f\7\2+,\5\f\7\2,-\7\6\2\2-\62\5\16\b" +
-                    "\2./\7\7\2\2/\61\5\16\b\2\60.\3\2\2\2\61\64\3\2\2\2\62\60\3\2\2\2\62\63" +
-                    "\3\2\2\2\63\66\3\2\2\2\64\62\3\2\2\2\65*\3\2\2\2\65+\3\2\2\2\66\13\3\2" +
-                    "\2\2\678\7\b\2\28\r\3\2\2\29:\7\t\2\2:\17\3\2\2\2\7\24\31#\62\65";
+                    "\13\6\5\6\66\n\6\3\7\3\7\3\b\3\b\3\b\2\2\t\2\4\6\b\n\f\16\2\3\4\2\b\b" +
+                    "\n\n9\2\20\3\2\2\2\4\22\3\2\2\2\6\34\3\2\2\2\b(\3\2\2\2\n\65\3\2\2\2\f" +
+                    "\67\3\2\2\2\169\3\2\2\2\20\21\5\4\3\2\21\3\3\2\2\2\22\31\5\6\4\2\23\25" +
+                    "\7\3\2\2\24\23\3\2\2\2\24\25\3\2\2\2\25\26\3\2\2\2\26\30\5\6\4\2\27\24" +
+                    "\3\2\2\2\30\33\3\2\2\2\31\27\3\2\2\2\31\32\3\2\2\2\32\5\3\2\2\2\33\31" +
+                    "\3\2\2\2\34\35\5\b\5\2\35\36\7\4\2\2\36#\5\n\6\2\37 \7\3\2\2 \"\5\n\6" +
+                    "\2!\37\3\2\2\2\"%\3\2\2\2#!\3\2\2\2#$\3\2\2\2$&\3\2\2\2%#\3\2\2\2&\'\7" +
+                    "\5\2\2\'\7\3\2\2\2()\7\t\2\2)\t\3\2\2\2*\66\5\f\7\2+,\5\f\7\2,-\7\6\2" +
+                    "\2-\62\5\16\b\2./\7\7\2\2/\61\5\16\b\2\60.\3\2\2\2\61\64\3\2\2\2\62\60" +
+                    "\3\2\2\2\62\63\3\2\2\2\63\66\3\2\2\2\64\62\3\2\2\2\65*\3\2\2\2\65+\3\2" +
+                    "\2\2\66\13\3\2\2\2\678\7\t\2\28\r\3\2\2\29:\t\2\2\2:\17\3\2\2\2\7\24\31" +
+                    "#\62\65";
     public static final ATN _ATN =
             new ATNDeserializer().deserialize(_serializedATN.toCharArray());
     protected static final DFA[] _decisionToDFA;
@@ -68,7 +70,8 @@ public class CQLCFParser extends Parser {
             null, "';'", "'{'", "'}'", "':'", "','"
     };
     private static final String[] _SYMBOLIC_NAMES = {
-            null, null, null, null, null, null, "LOWERCASE_STRING", "STRING_AND_NUMBERS_UPPERCASE"
+            null, null, null, null, null, null, "COMPARE_FIELDS", "LOWERCASE_STRING",
+            "STRING_AND_NUMBERS_UPPERCASE"
     };
     public static final Vocabulary VOCABULARY = new VocabularyImpl(_LITERAL_NAMES, _SYMBOLIC_NAMES);
 
@@ -331,11 +334,17 @@ public class CQLCFParser extends Parser {
     public final ParameterContext parameter() throws RecognitionException {
         ParameterContext _localctx = new ParameterContext(_ctx, getState());
         enterRule(_localctx, 12, RULE_parameter);
+        int _la;
         try {
             enterOuterAlt(_localctx, 1);
             {
                 setState(55);
-                match(STRING_AND_NUMBERS_UPPERCASE);
+                _la = _input.LA(1);
+                if (!(_la == COMPARE_FIELDS || _la == STRING_AND_NUMBERS_UPPERCASE)) {
+                    _errHandler.recoverInline(this);
+                } else {
+                    consume();
+                }
             }
         } catch (RecognitionException re) {
             _localctx.exception = re;
@@ -526,6 +535,10 @@ public class CQLCFParser extends Parser {
             return getToken(CQLCFParser.STRING_AND_NUMBERS_UPPERCASE, 0);
         }
 
+        public TerminalNode COMPARE_FIELDS() {
+            return getToken(CQLCFParser.COMPARE_FIELDS, 0);
+        }
+
         @Override
         public int getRuleIndex() {
             return RULE_parameter;
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.cql
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+/**
+ * Unit test for the cql cache
+ * @author f.lautenschlager
+ */
+class CQLCacheTest extends Specification {
+
+    def "test hits and misses"() {
+        given:
+        def cache = new CQLCache<String>(10)
+        def loads = 0
+        def loader = { key -> loads++; key.toUpperCase() }
+
+        when:
+        def first = cache.get("metric{max}", loader)
+        def second = cache.get("metric{max}", loader)
+        def third = cache.get("metric{min}", loader)
+
+        then:
+        first == "METRIC{MAX}"
+        second.is(first)
+        third == "METRIC{MIN}"
+        loads == 2
+        cache.hits() == 1
+        cache.misses() == 2
+        cache.size() == 2
+    }
+
+    def "test least recently used entry is evicted"() {
+        given:
+        def cache = new CQLCache<String>(2)
+        def loader = { key -> key }
+
+        when:
+        cache.get("a", loader)
+        cache.get("b", loader)
+        cache.get("a", loader)
+        cache.get("c", loader)
+        cache.get("a", loader)
+        cache.get("b", loader)
+
+        then:
+        cache.size() == 2
+        cache.hits() == 2
+        cache.misses() == 4
+    }
+
+    def "test disabled cache"() {
+        given:
+        def cache = new CQLCache<String>(0)
+        def loader = { key -> key }
+
+        when:
+        cache.get("a", loader)
+        cache.get("a", loader)
+
+        then:
+        cache.size() == 0
+        cache.hits() == 0
+        cache.misses() == 2
+    }
+
+    def "test failed loads are not cached"() {
+        given:
+        def cache = new CQLCache<String>(2)
+
+        when:
+        cache.get("a", { key -> throw new CQLException("invalid") })
+
+        then:
+        thrown CQLException
+        cache.size() == 0
+    }
+
+    def "test concurrent access with 32 callers"() {
+        given:
+        //more keys than entries, hence the callers evict each other's entries
+        def cache = new CQLCache<String>(8)
+        def keys = (0..<16).collect { "metric{p:0.$it}" as String }
+        def pool = Executors.newFixedThreadPool(32)
+        def start = new CountDownLatch(1)
+
+        when:
+        def futures = (0..<32).collect { caller ->
+            pool.submit({
+                start.await()
+                def mismatches = 0
+                1000.times {
+                    def key = keys[(caller * 7 + it) % keys.size()]
+                    if (cache.get(key, { k -> k.toUpperCase() }) != key.toUpperCase()) {
+                        mismatches++
+                    }
+                }
+                mismatches
+            } as Callable<Integer>)
+        }
+        start.countDown()
+        def mismatches = futures.collect { it.get(60, TimeUnit.SECONDS) }.sum()
+        pool.shutdown()
+
+        then:
+        mismatches == 0
+        cache.size() <= 8
+        cache.hits() + cache.misses() == 32 * 1000
+        cache.misses() >= keys.size()
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.cql
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit test for the group function
+ * @author f.lautenschlager
+ */
+class CQLGroupFunctionTest extends Specification {
+
+    @Unroll
+    def "test cql group function #group"() {
+        given:
+        def fields = [host: "laptop", name: "cpu", type: "metric"]
+
+        when:
+        def groupFunction = new CQLGroupFunction(group)
+
+        then:
+        groupFunction.apply(fields) == key
+        groupFunction.involvedFields() == involvedFields as String[]
+        groupFunction.getAggregation() == aggregation
+        groupFunction.getPercentile() == percentile
+        groupFunction.getBucket() == bucket
+
+        where:
+        group << ["name,type;SUM", "host;avg;5,MINUTES", "name;P:0.99;1,seconds", "name;count"]
+        key << ["cpu-metric", "laptop", "cpu", "cpu"]
+        involvedFields << [["name", "type"], ["host"], ["name"], ["name"]]
+        aggregation << ["SUM", "AVG", "P", "COUNT"]
+        percentile << [0, 0, 0.99, 0]
+        bucket << [1, 300000, 1000, 1]
+    }
+
+    @Unroll
+    def "test invalid group #group"() {
+        when:
+        new CQLGroupFunction(group)
+
+        then:
+        thrown CQLException
+
+        where:
+        group << ["name", ";SUM", "name;MEDIAN", "name;SUM:1", "name;P", "name;P:1.5", "name;P:x",
+                  "name;SUM;5", "name;SUM;5,EONS", "name;SUM;0,MINUTES", "name;SUM;1,MINUTES;AVG"]
+    }
+
+    def "test parse cg"() {
+        given:
+        def cql = new CQL(null, null)
+
+        expect:
+        cql.parseCG(null) == null
+        cql.parseCG("") == null
+        cql.parseCG("name;SUM").getAggregation() == "SUM"
+    }
+}
@@ -31,6 +31,11 @@ import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Unroll
 
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
 class CQLTest extends Specification {
 
 
@@ -153,15 +158,18 @@ class CQLTest extends Specification {
                "metric{add:10}",
                "metric{sub:10}",
                "metric{timeshift:10,SECONDS}",
-               "metric{smovavg:10}"
+               "metric{smovavg:10}",
+               "metric{bucket:5,MINUTES,AVG}",
+               "metric{downsample:1000,M4}"
         ]
 
         expectedQueryName << ["vector", "scale", "divide", "top",
                               "bottom", "movavg", "add", "sub",
-                              "timeshift", "smovavg"]
+                              "timeshift", "smovavg", "bucket", "downsample"]
         expectedArgs << [["tolerance=0.01"], ["value=4.0"], ["value=4.0"], ["value=10"],
                          ["value=10"], ["timeSpan=10", "unit=MINUTES"], ["value=10.0"], ["value=10.0"],
-                         ["amount=10", "unit=SECONDS"], ["samples=10"]]
+                         ["amount=10", "unit=SECONDS"], ["samples=10"], ["timeSpan=5", "unit=MINUTES", "aggregation=AVG"],
+                         ["points=1000", "algorithm=M4"]]
     }
 
     @Unroll
@@ -189,17 +197,19 @@ class CQLTest extends Specification {
                "metric{diff}",
                "metric{sdiff}",
                "metric{p:0.4}",
-               "metric{integral}"
+               "metric{integral}",
+               "metric{p:0.99,APPROX}",
+               "metric{integral:TRAPEZOID}"
         ]
 
         expectedQueryName << ["min", "max", "avg", "dev", "sum",
                               "count", "first", "last", "range",
-                              "diff", "sdiff", "p", "integral"]
+                              "diff", "sdiff", "p", "integral", "p", "integral"]
         expectedArguments << [new String[0], new String[0], new String[0], new String[0], new String[0], new String[0], new String[0],
-                              new String[0], new String[0], new String[0], new String[0], ["percentile=0.4"] as String[], new String[0]]
+                              new String[0], new String[0], new String[0], new String[0], ["percentile=0.4"] as String[], new String[0],
+                              ["percentile=0.99", "approximate=true"] as String[], ["rule=trapezoid"] as String[]]
     }
 
-    //Fix this: Implement fastdtw
     @Unroll
     def "test chronix function of type analysis: #cf"() {
         given:
@@ -216,19 +226,127 @@ class CQLTest extends Specification {
         where:
         cf << ["metric{trend}",
                "metric{outlier}",
-               "metric{frequency:10,6}"
-               /*["metric{fastdtw:(metric:load* AND group:(A OR B)),5,0.4}"] as String[],
-               ["metric{fastdtw:metric:load* AND group:(A OR B),5,0.4}"] as String[]*/
+               "metric{frequency:10,6}",
+               "metric{fastdtw:compare(host=production-01),5,0.4}",
+               "metric{fastdtw:compare(name=\\Load\\avg;host=production-01),5,0.4;max}"
         ]
 
-        expectedQueryName << ["trend", "outlier", "frequency"/*,
-                              "fastdtw", "fastdtw"*/]
+        expectedQueryName << ["trend", "outlier", "frequency", "fastdtw", "fastdtw"]
         expectedValue << [new String[0], new String[0],
-                          ["window size=10", "window threshold=6"] as String[]/*,
+                          ["window size=10", "window threshold=6"] as String[],
                           ["search radius=5", "max warping cost=0.4", "distance function=EUCLIDEAN"] as String[],
-                          ["search radius=5", "max warping cost=0.4", "distance function=EUCLIDEAN"] as String[]*/]
+                          ["search radius=5", "max warping cost=0.4", "distance function=EUCLIDEAN"] as String[]]
+
+        subQuery << [null, null, null, null, null]
+        needSubQuery << [false, false, false, false, false]
+    }
+
+    def "test cached parse results contain new function instances"() {
+        given:
+        def cql = new CQL(TYPES, FUNCTIONS)
+
+        when:
+        def first = cql.parseCF("metric{max;p:0.99;noop}").getChronixFunctionsForType(new MetricType())
+        def second = cql.parseCF("metric{max;p:0.99;noop}").getChronixFunctionsForType(new MetricType())
+
+        then:
+        cql.getCFCacheHits() == 1
+        cql.getCFCacheMisses() == 1
+        first.getAggregations() == second.getAggregations()
+        first.getTransformations()[0].getQueryName() == "noop"
+        !first.getTransformations()[0].is(second.getTransformations()[0])
+        first.getAggregations().every { function -> second.getAggregations().every { !it.is(function) } }
+        first.getAggregations().find { it.queryName == "p" }.getArguments() == ["percentile=0.99"] as String[]
+    }
+
+    def "test cached join functions"() {
+        given:
+        def cql = new CQL(TYPES, FUNCTIONS)
+
+        when:
+        def first = cql.parseCJ("name,host")
+        def second = cql.parseCJ("name,host")
+        def defaultJoin = cql.parseCJ(null)
+        def emptyJoin = cql.parseCJ("")
 
-        subQuery << [null, null, null]//, "metric:load* AND group:(A OR B)", "metric:load* AND group:(A OR B)"]
-        needSubQuery << [false, false, false]//, true, true]
+        then:
+        first.is(second)
+        defaultJoin.is(emptyJoin)
+        CQLJoinFunction.isDefaultJoinFunction(defaultJoin)
+        cql.getCJCacheHits() == 2
+        cql.getCJCacheMisses() == 2
+    }
+
+    def "test invalid cf parameters are not cached"() {
+        given:
+        def cql = new CQL(TYPES, FUNCTIONS)
+
+        when:
+        2.times {
+            try {
+                cql.parseCF("metric{UNKNOWN:127}")
+            } catch (CQLException ignored) {
+            }
+        }
+
+        then:
+        cql.getCFCacheHits() == 0
+        cql.getCFCacheMisses() == 2
+    }
+
+    def "test disabled cache"() {
+        given:
+        def cql = new CQL(TYPES, FUNCTIONS, 0)
+
+        when:
+        cql.parseCF("metric{max}")
+        cql.parseCF("metric{max}")
+
+        then:
+        cql.getCFCacheHits() == 0
+        cql.getCFCacheMisses() == 2
+    }
+
+    def "test concurrent parsing with 32 callers"() {
+        given:
+        //without a cache, hence every call is parsed
+        def cql = new CQL(TYPES, FUNCTIONS, 0)
+        def queries = ["metric{min;max;avg;top:10;trend}",
+                       "metric{p:0.99;movavg:10,MINUTES;frequency:10,6}",
+                       "metric{add:10;scale:4;sub:10;divide:4;timeshift:10,SECONDS}",
+                       "metric{count;first;last;range;diff;sdiff;integral;outlier}",
+                       "metric{vector:0.01;bottom:10;smovavg:10;derivative;distinct}"]
+        def expected = queries.collect { new CQL(TYPES, FUNCTIONS, 0).parseCF(it).getChronixFunctionsForType(new MetricType()) }
+        def pool = Executors.newFixedThreadPool(32)
+        def start = new CountDownLatch(1)
+
+        when:
+        def futures = (0..<32).collect { caller ->
+            pool.submit({
+                start.await()
+                def mismatches = 0
+                500.times {
+                    def index = (caller + it) % queries.size()
+                    def functions = cql.parseCF(queries[index]).getChronixFunctionsForType(new MetricType())
+                    if (functions.getAggregations() != expected[index].getAggregations()
+                            || functions.getAnalyses() != expected[index].getAnalyses()
+                            || functions.getTransformations() != expected[index].getTransformations()) {
+                        mismatches++
+                    }
+                    if (cql.parseCJ("name,host").involvedFields() != ["name", "host"] as String[]) {
+                        mismatches++
+                    }
+                }
+                mismatches
+            } as Callable<Integer>)
+        }
+        start.countDown()
+        def mismatches = futures.collect { it.get(60, TimeUnit.SECONDS) }.sum()
+        pool.shutdown()
+
+        then:
+        mismatches == 0
+        cql.getCFCacheHits() == 0
+        cql.getCFCacheMisses() == 32 * 500
     }
 }
@@ -145,7 +145,7 @@ class ChronixClientTestIT extends Specification {
         "first"     | null     | 0.17
         "last"      | null     | 0.84
         "range"     | null     | 5.43
-        "integral"  | null     | 5701.709725985112
+        "integral"  | null     | 355437930.9731033
 
     }
 
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.math;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the heap based top / bottom n selection with the former implementation that sorts boxed pairs.
+ * Run it with: gradle :chronix-server-type-metric:jmh
+ *
+ * @author f.lautenschlager
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NElementsBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int size;
+
+    @Param({"10"})
+    private int n;
+
+    private long[] timestamps;
+    private double[] values;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        timestamps = new long[size];
+        values = new double[size];
+        for (int i = 0; i < size; i++) {
+            timestamps[i] = i * 1000L;
+            values[i] = random.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public NElements.NElementsResult topHeap() {
+        return NElements.calc(NElements.NElementsCalculation.TOP, n, timestamps, values);
+    }
+
+    @Benchmark
+    public NElements.NElementsResult bottomHeap() {
+        return NElements.calc(NElements.NElementsCalculation.BOTTOM, n, timestamps, values);
+    }
+
+    @Benchmark
+    public NElements.NElementsResult topSortedPairs() {
+        return sortedPairs(true);
+    }
+
+    @Benchmark
+    public NElements.NElementsResult bottomSortedPairs() {
+        return sortedPairs(false);
+    }
+
+    /**
+     * The former implementation: box every point into a pair and sort all of them
+     */
+    private NElements.NElementsResult sortedPairs(boolean top) {
+        BoxedPair[] pairs = new BoxedPair[values.length];
+        for (int i = 0; i < values.length; i++) {
+            pairs[i] = new BoxedPair(i, values[i]);
+        }
+        Arrays.sort(pairs);
+
+        double[] nValues = new double[n];
+        long[] nTimes = new long[n];
+        for (int i = 0; i < n; i++) {
+            BoxedPair pair = top ? pairs[pairs.length - 1 - i] : pairs[i];
+            nValues[i] = pair.value;
+            nTimes[i] = timestamps[pair.index];
+        }
+        return new NElements.NElementsResult(nTimes, nValues);
+    }
+
+    private static final class BoxedPair implements Comparable<BoxedPair> {
+        private final int index;
+        private final double value;
+
+        BoxedPair(int index, double value) {
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(BoxedPair o) {
+            if (value < o.value) {
+                return -1;
+            }
+            if (value > o.value) {
+                return 1;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.converter.common.LongList;
+import de.qaware.chronix.server.functions.FunctionCtx;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows that the distinct transformation scales linearly with the number of points.
+ * Half of the values are distinct. Run it with: gradle :chronix-server-type-metric:jmh
+ *
+ * @author f.lautenschlager
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DistinctBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    private long[] timestamps;
+    private double[] values;
+
+    private List<ChronixTimeSeries<MetricTimeSeries>> timeSeries;
+
+    @Setup(Level.Trial)
+    public void createPoints() {
+        Random random = new Random(42);
+        timestamps = new long[size];
+        values = new double[size];
+        for (int i = 0; i < size; i++) {
+            timestamps[i] = i * 1000L;
+            values[i] = random.nextInt(size / 2 + 1);
+        }
+    }
+
+    /**
+     * The transformation changes the time series, hence every invocation gets a new one
+     */
+    @Setup(Level.Invocation)
+    public void createTimeSeries() {
+        MetricTimeSeries metricTimeSeries = new MetricTimeSeries.Builder("distinct", "metric")
+                .points(new LongList(timestamps, timestamps.length), new DoubleList(values, values.length))
+                .build();
+        timeSeries = Collections.singletonList(new ChronixMetricTimeSeries("distinct", metricTimeSeries));
+    }
+
+    @Benchmark
+    public FunctionCtx distinct() {
+        FunctionCtx functionCtx = new FunctionCtx(0, 0, 1);
+        new Distinct().execute(timeSeries, functionCtx);
+        return functionCtx;
+    }
+}
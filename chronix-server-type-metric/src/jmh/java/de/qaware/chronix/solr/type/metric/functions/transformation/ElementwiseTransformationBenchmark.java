@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.converter.common.LongList;
+import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.server.functions.FunctionCtx;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the in-place element-wise transformations with the former implementation
+ * that copies the points, clears the time series and adds the points again.
+ * The transformations change the values of the same time series in every invocation, that does not change the cost.
+ * Run it with: gradle :chronix-server-type-metric:jmh
+ *
+ * @author f.lautenschlager
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ElementwiseTransformationBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    private int size;
+
+    private List<ChronixTimeSeries<MetricTimeSeries>> timeSeries;
+
+    private Add add;
+    private Scale scale;
+    private Divide divide;
+    private ChronixTransformation<MetricTimeSeries> fused;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long[] timestamps = new long[size];
+        double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            timestamps[i] = i * 1000L;
+            values[i] = random.nextGaussian();
+        }
+        MetricTimeSeries metricTimeSeries = new MetricTimeSeries.Builder("elementwise", "metric")
+                .points(new LongList(timestamps, size), new DoubleList(values, size))
+                .build();
+        timeSeries = Collections.singletonList(new ChronixMetricTimeSeries("elementwise", metricTimeSeries));
+
+        add = new Add();
+        add.setArguments(new String[]{"0.5"});
+        scale = new Scale();
+        scale.setArguments(new String[]{"1.5"});
+        divide = new Divide();
+        divide.setArguments(new String[]{"1.5"});
+        fused = new FusedTransformation(Arrays.asList(add, scale, divide));
+    }
+
+    @Benchmark
+    public FunctionCtx addInPlace() {
+        FunctionCtx functionCtx = new FunctionCtx(0, 0, 1);
+        add.execute(timeSeries, functionCtx);
+        return functionCtx;
+    }
+
+    @Benchmark
+    public FunctionCtx addCopying() {
+        MetricTimeSeries metricTimeSeries = timeSeries.get(0).getRawTimeSeries();
+        long[] timestamps = metricTimeSeries.getTimestampsAsArray();
+        double[] values = metricTimeSeries.getValuesAsArray();
+        metricTimeSeries.clear();
+        for (int i = 0; i < values.length; i++) {
+            values[i] += 0.5;
+        }
+        metricTimeSeries.addAll(timestamps, values);
+
+        FunctionCtx functionCtx = new FunctionCtx(0, 0, 1);
+        functionCtx.add(add, timeSeries.get(0).getJoinKey());
+        return functionCtx;
+    }
+
+    @Benchmark
+    public FunctionCtx chainInPlace() {
+        FunctionCtx functionCtx = new FunctionCtx(0, 0, 3);
+        add.execute(timeSeries, functionCtx);
+        scale.execute(timeSeries, functionCtx);
+        divide.execute(timeSeries, functionCtx);
+        return functionCtx;
+    }
+
+    @Benchmark
+    public FunctionCtx chainFused() {
+        FunctionCtx functionCtx = new FunctionCtx(0, 0, 3);
+        fused.execute(timeSeries, functionCtx);
+        return functionCtx;
+    }
+}
@@ -25,7 +25,9 @@ import java.nio.charset.Charset;
 import java.util.Map;
 
 /**
- * Implementation of the chronix time series interface for the metric time series
+ * Implementation of the chronix time series interface for the metric time series.
+ * The time series may carry the {@link ChunkSummary} of records that were not decoded or the {@link Rollup}
+ * of buckets that were not decoded, then the wrapped time series only holds the points of the decoded records.
  *
  * @author f.lautenschlager
  */
@@ -33,13 +35,36 @@ public class ChronixMetricTimeSeries implements ChronixTimeSeries<MetricTimeSeri
 
     private MetricTimeSeries timeSeries;
     private String joinKey;
+    private ChunkSummary summary;
+    private Rollup rollup;
 
     /**
      * @param metricTimeSeries the wrapped time series
      */
     public ChronixMetricTimeSeries(String joinKey, MetricTimeSeries metricTimeSeries) {
+        this(joinKey, metricTimeSeries, null);
+    }
+
+    /**
+     * @param joinKey          the join key
+     * @param metricTimeSeries the wrapped time series with the points of the decoded records
+     * @param summary          the summary of the records that were not decoded, may be null
+     */
+    public ChronixMetricTimeSeries(String joinKey, MetricTimeSeries metricTimeSeries, ChunkSummary summary) {
+        this(joinKey, metricTimeSeries, summary, null);
+    }
+
+    /**
+     * @param joinKey          the join key
+     * @param metricTimeSeries the wrapped time series with the points of the decoded records
+     * @param summary          the summary of the records that were not decoded, may be null
+     * @param rollup           the rollup of the buckets that were not decoded, may be null
+     */
+    public ChronixMetricTimeSeries(String joinKey, MetricTimeSeries metricTimeSeries, ChunkSummary summary, Rollup rollup) {
         timeSeries = metricTimeSeries;
         this.joinKey = joinKey;
+        this.summary = summary;
+        this.rollup = rollup;
     }
 
     @Override
@@ -54,12 +79,32 @@ public class ChronixMetricTimeSeries implements ChronixTimeSeries<MetricTimeSeri
 
     @Override
     public long getStart() {
-        return timeSeries.getStart();
+        if (summary == null && rollup == null) {
+            return timeSeries.getStart();
+        }
+        long start = timeSeries.isEmpty() ? Long.MAX_VALUE : timeSeries.getStart();
+        if (summary != null) {
+            start = Math.min(start, summary.getStart());
+        }
+        if (rollup != null && !rollup.isEmpty()) {
+            start = Math.min(start, rollup.getStart());
+        }
+        return start;
     }
 
     @Override
     public long getEnd() {
-        return timeSeries.getEnd();
+        if (summary == null && rollup == null) {
+            return timeSeries.getEnd();
+        }
+        long end = timeSeries.isEmpty() ? Long.MIN_VALUE : timeSeries.getEnd();
+        if (summary != null) {
+            end = Math.max(end, summary.getEnd());
+        }
+        if (rollup != null && !rollup.isEmpty()) {
+            end = Math.max(end, rollup.getTime(rollup.size() - 1));
+        }
+        return end;
     }
 
     @Override
@@ -85,6 +130,16 @@ public class ChronixMetricTimeSeries implements ChronixTimeSeries<MetricTimeSeri
         return Compression.compress(data);
     }
 
+    @Override
+    public byte[] dataAsColumns() {
+        return ColumnarEncoder.encode(timeSeries);
+    }
+
+    @Override
+    public int size() {
+        return timeSeries.size();
+    }
+
     @Override
     public String getJoinKey() {
         return joinKey;
@@ -94,4 +149,25 @@ public class ChronixMetricTimeSeries implements ChronixTimeSeries<MetricTimeSeri
     public MetricTimeSeries getRawTimeSeries() {
         return timeSeries;
     }
+
+    /**
+     * @return the summary of the records that are not part of the raw time series or null if all records were decoded
+     */
+    public ChunkSummary getSummary() {
+        return summary;
+    }
+
+    /**
+     * @return the rollup of the buckets that are not part of the raw time series or null if all records were decoded
+     */
+    public Rollup getRollup() {
+        return rollup;
+    }
+
+    /**
+     * Removes the rollup, e.g. after its buckets were added to the raw time series
+     */
+    public void removeRollup() {
+        this.rollup = null;
+    }
 }
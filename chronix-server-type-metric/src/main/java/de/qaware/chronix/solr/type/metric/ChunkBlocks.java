@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.Schema;
+import de.qaware.chronix.converter.common.Compression;
+import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The block layout of the data of a metric record. The sorted points of a record are split into blocks
+ * with a fixed number of points. Every block is encoded on its own, like the data of a record, and the blocks
+ * are concatenated. The block index holds the first timestamp, the last timestamp and the end offset of every block.
+ * Hence a query only decodes the blocks that overlap its range.
+ * <p>
+ * The block layout is written by the {@link ChunkBlocksUpdateProcessorFactory}. A record without a block index
+ * holds a single encoded chunk and is decoded completely, e.g. a record that was written before.
+ * The block layout is only readable by the metric type, see {@link #unblock(Map)}.
+ *
+ * @author f.lautenschlager
+ */
+public final class ChunkBlocks {
+
+    /**
+     * The stored field that holds the block index of a record
+     */
+    public static final String INDEX = "data_blocks";
+
+    /**
+     * The default number of points of a block
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+
+    //the first timestamp, the last timestamp and the end offset of a block
+    private static final int ENTRY_BYTES = 3 * Long.BYTES;
+
+    private final byte[] data;
+    private final byte[] index;
+
+    private ChunkBlocks(byte[] data, byte[] index) {
+        this.data = data;
+        this.index = index;
+    }
+
+    /**
+     * Encodes the given chunk in blocks of the given number of points
+     *
+     * @param chunk     the sorted points of a chunk
+     * @param blockSize the number of points of a block
+     * @return the concatenated blocks and their index
+     */
+    public static ChunkBlocks encode(MetricTimeSeries chunk, int blockSize) {
+        int blocks = (chunk.size() + blockSize - 1) / blockSize;
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteBuffer index = ByteBuffer.allocate(blocks * ENTRY_BYTES);
+
+        for (int from = 0; from < chunk.size(); from += blockSize) {
+            int to = Math.min(from + blockSize, chunk.size());
+            MetricTimeSeries.Builder block = new MetricTimeSeries.Builder(null, null);
+            for (int i = from; i < to; i++) {
+                block.point(chunk.getTime(i), chunk.getValue(i));
+            }
+            byte[] encoded = Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(block.build().points().iterator()));
+            data.write(encoded, 0, encoded.length);
+
+            index.putLong(chunk.getTime(from));
+            index.putLong(chunk.getTime(to - 1));
+            index.putLong(data.size());
+        }
+        return new ChunkBlocks(data.toByteArray(), index.array());
+    }
+
+    /**
+     * Decodes the blocks that overlap the query range and adds their points within the query range to the given builder
+     *
+     * @param data       the concatenated blocks
+     * @param index      the block index
+     * @param queryStart the query start
+     * @param queryEnd   the query end
+     * @param builder    the builder of the time series the points are added to
+     * @return the number of decoded blocks
+     */
+    public static int decode(byte[] data, byte[] index, long queryStart, long queryEnd, MetricTimeSeries.Builder builder) {
+        ByteBuffer entries = ByteBuffer.wrap(index);
+        int decoded = 0;
+        long offset = 0;
+        while (entries.remaining() >= ENTRY_BYTES) {
+            long first = entries.getLong();
+            long last = entries.getLong();
+            long end = entries.getLong();
+
+            if (SolrDocumentBuilder.overlaps(first, last, queryStart, queryEnd)) {
+                SolrDocumentBuilder.decode(Arrays.copyOfRange(data, (int) offset, (int) end), first, last, queryStart, queryEnd, builder);
+                decoded++;
+            }
+            offset = end;
+        }
+        return decoded;
+    }
+
+    /**
+     * Replaces the block layout of the given record with a single encoded chunk and removes the block index.
+     * The record is readable by the chronix converters afterwards, e.g. if it is returned to a client.
+     *
+     * @param record the stored fields of a record, the data keeps its type (byte[] or ByteBuffer)
+     */
+    public static void unblock(Map<String, Object> record) {
+        Object index = record.remove(INDEX);
+        Object data = record.get(Schema.DATA);
+        if (index == null || data == null) {
+            return;
+        }
+        MetricTimeSeries.Builder chunk = new MetricTimeSeries.Builder(null, null);
+        decode(bytes(data), bytes(index), Long.MIN_VALUE, Long.MAX_VALUE, chunk);
+        byte[] single = Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(chunk.build().points().iterator()));
+        record.put(Schema.DATA, data instanceof ByteBuffer ? ByteBuffer.wrap(single) : single);
+    }
+
+    /**
+     * @param record the stored fields of a record
+     * @return true if the data of the record is stored in blocks
+     */
+    public static boolean isIndexed(Map<String, Object> record) {
+        return record.get(INDEX) != null;
+    }
+
+    /**
+     * @param field the field name
+     * @return true if the field is the block index and hence not an attribute of the time series
+     */
+    public static boolean isIndexField(String field) {
+        return INDEX.equals(field);
+    }
+
+    /**
+     * @param value a binary field value
+     * @return the bytes of the value, null if it is not binary
+     */
+    static byte[] bytes(Object value) {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+                return buffer.array();
+            }
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        return null;
+    }
+
+    /**
+     * @return the concatenated blocks
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return the block index
+     */
+    public byte[] getIndex() {
+        return index;
+    }
+}
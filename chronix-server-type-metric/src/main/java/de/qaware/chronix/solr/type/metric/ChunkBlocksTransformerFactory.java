@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.Schema;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.SolrParams;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.transform.DocTransformer;
+import org.apache.solr.response.transform.TransformerFactory;
+
+/**
+ * Returns the records stored in {@link ChunkBlocks} in the single chunk layout.
+ * Hence the clients and their converters do not know the block layout.
+ * <p>
+ * Register the transformer in the solrconfig.xml, the query handler adds it to the plain searches that return the data
+ * if the schema declares the block index, e.g.:
+ * <pre>
+ * &lt;transformer name="blocks" class="de.qaware.chronix.solr.type.metric.ChunkBlocksTransformerFactory"/&gt;
+ * </pre>
+ *
+ * @author f.lautenschlager
+ */
+public class ChunkBlocksTransformerFactory extends TransformerFactory {
+
+    @Override
+    public DocTransformer create(String field, SolrParams params, SolrQueryRequest req) {
+        return new ChunkBlocksTransformer(field);
+    }
+
+    private static final class ChunkBlocksTransformer extends DocTransformer {
+
+        private final String name;
+
+        private ChunkBlocksTransformer(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String[] getExtraRequestFields() {
+            return new String[]{ChunkBlocks.INDEX};
+        }
+
+        @Override
+        public void transform(SolrDocument doc, int docid) {
+            //a record without its data, e.g. fl=id,name, is returned as it is
+            if (doc.getFieldValue(Schema.DATA) == null) {
+                doc.removeFields(ChunkBlocks.INDEX);
+                return;
+            }
+            ChunkBlocks.unblock(doc);
+        }
+    }
+}
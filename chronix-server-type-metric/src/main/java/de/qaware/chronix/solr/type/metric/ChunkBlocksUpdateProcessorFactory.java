@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.Schema;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Stores the data of every added metric record with more points than a block in {@link ChunkBlocks}.
+ * A query decodes only the blocks of such a record that overlap its range.
+ * The blocks are only written if the start and the end of the record are the first and the last timestamp of its points,
+ * otherwise the record keeps a single encoded chunk and is decoded completely.
+ * <p>
+ * The block layout is opt-in: the processor does not change the records unless the schema declares the block index
+ * ({@link ChunkBlocks#INDEX}). Records that were added before keep their single chunk until they are added again,
+ * e.g. by the compaction. With the argument unblock the processor stores the records that are added again in a single
+ * chunk, hence the block index can be removed from the schema afterwards.
+ * <p>
+ * Add the processor to the update chain of the ingestion and compaction handlers after the
+ * {@link ChunkSummaryUpdateProcessorFactory}, e.g.:
+ * <pre>
+ * &lt;processor class="de.qaware.chronix.solr.type.metric.ChunkBlocksUpdateProcessorFactory"&gt;
+ *     &lt;int name="blockSize"&gt;256&lt;/int&gt;
+ *     &lt;bool name="unblock"&gt;false&lt;/bool&gt;
+ * &lt;/processor&gt;
+ * </pre>
+ * The search handler has to return the records in the single chunk layout, see {@link ChunkBlocksTransformerFactory}.
+ *
+ * @author f.lautenschlager
+ */
+public class ChunkBlocksUpdateProcessorFactory extends UpdateRequestProcessorFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkBlocksUpdateProcessorFactory.class);
+    private static final String METRIC = "metric";
+    private static final String BLOCK_SIZE = "blockSize";
+    private static final String UNBLOCK = "unblock";
+
+    private int blockSize = ChunkBlocks.DEFAULT_BLOCK_SIZE;
+    private boolean unblock;
+
+    @Override
+    public void init(NamedList args) {
+        super.init(args);
+        Object size = args.get(BLOCK_SIZE);
+        if (size != null) {
+            blockSize = Integer.parseInt(size.toString());
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("The block size has to be positive but is " + blockSize);
+        }
+        Object single = args.get(UNBLOCK);
+        if (single != null) {
+            unblock = Boolean.parseBoolean(single.toString());
+        }
+    }
+
+    @Override
+    public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+        //the schema opts in to the block layout
+        if (req.getSchema().getFieldOrNull(ChunkBlocks.INDEX) == null) {
+            return next;
+        }
+        return new ChunkBlocksUpdateProcessor(next, blockSize, unblock);
+    }
+
+    /**
+     * Stores the data of the given metric record in blocks of the given size
+     *
+     * @param doc       the record
+     * @param blockSize the number of points of a block
+     */
+    static void block(SolrInputDocument doc, int blockSize) {
+        if (!METRIC.equals(doc.getFieldValue(Schema.TYPE))) {
+            return;
+        }
+
+        Object start = doc.getFieldValue(Schema.START);
+        Object end = doc.getFieldValue(Schema.END);
+        byte[] data = ChunkBlocks.bytes(doc.getFieldValue(Schema.DATA));
+        byte[] index = ChunkBlocks.bytes(doc.getFieldValue(ChunkBlocks.INDEX));
+        if (!(start instanceof Number) || !(end instanceof Number) || data == null) {
+            doc.removeField(ChunkBlocks.INDEX);
+            return;
+        }
+        long tsStart = ((Number) start).longValue();
+        long tsEnd = ((Number) end).longValue();
+
+        MetricTimeSeries.Builder builder = new MetricTimeSeries.Builder(null, null);
+        try {
+            if (index != null) {
+                ChunkBlocks.decode(data, index, Long.MIN_VALUE, Long.MAX_VALUE, builder);
+            } else {
+                SolrDocumentBuilder.decode(data, tsStart, tsEnd, Long.MIN_VALUE, Long.MAX_VALUE, builder);
+            }
+        } catch (RuntimeException e) {
+            //The record is indexed anyway. It is decoded like a record without blocks.
+            LOGGER.warn("Could not decode the record '{}' to store it in blocks", doc.getFieldValue(Schema.ID), e);
+            doc.removeField(ChunkBlocks.INDEX);
+            return;
+        }
+
+        MetricTimeSeries chunk = builder.build();
+        chunk.sort();
+        boolean blocked = chunk.size() > blockSize && chunk.getTime(0) == tsStart && chunk.getTime(chunk.size() - 1) == tsEnd;
+        if (blocked) {
+            ChunkBlocks blocks = ChunkBlocks.encode(chunk, blockSize);
+            doc.setField(Schema.DATA, blocks.getData());
+            doc.setField(ChunkBlocks.INDEX, blocks.getIndex());
+        } else if (index != null) {
+            //a record with stale blocks is stored as a single chunk
+            doc.setField(Schema.DATA, ChunkBlocks.encode(chunk, Math.max(1, chunk.size())).getData());
+            doc.removeField(ChunkBlocks.INDEX);
+        }
+    }
+
+    /**
+     * Stores the data of the given metric record that is stored in blocks in a single chunk
+     *
+     * @param doc the record
+     */
+    static void unblock(SolrInputDocument doc) {
+        if (doc.getFieldValue(ChunkBlocks.INDEX) != null) {
+            //no record has more points than the block, hence the blocks are stale
+            block(doc, Integer.MAX_VALUE);
+        }
+    }
+
+    private static final class ChunkBlocksUpdateProcessor extends UpdateRequestProcessor {
+
+        private final int blockSize;
+        private final boolean unblock;
+
+        private ChunkBlocksUpdateProcessor(UpdateRequestProcessor next, int blockSize, boolean unblock) {
+            super(next);
+            this.blockSize = blockSize;
+            this.unblock = unblock;
+        }
+
+        @Override
+        public void processAdd(AddUpdateCommand cmd) throws IOException {
+            if (unblock) {
+                unblock(cmd.getSolrInputDocument());
+            } else {
+                block(cmd.getSolrInputDocument(), blockSize);
+            }
+            super.processAdd(cmd);
+        }
+    }
+}
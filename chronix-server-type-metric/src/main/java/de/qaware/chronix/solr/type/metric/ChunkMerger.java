@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.converter.common.LongList;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the decoded chunks (records) of a time series into a single sorted time series.
+ * Chunks that are appended in order and do not overlap are concatenated. Otherwise the sorted
+ * chunks are merged with a k-way merge (a min heap over the current timestamp of every chunk).
+ * The points are written into lists with the exact capacity, hence the time series never has to be sorted again.
+ * <p>
+ * Overlapping chunks, e.g. late arriving or re-imported data, keep all their points in timestamp order.
+ * Points with equal timestamps keep the order of their chunks. A point of a later chunk is dropped
+ * if an earlier chunk has a point with the same timestamp and value.
+ *
+ * @author f.lautenschlager
+ */
+final class ChunkMerger {
+
+    private final List<long[]> timestamps = new ArrayList<>();
+    private final List<double[]> values = new ArrayList<>();
+    private int points;
+    private boolean ordered = true;
+
+    /**
+     * Adds a decoded chunk. The chunk is sorted if its points are not in order.
+     *
+     * @param chunk the decoded chunk
+     */
+    void add(MetricTimeSeries chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        long[] chunkTimestamps = chunk.getTimestampsAsArray();
+        double[] chunkValues = chunk.getValuesAsArray();
+        if (!isSorted(chunkTimestamps)) {
+            chunk.sort();
+            chunkTimestamps = chunk.getTimestampsAsArray();
+            chunkValues = chunk.getValuesAsArray();
+        }
+
+        if (!timestamps.isEmpty()) {
+            long[] last = timestamps.get(timestamps.size() - 1);
+            ordered &= last[last.length - 1] < chunkTimestamps[0];
+        }
+        timestamps.add(chunkTimestamps);
+        values.add(chunkValues);
+        points += chunkTimestamps.length;
+    }
+
+    private static boolean isSorted(long[] timestamps) {
+        for (int i = 1; i < timestamps.length; i++) {
+            if (timestamps[i] < timestamps[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of added points including the duplicates
+     */
+    int size() {
+        return points;
+    }
+
+    /**
+     * Merges the chunks and sets the points of the given builder
+     *
+     * @param builder the builder of the time series
+     * @return the given builder
+     */
+    MetricTimeSeries.Builder mergeInto(MetricTimeSeries.Builder builder) {
+        if (timestamps.isEmpty()) {
+            return builder;
+        }
+
+        LongList mergedTimestamps = new LongList(points);
+        DoubleList mergedValues = new DoubleList(points);
+
+        if (ordered) {
+            for (int chunk = 0; chunk < timestamps.size(); chunk++) {
+                mergedTimestamps.addAll(timestamps.get(chunk));
+                mergedValues.addAll(values.get(chunk));
+            }
+        } else {
+            merge(mergedTimestamps, mergedValues);
+        }
+        return builder.points(mergedTimestamps, mergedValues);
+    }
+
+    private void merge(LongList mergedTimestamps, DoubleList mergedValues) {
+        int chunks = timestamps.size();
+        long[][] times = timestamps.toArray(new long[chunks][]);
+        double[][] vals = values.toArray(new double[chunks][]);
+        int[] positions = new int[chunks];
+
+        //the heap of the chunks with remaining points ordered by their current timestamp and the chunk order
+        int[] heap = new int[chunks];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            heap[chunk] = chunk;
+            siftUp(heap, chunk, times, positions);
+        }
+        int heapSize = chunks;
+
+        //the points with equal timestamps: [runStart, chunkStart) are from former chunks
+        long runTimestamp = 0;
+        int runStart = -1;
+        int chunkStart = -1;
+        int runChunk = -1;
+
+        while (heapSize > 0) {
+            int chunk = heap[0];
+            long timestamp = times[chunk][positions[chunk]];
+            double value = vals[chunk][positions[chunk]];
+
+            if (runStart < 0 || timestamp != runTimestamp) {
+                runTimestamp = timestamp;
+                runStart = mergedTimestamps.size();
+                chunkStart = runStart;
+                runChunk = chunk;
+            } else if (chunk != runChunk) {
+                chunkStart = mergedTimestamps.size();
+                runChunk = chunk;
+            }
+
+            if (!containsValue(mergedValues, runStart, chunkStart, value)) {
+                mergedTimestamps.add(timestamp);
+                mergedValues.add(value);
+            }
+
+            positions[chunk]++;
+            if (positions[chunk] == times[chunk].length) {
+                heapSize--;
+                heap[0] = heap[heapSize];
+            }
+            siftDown(heap, heapSize, times, positions);
+        }
+    }
+
+    private static boolean containsValue(DoubleList values, int from, int to, double value) {
+        long bits = Double.doubleToLongBits(value);
+        for (int i = from; i < to; i++) {
+            if (Double.doubleToLongBits(values.get(i)) == bits) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the current point of the first chunk is before the one of the second chunk
+     */
+    private static boolean before(int first, int second, long[][] times, int[] positions) {
+        long firstTime = times[first][positions[first]];
+        long secondTime = times[second][positions[second]];
+        return firstTime < secondTime || firstTime == secondTime && first < second;
+    }
+
+    private static void siftUp(int[] heap, int index, long[][] times, int[] positions) {
+        int chunk = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (before(heap[parent], chunk, times, positions)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = chunk;
+    }
+
+    private static void siftDown(int[] heap, int size, long[][] times, int[] positions) {
+        if (size == 0) {
+            return;
+        }
+        int index = 0;
+        int chunk = heap[0];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && before(heap[right], heap[child], times, positions)) {
+                child = right;
+            }
+            if (before(chunk, heap[child], times, positions)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = chunk;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.Schema;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.solr.common.SolrInputDocument;
+
+import java.util.Map;
+
+/**
+ * The summary of the points of a chunk (record): count, minimum, maximum, sum and the first and the last value.
+ * The summary is stored in the fields of the record when it is written, see {@link ChunkSummaryUpdateProcessorFactory}.
+ * Aggregations that only need these values are computed from the summaries of the records that lie completely
+ * within the query range, hence these records are not decompressed.
+ * <p>
+ * The first and the last value belong to the start and the end of the record.
+ * Summaries of several records are combined with {@link #merge(ChunkSummary)}.
+ *
+ * @author f.lautenschlager
+ */
+public final class ChunkSummary {
+
+    /**
+     * The number of points of the chunk
+     */
+    public static final String COUNT = "chunk_count";
+    /**
+     * The minimum value of the chunk
+     */
+    public static final String MIN = "chunk_min";
+    /**
+     * The maximum value of the chunk
+     */
+    public static final String MAX = "chunk_max";
+    /**
+     * The sum of the values of the chunk
+     */
+    public static final String SUM = "chunk_sum";
+    /**
+     * The value at the start of the chunk
+     */
+    public static final String FIRST = "chunk_first";
+    /**
+     * The value at the end of the chunk
+     */
+    public static final String LAST = "chunk_last";
+
+    private static final String[] FIELDS = {COUNT, MIN, MAX, SUM, FIRST, LAST};
+
+    private final long start;
+    private final long end;
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double sum;
+    private final double first;
+    private final double last;
+
+    private ChunkSummary(long start, long end, long count, double min, double max, double sum, double first, double last) {
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Computes the summary of the given chunk. The points do not have to be sorted.
+     * Of several points with the start (end) timestamp the first (last) one is the first (last) value.
+     *
+     * @param chunk the points of a chunk
+     * @return the summary of the chunk or null if the chunk is empty
+     */
+    public static ChunkSummary of(MetricTimeSeries chunk) {
+        if (chunk.isEmpty()) {
+            return null;
+        }
+        long[] timestamps = chunk.getTimestampsAsArray();
+        double[] values = chunk.getValuesAsArray();
+
+        int first = 0;
+        int last = 0;
+        double min = values[0];
+        double max = values[0];
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            double value = values[i];
+            if (timestamps[i] < timestamps[first]) {
+                first = i;
+            }
+            if (timestamps[i] >= timestamps[last]) {
+                last = i;
+            }
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+            sum += value;
+        }
+        return new ChunkSummary(timestamps[first], timestamps[last], values.length, min, max, sum, values[first], values[last]);
+    }
+
+    /**
+     * Reads the summary of the given record
+     *
+     * @param record the stored fields of a record
+     * @return the summary of the record or null if the record has no (complete) summary
+     */
+    public static ChunkSummary read(Map<String, Object> record) {
+        for (String field : FIELDS) {
+            if (!(record.get(field) instanceof Number)) {
+                return null;
+            }
+        }
+        return new ChunkSummary(
+                (long) record.get(Schema.START),
+                (long) record.get(Schema.END),
+                ((Number) record.get(COUNT)).longValue(),
+                ((Number) record.get(MIN)).doubleValue(),
+                ((Number) record.get(MAX)).doubleValue(),
+                ((Number) record.get(SUM)).doubleValue(),
+                ((Number) record.get(FIRST)).doubleValue(),
+                ((Number) record.get(LAST)).doubleValue());
+    }
+
+    /**
+     * Writes the summary into the given document.
+     * The summary has to be computed from the data of the document, as the start and the end are not written.
+     *
+     * @param doc the document of the chunk
+     */
+    public void write(SolrInputDocument doc) {
+        doc.setField(COUNT, count);
+        doc.setField(MIN, min);
+        doc.setField(MAX, max);
+        doc.setField(SUM, sum);
+        doc.setField(FIRST, first);
+        doc.setField(LAST, last);
+    }
+
+    /**
+     * Removes the summary fields from the given document, e.g. the outdated summary of a compacted chunk
+     *
+     * @param doc the document
+     */
+    public static void remove(SolrInputDocument doc) {
+        for (String field : FIELDS) {
+            doc.removeField(field);
+        }
+    }
+
+    /**
+     * @param field the field name
+     * @return true if the field is part of the summary and hence not an attribute of the time series
+     */
+    public static boolean isSummaryField(String field) {
+        for (String summaryField : FIELDS) {
+            if (summaryField.equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the names of the summary fields
+     */
+    public static String[] fields() {
+        return FIELDS.clone();
+    }
+
+    /**
+     * Combines this summary with the summary of a chunk that does not overlap this one.
+     *
+     * @param other the summary of another chunk
+     * @return the summary of both chunks
+     */
+    public ChunkSummary merge(ChunkSummary other) {
+        return new ChunkSummary(
+                Math.min(start, other.start),
+                Math.max(end, other.end),
+                count + other.count,
+                Math.min(min, other.min),
+                Math.max(max, other.max),
+                sum + other.sum,
+                other.start < start ? other.first : first,
+                other.end > end ? other.last : last);
+    }
+
+    /**
+     * @return the timestamp of the first value
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the timestamp of the last value
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the number of points
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return the minimum value
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the maximum value
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return the sum of the values
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the value at the start
+     */
+    public double getFirst() {
+        return first;
+    }
+
+    /**
+     * @return the value at the end
+     */
+    public double getLast() {
+        return last;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.Schema;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.request.SolrQueryRequest;
+import org.apache.solr.response.SolrQueryResponse;
+import org.apache.solr.update.AddUpdateCommand;
+import org.apache.solr.update.processor.UpdateRequestProcessor;
+import org.apache.solr.update.processor.UpdateRequestProcessorFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Writes the {@link ChunkSummary} of every added metric record into its summary fields.
+ * The summary is only written if the start and the end of the record are the first and the last timestamp of its points,
+ * otherwise the summary fields are removed. Hence a record with summary fields always has a valid summary,
+ * e.g. a compacted record does not keep the summary of one of its former records.
+ * <p>
+ * Add the processor to the update chain of the ingestion and compaction handlers, e.g.:
+ * <pre>
+ * &lt;processor class="de.qaware.chronix.solr.type.metric.ChunkSummaryUpdateProcessorFactory"/&gt;
+ * </pre>
+ *
+ * @author f.lautenschlager
+ */
+public class ChunkSummaryUpdateProcessorFactory extends UpdateRequestProcessorFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChunkSummaryUpdateProcessorFactory.class);
+    private static final String METRIC = "metric";
+
+    @Override
+    public UpdateRequestProcessor getInstance(SolrQueryRequest req, SolrQueryResponse rsp, UpdateRequestProcessor next) {
+        return new ChunkSummaryUpdateProcessor(next);
+    }
+
+    /**
+     * Computes the summary of the given metric record and writes it into the record
+     *
+     * @param doc the record
+     */
+    static void summarize(SolrInputDocument doc) {
+        if (!METRIC.equals(doc.getFieldValue(Schema.TYPE))) {
+            return;
+        }
+        ChunkSummary.remove(doc);
+
+        Object start = doc.getFieldValue(Schema.START);
+        Object end = doc.getFieldValue(Schema.END);
+        byte[] data = ChunkBlocks.bytes(doc.getFieldValue(Schema.DATA));
+        byte[] index = ChunkBlocks.bytes(doc.getFieldValue(ChunkBlocks.INDEX));
+        if (!(start instanceof Number) || !(end instanceof Number) || data == null) {
+            return;
+        }
+        long tsStart = ((Number) start).longValue();
+        long tsEnd = ((Number) end).longValue();
+
+        MetricTimeSeries.Builder chunk = new MetricTimeSeries.Builder(null, null);
+        try {
+            if (index != null) {
+                ChunkBlocks.decode(data, index, tsStart, tsEnd, chunk);
+            } else {
+                SolrDocumentBuilder.decode(data, tsStart, tsEnd, tsStart, tsEnd, chunk);
+            }
+        } catch (RuntimeException e) {
+            //The record is indexed anyway. Without a summary it is decoded on every query.
+            LOGGER.warn("Could not decode the record '{}' to compute its summary", doc.getFieldValue(Schema.ID), e);
+            return;
+        }
+
+        ChunkSummary summary = ChunkSummary.of(chunk.build());
+        if (summary != null && summary.getStart() == tsStart && summary.getEnd() == tsEnd) {
+            summary.write(doc);
+        }
+    }
+
+    private static final class ChunkSummaryUpdateProcessor extends UpdateRequestProcessor {
+
+        private ChunkSummaryUpdateProcessor(UpdateRequestProcessor next) {
+            super(next);
+        }
+
+        @Override
+        public void processAdd(AddUpdateCommand cmd) throws IOException {
+            summarize(cmd.getSolrInputDocument());
+            super.processAdd(cmd);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+import java.util.Arrays;
+
+/**
+ * Encodes the points of a metric time series into the columnar binary format of the columnar response writer.
+ * The format is read by the columnar response parser of the chronix client directly into primitive arrays.
+ * All numbers are big endian.
+ * <pre>
+ * int    the number of points n
+ * long   the first timestamp
+ * n - 1  delta-of-delta of the timestamps, zig-zag encoded variable length longs
+ * long   the bits of the first value
+ * n - 1  the bits of a value XOR the bits of its predecessor:
+ *        a control byte (leading zero bytes &lt;&lt; 4 | trailing zero bytes) followed by the remaining bytes,
+ *        0x80 without further bytes if the value is equal to its predecessor
+ * </pre>
+ * Regular timestamps need a single byte per point. It is a byte aligned variant of the Gorilla encoding,
+ * hence it is cheap to encode and decode.
+ *
+ * @author f.lautenschlager
+ */
+final class ColumnarEncoder {
+
+    /**
+     * The control byte of a value that is equal to its predecessor
+     */
+    static final int EQUAL_VALUE = 0x80;
+
+    private byte[] buffer;
+    private int position;
+
+    private ColumnarEncoder(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Encodes the points of the given time series in their current order
+     *
+     * @param timeSeries the time series
+     * @return the encoded points
+     */
+    static byte[] encode(MetricTimeSeries timeSeries) {
+        int size = timeSeries.size();
+        //regular time series need a byte per timestamp and a few bytes per value
+        ColumnarEncoder encoder = new ColumnarEncoder(20 + size * 6);
+        encoder.writeInt(size);
+        if (size == 0) {
+            return encoder.toByteArray();
+        }
+
+        long previousTimestamp = timeSeries.getTime(0);
+        long previousDelta = 0;
+        encoder.writeLong(previousTimestamp);
+        for (int i = 1; i < size; i++) {
+            long timestamp = timeSeries.getTime(i);
+            long delta = timestamp - previousTimestamp;
+            encoder.writeVarLong(delta - previousDelta);
+            previousDelta = delta;
+            previousTimestamp = timestamp;
+        }
+
+        long previousBits = Double.doubleToRawLongBits(timeSeries.getValue(0));
+        encoder.writeLong(previousBits);
+        for (int i = 1; i < size; i++) {
+            long bits = Double.doubleToRawLongBits(timeSeries.getValue(i));
+            encoder.writeXor(bits ^ previousBits);
+            previousBits = bits;
+        }
+        return encoder.toByteArray();
+    }
+
+    private void writeXor(long xor) {
+        if (xor == 0) {
+            writeByte(EQUAL_VALUE);
+            return;
+        }
+        int leadingZeroBytes = Long.numberOfLeadingZeros(xor) >>> 3;
+        int trailingZeroBytes = Long.numberOfTrailingZeros(xor) >>> 3;
+        writeByte(leadingZeroBytes << 4 | trailingZeroBytes);
+
+        long meaningful = xor >>> (trailingZeroBytes << 3);
+        for (int i = 7 - leadingZeroBytes - trailingZeroBytes; i >= 0; i--) {
+            writeByte((int) (meaningful >>> (i << 3)));
+        }
+    }
+
+    private void writeVarLong(long value) {
+        //zig-zag encoding: small negative numbers become small positive numbers
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            writeByte((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        writeByte((int) zigZag);
+    }
+
+    private void writeInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            writeByte(value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (value >>> shift));
+        }
+    }
+
+    private void writeByte(int value) {
+        if (position == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.Schema;
+import de.qaware.chronix.server.types.ChronixRecordLoader;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.server.types.ChronixTimeSeriesAccumulator;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the records of a metric time series while they are read from the index.
+ * Every record is decoded when it is read and its attributes are merged on the fly.
+ * Hence no intermediate documents are kept. The decoded chunks are merged into
+ * a single sorted time series on build, see {@link ChunkMerger}.
+ * <p>
+ * An accumulator with a {@link ChronixRecordLoader} summarizes, it does not decode the records within the query range
+ * that have a {@link ChunkSummary}. It expects these records without their data, see {@link #needsData}.
+ * Their summaries are combined and only the records at the boundaries of the query range are decoded.
+ * If the records overlap, the summaries could count duplicate points twice, hence the data of the summarized
+ * records is loaded again by their doc ids and all records are decoded on build.
+ *
+ * @author f.lautenschlager
+ */
+public final class MetricTimeSeriesAccumulator implements ChronixTimeSeriesAccumulator<MetricTimeSeries> {
+
+    private final String joinKey;
+    private final long queryStart;
+    private final long queryEnd;
+    private final boolean decompress;
+    private final ChronixRecordLoader loader;
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final ChunkMerger chunks = new ChunkMerger();
+
+    //the ranges of all records and the doc ids of the summarized records that are loaded if the records overlap
+    private final List<long[]> ranges = new ArrayList<>();
+    private final List<Integer> summarizedDocIds = new ArrayList<>();
+    private ChunkSummary summary;
+
+    private MetricTimeSeries.Builder builder;
+
+    /**
+     * Constructs an accumulator for a single metric time series
+     *
+     * @param joinKey    the join key of the time series
+     * @param queryStart the query start
+     * @param queryEnd   the query end
+     * @param decompress marks if the data is requested and should be decompressed
+     */
+    public MetricTimeSeriesAccumulator(String joinKey, long queryStart, long queryEnd, boolean decompress) {
+        this.joinKey = joinKey;
+        this.queryStart = queryStart;
+        this.queryEnd = queryEnd;
+        this.decompress = decompress;
+        this.loader = null;
+    }
+
+    /**
+     * Constructs an accumulator that summarizes the records of a single metric time series
+     * that are read without their data if it is not needed, see {@link #needsData}
+     *
+     * @param joinKey    the join key of the time series
+     * @param queryStart the query start
+     * @param queryEnd   the query end
+     * @param loader     loads the data of the summarized records if the records overlap
+     */
+    public MetricTimeSeriesAccumulator(String joinKey, long queryStart, long queryEnd, ChronixRecordLoader loader) {
+        this.joinKey = joinKey;
+        this.queryStart = queryStart;
+        this.queryEnd = queryEnd;
+        this.decompress = true;
+        this.loader = loader;
+    }
+
+    /**
+     * @param record     the fields of a record without its data
+     * @param queryStart the query start
+     * @param queryEnd   the query end
+     * @return true if an accumulator with a loader needs the data of the record, i.e. it is not summarized
+     */
+    static boolean needsData(Map<String, Object> record, long queryStart, long queryEnd) {
+        long tsStart = (long) record.get(Schema.START);
+        long tsEnd = (long) record.get(Schema.END);
+        return SolrDocumentBuilder.overlaps(tsStart, tsEnd, queryStart, queryEnd)
+                && summaryOf(record, queryStart, queryEnd, tsStart, tsEnd) == null;
+    }
+
+    /**
+     * @return the summary of the record, null if it does not contribute all its points
+     */
+    private static ChunkSummary summaryOf(Map<String, Object> record, long queryStart, long queryEnd, long tsStart, long tsEnd) {
+        //only records completely within the query range contribute all their points
+        return tsStart >= queryStart && tsEnd <= queryEnd ? ChunkSummary.read(record) : null;
+    }
+
+    @Override
+    public void add(Map<String, Object> record) {
+        //rollups are only used by the rollup accumulator
+        if (Rollup.isRollup(record)) {
+            return;
+        }
+
+        //we use the name and type of the first record.
+        if (builder == null) {
+            builder = new MetricTimeSeries.Builder(record.get(Schema.NAME).toString(), record.get(Schema.TYPE).toString());
+        }
+
+        for (Map.Entry<String, Object> field : record.entrySet()) {
+            if (Schema.isUserDefined(field.getKey()) && !ChunkSummary.isSummaryField(field.getKey()) && !ChunkBlocks.isIndexField(field.getKey())) {
+                Object value = field.getValue();
+                if (value instanceof ByteBuffer) {
+                    //the buffer may be a slice of a larger array, read-only or direct
+                    ByteBuffer buffer = (ByteBuffer) value;
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.duplicate().get(bytes);
+                    value = bytes;
+                }
+                SolrDocumentBuilder.merge(attributes, field.getKey(), value);
+            }
+        }
+
+        //No data is requested, hence we do not decompress it
+        if (decompress) {
+            if (loader != null) {
+                summarize(record);
+            } else {
+                decode(record);
+            }
+        }
+    }
+
+    private void summarize(Map<String, Object> record) {
+        long tsStart = (long) record.get(Schema.START);
+        long tsEnd = (long) record.get(Schema.END);
+        if (!SolrDocumentBuilder.overlaps(tsStart, tsEnd, queryStart, queryEnd)) {
+            return;
+        }
+        ranges.add(new long[]{tsStart, tsEnd});
+
+        ChunkSummary chunkSummary = summaryOf(record, queryStart, queryEnd, tsStart, tsEnd);
+        if (chunkSummary == null) {
+            decode(record);
+            return;
+        }
+        summarizedDocIds.add(loader.current());
+        summary = summary == null ? chunkSummary : summary.merge(chunkSummary);
+    }
+
+    private void decode(Map<String, Object> record) {
+        MetricTimeSeries.Builder chunk = new MetricTimeSeries.Builder(null, null);
+        SolrDocumentBuilder.decode(record, queryStart, queryEnd, chunk);
+        chunks.add(chunk.build());
+    }
+
+    /**
+     * @return true if the range of a record overlaps the range of another record
+     */
+    private boolean recordsOverlap() {
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        long end = Long.MIN_VALUE;
+        for (int i = 0; i < ranges.size(); i++) {
+            //a record has to start after the end of all previous records
+            if (i > 0 && ranges.get(i)[0] <= end) {
+                return true;
+            }
+            end = Math.max(end, ranges.get(i)[1]);
+        }
+        return false;
+    }
+
+    @Override
+    public long decodedPoints() {
+        return chunks.size();
+    }
+
+    @Override
+    public ChronixTimeSeries<MetricTimeSeries> build() {
+        if (builder == null) {
+            builder = new MetricTimeSeries.Builder(null, null);
+        }
+        if (summary != null && recordsOverlap()) {
+            loader.load(summarizedDocIds.stream().mapToInt(Integer::intValue).toArray(), this::decode);
+            summary = null;
+        }
+        summarizedDocIds.clear();
+
+        MetricTimeSeries timeSeries = chunks.mergeInto(builder).attributes(attributes).build();
+        return new ChronixMetricTimeSeries(joinKey, timeSeries, summary);
+    }
+}
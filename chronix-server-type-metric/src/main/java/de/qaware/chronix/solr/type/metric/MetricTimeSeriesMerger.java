@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.converter.common.LongList;
+import de.qaware.chronix.solr.type.metric.functions.math.Percentile;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges several metric time series into a single one, e.g. the sum of the cpu load of all hosts per minute.
+ * The sorted points of the time series are merged with a k-way merge (a min heap over the current timestamp
+ * of every time series), hence the points are never concatenated and sorted again.
+ * The values of all time series within a bucket are combined with the aggregation.
+ *
+ * @author f.lautenschlager
+ */
+public final class MetricTimeSeriesMerger {
+
+    private MetricTimeSeriesMerger() {
+        //avoid instances
+    }
+
+    /**
+     * Merges the given time series. The name is the name of the first time series,
+     * the attributes of all time series are merged.
+     *
+     * @param timeSeriesList the time series to merge, they are sorted by this method
+     * @param aggregation    the aggregation of the values in a bucket: SUM, AVG, MIN, MAX, COUNT or P
+     * @param percentile     the percentile (0 - 1] if the aggregation is P
+     * @param bucket         the width of a bucket in milliseconds, the timestamp of a point is the start of its bucket
+     * @return the merged time series
+     */
+    public static MetricTimeSeries merge(List<MetricTimeSeries> timeSeriesList, String aggregation, double percentile, long bucket) {
+        int k = timeSeriesList.size();
+        long[][] times = new long[k][];
+        double[][] values = new double[k][];
+        int[] positions = new int[k];
+        Map<String, Object> attributes = new HashMap<>();
+
+        //the heap of the time series with remaining points ordered by their current timestamp
+        int[] heap = new int[k];
+        int heapSize = 0;
+        int points = 0;
+
+        for (int i = 0; i < k; i++) {
+            MetricTimeSeries timeSeries = timeSeriesList.get(i);
+            timeSeries.sort();
+            times[i] = timeSeries.getTimestampsAsArray();
+            values[i] = timeSeries.getValuesAsArray();
+            points += times[i].length;
+
+            for (Map.Entry<String, Object> attribute : timeSeries.getAttributesReference().entrySet()) {
+                SolrDocumentBuilder.merge(attributes, attribute.getKey(), attribute.getValue());
+            }
+
+            if (times[i].length > 0) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize, times, positions);
+                heapSize++;
+            }
+        }
+
+        LongList mergedTimes = new LongList(points);
+        DoubleList mergedValues = new DoubleList(points);
+        double[] bucketValues = new double[Math.min(Math.max(points, 1), 1024)];
+
+        while (heapSize > 0) {
+            long bucketStart = Math.floorDiv(current(heap[0], times, positions), bucket) * bucket;
+            long bucketEnd = bucketStart + bucket;
+
+            //take all points of the bucket from all time series
+            int bucketSize = 0;
+            while (heapSize > 0 && current(heap[0], times, positions) < bucketEnd) {
+                int series = heap[0];
+                if (bucketSize == bucketValues.length) {
+                    bucketValues = Arrays.copyOf(bucketValues, bucketSize * 2);
+                }
+                bucketValues[bucketSize++] = values[series][positions[series]];
+                positions[series]++;
+
+                if (positions[series] == times[series].length) {
+                    heapSize--;
+                    heap[0] = heap[heapSize];
+                }
+                siftDown(heap, heapSize, times, positions);
+            }
+
+            mergedTimes.add(bucketStart);
+            mergedValues.add(aggregate(bucketValues, bucketSize, aggregation, percentile));
+        }
+
+        MetricTimeSeries first = timeSeriesList.get(0);
+        return new MetricTimeSeries.Builder(first.getName(), first.getType())
+                .points(mergedTimes, mergedValues)
+                .attributes(attributes)
+                .build();
+    }
+
+    private static double aggregate(double[] values, int size, String aggregation, double percentile) {
+        switch (aggregation) {
+            case "SUM":
+                return sum(values, size);
+            case "AVG":
+                return sum(values, size) / size;
+            case "MIN":
+                double min = values[0];
+                for (int i = 1; i < size; i++) {
+                    min = Math.min(min, values[i]);
+                }
+                return min;
+            case "MAX":
+                double max = values[0];
+                for (int i = 1; i < size; i++) {
+                    max = Math.max(max, values[i]);
+                }
+                return max;
+            case "COUNT":
+                return size;
+            case "P":
+                return Percentile.evaluate(Arrays.copyOf(values, size), percentile)[0];
+            default:
+                throw new IllegalArgumentException("Aggregation '" + aggregation + "' is not supported.");
+        }
+    }
+
+    private static double sum(double[] values, int size) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    private static long current(int series, long[][] times, int[] positions) {
+        return times[series][positions[series]];
+    }
+
+    private static void siftUp(int[] heap, int index, long[][] times, int[] positions) {
+        int series = heap[index];
+        long time = current(series, times, positions);
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (current(heap[parent], times, positions) <= time) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = series;
+    }
+
+    private static void siftDown(int[] heap, int size, long[][] times, int[] positions) {
+        if (size == 0) {
+            return;
+        }
+        int index = 0;
+        int series = heap[0];
+        long time = current(series, times, positions);
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && current(heap[right], times, positions) < current(heap[child], times, positions)) {
+                child = right;
+            }
+            if (time <= current(heap[child], times, positions)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = series;
+    }
+}
@@ -15,30 +15,45 @@
  */
 package de.qaware.chronix.solr.type.metric;
 
+import de.qaware.chronix.server.functions.ChronixAggregation;
 import de.qaware.chronix.server.functions.ChronixFunction;
+import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.server.types.ChronixRecordLoader;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.server.types.ChronixTimeSeriesAccumulator;
 import de.qaware.chronix.server.types.ChronixType;
+import de.qaware.chronix.server.types.Columnar;
+import de.qaware.chronix.server.types.Fusing;
+import de.qaware.chronix.server.types.Mergeable;
+import de.qaware.chronix.server.types.RollupAware;
+import de.qaware.chronix.server.types.Summarizable;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Avg;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Count;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Difference;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.First;
+import de.qaware.chronix.solr.type.metric.functions.aggregations.FusedAggregation;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Integral;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Last;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Max;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Min;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Percentile;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Range;
+import de.qaware.chronix.solr.type.metric.functions.aggregations.Regression;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.SignedDifference;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.StdDev;
 import de.qaware.chronix.solr.type.metric.functions.aggregations.Sum;
+import de.qaware.chronix.solr.type.metric.functions.analyses.FastDtw;
 import de.qaware.chronix.solr.type.metric.functions.analyses.Frequency;
 import de.qaware.chronix.solr.type.metric.functions.analyses.Outlier;
 import de.qaware.chronix.solr.type.metric.functions.analyses.Trend;
 import de.qaware.chronix.solr.type.metric.functions.transformation.Add;
 import de.qaware.chronix.solr.type.metric.functions.transformation.Bottom;
+import de.qaware.chronix.solr.type.metric.functions.transformation.Bucket;
 import de.qaware.chronix.solr.type.metric.functions.transformation.Derivative;
 import de.qaware.chronix.solr.type.metric.functions.transformation.Distinct;
 import de.qaware.chronix.solr.type.metric.functions.transformation.Divide;
+import de.qaware.chronix.solr.type.metric.functions.transformation.Downsample;
+import de.qaware.chronix.solr.type.metric.functions.transformation.FusedTransformation;
 import de.qaware.chronix.solr.type.metric.functions.transformation.MovingAverage;
 import de.qaware.chronix.solr.type.metric.functions.transformation.NonNegativeDerivative;
 import de.qaware.chronix.solr.type.metric.functions.transformation.SampleMovingAverage;
@@ -51,17 +66,25 @@ import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.params.CommonParams;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Implementation of the metric type
  *
  * @author f.lautenschlager
  */
-public class MetricType implements ChronixType<MetricTimeSeries> {
+public class MetricType implements ChronixType<MetricTimeSeries>, Fusing<MetricTimeSeries>, Mergeable<MetricTimeSeries>,
+        Summarizable<MetricTimeSeries>, RollupAware<MetricTimeSeries>, Columnar {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MetricType.class);
 
@@ -76,6 +99,83 @@ public class MetricType implements ChronixType<MetricTimeSeries> {
         return new ChronixMetricTimeSeries(joinKey, metricTimeSeries);
     }
 
+    @Override
+    public ChronixTimeSeriesAccumulator<MetricTimeSeries> accumulator(String joinKey, long queryStart, long queryEnd, boolean rawDataIsRequested) {
+        return new MetricTimeSeriesAccumulator(joinKey, queryStart, queryEnd, rawDataIsRequested);
+    }
+
+    @Override
+    public List<ChronixTransformation<MetricTimeSeries>> fuseTransformations(List<ChronixTransformation<MetricTimeSeries>> transformations) {
+        return FusedTransformation.fuse(transformations);
+    }
+
+    @Override
+    public boolean canAggregateFromSummaries(List<ChronixAggregation<MetricTimeSeries>> aggregations) {
+        return FusedAggregation.summarizable(aggregations);
+    }
+
+    @Override
+    public Set<String> summaryFields() {
+        return new HashSet<>(Arrays.asList(ChunkSummary.fields()));
+    }
+
+    @Override
+    public Set<String> dataFields() {
+        return Collections.singleton(ChunkBlocks.INDEX);
+    }
+
+    @Override
+    public boolean summaryNeedsData(Map<String, Object> record, long queryStart, long queryEnd) {
+        return MetricTimeSeriesAccumulator.needsData(record, queryStart, queryEnd);
+    }
+
+    @Override
+    public ChronixTimeSeriesAccumulator<MetricTimeSeries> summaryAccumulator(String joinKey, long queryStart, long queryEnd, ChronixRecordLoader loader) {
+        return new MetricTimeSeriesAccumulator(joinKey, queryStart, queryEnd, loader);
+    }
+
+    @Override
+    public long rollupBucket(List<ChronixTransformation<MetricTimeSeries>> transformations) {
+        //the rollup is consumed by the first transformation, hence it must be a bucket that is computable from a rollup
+        if (transformations.isEmpty() || !(transformations.get(0) instanceof Bucket)) {
+            return 0;
+        }
+        Bucket bucket = (Bucket) transformations.get(0);
+        return bucket.isRollupAggregation() ? bucket.getBucketTime() : 0;
+    }
+
+    @Override
+    public Set<String> rollupFields() {
+        //the version of a raw record tells if it is part of a rollup
+        Set<String> fields = new HashSet<>(Arrays.asList(Rollup.fields()));
+        fields.add(CommonParams.VERSION_FIELD);
+        return fields;
+    }
+
+    @Override
+    public ChronixTimeSeriesAccumulator<MetricTimeSeries> rollupAccumulator(String joinKey, long queryStart, long queryEnd, long resolution, long bucket) {
+        return new RollupAccumulator(joinKey, queryStart, queryEnd, resolution, bucket);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<ChronixAggregation<MetricTimeSeries>> fuseAggregations(List<ChronixAggregation<MetricTimeSeries>> aggregations) {
+        //a single summarizable aggregation is fused as well, as only the fused aggregation combines the summaries
+        if (FusedAggregation.summarizable(aggregations)) {
+            return Collections.singletonList(new FusedAggregation((List) aggregations));
+        }
+        return FusedAggregation.fuse(aggregations);
+    }
+
+    @Override
+    public ChronixTimeSeries<MetricTimeSeries> merge(String groupKey, List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, String aggregation, double percentile, long bucket) {
+        List<MetricTimeSeries> metricTimeSeries = new ArrayList<>(timeSeriesList.size());
+        for (ChronixTimeSeries<MetricTimeSeries> timeSeries : timeSeriesList) {
+            metricTimeSeries.add(timeSeries.getRawTimeSeries());
+        }
+        return new ChronixMetricTimeSeries(groupKey, MetricTimeSeriesMerger.merge(metricTimeSeries, aggregation, percentile, bucket));
+    }
+
     @Override
     public ChronixFunction<MetricTimeSeries> getFunction(String function) {
 
@@ -107,6 +207,12 @@ public class MetricType implements ChronixType<MetricTimeSeries> {
                 return new Percentile();
             case "integral":
                 return new Integral();
+            case "slope":
+                return new Regression(Regression.Statistic.SLOPE);
+            case "intercept":
+                return new Regression(Regression.Statistic.INTERCEPT);
+            case "rsquared":
+                return new Regression(Regression.Statistic.RSQUARED);
             case "trend":
                 return new Trend();
             //Transformations
@@ -136,14 +242,17 @@ public class MetricType implements ChronixType<MetricTimeSeries> {
                 return new Timeshift();
             case "distinct":
                 return new Distinct();
+            case "bucket":
+                return new Bucket();
+            case "downsample":
+                return new Downsample();
             //Analyses
             case "outlier":
                 return new Outlier();
             case "frequency":
                 return new Frequency();
-            //TODO: fix this for future releases
-            // case "fastdtw":
-            // return new FastDtw(args);
+            case "fastdtw":
+                return new FastDtw();
             default:
                 LOGGER.warn("{} is not part of the MetricType. Return 'null'. Maybe its a plugin?", function);
                 return null;
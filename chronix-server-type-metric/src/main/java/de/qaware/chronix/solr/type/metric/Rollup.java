@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.Schema;
+import de.qaware.chronix.converter.common.Compression;
+import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.commons.io.IOUtils;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CommonParams;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongPredicate;
+
+/**
+ * A rollup of a metric time series: the minimum, maximum, sum and count of the values per bucket (resolution).
+ * The buckets are aligned to the epoch, the timestamp of a bucket is its start.
+ * <p>
+ * A rollup is stored as a separate record with the name and the attributes of its time series.
+ * The field {@link #RESOLUTION} marks the record as rollup, the statistics are stored as compressed
+ * series in the fields {@link #MIN}, {@link #MAX}, {@link #SUM} and {@link #COUNT}.
+ * The start of the record is its first bucket, the end is the last timestamp of the rolled up points.
+ * Rollups are written by the compaction, see {@link Builder}.
+ * <p>
+ * The fields {@link #FIRST_VERSION} and {@link #LAST_VERSION} hold the range of the {@code _version_} of the
+ * raw records the rollup is built from. A raw record with a version outside of this range was written after
+ * or during the compaction and is not part of the rollup.
+ *
+ * @author f.lautenschlager
+ */
+public final class Rollup {
+
+    /**
+     * The resolution (bucket width) of a rollup record in milliseconds
+     */
+    public static final String RESOLUTION = "rollup";
+    /**
+     * The minimum value per bucket
+     */
+    public static final String MIN = "rollup_min";
+    /**
+     * The maximum value per bucket
+     */
+    public static final String MAX = "rollup_max";
+    /**
+     * The sum of the values per bucket
+     */
+    public static final String SUM = "rollup_sum";
+    /**
+     * The number of values per bucket
+     */
+    public static final String COUNT = "rollup_count";
+    /**
+     * The lowest version of the raw records the rollup is built from
+     */
+    public static final String FIRST_VERSION = "rollup_first_version";
+    /**
+     * The highest version of the raw records the rollup is built from
+     */
+    public static final String LAST_VERSION = "rollup_last_version";
+
+    private static final String[] FIELDS = {RESOLUTION, MIN, MAX, SUM, COUNT, FIRST_VERSION, LAST_VERSION};
+
+    private final long resolution;
+    private final long end;
+    private final long[] timestamps;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+    private final double[] count;
+    private long firstVersion;
+    private long lastVersion = -1;
+
+    private Rollup(long resolution, long end, long[] timestamps, double[] min, double[] max, double[] sum, double[] count) {
+        this.resolution = resolution;
+        this.end = end;
+        this.timestamps = timestamps;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+        this.count = count;
+    }
+
+    /**
+     * @param record the stored fields of a record
+     * @return true if the record is a rollup
+     */
+    public static boolean isRollup(Map<String, Object> record) {
+        return record.get(RESOLUTION) != null;
+    }
+
+    /**
+     * @param field the field name
+     * @return true if the field belongs to a rollup record and hence is not an attribute of the time series
+     */
+    public static boolean isRollupField(String field) {
+        for (String rollupField : FIELDS) {
+            if (rollupField.equals(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the names of the rollup fields
+     */
+    public static String[] fields() {
+        return FIELDS.clone();
+    }
+
+    /**
+     * @param record the stored fields of a rollup record
+     * @return the resolution of the rollup in milliseconds
+     */
+    public static long resolution(Map<String, Object> record) {
+        return ((Number) record.get(RESOLUTION)).longValue();
+    }
+
+    /**
+     * Decodes the given rollup record
+     *
+     * @param record the stored fields of a rollup record
+     * @return the rollup
+     */
+    public static Rollup read(Map<String, Object> record) {
+        long start = (long) record.get(Schema.START);
+        long end = (long) record.get(Schema.END);
+
+        MetricTimeSeries min = decode(record.get(MIN), start, end);
+        MetricTimeSeries max = decode(record.get(MAX), start, end);
+        MetricTimeSeries sum = decode(record.get(SUM), start, end);
+        MetricTimeSeries count = decode(record.get(COUNT), start, end);
+        Rollup rollup = new Rollup(resolution(record), end, min.getTimestampsAsArray(),
+                min.getValuesAsArray(), max.getValuesAsArray(), sum.getValuesAsArray(), count.getValuesAsArray());
+        if (record.get(FIRST_VERSION) instanceof Number && record.get(LAST_VERSION) instanceof Number) {
+            rollup.firstVersion = ((Number) record.get(FIRST_VERSION)).longValue();
+            rollup.lastVersion = ((Number) record.get(LAST_VERSION)).longValue();
+        }
+        return rollup;
+    }
+
+    /**
+     * @param record the stored fields of a raw record
+     * @return the version of the record, -1 if it is unknown
+     */
+    public static long version(Map<String, Object> record) {
+        Object version = record.get(CommonParams.VERSION_FIELD);
+        return version instanceof Number ? ((Number) version).longValue() : -1;
+    }
+
+    private static MetricTimeSeries decode(Object field, long start, long end) {
+        byte[] data;
+        if (field instanceof ByteBuffer) {
+            //the buffer may be a slice of a larger array, read-only or direct
+            ByteBuffer buffer = (ByteBuffer) field;
+            data = new byte[buffer.remaining()];
+            buffer.duplicate().get(data);
+        } else {
+            data = (byte[]) field;
+        }
+        MetricTimeSeries.Builder series = new MetricTimeSeries.Builder(null, null);
+        InputStream decompressed = Compression.decompressToStream(data);
+        ProtoBufMetricTimeSeriesSerializer.from(decompressed, start, end, start, end, series);
+        IOUtils.closeQuietly(decompressed);
+        return series.build();
+    }
+
+    private static byte[] encode(long[] timestamps, double[] values) {
+        MetricTimeSeries.Builder series = new MetricTimeSeries.Builder(null, null);
+        for (int i = 0; i < timestamps.length; i++) {
+            series.point(timestamps[i], values[i]);
+        }
+        return Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(series.build().points().iterator()));
+    }
+
+    /**
+     * Concatenates the given rollups of a time series. The rollups must not overlap.
+     *
+     * @param rollups the rollups with the same resolution
+     * @return a single rollup
+     */
+    public static Rollup concat(List<Rollup> rollups) {
+        List<Rollup> sorted = new ArrayList<>(rollups);
+        sorted.sort(Comparator.comparingLong(Rollup::getStart));
+
+        int size = 0;
+        for (Rollup rollup : sorted) {
+            size += rollup.size();
+        }
+        Rollup result = new Rollup(sorted.get(0).resolution, sorted.get(sorted.size() - 1).end,
+                new long[size], new double[size], new double[size], new double[size], new double[size]);
+        int offset = 0;
+        for (Rollup rollup : sorted) {
+            rollup.copyTo(result, 0, offset, rollup.size());
+            offset += rollup.size();
+        }
+        return result;
+    }
+
+    private void copyTo(Rollup target, int from, int offset, int length) {
+        System.arraycopy(timestamps, from, target.timestamps, offset, length);
+        System.arraycopy(min, from, target.min, offset, length);
+        System.arraycopy(max, from, target.max, offset, length);
+        System.arraycopy(sum, from, target.sum, offset, length);
+        System.arraycopy(count, from, target.count, offset, length);
+    }
+
+    /**
+     * Merges the buckets of the given rollup into the buckets of this rollup, e.g. the rollup of the raw records
+     * that were written after the compaction. The rollups must have the same resolution.
+     *
+     * @param other the rollup to merge
+     * @return a rollup with the buckets of both rollups
+     */
+    public Rollup merge(Rollup other) {
+        Builder merged = new Builder(resolution);
+        for (int i = 0; i < size(); i++) {
+            merged.add(timestamps[i], min[i], max[i], sum[i], count[i]);
+        }
+        for (int i = 0; i < other.size(); i++) {
+            merged.add(other.timestamps[i], other.min[i], other.max[i], other.sum[i], other.count[i]);
+        }
+        merged.end = Math.max(end, other.end);
+        return merged.build();
+    }
+
+    /**
+     * @param bucket the predicate on the timestamp of a bucket
+     * @return a rollup with the buckets matching the predicate
+     */
+    public Rollup filter(LongPredicate bucket) {
+        int size = 0;
+        for (long timestamp : timestamps) {
+            if (bucket.test(timestamp)) {
+                size++;
+            }
+        }
+        Rollup result = new Rollup(resolution, end, new long[size], new double[size], new double[size], new double[size], new double[size]);
+        int offset = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            if (bucket.test(timestamps[i])) {
+                copyTo(result, i, offset++, 1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of buckets
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * @return true if the rollup has no buckets
+     */
+    public boolean isEmpty() {
+        return timestamps.length == 0;
+    }
+
+    /**
+     * @return the resolution (bucket width) in milliseconds
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @param version the version of a raw record, see {@link #version(Map)}
+     * @return true if the points of the raw record are part of this rollup
+     */
+    public boolean isBuiltFrom(long version) {
+        return firstVersion <= version && version <= lastVersion;
+    }
+
+    /**
+     * @return true if the versions of the raw records the rollup is built from are known
+     */
+    public boolean hasVersions() {
+        return firstVersion <= lastVersion;
+    }
+
+    /**
+     * @return the start of the first bucket
+     */
+    public long getStart() {
+        return timestamps.length == 0 ? end : timestamps[0];
+    }
+
+    /**
+     * @return the last timestamp of the rolled up points
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @param i the index of the bucket
+     * @return the start of the bucket
+     */
+    public long getTime(int i) {
+        return timestamps[i];
+    }
+
+    /**
+     * @param i the index of the bucket
+     * @return the minimum value of the bucket
+     */
+    public double getMin(int i) {
+        return min[i];
+    }
+
+    /**
+     * @param i the index of the bucket
+     * @return the maximum value of the bucket
+     */
+    public double getMax(int i) {
+        return max[i];
+    }
+
+    /**
+     * @param i the index of the bucket
+     * @return the sum of the values of the bucket
+     */
+    public double getSum(int i) {
+        return sum[i];
+    }
+
+    /**
+     * @param i the index of the bucket
+     * @return the number of values of the bucket
+     */
+    public double getCount(int i) {
+        return count[i];
+    }
+
+    /**
+     * Builds the rollup of the points of a time series, e.g. while the compaction reads its records.
+     * The points can be added in any order.
+     */
+    public static final class Builder {
+
+        private static final int MIN_INDEX = 0;
+        private static final int MAX_INDEX = 1;
+        private static final int SUM_INDEX = 2;
+        private static final int COUNT_INDEX = 3;
+
+        private final long resolution;
+        private final TreeMap<Long, double[]> buckets = new TreeMap<>();
+        private MetricTimeSeries template;
+        private long end = Long.MIN_VALUE;
+        private long firstVersion;
+        private long lastVersion = -1;
+
+        /**
+         * @param resolution the resolution (bucket width) in milliseconds
+         */
+        public Builder(long resolution) {
+            if (resolution <= 0) {
+                throw new IllegalArgumentException("The resolution must be positive but was " + resolution + " ms.");
+            }
+            this.resolution = resolution;
+        }
+
+        /**
+         * Adds the points of the given time series. The name and the attributes are taken from the first time series.
+         *
+         * @param timeSeries a record of the time series
+         * @return the builder
+         */
+        public Builder add(MetricTimeSeries timeSeries) {
+            if (template == null) {
+                template = timeSeries;
+            }
+            for (int i = 0; i < timeSeries.size(); i++) {
+                add(timeSeries.getTime(i), timeSeries.getValue(i));
+            }
+            return this;
+        }
+
+        /**
+         * @param timestamp the timestamp of the point
+         * @param value     the value of the point
+         * @return the builder
+         */
+        public Builder add(long timestamp, double value) {
+            add(timestamp, value, value, value, 1);
+            end = Math.max(end, timestamp);
+            return this;
+        }
+
+        private void add(long timestamp, double min, double max, double sum, double count) {
+            long bucket = Math.floorDiv(timestamp, resolution) * resolution;
+            double[] statistics = buckets.get(bucket);
+            if (statistics == null) {
+                buckets.put(bucket, new double[]{min, max, sum, count});
+            } else {
+                statistics[MIN_INDEX] = Math.min(statistics[MIN_INDEX], min);
+                statistics[MAX_INDEX] = Math.max(statistics[MAX_INDEX], max);
+                statistics[SUM_INDEX] += sum;
+                statistics[COUNT_INDEX] += count;
+            }
+        }
+
+        /**
+         * Sets the range of the versions of the raw records the rollup is built from, i.e. the records written
+         * by the compaction. Rollups without versions are not used by a query.
+         *
+         * @param firstVersion the lowest version of the raw records
+         * @param lastVersion  the highest version of the raw records
+         * @return the builder
+         */
+        public Builder versions(long firstVersion, long lastVersion) {
+            this.firstVersion = firstVersion;
+            this.lastVersion = lastVersion;
+            return this;
+        }
+
+        /**
+         * @return true if no points were added
+         */
+        public boolean isEmpty() {
+            return buckets.isEmpty();
+        }
+
+        /**
+         * @return the rollup of the added points
+         */
+        public Rollup build() {
+            int size = buckets.size();
+            Rollup rollup = new Rollup(resolution, end, new long[size], new double[size], new double[size], new double[size], new double[size]);
+            int i = 0;
+            for (Map.Entry<Long, double[]> bucket : buckets.entrySet()) {
+                rollup.timestamps[i] = bucket.getKey();
+                rollup.min[i] = bucket.getValue()[MIN_INDEX];
+                rollup.max[i] = bucket.getValue()[MAX_INDEX];
+                rollup.sum[i] = bucket.getValue()[SUM_INDEX];
+                rollup.count[i] = bucket.getValue()[COUNT_INDEX];
+                i++;
+            }
+            rollup.firstVersion = firstVersion;
+            rollup.lastVersion = lastVersion;
+            return rollup;
+        }
+
+        /**
+         * Creates the rollup record with the name, the type and the attributes of the first added time series.
+         * The summaries of a chunk are not part of the rollup record.
+         *
+         * @return the rollup record without id
+         */
+        public SolrInputDocument toInputDocument() {
+            Rollup rollup = build();
+
+            SolrInputDocument doc = new SolrInputDocument();
+            for (Map.Entry<String, Object> attribute : template.attributes().entrySet()) {
+                String field = attribute.getKey();
+                if (Schema.isUserDefined(field) && !ChunkSummary.isSummaryField(field) && !ChunkBlocks.isIndexField(field) && !CommonParams.VERSION_FIELD.equals(field)) {
+                    doc.setField(field, attribute.getValue());
+                }
+            }
+            doc.setField(Schema.NAME, template.getName());
+            doc.setField(Schema.TYPE, template.getType());
+            doc.setField(Schema.START, rollup.getStart());
+            doc.setField(Schema.END, rollup.getEnd());
+            doc.setField(RESOLUTION, resolution);
+            doc.setField(MIN, encode(rollup.timestamps, rollup.min));
+            doc.setField(MAX, encode(rollup.timestamps, rollup.max));
+            doc.setField(SUM, encode(rollup.timestamps, rollup.sum));
+            doc.setField(COUNT, encode(rollup.timestamps, rollup.count));
+            if (rollup.hasVersions()) {
+                doc.setField(FIRST_VERSION, firstVersion);
+                doc.setField(LAST_VERSION, lastVersion);
+            }
+            return doc;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric;
+
+import de.qaware.chronix.Schema;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.server.types.ChronixTimeSeriesAccumulator;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.solr.common.params.CommonParams;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Accumulates the rollup and the raw records of a metric time series for a bucket transformation.
+ * The buckets that lie completely within the query range and within a rollup record are answered from the rollup.
+ * Only the raw records with points outside of these buckets are decoded, e.g. at the edges of the query range
+ * or after the last compaction. The points of a decoded record within these buckets are dropped.
+ * <p>
+ * A raw record that is not part of the rollup, i.e. its version is outside of the versions the rollup is built from,
+ * is always decoded. Its points within these buckets are added to the buckets of the rollup.
+ * <p>
+ * The rollup records have to be added before the raw records. If the rollup records of a time series
+ * overlap, the rollups are not used and all raw records are decoded. Rollups without versions are ignored.
+ *
+ * @author f.lautenschlager
+ */
+public final class RollupAccumulator implements ChronixTimeSeriesAccumulator<MetricTimeSeries> {
+
+    private final String joinKey;
+    private final long queryStart;
+    private final long queryEnd;
+    private final long resolution;
+    private final long bucket;
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final ChunkMerger chunks = new ChunkMerger();
+    private final List<Rollup> rollups = new ArrayList<>();
+
+    //the ranges (start and end, inclusive) answered by the rollups, sorted by start
+    private List<Range> covered;
+    //the points of the raw records within the covered ranges that are not part of the rollups
+    private Rollup.Builder late;
+    private long decodedPoints;
+    private MetricTimeSeries.Builder builder;
+
+    /**
+     * Constructs an accumulator for a single metric time series
+     *
+     * @param joinKey    the join key of the time series
+     * @param queryStart the query start
+     * @param queryEnd   the query end
+     * @param resolution the resolution of the used rollups in milliseconds
+     * @param bucket     the width of the buckets of the transformation in milliseconds, a multiple of the resolution
+     */
+    public RollupAccumulator(String joinKey, long queryStart, long queryEnd, long resolution, long bucket) {
+        if (resolution <= 0 || bucket % resolution != 0) {
+            throw new IllegalArgumentException("The bucket " + bucket + " is not a multiple of the resolution " + resolution + ".");
+        }
+        this.joinKey = joinKey;
+        this.queryStart = queryStart;
+        this.queryEnd = queryEnd;
+        this.resolution = resolution;
+        this.bucket = bucket;
+    }
+
+    @Override
+    public void add(Map<String, Object> record) {
+        if (builder == null) {
+            builder = new MetricTimeSeries.Builder(record.get(Schema.NAME).toString(), record.get(Schema.TYPE).toString());
+        }
+
+        for (Map.Entry<String, Object> field : record.entrySet()) {
+            if (Schema.isUserDefined(field.getKey()) && !ChunkSummary.isSummaryField(field.getKey()) && !Rollup.isRollupField(field.getKey())
+                    && !ChunkBlocks.isIndexField(field.getKey()) && !CommonParams.VERSION_FIELD.equals(field.getKey())) {
+                Object value = field.getValue();
+                if (value instanceof ByteBuffer) {
+                    //the buffer may be a slice of a larger array, read-only or direct
+                    ByteBuffer buffer = (ByteBuffer) value;
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.duplicate().get(bytes);
+                    value = bytes;
+                }
+                SolrDocumentBuilder.merge(attributes, field.getKey(), value);
+            }
+        }
+
+        if (Rollup.isRollup(record)) {
+            //rollups with another resolution are ignored
+            if (Rollup.resolution(record) == resolution) {
+                Rollup rollup = Rollup.read(record);
+                if (rollup.hasVersions()) {
+                    rollups.add(rollup);
+                }
+            }
+            return;
+        }
+
+        long tsStart = (long) record.get(Schema.START);
+        long tsEnd = (long) record.get(Schema.END);
+        long version = Rollup.version(record);
+        Range range = covering(Math.max(tsStart, queryStart), Math.min(tsEnd, queryEnd));
+        if (range != null && range.rollup.isBuiltFrom(version)) {
+            return;
+        }
+
+        MetricTimeSeries.Builder chunk = new MetricTimeSeries.Builder(null, null);
+        SolrDocumentBuilder.decode(record, queryStart, queryEnd, chunk);
+
+        //drop the points that are part of the rollups, the other points within the rollups are added to them
+        MetricTimeSeries decoded = chunk.build();
+        decodedPoints += decoded.size();
+        MetricTimeSeries.Builder uncovered = new MetricTimeSeries.Builder(null, null);
+        for (int i = 0; i < decoded.size(); i++) {
+            Range point = covering(decoded.getTime(i), decoded.getTime(i));
+            if (point == null) {
+                uncovered.point(decoded.getTime(i), decoded.getValue(i));
+            } else if (!point.rollup.isBuiltFrom(version)) {
+                if (late == null) {
+                    late = new Rollup.Builder(resolution);
+                }
+                late.add(decoded.getTime(i), decoded.getValue(i));
+            }
+        }
+        chunks.add(uncovered.build());
+    }
+
+    /**
+     * @param start the start of a range
+     * @param end   the end of a range, inclusive
+     * @return the covered range of a single rollup that contains the given range, null if there is none
+     */
+    private Range covering(long start, long end) {
+        for (Range range : covered()) {
+            if (range.start <= start && end <= range.end) {
+                return range;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The buckets of the transformation that lie completely within the query range and a rollup are covered.
+     * The covered ranges are computed after the rollups are read.
+     *
+     * @return the covered ranges sorted by their start
+     */
+    private List<Range> covered() {
+        if (covered != null) {
+            return covered;
+        }
+        covered = new ArrayList<>(rollups.size());
+        rollups.sort(Comparator.comparingLong(Rollup::getStart));
+        for (int i = 1; i < rollups.size(); i++) {
+            if (rollups.get(i).getStart() <= rollups.get(i - 1).getEnd()) {
+                //overlapping rollups would count points twice
+                rollups.clear();
+                return covered;
+            }
+        }
+
+        for (Rollup rollup : rollups) {
+            long start = ceil(Math.max(rollup.getStart(), queryStart));
+            long end = floor(Math.min(rollup.getEnd(), queryEnd) + 1) - 1;
+            if (start <= end) {
+                covered.add(new Range(start, end, rollup));
+            }
+        }
+        return covered;
+    }
+
+    private long floor(long timestamp) {
+        return Math.floorDiv(timestamp, bucket) * bucket;
+    }
+
+    private long ceil(long timestamp) {
+        return -Math.floorDiv(-timestamp, bucket) * bucket;
+    }
+
+    @Override
+    public long decodedPoints() {
+        return decodedPoints;
+    }
+
+    @Override
+    public ChronixTimeSeries<MetricTimeSeries> build() {
+        if (builder == null) {
+            builder = new MetricTimeSeries.Builder(null, null);
+        }
+        List<Range> ranges = covered();
+        MetricTimeSeries timeSeries = chunks.mergeInto(builder).attributes(attributes).build();
+        if (ranges.isEmpty()) {
+            return new ChronixMetricTimeSeries(joinKey, timeSeries);
+        }
+
+        Rollup rollup = Rollup.concat(rollups).filter(time -> covering(time, time) != null);
+        if (late != null) {
+            rollup = rollup.merge(late.build());
+        }
+        return new ChronixMetricTimeSeries(joinKey, timeSeries, null, rollup);
+    }
+
+    /**
+     * A range (start and end, inclusive) answered by a rollup
+     */
+    private static final class Range {
+        private final long start;
+        private final long end;
+        private final Rollup rollup;
+
+        private Range(long start, long end, Rollup rollup) {
+            this.start = start;
+            this.end = end;
+            this.rollup = rollup;
+        }
+    }
+}
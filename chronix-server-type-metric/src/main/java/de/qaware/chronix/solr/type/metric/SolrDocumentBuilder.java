@@ -17,13 +17,10 @@ package de.qaware.chronix.solr.type.metric;
 
 import de.qaware.chronix.Schema;
 import de.qaware.chronix.converter.common.Compression;
-import de.qaware.chronix.converter.common.DoubleList;
-import de.qaware.chronix.converter.common.LongList;
 import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.io.IOUtils;
 import org.apache.solr.common.SolrDocument;
-import org.apache.solr.common.util.Pair;
 
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -46,6 +43,7 @@ public final class SolrDocumentBuilder {
      * Collects the documents into a single time series.
      * Merges the time series getAttributes using a {@link Set}.
      * Arrays are added as a single entry in the result getAttributes.
+     * The sorted chunks are merged into a single sorted time series, see {@link ChunkMerger}.
      *
      * @param queryStart the user query start
      * @param queryEnd   the user query end
@@ -55,40 +53,23 @@ public final class SolrDocumentBuilder {
      */
     public static MetricTimeSeries reduceDocumentToTimeSeries(long queryStart, long queryEnd, List<SolrDocument> documents, boolean decompress) {
         //Collect all document of a time series
-
-        LongList timestamps = null;
-        DoubleList values = null;
+        ChunkMerger chunks = new ChunkMerger();
         Map<String, Object> attributes = new HashMap<>();
         String name = null;
         String type = null;
 
-        long[] keys = new long[documents.size()];
-        Map<Long, Pair<long[], double[]>> firstTimeStampToRecord = new HashMap<>();
-
-        for (int i = 0; i < documents.size(); i++) {
-            SolrDocument doc = documents.get(i);
+        for (SolrDocument doc : documents) {
+            //rollups are only used by the rollup accumulator
+            if (Rollup.isRollup(doc)) {
+                continue;
+            }
             MetricTimeSeries ts = convert(doc, queryStart, queryEnd, decompress);
 
             //only if we decompress the data.
             if (decompress) {
-                //Performance optimization. Avoiding fine grained growing.
-                if (timestamps == null) {
-                    int size = ts.size();
-                    if (size < 1000) {
-                        //well we have a small time series
-                        size = 1000;
-                    }
-                    int calcAmountOfPoints = documents.size() * size;
-                    timestamps = new LongList(calcAmountOfPoints);
-                    values = new DoubleList(calcAmountOfPoints);
-                }
-
-                //Note: chunks are sorted, every ts represents a chunk at this point
-                firstTimeStampToRecord.put(ts.getTime(0), new Pair<>(ts.getTimestampsAsArray(), ts.getValuesAsArray()));
-                keys[i] = ts.getTime(0);
+                chunks.add(ts);
             }
 
-
             //we use the metric of the first time series.
             //metric is the default join key.
             if (name == null) {
@@ -102,18 +83,7 @@ public final class SolrDocumentBuilder {
             merge(attributes, ts.getAttributesReference());
         }
 
-        //Add everything to the timestamps
-        if (decompress) {
-            Arrays.sort(keys);
-            for (long key : keys) {
-                Pair<long[], double[]> record = firstTimeStampToRecord.get(key);
-                timestamps.addAll(record.first());
-                values.addAll(record.second());
-            }
-        }
-
-        return new MetricTimeSeries.Builder(name, type)
-                .points(timestamps, values)
+        return chunks.mergeInto(new MetricTimeSeries.Builder(name, type))
                 .attributes(attributes)
                 .build();
     }
@@ -128,33 +98,42 @@ public final class SolrDocumentBuilder {
      * @param attributes the getAttributes of the other time series
      */
     private static void merge(Map<String, Object> merged, Map<String, Object> attributes) {
-
         for (HashMap.Entry<String, Object> newEntry : attributes.entrySet()) {
+            merge(merged, newEntry.getKey(), newEntry.getValue());
+        }
+    }
 
-            String key = newEntry.getKey();
+    /**
+     * Merges a single attribute into the merged getAttributes.
+     * If the value is a collection, than all values
+     * of the collection are added instead of the collection object.
+     *
+     * @param merged the merged getAttributes
+     * @param key    the attribute key
+     * @param value  the attribute value
+     */
+    static void merge(Map<String, Object> merged, String key, Object value) {
 
-            //we ignore the version in the result
-            if (key.equals("_version_")) {
-                continue;
-            }
+        //we ignore the version in the result
+        if (key.equals("_version_")) {
+            return;
+        }
 
-            if (!merged.containsKey(key)) {
-                merged.put(key, new LinkedHashSet());
-            }
+        if (!merged.containsKey(key)) {
+            merged.put(key, new LinkedHashSet());
+        }
 
-            LinkedHashSet values = (LinkedHashSet) merged.get(key);
-            Object value = newEntry.getValue();
+        LinkedHashSet values = (LinkedHashSet) merged.get(key);
 
-            //Check if the value is a collection.
-            //If it is a collection we add all values instead of adding a collection object
-            if (value instanceof Collection && !values.contains(value)) {
-                values.addAll((Collection) value);
-            } else if (!values.contains(value)) {
-                //Otherwise we have a single value or an array.
-                values.add(value);
-            }
-            //otherwise we ignore the value
+        //Check if the value is a collection.
+        //If it is a collection we add all values instead of adding a collection object
+        if (value instanceof Collection && !values.contains(value)) {
+            values.addAll((Collection) value);
+        } else if (!values.contains(value)) {
+            //Otherwise we have a single value or an array.
+            values.add(value);
         }
+        //otherwise we ignore the value
     }
 
     /**
@@ -169,17 +148,13 @@ public final class SolrDocumentBuilder {
     private static MetricTimeSeries convert(SolrDocument doc, long queryStart, long queryEnd, boolean decompress) {
 
 
-        long tsStart = (long) doc.getFieldValue(Schema.START);
-        long tsEnd = (long) doc.getFieldValue(Schema.END);
-        byte[] data = ((ByteBuffer) doc.getFieldValue(Schema.DATA)).array();
-
         String name = doc.getFieldValue(Schema.NAME).toString();
         String type = doc.getFieldValue(Schema.TYPE).toString();
 
         MetricTimeSeries.Builder ts = new MetricTimeSeries.Builder(name, type);
 
         for (Map.Entry<String, Object> field : doc) {
-            if (Schema.isUserDefined(field.getKey())) {
+            if (Schema.isUserDefined(field.getKey()) && !ChunkSummary.isSummaryField(field.getKey()) && !ChunkBlocks.isIndexField(field.getKey())) {
                 if (field.getValue() instanceof ByteBuffer) {
                     ts.attribute(field.getKey(), ((ByteBuffer) field.getValue()).array());
                 } else {
@@ -190,12 +165,55 @@ public final class SolrDocumentBuilder {
         }
         //No data is requested, hence we do not decompress it
         if (decompress) {
-            InputStream decompressed = Compression.decompressToStream(data);
-            ProtoBufMetricTimeSeriesSerializer.from(decompressed, tsStart, tsEnd, queryStart, queryEnd, ts);
-            IOUtils.closeQuietly(decompressed);
+            decode(doc, queryStart, queryEnd, ts);
         }
         return ts.build();
     }
 
+    /**
+     * Decodes the data of the given record and adds the points within the query range to the given builder.
+     * If the data is stored in blocks, only the blocks that overlap the query range are decoded, see {@link ChunkBlocks}.
+     *
+     * @param record     the stored fields of a record
+     * @param queryStart the query start
+     * @param queryEnd   the query end
+     * @param builder    the builder of the time series the points are added to
+     */
+    static void decode(Map<String, Object> record, long queryStart, long queryEnd, MetricTimeSeries.Builder builder) {
+        byte[] data = ChunkBlocks.bytes(record.get(Schema.DATA));
+        if (ChunkBlocks.isIndexed(record)) {
+            ChunkBlocks.decode(data, ChunkBlocks.bytes(record.get(ChunkBlocks.INDEX)), queryStart, queryEnd, builder);
+        } else {
+            decode(data, (long) record.get(Schema.START), (long) record.get(Schema.END), queryStart, queryEnd, builder);
+        }
+    }
+
+    /**
+     * Decompresses the given chunk and adds the points within the query range to the given builder.
+     *
+     * @param data       the compressed chunk
+     * @param tsStart    the start of the chunk
+     * @param tsEnd      the end of the chunk
+     * @param queryStart the query start
+     * @param queryEnd   the query end
+     * @param builder    the builder of the time series the points are added to
+     */
+    static void decode(byte[] data, long tsStart, long tsEnd, long queryStart, long queryEnd, MetricTimeSeries.Builder builder) {
+        InputStream decompressed = Compression.decompressToStream(data);
+        ProtoBufMetricTimeSeriesSerializer.from(decompressed, tsStart, tsEnd, queryStart, queryEnd, builder);
+        IOUtils.closeQuietly(decompressed);
+    }
+
+    /**
+     * @param tsStart    the start of the chunk
+     * @param tsEnd      the end of the chunk
+     * @param queryStart the query start
+     * @param queryEnd   the query end
+     * @return true if the chunk could contain points within the query range
+     */
+    static boolean overlaps(long tsStart, long tsEnd, long queryStart, long queryEnd) {
+        return tsStart <= queryEnd && tsEnd >= queryStart;
+    }
+
 
 }
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.aggregations;
+
+import de.qaware.chronix.solr.type.metric.ChunkSummary;
+import de.qaware.chronix.solr.type.metric.functions.math.LinearRegression;
+import de.qaware.chronix.solr.type.metric.functions.math.TDigest;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+/**
+ * Statistics of a time series that are computed in a single pass over its values.
+ * Only the statistics that are required by the aggregations are computed.
+ *
+ * @author f.lautenschlager
+ */
+public final class AggregationStatistics {
+
+    /**
+     * The minimum and the maximum value
+     */
+    public static final int MIN_MAX = 1;
+    /**
+     * The sum of the values
+     */
+    public static final int SUM = 2;
+    /**
+     * The first and the last value of the time series sorted by timestamp
+     */
+    public static final int SORTED = 4;
+    /**
+     * The standard deviation of the values
+     */
+    public static final int DEVIATION = 8;
+    /**
+     * The exact percentiles selected on a copy of the values
+     */
+    public static final int PERCENTILES = 16;
+    /**
+     * The approximated percentiles of a t-digest of the values
+     */
+    public static final int APPROXIMATE_PERCENTILES = 32;
+    /**
+     * The linear regression of the values over the timestamps
+     */
+    public static final int REGRESSION = 64;
+    /**
+     * The statistics that can be combined from the {@link ChunkSummary} of records
+     */
+    public static final int SUMMARIZABLE = MIN_MAX | SUM | SORTED;
+
+    private static final double[] NO_PERCENTILES = new double[0];
+
+    private final int size;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double sum = Double.NaN;
+    private double deviation = Double.NaN;
+    private double first = Double.NaN;
+    private double last = Double.NaN;
+    private double[] percentiles = NO_PERCENTILES;
+    private double[] percentileValues = NO_PERCENTILES;
+    private TDigest digest;
+    private LinearRegression regression;
+
+    private AggregationStatistics(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Computes the required statistics of the given time series.
+     * The time series is sorted if the first or the last value is required.
+     *
+     * @param timeSeries         the time series
+     * @param requiredStatistics the required statistics as combination of the constants of this class
+     * @return the statistics of the time series
+     */
+    public static AggregationStatistics of(MetricTimeSeries timeSeries, int requiredStatistics) {
+        return of(timeSeries, requiredStatistics, NO_PERCENTILES);
+    }
+
+    /**
+     * Computes the required statistics of the given time series.
+     * The time series is sorted if the first or the last value is required.
+     * All exact percentiles are selected on a single copy of the values.
+     *
+     * @param timeSeries         the time series
+     * @param requiredStatistics the required statistics as combination of the constants of this class
+     * @param percentiles        the exact percentiles (0 - 1) if {@link #PERCENTILES} is required
+     * @return the statistics of the time series
+     */
+    public static AggregationStatistics of(MetricTimeSeries timeSeries, int requiredStatistics, double[] percentiles) {
+        AggregationStatistics statistics = new AggregationStatistics(timeSeries.size());
+        if (timeSeries.isEmpty()) {
+            return statistics;
+        }
+
+        //the regression does not need sorted points, hence it is computed on the points as they are
+        if ((requiredStatistics & REGRESSION) != 0) {
+            statistics.regression = new LinearRegression(timeSeries.getTimestamps(), timeSeries.getValues());
+        }
+
+        if ((requiredStatistics & SORTED) != 0) {
+            //we need to sort the time series
+            timeSeries.sort();
+        }
+
+        double[] values = timeSeries.getValuesAsArray();
+        boolean minMax = (requiredStatistics & MIN_MAX) != 0;
+        boolean sum = (requiredStatistics & (SUM | DEVIATION)) != 0;
+
+        //one pass for the min, max and sum
+        if (minMax || sum) {
+            double currentMin = values[0];
+            double currentMax = values[0];
+            double currentSum = 0;
+
+            for (int i = 0; i < values.length; i++) {
+                double value = values[i];
+                if (value < currentMin) {
+                    currentMin = value;
+                }
+                if (value > currentMax) {
+                    currentMax = value;
+                }
+                currentSum += value;
+            }
+            statistics.min = currentMin;
+            statistics.max = currentMax;
+            statistics.sum = currentSum;
+        }
+
+        //the deviation needs the mean, hence a second pass
+        if ((requiredStatistics & DEVIATION) != 0) {
+            double avg = statistics.sum / values.length;
+            double squares = 0.0;
+            for (int i = 0; i < values.length; i++) {
+                double value = values[i];
+                squares += (value - avg) * (value - avg);
+            }
+            statistics.deviation = Math.sqrt(squares / (values.length - 1));
+        }
+
+        statistics.first = values[0];
+        statistics.last = values[values.length - 1];
+
+        if ((requiredStatistics & APPROXIMATE_PERCENTILES) != 0) {
+            statistics.digest = TDigest.of(values);
+        }
+
+        //the selection reorders the values, hence it is the last step
+        if ((requiredStatistics & PERCENTILES) != 0 && percentiles.length > 0) {
+            statistics.percentiles = percentiles;
+            statistics.percentileValues = de.qaware.chronix.solr.type.metric.functions.math.Percentile.evaluate(values, percentiles);
+        }
+        return statistics;
+    }
+
+    /**
+     * Computes the required statistics of the points of the given time series and the records summarized by the given summary.
+     * The summarized records must not overlap the points of the time series.
+     *
+     * @param timeSeries         the time series with the points of the decoded records
+     * @param summary            the summary of the records that were not decoded, may be null
+     * @param requiredStatistics the required statistics, only the {@link #SUMMARIZABLE} statistics if there is a summary
+     * @param percentiles        the exact percentiles (0 - 1) if {@link #PERCENTILES} is required
+     * @return the statistics of the time series and the summarized records
+     * @throws IllegalArgumentException if the required statistics can not be computed from a summary
+     */
+    public static AggregationStatistics of(MetricTimeSeries timeSeries, ChunkSummary summary, int requiredStatistics, double[] percentiles) {
+        if (summary == null) {
+            return of(timeSeries, requiredStatistics, percentiles);
+        }
+        if ((requiredStatistics & ~SUMMARIZABLE) != 0) {
+            throw new IllegalArgumentException("The statistics '" + requiredStatistics + "' can not be computed from summaries.");
+        }
+
+        AggregationStatistics points = of(timeSeries, SUMMARIZABLE);
+        AggregationStatistics statistics = new AggregationStatistics(Math.toIntExact(points.size + summary.getCount()));
+        statistics.min = summary.getMin();
+        statistics.max = summary.getMax();
+        statistics.sum = summary.getSum();
+        statistics.first = summary.getFirst();
+        statistics.last = summary.getLast();
+        if (timeSeries.isEmpty()) {
+            return statistics;
+        }
+
+        if (points.min < statistics.min) {
+            statistics.min = points.min;
+        }
+        if (points.max > statistics.max) {
+            statistics.max = points.max;
+        }
+        statistics.sum += points.sum;
+        //the time series is sorted and does not overlap the summarized records
+        if (timeSeries.getTime(0) < summary.getStart()) {
+            statistics.first = points.first;
+        }
+        if (timeSeries.getTime(timeSeries.size() - 1) > summary.getEnd()) {
+            statistics.last = points.last;
+        }
+        return statistics;
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the minimum value, requires {@link #MIN_MAX}
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * @return the maximum value, requires {@link #MIN_MAX}
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * @return the sum of the values, requires {@link #SUM}
+     */
+    public double getSum() {
+        return sum;
+    }
+
+    /**
+     * @return the standard deviation of the values, requires {@link #DEVIATION}
+     */
+    public double getDeviation() {
+        return deviation;
+    }
+
+    /**
+     * @return the first value, requires {@link #SORTED}
+     */
+    public double getFirst() {
+        return first;
+    }
+
+    /**
+     * @return the last value, requires {@link #SORTED}
+     */
+    public double getLast() {
+        return last;
+    }
+
+    /**
+     * @param percentile the percentile (0 - 1)
+     * @return the exact value of the percentile, requires {@link #PERCENTILES} and the percentile
+     */
+    public double getPercentile(double percentile) {
+        for (int i = 0; i < percentiles.length; i++) {
+            if (percentiles[i] == percentile) {
+                return percentileValues[i];
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * @param percentile the percentile (0 - 1)
+     * @return the approximated value of the percentile, requires {@link #APPROXIMATE_PERCENTILES}
+     */
+    public double getApproximatePercentile(double percentile) {
+        if (digest == null) {
+            return Double.NaN;
+        }
+        return digest.quantile(percentile);
+    }
+
+    /**
+     * @return the linear regression of the values over the timestamps, requires {@link #REGRESSION}
+     */
+    public LinearRegression getRegression() {
+        if (regression == null) {
+            return new LinearRegression();
+        }
+        return regression;
+    }
+}
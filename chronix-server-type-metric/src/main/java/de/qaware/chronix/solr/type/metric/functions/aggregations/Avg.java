@@ -15,40 +15,13 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.aggregations;
 
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.FunctionCtx;
-import de.qaware.chronix.server.types.ChronixTimeSeries;
-import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.List;
-
 /**
  * @author f.lautenschlager
  */
-public final class Avg implements ChronixAggregation<MetricTimeSeries> {
-
-    @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
-        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
-
-            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-
-            if (timeSeries.isEmpty()) {
-                functionCtx.add(this, Double.NaN, chronixTimeSeries.getJoinKey());
-                continue;
-            }
-
-            //Else calculate the analysis value
-            int size = timeSeries.size();
-            double current = 0;
-            for (int i = 0; i < size; i++) {
-                current += timeSeries.getValue(i);
-            }
-            functionCtx.add(this, current / timeSeries.size(), chronixTimeSeries.getJoinKey());
-        }
-    }
+public final class Avg implements FusableAggregation {
 
     @Override
     public String[] getArguments() {
@@ -60,6 +33,16 @@ public final class Avg implements ChronixAggregation<MetricTimeSeries> {
         //ignore
     }
 
+    @Override
+    public int getRequiredStatistics() {
+        return AggregationStatistics.SUM;
+    }
+
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return statistics.getSum() / statistics.getSize();
+    }
+
     @Override
     public String getQueryName() {
         return "avg";
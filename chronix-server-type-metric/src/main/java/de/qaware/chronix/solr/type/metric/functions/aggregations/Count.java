@@ -15,29 +15,30 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.aggregations;
 
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.FunctionCtx;
-import de.qaware.chronix.server.types.ChronixTimeSeries;
-import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.List;
-
 /**
  * Count aggregation for time series
  *
  * @author f.lautenschlager
  */
-public final class Count implements ChronixAggregation<MetricTimeSeries> {
+public final class Count implements FusableAggregation {
 
 
     @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
-        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
-            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-            functionCtx.add(this, timeSeries.size(), chronixTimeSeries.getJoinKey());
-        }
+    public int getRequiredStatistics() {
+        return 0;
+    }
+
+    @Override
+    public double emptyValue() {
+        return 0;
+    }
+
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return statistics.getSize();
     }
 
     @Override
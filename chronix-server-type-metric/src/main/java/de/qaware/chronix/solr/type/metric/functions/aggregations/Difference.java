@@ -15,50 +15,24 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.aggregations;
 
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.FunctionCtx;
-import de.qaware.chronix.server.types.ChronixTimeSeries;
-import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.List;
-
 /**
  * The difference aggregation returns the difference between the first and the last value of a given time series
  *
  * @author f.lautenschlager
  */
-public final class Difference implements ChronixAggregation<MetricTimeSeries> {
+public final class Difference implements FusableAggregation {
 
-    /**
-     * Calculate the difference between the first and the last value of a given time series
-     *
-     * @param timeSeriesList list with time series
-     * @return the average or 0 if the list is empty
-     */
     @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
-
-        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
-
-            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-
-            //If it is empty, we return NaN
-            if (timeSeries.size() <= 0) {
-                functionCtx.add(this, Double.NaN, chronixTimeSeries.getJoinKey());
-                continue;
-            }
-
-            //we need to sort the time series
-            timeSeries.sort();
-            //get the first and the last value
-            double firstValue = timeSeries.getValue(0);
-            double lastValue = timeSeries.getValue(timeSeries.size() - 1);
-
-            functionCtx.add(this, Math.abs(firstValue - lastValue), chronixTimeSeries.getJoinKey());
-        }
+    public int getRequiredStatistics() {
+        return AggregationStatistics.SORTED;
+    }
 
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return Math.abs(statistics.getFirst() - statistics.getLast());
     }
 
     @Override
@@ -15,45 +15,22 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.aggregations;
 
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.FunctionCtx;
-import de.qaware.chronix.server.types.ChronixTimeSeries;
-import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.List;
-
 /**
  * @author f.lautenschlager
  */
-public final class First implements ChronixAggregation<MetricTimeSeries> {
+public final class First implements FusableAggregation {
 
-    /**
-     * Gets the first value in the time series.
-     * It first orders the time series.
-     *
-     * @param timeSeriesList list with time series
-     * @return the average or 0 if the list is empty
-     */
     @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
-
-        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
-
-            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-
-            //If it is empty, we return NaN
-            if (timeSeries.isEmpty()) {
-                functionCtx.add(this, Double.NaN, chronixTimeSeries.getJoinKey());
-                continue;
-            }
-
-            //we need to sort the time series
-            timeSeries.sort();
-            functionCtx.add(this, timeSeries.getValue(0), chronixTimeSeries.getJoinKey());
-        }
+    public int getRequiredStatistics() {
+        return AggregationStatistics.SORTED;
+    }
 
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return statistics.getFirst();
     }
 
     @Override
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.aggregations;
+
+import de.qaware.chronix.server.functions.ChronixAggregation;
+import de.qaware.chronix.server.functions.FunctionCtx;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+import java.util.List;
+
+/**
+ * An aggregation that is computed from the {@link AggregationStatistics} of a time series.
+ * Several of these aggregations are fused into a single pass, see {@link FusedAggregation}.
+ * The aggregation is executed on the statistics of each time series on its own, hence the result of the fused
+ * and the single execution is equal.
+ *
+ * @author f.lautenschlager
+ */
+public interface FusableAggregation extends ChronixAggregation<MetricTimeSeries> {
+
+    /**
+     * @return the statistics required to compute the aggregation, a combination of the constants of {@link AggregationStatistics}
+     */
+    int getRequiredStatistics();
+
+    /**
+     * @return the exact percentiles required to compute the aggregation, see {@link AggregationStatistics#PERCENTILES}
+     */
+    default double[] getRequiredPercentiles() {
+        return new double[0];
+    }
+
+    /**
+     * @param statistics the statistics of a non-empty time series
+     * @return the value of the aggregation
+     */
+    double aggregate(AggregationStatistics statistics);
+
+    /**
+     * @return the value of the aggregation of an empty time series, NaN by default
+     */
+    default double emptyValue() {
+        return Double.NaN;
+    }
+
+    /**
+     * Computes the statistics of each time series and adds the value of the aggregation.
+     *
+     * @param timeSeriesList the time series
+     * @param functionCtx    to add the values of the aggregation to.
+     */
+    @Override
+    default void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
+        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
+
+            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
+
+            if (timeSeries.isEmpty()) {
+                functionCtx.add(this, emptyValue(), chronixTimeSeries.getJoinKey());
+                continue;
+            }
+
+            AggregationStatistics statistics = AggregationStatistics.of(timeSeries, null, getRequiredStatistics(), getRequiredPercentiles());
+            functionCtx.add(this, aggregate(statistics), chronixTimeSeries.getJoinKey());
+        }
+    }
+
+    @Override
+    default boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+}
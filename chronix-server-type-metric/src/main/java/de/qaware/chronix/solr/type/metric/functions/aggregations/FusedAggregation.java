@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.aggregations;
+
+import de.qaware.chronix.server.functions.ChronixAggregation;
+import de.qaware.chronix.server.functions.FunctionCtx;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries;
+import de.qaware.chronix.solr.type.metric.ChunkSummary;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.DoubleStream;
+
+/**
+ * Computes several aggregations in a single pass over the values of a time series.
+ * The values added to the function context are equal to the execution of the single aggregations.
+ * The fused aggregation is created by the metric type and is not part of the query language.
+ * It also combines the {@link ChunkSummary} of records that were not decoded with the points of the decoded records.
+ *
+ * @author f.lautenschlager
+ */
+public final class FusedAggregation implements ChronixAggregation<MetricTimeSeries> {
+
+    private final FusableAggregation[] aggregations;
+    private final int requiredStatistics;
+    private final double[] requiredPercentiles;
+
+    /**
+     * @param aggregations the aggregations that are computed together
+     */
+    public FusedAggregation(List<FusableAggregation> aggregations) {
+        this.aggregations = aggregations.toArray(new FusableAggregation[aggregations.size()]);
+
+        int required = 0;
+        DoubleStream percentiles = DoubleStream.empty();
+        for (FusableAggregation aggregation : this.aggregations) {
+            required |= aggregation.getRequiredStatistics();
+            percentiles = DoubleStream.concat(percentiles, DoubleStream.of(aggregation.getRequiredPercentiles()));
+        }
+        this.requiredStatistics = required;
+        //several percentiles share the selection on one copy of the values
+        this.requiredPercentiles = percentiles.distinct().toArray();
+    }
+
+    /**
+     * Fuses the fusable aggregations of the given list.
+     * The fused aggregation takes the place of the first fusable aggregation, all other aggregations are kept.
+     *
+     * @param aggregations the aggregations
+     * @return the aggregations with fused aggregations
+     */
+    public static List<ChronixAggregation<MetricTimeSeries>> fuse(List<ChronixAggregation<MetricTimeSeries>> aggregations) {
+        List<FusableAggregation> fusable = new ArrayList<>();
+        for (ChronixAggregation<MetricTimeSeries> aggregation : aggregations) {
+            if (aggregation instanceof FusableAggregation) {
+                fusable.add((FusableAggregation) aggregation);
+            }
+        }
+
+        //nothing to fuse
+        if (fusable.size() < 2) {
+            return aggregations;
+        }
+
+        List<ChronixAggregation<MetricTimeSeries>> fused = new ArrayList<>(aggregations.size() - fusable.size() + 1);
+        for (ChronixAggregation<MetricTimeSeries> aggregation : aggregations) {
+            if (!(aggregation instanceof FusableAggregation)) {
+                fused.add(aggregation);
+            } else if (aggregation == fusable.get(0)) {
+                fused.add(new FusedAggregation(fusable));
+            }
+        }
+        return fused;
+    }
+
+    /**
+     * Checks if the given aggregations can be computed from the {@link ChunkSummary} of the records,
+     * i.e. all of them are fusable and only require {@link AggregationStatistics#SUMMARIZABLE} statistics.
+     *
+     * @param aggregations the aggregations
+     * @return true if the aggregations can be computed from summaries
+     */
+    public static boolean summarizable(List<ChronixAggregation<MetricTimeSeries>> aggregations) {
+        if (aggregations.isEmpty()) {
+            return false;
+        }
+        for (ChronixAggregation<MetricTimeSeries> aggregation : aggregations) {
+            if (!(aggregation instanceof FusableAggregation)
+                    || (((FusableAggregation) aggregation).getRequiredStatistics() & ~AggregationStatistics.SUMMARIZABLE) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the statistics of each time series once and adds the values of all aggregations.
+     *
+     * @param timeSeriesList the time series
+     * @param functionCtx    to add the values of the aggregations to.
+     */
+    @Override
+    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
+        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
+
+            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
+            ChunkSummary summary = summary(chronixTimeSeries);
+
+            if (timeSeries.isEmpty() && summary == null) {
+                for (FusableAggregation aggregation : aggregations) {
+                    functionCtx.add(aggregation, aggregation.emptyValue(), chronixTimeSeries.getJoinKey());
+                }
+                continue;
+            }
+
+            AggregationStatistics statistics = AggregationStatistics.of(timeSeries, summary, requiredStatistics, requiredPercentiles);
+            for (FusableAggregation aggregation : aggregations) {
+                functionCtx.add(aggregation, aggregation.aggregate(statistics), chronixTimeSeries.getJoinKey());
+            }
+        }
+    }
+
+    private static ChunkSummary summary(ChronixTimeSeries<MetricTimeSeries> timeSeries) {
+        if (timeSeries instanceof ChronixMetricTimeSeries) {
+            return ((ChronixMetricTimeSeries) timeSeries).getSummary();
+        }
+        return null;
+    }
+
+    @Override
+    public String getQueryName() {
+        return "fused";
+    }
+
+    @Override
+    public String getType() {
+        return "metric";
+    }
+
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        if (obj.getClass() != getClass()) {
+            return false;
+        }
+        FusedAggregation rhs = (FusedAggregation) obj;
+        return new EqualsBuilder()
+                .append(this.aggregations, rhs.aggregations)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(aggregations)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("aggregations", aggregations)
+                .toString();
+    }
+}
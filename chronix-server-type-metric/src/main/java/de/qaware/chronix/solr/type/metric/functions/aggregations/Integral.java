@@ -18,22 +18,29 @@ package de.qaware.chronix.solr.type.metric.functions.aggregations;
 import de.qaware.chronix.server.functions.ChronixAggregation;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.solr.type.metric.functions.math.Integration;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
-import org.apache.commons.math3.analysis.integration.SimpsonIntegrator;
+import org.apache.commons.lang3.builder.ToStringBuilder;
 
 import java.util.List;
 
 /**
- * Integral aggregation
+ * Integral aggregation.
+ * Integrates the values over their timestamps with the composite Simpson's rule (integral)
+ * or the trapezoidal rule (integral:TRAPEZOID).
  *
  * @author f.lautenschlager
  */
 public final class Integral implements ChronixAggregation<MetricTimeSeries> {
 
+    private static final String TRAPEZOID = "TRAPEZOID";
+
+    private boolean trapezoid;
+
     /**
-     * Calculates the integral of the given time series using the simpson integrator of commons math lib
+     * Calculates the integral of the given time series over its timestamps in a single pass
      *
      * @param timeSeriesList list with time series
      * @param functionCtx    the analysis and values result map
@@ -50,14 +57,40 @@ public final class Integral implements ChronixAggregation<MetricTimeSeries> {
                 continue;
             }
 
-            SimpsonIntegrator simpsonIntegrator = new SimpsonIntegrator();
-            double integral = simpsonIntegrator.integrate(Integer.MAX_VALUE, x -> timeSeries.getValue((int) x), 0, timeSeries.size() - 1);
+            timeSeries.sort();
+            double integral;
+            if (trapezoid) {
+                integral = Integration.trapezoid(timeSeries.getTimestamps(), timeSeries.getValues());
+            } else {
+                integral = Integration.simpson(timeSeries.getTimestamps(), timeSeries.getValues());
+            }
 
             functionCtx.add(this, integral, chronixTimeSeries.getJoinKey());
 
         }
     }
 
+    /**
+     * @param args the function arguments, optional TRAPEZOID to use the trapezoidal rule
+     */
+    @Override
+    public void setArguments(String[] args) {
+        this.trapezoid = args.length > 0 && TRAPEZOID.equalsIgnoreCase(args[0].trim());
+    }
+
+    @Override
+    public String[] getArguments() {
+        if (trapezoid) {
+            return new String[]{"rule=trapezoid"};
+        }
+        return new String[0];
+    }
+
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
     @Override
     public String getQueryName() {
         return "integral";
@@ -79,13 +112,23 @@ public final class Integral implements ChronixAggregation<MetricTimeSeries> {
         if (obj.getClass() != getClass()) {
             return false;
         }
+        Integral rhs = (Integral) obj;
         return new EqualsBuilder()
+                .append(this.trapezoid, rhs.trapezoid)
                 .isEquals();
     }
 
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
+                .append(trapezoid)
                 .toHashCode();
     }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("trapezoid", trapezoid)
+                .toString();
+    }
 }
@@ -15,44 +15,22 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.aggregations;
 
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.FunctionCtx;
-import de.qaware.chronix.server.types.ChronixTimeSeries;
-import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.List;
-
 /**
  * @author f.lautenschlager
  */
-public final class Last implements ChronixAggregation<MetricTimeSeries> {
+public final class Last implements FusableAggregation {
 
-    /**
-     * Gets the last value in the time series.
-     * It first orders the time series.
-     *
-     * @param timeSeriesList list with time series
-     * @return the average or 0 if the list is empty
-     */
     @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
-
-        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
-
-            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-
-            //If it is empty, we return NaN
-            if (timeSeries.size() <= 0) {
-                functionCtx.add(this, Double.NaN, chronixTimeSeries.getJoinKey());
-                continue;
-            }
+    public int getRequiredStatistics() {
+        return AggregationStatistics.SORTED;
+    }
 
-            //We need to sort the time series
-            timeSeries.sort();
-            functionCtx.add(this, timeSeries.getValue(timeSeries.size() - 1), chronixTimeSeries.getJoinKey());
-        }
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return statistics.getLast();
     }
 
     @Override
@@ -15,52 +15,24 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.aggregations;
 
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.FunctionCtx;
-import de.qaware.chronix.server.types.ChronixTimeSeries;
-import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.List;
-
 /**
  * The maximum aggregation
  *
  * @author f.lautenschlager
  */
-public final class Max implements ChronixAggregation<MetricTimeSeries> {
+public final class Max implements FusableAggregation {
 
-    /**
-     * Calculates the maximum value of the first time series.
-     *
-     * @param timeSeriesList list with time series
-     * @return the maximum or 0 if the list is empty
-     */
     @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
-
-        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
-
-            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-
-            //If it is empty, we return NaN
-            if (timeSeries.size() <= 0) {
-                functionCtx.add(this, Double.NaN, chronixTimeSeries.getJoinKey());
-                continue;
-            }
-            //Else calculate the analysis value
-            int size = timeSeries.size();
-            double max = timeSeries.getValue(0);
+    public int getRequiredStatistics() {
+        return AggregationStatistics.MIN_MAX;
+    }
 
-            for (int i = 1; i < size; i++) {
-                double next = timeSeries.getValue(i);
-                if (next > max) {
-                    max = next;
-                }
-            }
-            functionCtx.add(this, max, chronixTimeSeries.getJoinKey());
-        }
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return statistics.getMax();
     }
 
     @Override
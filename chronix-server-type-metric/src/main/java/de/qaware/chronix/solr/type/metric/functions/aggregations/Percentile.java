@@ -15,58 +15,52 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.aggregations;
 
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.FunctionCtx;
-import de.qaware.chronix.server.types.ChronixTimeSeries;
-import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
-import java.util.List;
-
 /**
- * Percentile aggregation analysis
+ * Percentile aggregation analysis.
+ * The percentile is exact by default. With the argument APPROX, e.g. p:0.99,APPROX, it is approximated using a t-digest.
  *
  * @author f.lautenschlager
  */
-public final class Percentile implements ChronixAggregation<MetricTimeSeries> {
+public final class Percentile implements FusableAggregation {
+
+    private static final String APPROXIMATE = "APPROX";
 
     private double percentile;
+    private boolean approximate;
 
-    /**
-     * Calculates the percentile of the first time series.
-     *
-     * @param timeSeriesList list with time series
-     * @return the percentile or 0 if the list is empty
-     */
     @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
-        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
-
-            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
+    public int getRequiredStatistics() {
+        return approximate ? AggregationStatistics.APPROXIMATE_PERCENTILES : AggregationStatistics.PERCENTILES;
+    }
 
-            //If it is empty, we return NaN
-            if (timeSeries.size() <= 0) {
-                functionCtx.add(this, Double.NaN, chronixTimeSeries.getJoinKey());
-                continue;
-            }
+    @Override
+    public double[] getRequiredPercentiles() {
+        return approximate ? new double[0] : new double[]{percentile};
+    }
 
-            //Else calculate the analysis value
-            functionCtx.add(this, de.qaware.chronix.solr.type.metric.functions.math.Percentile.evaluate(timeSeries.getValues(), percentile), chronixTimeSeries.getJoinKey());
-        }
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return approximate ? statistics.getApproximatePercentile(percentile) : statistics.getPercentile(percentile);
     }
 
     /**
-     * @param args * @param args the function arguments, e.g. the percentile [0.0 ... 1.0]
+     * @param args the function arguments, e.g. the percentile [0.0 ... 1.0] and optional APPROX
      */
     @Override
     public void setArguments(String[] args) {
         this.percentile = Double.parseDouble(args[0]);
+        this.approximate = args.length > 1 && APPROXIMATE.equalsIgnoreCase(args[1].trim());
     }
 
     @Override
     public String[] getArguments() {
+        if (approximate) {
+            return new String[]{"percentile=" + percentile, "approximate=true"};
+        }
         return new String[]{"percentile=" + percentile};
     }
 
@@ -94,6 +88,7 @@ public final class Percentile implements ChronixAggregation<MetricTimeSeries> {
         Percentile rhs = (Percentile) obj;
         return new EqualsBuilder()
                 .append(this.percentile, rhs.percentile)
+                .append(this.approximate, rhs.approximate)
                 .isEquals();
     }
 
@@ -101,6 +96,7 @@ public final class Percentile implements ChronixAggregation<MetricTimeSeries> {
     public int hashCode() {
         return new HashCodeBuilder()
                 .append(percentile)
+                .append(approximate)
                 .toHashCode();
     }
 
@@ -109,6 +105,7 @@ public final class Percentile implements ChronixAggregation<MetricTimeSeries> {
     public String toString() {
         return new ToStringBuilder(this)
                 .append("percentile", percentile)
+                .append("approximate", approximate)
                 .toString();
     }
 }
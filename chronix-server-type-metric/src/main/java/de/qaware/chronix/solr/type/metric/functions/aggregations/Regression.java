@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.aggregations;
+
+import de.qaware.chronix.solr.type.metric.functions.math.LinearRegression;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The regression aggregations return a statistic of the linear regression of the values over the timestamps:
+ * the slope (slope), the value at the first timestamp (intercept) or the coefficient of determination (rsquared).
+ *
+ * @author f.lautenschlager
+ */
+public final class Regression implements FusableAggregation {
+
+    /**
+     * The statistics of the linear regression
+     */
+    public enum Statistic {
+        /**
+         * The change of the value per millisecond
+         */
+        SLOPE("slope", LinearRegression::slope),
+        /**
+         * The value of the best-fit line at the first timestamp of the time series.
+         * The intercept at timestamp 0, i.e. at 1970-01-01, is meaningless for real timestamps.
+         */
+        INTERCEPT("intercept", regression -> regression.valueAt(regression.start())),
+        /**
+         * How well the values fit a line, between 0 and 1
+         */
+        RSQUARED("rsquared", LinearRegression::rSquared);
+
+        private final String queryName;
+        private final ToDoubleFunction<LinearRegression> value;
+
+        Statistic(String queryName, ToDoubleFunction<LinearRegression> value) {
+            this.queryName = queryName;
+            this.value = value;
+        }
+    }
+
+    private final Statistic statistic;
+
+    /**
+     * @param statistic the statistic of the linear regression
+     */
+    public Regression(Statistic statistic) {
+        this.statistic = statistic;
+    }
+
+    @Override
+    public int getRequiredStatistics() {
+        return AggregationStatistics.REGRESSION;
+    }
+
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return statistic.value.applyAsDouble(statistics.getRegression());
+    }
+
+    @Override
+    public String getQueryName() {
+        return statistic.queryName;
+    }
+
+    @Override
+    public String getType() {
+        return "metric";
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        if (obj.getClass() != getClass()) {
+            return false;
+        }
+        Regression rhs = (Regression) obj;
+        return new EqualsBuilder()
+                .append(this.statistic, rhs.statistic)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(statistic)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("statistic", statistic)
+                .toString();
+    }
+}
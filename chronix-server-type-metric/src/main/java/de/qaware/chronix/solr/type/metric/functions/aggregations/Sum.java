@@ -15,50 +15,23 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.aggregations;
 
-import de.qaware.chronix.server.functions.ChronixAggregation;
-import de.qaware.chronix.server.functions.FunctionCtx;
-import de.qaware.chronix.server.types.ChronixTimeSeries;
-import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.List;
-
 /**
  * Sum aggregation for a time series
  *
  * @author f.lautenschlager
  */
-public final class Sum implements ChronixAggregation<MetricTimeSeries> {
-    /**
-     * Calculates the sum of the values of the given time series
-     *
-     * @param timeSeriesList list with time series
-     * @return the sum of the values
-     */
+public final class Sum implements FusableAggregation {
     @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
-        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
-
-            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-
-            //If it is empty, we return NaN
-            if (timeSeries.size() <= 0) {
-                functionCtx.add(this, Double.NaN, chronixTimeSeries.getJoinKey());
-                continue;
-            }
-
-            //Else calculate the analysis value
-            int size = timeSeries.size();
-            double sum = 0;
-            //Sum up the single values
-            for (int i = 0; i < size; i++) {
-                sum += timeSeries.getValue(i);
+    public int getRequiredStatistics() {
+        return AggregationStatistics.SUM;
+    }
 
-            }
-            //add it to the function context
-            functionCtx.add(this, sum, chronixTimeSeries.getJoinKey());
-        }
+    @Override
+    public double aggregate(AggregationStatistics statistics) {
+        return statistics.getSum();
     }
 
     @Override
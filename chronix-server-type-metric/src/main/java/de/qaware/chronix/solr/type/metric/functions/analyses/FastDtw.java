@@ -20,8 +20,7 @@ import de.qaware.chronix.distance.DistanceFunctionEnum;
 import de.qaware.chronix.distance.DistanceFunctionFactory;
 import de.qaware.chronix.dtw.FastDTW;
 import de.qaware.chronix.dtw.TimeWarpInfo;
-import de.qaware.chronix.server.functions.ChronixAnalysis;
-import de.qaware.chronix.server.functions.FunctionCtx;
+import de.qaware.chronix.server.functions.ChronixPairAnalysis;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
 import de.qaware.chronix.timeseries.MultivariateTimeSeries;
@@ -29,9 +28,11 @@ import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * The analysis implementation of the Fast DTW analysis
@@ -40,7 +41,7 @@ import java.util.Map;
  *
  * @author f.lautenschlager
  */
-public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
+public final class FastDtw implements ChronixPairAnalysis<MetricTimeSeries> {
 
     private DistanceFunction distanceFunction;
     private int searchRadius;
@@ -58,9 +59,16 @@ public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
         return compareFields;
     }
 
-    // original call public void execute(Pair<MetricTimeSeries, MetricTimeSeries> timeSeriesPair, FunctionCtx functionCtx) {
+    /**
+     * Pairs every time series on the left side with every time series on the right side.
+     * Each time series is prepared once and shared by its pairs.
+     * The pairs are ordered by the left side and then the right side.
+     *
+     * @param timeSeriesList the time series that are split into the left side and the right side
+     * @return the pairs that are compared
+     */
     @Override
-    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
+    public List<Pair> pairs(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList) {
 
         //these time series are compared with
         List<ChronixTimeSeries<MetricTimeSeries>> leftSide = new ArrayList<>();
@@ -69,20 +77,90 @@ public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
 
         splitTimeSeries(timeSeriesList, leftSide, rightSide);
 
+        if (leftSide.isEmpty() || rightSide.isEmpty()) {
+            return Collections.emptyList();
+        }
 
-        for (ChronixTimeSeries<MetricTimeSeries> leftSideTs : leftSide) {
+        //build the multivariate time series once
+        List<DtwTimeSeries> with = rightSide.stream().map(FastDtw::buildDtwTimeSeries).collect(Collectors.toList());
 
-            MultivariateTimeSeries compare = buildMultiVariateTimeSeries(leftSideTs);
-            for (ChronixTimeSeries<MetricTimeSeries> rightSideTs : rightSide) {
-                MultivariateTimeSeries with = buildMultiVariateTimeSeries(rightSideTs);
+        List<Pair> pairs = new ArrayList<>(leftSide.size() * with.size());
+        for (ChronixTimeSeries<MetricTimeSeries> left : leftSide) {
+            DtwTimeSeries compare = buildDtwTimeSeries(left);
+            for (DtwTimeSeries right : with) {
+                pairs.add(new DtwPair(left.getJoinKey(), compare, right));
+            }
+        }
+        return pairs;
+    }
 
-                //Call the fast dtw library
-                TimeWarpInfo result = FastDTW.getWarpInfoBetween(compare, with, searchRadius, distanceFunction);
-                //Check the result. If it lower equals the threshold, we can return the other time series
-                functionCtx.add(this, result.getNormalizedDistance() <= maxNormalizedWarpingCost, leftSideTs.getJoinKey());
+    /**
+     * A pair is only warped if a cheap lower bound of its warping cost does not exceed the max warping cost.
+     *
+     * @param pair a pair built by {@link #pairs(List)}
+     * @return true if the warping cost is lower equals the threshold, i.e. the time series are similar
+     */
+    @Override
+    public boolean evaluate(Pair pair) {
+        DtwPair dtwPair = (DtwPair) pair;
+        return isSimilar(dtwPair.compare, dtwPair.with);
+    }
+
+    /**
+     * Checks if the normalized warping cost of the two time series is lower equals the max warping cost.
+     * The normalized cost of the fast dtw is at least the cost divided by the sum of the sizes.
+     * The cost is at least the lower bound of the exact dynamic time warping.
+     * Hence pairs with a lower bound above the max cost are not similar and are not warped.
+     */
+    private boolean isSimilar(DtwTimeSeries compare, DtwTimeSeries with) {
+        if (compare.size() > 0 && with.size() > 0) {
+            double maxCost = maxNormalizedWarpingCost * (compare.size() + with.size());
+            if (endpointBound(compare, with) > maxCost
+                    || envelopeBound(compare, with, maxCost) > maxCost
+                    || envelopeBound(with, compare, maxCost) > maxCost) {
+                return false;
             }
         }
 
+        //Call the fast dtw library
+        TimeWarpInfo result = FastDTW.getWarpInfoBetween(compare.timeSeries, with.timeSeries, searchRadius, distanceFunction);
+        return result.getNormalizedDistance() <= maxNormalizedWarpingCost;
+    }
+
+    /**
+     * Every warping path matches the first points and the last points (LB_Kim).
+     *
+     * @return a lower bound of the warping cost of the two time series
+     */
+    private static double endpointBound(DtwTimeSeries compare, DtwTimeSeries with) {
+        double bound = Math.abs(compare.values[0] - with.values[0]);
+        if (compare.size() > 1 || with.size() > 1) {
+            bound += Math.abs(compare.values[compare.size() - 1] - with.values[with.size() - 1]);
+        }
+        return bound;
+    }
+
+    /**
+     * Every point is matched with at least one point of the other time series.
+     * Hence each point costs at least its distance to the envelope of the other time series (LB_Keogh with an unconstrained window).
+     * The summation is abandoned as soon as the bound exceeds the given max cost.
+     *
+     * @return a lower bound of the warping cost of the two time series
+     */
+    private static double envelopeBound(DtwTimeSeries compare, DtwTimeSeries envelope, double maxCost) {
+        double bound = 0;
+        for (int i = 0; i < compare.size(); i++) {
+            double value = compare.values[i];
+            if (value > envelope.max) {
+                bound += value - envelope.max;
+            } else if (value < envelope.min) {
+                bound += envelope.min - value;
+            }
+            if (bound > maxCost) {
+                return bound;
+            }
+        }
+        return bound;
     }
 
     private void splitTimeSeries(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, List<ChronixTimeSeries<MetricTimeSeries>> leftSide, List<ChronixTimeSeries<MetricTimeSeries>> rightSide) {
@@ -123,11 +201,11 @@ public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
      * If two or more timestamps are the same, the values are aggregated using the average.
      *
      * @param chronixTimeSeries the chronix time series
-     * @return a multivariate time series for the fast dtw analysis
+     * @return a multivariate time series for the fast dtw analysis and its values for the lower bounds
      */
-    private MultivariateTimeSeries buildMultiVariateTimeSeries(ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries) {
+    private static DtwTimeSeries buildDtwTimeSeries(ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries) {
         MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-        MultivariateTimeSeries multivariateTimeSeries = new MultivariateTimeSeries(1);
+        DtwTimeSeries dtwTimeSeries = new DtwTimeSeries(timeSeries.size());
 
         if (timeSeries.size() > 0) {
             //First sort the values
@@ -135,7 +213,7 @@ public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
 
             long formerTimestamp = timeSeries.getTime(0);
             double formerValue = timeSeries.getValue(0);
-            int timesSameTimestamp = 0;
+            int timesSameTimestamp = 1;
 
             for (int i = 1; i < timeSeries.size(); i++) {
 
@@ -144,22 +222,64 @@ public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
                     formerValue += timeSeries.getValue(i);
                     timesSameTimestamp++;
                 } else {
-                    //calc the average of the values of the same timestamp
-                    if (timesSameTimestamp > 0) {
-                        formerValue = formerValue / timesSameTimestamp;
-                        timesSameTimestamp = 0;
-                    }
-                    //first add the former timestamp
-                    multivariateTimeSeries.add(formerTimestamp, new double[]{formerValue});
+                    //first add the average of the values of the former timestamp
+                    dtwTimeSeries.add(formerTimestamp, formerValue / timesSameTimestamp);
                     formerTimestamp = timeSeries.getTime(i);
                     formerValue = timeSeries.getValue(i);
+                    timesSameTimestamp = 1;
                 }
             }
             //add the last point
-            multivariateTimeSeries.add(formerTimestamp, new double[]{formerValue});
+            dtwTimeSeries.add(formerTimestamp, formerValue / timesSameTimestamp);
+        }
+
+        return dtwTimeSeries;
+    }
+
+    /**
+     * A time series of the left side and a time series of the right side
+     */
+    private static final class DtwPair implements Pair {
+        private final String joinKey;
+        private final DtwTimeSeries compare;
+        private final DtwTimeSeries with;
+
+        private DtwPair(String joinKey, DtwTimeSeries compare, DtwTimeSeries with) {
+            this.joinKey = joinKey;
+            this.compare = compare;
+            this.with = with;
+        }
+
+        @Override
+        public String getJoinKey() {
+            return joinKey;
         }
+    }
 
-        return multivariateTimeSeries;
+    /**
+     * A multivariate time series for the fast dtw library with its values and their envelope
+     */
+    private static final class DtwTimeSeries {
+        private final MultivariateTimeSeries timeSeries = new MultivariateTimeSeries(1);
+        private final double[] values;
+        private int size;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private DtwTimeSeries(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        private void add(long timestamp, double value) {
+            timeSeries.add(timestamp, new double[]{value});
+            values[size++] = value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        private int size() {
+            return size;
+        }
     }
 
     @Override
@@ -218,6 +338,7 @@ public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
         }
         FastDtw rhs = (FastDtw) obj;
         return new EqualsBuilder()
+                .append(this.leftSideValues, rhs.leftSideValues)
                 .append(this.distanceFunction, rhs.distanceFunction)
                 .append(this.searchRadius, rhs.searchRadius)
                 .append(this.maxNormalizedWarpingCost, rhs.maxNormalizedWarpingCost)
@@ -227,6 +348,7 @@ public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
     @Override
     public int hashCode() {
         return new HashCodeBuilder()
+                .append(leftSideValues)
                 .append(distanceFunction)
                 .append(searchRadius)
                 .append(maxNormalizedWarpingCost)
@@ -236,7 +358,8 @@ public final class FastDtw implements ChronixAnalysis<MetricTimeSeries> {
     @Override
     public String toString() {
         return "FastDtw{" +
-                "distanceFunction=" + distanceFunction +
+                "leftSideValues=" + leftSideValues +
+                ", distanceFunction=" + distanceFunction +
                 ", searchRadius=" + searchRadius +
                 ", maxNormalizedWarpingCost=" + maxNormalizedWarpingCost +
                 '}';
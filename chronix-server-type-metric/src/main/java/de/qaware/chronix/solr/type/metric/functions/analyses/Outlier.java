@@ -15,7 +15,6 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.analyses;
 
-import de.qaware.chronix.converter.common.DoubleList;
 import de.qaware.chronix.server.functions.ChronixAnalysis;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
@@ -49,25 +48,28 @@ public class Outlier implements ChronixAnalysis<MetricTimeSeries> {
 
             if (timeSeries.isEmpty()) {
                 functionCtx.add(this, false, chronixTimeSeries.getJoinKey());
-                return;
+                continue;
             }
 
-            DoubleList points = timeSeries.getValues();
-            //Calculate the percentiles
-            double q1 = Percentile.evaluate(points, .25);
-            double q3 = Percentile.evaluate(points, .75);
+            //Calculate both percentiles with one selection on the same copy
+            double[] points = timeSeries.getValuesAsArray();
+            double[] quartiles = Percentile.evaluate(points, .25, .75);
+            double q1 = quartiles[0];
+            double q3 = quartiles[1];
             //Calculate the threshold
             double threshold = (q3 - q1) * 1.5 + q3;
-            //filter the values, if one outlier is found, we can return
-            for (int i = 0; i < points.size(); i++) {
-                double point = points.get(i);
-                if (point > threshold) {
-                    functionCtx.add(this, true, chronixTimeSeries.getJoinKey());
-                    return;
-                }
+            //check if a value is above the threshold
+            functionCtx.add(this, hasOutlier(points, threshold), chronixTimeSeries.getJoinKey());
+        }
+    }
+
+    private static boolean hasOutlier(double[] points, double threshold) {
+        for (double point : points) {
+            if (point > threshold) {
+                return true;
             }
-            functionCtx.add(this, false, chronixTimeSeries.getJoinKey());
         }
+        return false;
     }
 
 
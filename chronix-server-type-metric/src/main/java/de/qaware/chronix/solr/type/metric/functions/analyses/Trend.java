@@ -45,9 +45,7 @@ public final class Trend implements ChronixAnalysis<MetricTimeSeries> {
 
             MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
 
-            //We need to sort the time series for this analysis
-            timeSeries.sort();
-            //Calculate the linear regression
+            //Calculate the linear regression, it does not depend on the order of the points
             LinearRegression linearRegression = new LinearRegression(timeSeries.getTimestamps(), timeSeries.getValues());
             double slope = linearRegression.slope();
             //If we have a positive slope, we return 1 otherwise -1
@@ -56,6 +54,11 @@ public final class Trend implements ChronixAnalysis<MetricTimeSeries> {
 
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
     @Override
     public String getQueryName() {
         return "trend";
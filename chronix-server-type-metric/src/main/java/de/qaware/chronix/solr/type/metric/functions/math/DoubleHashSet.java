@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.math;
+
+/**
+ * A set of primitive double values using open addressing with linear probing.
+ * Values are compared like {@link Double#equals(Object)}: all NaN values are equal
+ * and -0.0 is not equal to 0.0.
+ *
+ * @author f.lautenschlager
+ */
+public final class DoubleHashSet {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    //the bits of 0.0, used as marker for free slots
+    private static final long FREE = 0L;
+
+    private long[] slots;
+    private int size;
+    private boolean containsZero;
+
+    /**
+     * Creates an empty set
+     */
+    public DoubleHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize the number of values the set holds without growing
+     */
+    public DoubleHashSet(int expectedSize) {
+        //load factor of 0.5
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, DEFAULT_CAPACITY / 2) * 2 - 1) << 1;
+        this.slots = new long[capacity];
+    }
+
+    /**
+     * Adds the value if it is not already contained
+     *
+     * @param value the value
+     * @return true if the value was added, false if it was already contained
+     */
+    public boolean add(double value) {
+        long bits = Double.doubleToLongBits(value);
+        if (bits == FREE) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int mask = slots.length - 1;
+        int slot = hash(bits) & mask;
+        while (slots[slot] != FREE) {
+            if (slots[slot] == bits) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = bits;
+        size++;
+
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @param value the value
+     * @return true if the set contains the value
+     */
+    public boolean contains(double value) {
+        long bits = Double.doubleToLongBits(value);
+        if (bits == FREE) {
+            return containsZero;
+        }
+
+        int mask = slots.length - 1;
+        int slot = hash(bits) & mask;
+        while (slots[slot] != FREE) {
+            if (slots[slot] == bits) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of values in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        int mask = slots.length - 1;
+        for (long bits : old) {
+            if (bits != FREE) {
+                int slot = hash(bits) & mask;
+                while (slots[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = bits;
+            }
+        }
+    }
+
+    /**
+     * The finalizer of murmur3 to spread the bits of a double
+     */
+    private static int hash(long bits) {
+        long h = bits;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
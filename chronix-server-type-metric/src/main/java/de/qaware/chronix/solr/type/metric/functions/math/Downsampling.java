@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.math;
+
+import java.util.Arrays;
+
+/**
+ * Visual downsampling of time series, i.e. selecting the points that keep the shape of a chart.
+ * Both algorithms select a subset of the points and need a single pass over the points sorted by timestamp.
+ *
+ * @author f.lautenschlager
+ */
+public final class Downsampling {
+
+    private Downsampling() {
+    }
+
+    /**
+     * Selects the points with M4: the time range is split into points / 4 buckets of equal width (pixel columns)
+     * and the first, the last, the minimum and the maximum point of each bucket are kept.
+     *
+     * @param timestamps the sorted timestamps
+     * @param values     the values
+     * @param points     the maximum number of points, at least 4
+     * @return the ascending indices of the selected points
+     */
+    public static int[] m4(long[] timestamps, double[] values, int points) {
+        int size = timestamps.length;
+        int buckets = points / 4;
+        if (size <= points || buckets < 1) {
+            return allIndices(size);
+        }
+
+        long start = timestamps[0];
+        double width = ((double) (timestamps[size - 1] - start) + 1) / buckets;
+
+        int[] selected = new int[buckets * 4];
+        int count = 0;
+
+        int first = 0;
+        while (first < size) {
+            int bucket = bucket(timestamps[first], start, width, buckets);
+            int min = first;
+            int max = first;
+            int last = first;
+            while (last + 1 < size && bucket(timestamps[last + 1], start, width, buckets) == bucket) {
+                last++;
+                if (values[last] < values[min]) {
+                    min = last;
+                }
+                if (values[last] > values[max]) {
+                    max = last;
+                }
+            }
+            count = addSorted(selected, count, first, Math.min(min, max), Math.max(min, max), last);
+            first = last + 1;
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    /**
+     * Selects the points with Largest-Triangle-Three-Buckets: the first and the last point are kept,
+     * the points in between are split into points - 2 buckets and the point of each bucket is kept
+     * that forms the largest triangle with the former selected point and the average of the next bucket.
+     *
+     * @param timestamps the sorted timestamps
+     * @param values     the values
+     * @param points     the maximum number of points, at least 3
+     * @return the ascending indices of the selected points
+     */
+    public static int[] lttb(long[] timestamps, double[] values, int points) {
+        int size = timestamps.length;
+        if (size <= points || points < 3) {
+            return allIndices(size);
+        }
+
+        //the timestamps relative to the first one keep the precision of the areas
+        long origin = timestamps[0];
+        int[] selected = new int[points];
+        double every = (double) (size - 2) / (points - 2);
+
+        int a = 0;
+        selected[0] = 0;
+        for (int bucket = 0; bucket < points - 2; bucket++) {
+            //the average point of the next bucket, the last point for the last bucket
+            int nextStart = (int) Math.floor((bucket + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * every) + 1, size);
+            if (nextStart >= size - 1) {
+                nextStart = size - 1;
+                nextEnd = size;
+            }
+            double averageTime = 0;
+            double averageValue = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                averageTime += timestamps[i] - origin;
+                averageValue += values[i];
+            }
+            averageTime /= nextEnd - nextStart;
+            averageValue /= nextEnd - nextStart;
+
+            //the point of the current bucket with the largest triangle
+            int start = (int) Math.floor(bucket * every) + 1;
+            int end = (int) Math.floor((bucket + 1) * every) + 1;
+            double aTime = timestamps[a] - origin;
+            double aValue = values[a];
+            double maxArea = -1;
+            int maxIndex = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((aTime - averageTime) * (values[i] - aValue)
+                        - (aTime - (timestamps[i] - origin)) * (averageValue - aValue));
+                if (area > maxArea) {
+                    maxArea = area;
+                    maxIndex = i;
+                }
+            }
+            selected[bucket + 1] = maxIndex;
+            a = maxIndex;
+        }
+        selected[points - 1] = size - 1;
+        return selected;
+    }
+
+    private static int bucket(long timestamp, long start, double width, int buckets) {
+        return Math.min((int) ((timestamp - start) / width), buckets - 1);
+    }
+
+    /**
+     * Adds the ascending indices without duplicates
+     */
+    private static int addSorted(int[] selected, int count, int... indices) {
+        for (int index : indices) {
+            if (count == 0 || selected[count - 1] != index) {
+                selected[count++] = index;
+            }
+        }
+        return count;
+    }
+
+    private static int[] allIndices(int size) {
+        int[] indices = new int[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = i;
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.math;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.converter.common.LongList;
+
+/**
+ * Class to integrate sampled values over their timestamps.
+ * The timestamps must be sorted ascending. Both rules take the real distances between the timestamps,
+ * hence irregular time series are integrated correctly. The unit of the result is value times timestamp unit.
+ * Both rules need a single pass over the points and do not allocate.
+ *
+ * @author f.lautenschlager
+ */
+public final class Integration {
+
+    private Integration() {
+    }
+
+    /**
+     * Integrates the values with the trapezoidal rule.
+     *
+     * @param timestamps the sorted timestamps
+     * @param values     the values at the timestamps
+     * @return the integral, 0 for less than two points
+     */
+    public static double trapezoid(LongList timestamps, DoubleList values) {
+        double integral = 0;
+        for (int i = 1; i < timestamps.size(); i++) {
+            integral += trapezoid(timestamps, values, i - 1);
+        }
+        return integral;
+    }
+
+    /**
+     * Integrates the values with the composite Simpson's rule for irregular spacing.
+     * Each two consecutive intervals are integrated by the parabola through their three points.
+     * If the number of intervals is odd, the last interval is integrated by the parabola through the last three points.
+     * Intervals of duplicate timestamps have no width and fall back to the trapezoidal rule.
+     *
+     * @param timestamps the sorted timestamps
+     * @param values     the values at the timestamps
+     * @return the integral, 0 for less than two points
+     */
+    public static double simpson(LongList timestamps, DoubleList values) {
+        int intervals = timestamps.size() - 1;
+        if (intervals < 2) {
+            return trapezoid(timestamps, values);
+        }
+
+        double integral = 0;
+        for (int i = 0; i + 1 < intervals; i += 2) {
+            double h0 = (double) (timestamps.get(i + 1) - timestamps.get(i));
+            double h1 = (double) (timestamps.get(i + 2) - timestamps.get(i + 1));
+
+            if (h0 == 0 || h1 == 0) {
+                integral += trapezoid(timestamps, values, i) + trapezoid(timestamps, values, i + 1);
+                continue;
+            }
+
+            double h = h0 + h1;
+            integral += h / 6 * ((2 - h1 / h0) * values.get(i)
+                    + h * h / (h0 * h1) * values.get(i + 1)
+                    + (2 - h0 / h1) * values.get(i + 2));
+        }
+
+        if (intervals % 2 == 1) {
+            int last = intervals;
+            double h0 = (double) (timestamps.get(last - 1) - timestamps.get(last - 2));
+            double h1 = (double) (timestamps.get(last) - timestamps.get(last - 1));
+
+            if (h0 == 0 || h1 == 0) {
+                integral += trapezoid(timestamps, values, last - 1);
+            } else {
+                double h = h0 + h1;
+                integral += (2 * h1 * h1 + 3 * h0 * h1) / (6 * h) * values.get(last)
+                        + (h1 * h1 + 3 * h0 * h1) / (6 * h0) * values.get(last - 1)
+                        - h1 * h1 * h1 / (6 * h0 * h) * values.get(last - 2);
+            }
+        }
+        return integral;
+    }
+
+    /**
+     * @return the area of the trapezoid between the point at the given index and its successor
+     */
+    private static double trapezoid(LongList timestamps, DoubleList values, int index) {
+        double width = (double) (timestamps.get(index + 1) - timestamps.get(index));
+        return width * (values.get(index) + values.get(index + 1)) / 2;
+    }
+}
@@ -20,52 +20,172 @@ import de.qaware.chronix.converter.common.DoubleList;
 import de.qaware.chronix.converter.common.LongList;
 
 /**
- * Simple linear regression to calculate the slope
+ * Simple linear regression of the values over the timestamps.
+ * The regression is computed incrementally from the count and the sums of x, y, xy, x² and y²,
+ * hence the points can be added in any order and chunk by chunk.
+ * The timestamps are taken relative to the first added timestamp and the sums are compensated (Neumaier),
+ * so the large epoch timestamps do not cancel out the precision.
  *
  * @author f.lautenschlager
  */
 public class LinearRegression {
-    private final double intercept;
+
+    private long count;
+    private long origin;
+    private long start;
+    private final CompensatedSum sumX = new CompensatedSum();
+    private final CompensatedSum sumY = new CompensatedSum();
+    private final CompensatedSum sumXY = new CompensatedSum();
+    private final CompensatedSum sumXX = new CompensatedSum();
+    private final CompensatedSum sumYY = new CompensatedSum();
+
+    /**
+     * Creates an empty regression
+     */
+    public LinearRegression() {
+        //points are added later
+    }
 
     /**
      * Performs a linear regression on the data points
      *
-     * @throws IllegalArgumentException if the lengths of the two arrays are not equal
+     * @param timestamps the timestamps
+     * @param values     the values at the timestamps
      */
     public LinearRegression(LongList timestamps, DoubleList values) {
-        double[] x = new double[timestamps.size()];
-        double[] y = new double[values.size()];
+        addAll(timestamps, values);
+    }
 
-        for (int i = 0; i < timestamps.size(); i++) {
-            x[i] = timestamps.get(i);
-            y[i] = values.get(i);
+    /**
+     * Adds a single point to the regression
+     *
+     * @param timestamp the timestamp
+     * @param value     the value at the timestamp
+     */
+    public void add(long timestamp, double value) {
+        if (count == 0) {
+            origin = timestamp;
+            start = timestamp;
+        } else {
+            start = Math.min(start, timestamp);
         }
+        double x = (double) (timestamp - origin);
+        count++;
+        sumX.add(x);
+        sumY.add(value);
+        sumXY.add(x * value);
+        sumXX.add(x * x);
+        sumYY.add(value * value);
+    }
 
-        double sumX = 0.0;
-        double sumY = 0.0;
-        for (int i = 0; i < x.length; i++) {
-            sumX += x[i];
-            sumY += y[i];
-        }
-        double xBar = sumX / x.length;
-        double yBar = sumY / x.length;
-
-        double xxBar = 0.0;
-        double xyBar = 0.0;
-        for (int i = 0; i < x.length; i++) {
-            xxBar += (x[i] - xBar) * (x[i] - xBar);
-            xyBar += (x[i] - xBar) * (y[i] - yBar);
+    /**
+     * Adds the points, e.g. of a chunk, to the regression
+     *
+     * @param timestamps the timestamps
+     * @param values     the values at the timestamps
+     */
+    public void addAll(LongList timestamps, DoubleList values) {
+        for (int i = 0; i < timestamps.size(); i++) {
+            add(timestamps.get(i), values.get(i));
         }
-        intercept = xyBar / xxBar;
     }
 
+    /**
+     * @return the number of points
+     */
+    public long count() {
+        return count;
+    }
 
     /**
-     * Returns the slope &intercept; of the best of the best-fit line <em>y</em> = &slope; + &intercept; <em>x</em>.
+     * Returns the slope of the best-fit line <em>y</em> = intercept + slope <em>x</em>.
      *
-     * @return the slope &intercept; of the best-fit line <em>y</em> = &slope; + &intercept; <em>x</em>
+     * @return the slope or NaN if there are less than two distinct timestamps
      */
     public double slope() {
-        return intercept;
+        double sxx = centeredXX();
+        if (!(sxx > 0)) {
+            return Double.NaN;
+        }
+        return centeredXY() / sxx;
+    }
+
+    /**
+     * Returns the intercept of the best-fit line <em>y</em> = intercept + slope <em>x</em>, i.e. the value at timestamp 0.
+     *
+     * @return the intercept or NaN if there are less than two distinct timestamps
+     */
+    public double intercept() {
+        double slope = slope();
+        return (sumY.value() - slope * sumX.value()) / count - slope * origin;
+    }
+
+    /**
+     * @return the smallest added timestamp, 0 if there are no points
+     */
+    public long start() {
+        return start;
+    }
+
+    /**
+     * Returns the value of the best-fit line at the given timestamp.
+     * It is computed relative to the added points, hence it keeps its precision for epoch timestamps.
+     *
+     * @param timestamp the timestamp
+     * @return the value at the timestamp or NaN if there are less than two distinct timestamps
+     */
+    public double valueAt(long timestamp) {
+        double slope = slope();
+        double x = (double) (timestamp - origin);
+        return sumY.value() / count + slope * (x - sumX.value() / count);
+    }
+
+    /**
+     * Returns the coefficient of determination r² of the best-fit line.
+     * It is 1 if all values are equal, as the line fits them exactly.
+     *
+     * @return r² between 0 and 1 or NaN if there are less than two distinct timestamps
+     */
+    public double rSquared() {
+        double sxx = centeredXX();
+        if (!(sxx > 0)) {
+            return Double.NaN;
+        }
+        double syy = sumYY.value() - sumY.value() * sumY.value() / count;
+        if (!(syy > 0)) {
+            return 1;
+        }
+        double sxy = centeredXY();
+        return Math.min(1, sxy * sxy / (sxx * syy));
+    }
+
+    private double centeredXX() {
+        return sumXX.value() - sumX.value() * sumX.value() / count;
+    }
+
+    private double centeredXY() {
+        return sumXY.value() - sumX.value() * sumY.value() / count;
+    }
+
+    /**
+     * A sum with a running compensation of the lost low-order bits
+     */
+    private static final class CompensatedSum {
+        private double sum;
+        private double compensation;
+
+        private void add(double value) {
+            double t = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+        }
+
+        private double value() {
+            return sum + compensation;
+        }
     }
-}
\ No newline at end of file
+}
@@ -18,8 +18,6 @@ package de.qaware.chronix.solr.type.metric.functions.math;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 
-import java.util.Arrays;
-
 /**
  * Class to calculate the top or bottom n values.
  *
@@ -32,6 +30,11 @@ public final class NElements {
     }
 
     /**
+     * Selects the top or bottom n values with a bounded heap of indices in O(values * log(n)).
+     * The top values are in descending order, the bottom values in ascending order.
+     * Equal values keep their order of the time series, i.e. top prefers the later and bottom the earlier values.
+     * NaN is treated as the largest value.
+     *
      * @param type        the calculation type: BOTTOM or TOP
      * @param n           the number of values n bottom or top values
      * @param timesStamps the time stamps of the time series
@@ -39,46 +42,103 @@ public final class NElements {
      * @return a result containing the top / bottom measurements (timestamp + value) of the time series
      */
     public static NElementsResult calc(NElementsCalculation type, int n, long[] timesStamps, double[] values) {
-        //we have to convert them to a pair array, to not loose the reference to the time stamps
-        Pair[] pairs = create(values);
-        Arrays.sort(pairs);
-
-        double[] nValues = new double[n];
-        long[] nTimes = new long[n];
-
-
+        int direction;
         switch (type) {
             case TOP:
-                int j = 0;
-                for (int i = timesStamps.length - 1; timesStamps.length - n <= i; i--) {
-                    nValues[j] = pairs[i].value;
-                    nTimes[j] = timesStamps[pairs[i].index];
-                    j++;
-                }
+                direction = 1;
                 break;
             case BOTTOM:
-                for (int i = 0; i < n; i++) {
-                    nValues[i] = pairs[i].value;
-                    nTimes[i] = timesStamps[pairs[i].index];
-                }
+                direction = -1;
                 break;
             default:
                 throw new EnumConstantNotPresentException(NElementsCalculation.class, "Type: " + type + " not available");
         }
 
+        int size = Math.min(n, values.length);
+        double[] nValues = new double[size];
+        long[] nTimes = new long[size];
+        if (size <= 0) {
+            return new NElementsResult(nTimes, nValues);
+        }
+
+        //the heap keeps the n best indices, the worst of them is the root
+        int[] heap = new int[size];
+        int heapSize = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (heapSize < size) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, values, direction);
+            } else if (compare(values, i, heap[0]) * direction > 0) {
+                heap[0] = i;
+                siftDown(heap, heapSize, values, direction);
+            }
+        }
+
+        //remove the worst index until the heap is empty, hence the result is filled from the end
+        while (heapSize > 0) {
+            int index = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, values, direction);
+
+            nValues[heapSize] = values[index];
+            nTimes[heapSize] = timesStamps[index];
+        }
+
         return new NElementsResult(nTimes, nValues);
     }
 
     /**
-     * @param values the values of the time series
-     * @return a pair array of value and index
+     * Compares the values at the given indices, equal values are compared by their index.
+     *
+     * @return a negative number, zero or a positive number if the first value is less, equal or greater
      */
-    private static Pair[] create(double[] values) {
-        Pair[] pairs = new Pair[values.length];
-        for (int i = 0; i < values.length; i++) {
-            pairs[i] = new Pair(i, values[i]);
+    private static int compare(double[] values, int first, int second) {
+        double firstValue = values[first];
+        double secondValue = values[second];
+        if (firstValue < secondValue) {
+            return -1;
+        }
+        if (firstValue > secondValue) {
+            return 1;
+        }
+        //NaN is the largest value
+        boolean firstNaN = Double.isNaN(firstValue);
+        if (firstNaN != Double.isNaN(secondValue)) {
+            return firstNaN ? 1 : -1;
+        }
+        return Integer.compare(first, second);
+    }
+
+    private static void siftUp(int[] heap, int position, double[] values, int direction) {
+        int index = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (compare(values, heap[parent], index) * direction <= 0) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = index;
+    }
+
+    private static void siftDown(int[] heap, int heapSize, double[] values, int direction) {
+        int position = 0;
+        int index = heap[0];
+        int half = heapSize >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            int right = child + 1;
+            if (right < heapSize && compare(values, heap[right], heap[child]) * direction < 0) {
+                child = right;
+            }
+            if (compare(values, index, heap[child]) * direction <= 0) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
         }
-        return pairs;
+        heap[position] = index;
     }
 
     /**
@@ -91,7 +151,10 @@ public final class NElements {
 
     /**
      * Helper class to represent values with belonging index
+     *
+     * @deprecated the calculation works on the primitive values and indices
      */
+    @Deprecated
     public static final class Pair implements Comparable<Pair> {
         private int index;
         private double value;
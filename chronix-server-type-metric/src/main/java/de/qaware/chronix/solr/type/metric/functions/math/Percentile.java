@@ -53,10 +53,112 @@ public final class Percentile {
      * @return the value of the n-th percentile
      */
     public static double evaluate(DoubleList values, double percentile) {
-        double[] doubles = values.toArray();
-        Arrays.sort(doubles);
+        return evaluate(values.toArray(), percentile)[0];
+    }
+
+    /**
+     * Evaluates several percentiles on the same values, see {@link #evaluate(DoubleList, double)}.
+     * The values are not sorted. The needed ranks are selected in place (introselect), hence the order
+     * of the given array is changed. The result is equal to the evaluation on the sorted values.
+     *
+     * @param values      - the values to aggregate the percentiles, reordered by this method
+     * @param percentiles - the percentiles (0 - 1), e.g. 0.25 and 0.75
+     * @return the value of each percentile in the order of the given percentiles
+     */
+    public static double[] evaluate(double[] values, double... percentiles) {
+        //the ranks needed by the percentiles
+        int[] ranks = new int[percentiles.length * 2];
+        int size = 0;
+        for (double percentile : percentiles) {
+            double percentileIndex = ((values.length - 1) * percentile) + 1;
+            int rank = floor(percentileIndex - 1);
+            ranks[size++] = rank;
+            if (percentileIndex - floor(percentileIndex) > 0) {
+                ranks[size++] = rank + 1;
+            }
+        }
+        ranks = Arrays.copyOf(ranks, size);
+        Arrays.sort(ranks);
+
+        //select the ranks in ascending order, each selection narrows the range of the next one
+        int from = 0;
+        for (int rank : ranks) {
+            if (rank >= from) {
+                select(values, from, values.length - 1, rank);
+                from = rank + 1;
+            }
+        }
+
+        double[] result = new double[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            result[i] = evaluateForDoubles(values, percentiles[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Moves the value with the given rank to its position in the sorted order.
+     * All values left of it are smaller or equal, all values right of it are greater or equal.
+     * Uses the ordering of {@link Double#compare(double, double)} like {@link Arrays#sort(double[])}.
+     * Equal values are grouped around the pivot, hence many duplicates do not degrade the selection.
+     * Falls back to sorting the range if the partitioning does not converge.
+     *
+     * @param values the values
+     * @param left   the first index of the range
+     * @param right  the last index of the range
+     * @param rank   the rank to select
+     */
+    private static void select(double[] values, int left, int right, int rank) {
+        int depth = 2 * (32 - Integer.numberOfLeadingZeros(right - left + 1));
+
+        while (right > left) {
+            if (depth-- == 0) {
+                Arrays.sort(values, left, right + 1);
+                return;
+            }
+
+            //median of three as pivot
+            int middle = (left + right) >>> 1;
+            if (Double.compare(values[middle], values[left]) < 0) {
+                swap(values, middle, left);
+            }
+            if (Double.compare(values[right], values[left]) < 0) {
+                swap(values, right, left);
+            }
+            if (Double.compare(values[middle], values[right]) < 0) {
+                swap(values, middle, right);
+            }
+            double pivot = values[right];
+
+            //partition into values smaller, equal and greater than the pivot
+            int lower = left;
+            int upper = right;
+            int i = left;
+            while (i <= upper) {
+                int comparison = Double.compare(values[i], pivot);
+                if (comparison < 0) {
+                    swap(values, lower++, i++);
+                } else if (comparison > 0) {
+                    swap(values, i, upper--);
+                } else {
+                    i++;
+                }
+            }
+
+            if (rank < lower) {
+                right = lower - 1;
+            } else if (rank > upper) {
+                left = upper + 1;
+            } else {
+                return;
+            }
+        }
+    }
 
-        return evaluateForDoubles(doubles, percentile);
+    private static void swap(double[] values, int i, int j) {
+        double tmp = values[i];
+        values[i] = values[j];
+        values[j] = tmp;
     }
 
     private static double evaluateForDoubles(double[] points, double percentile) {
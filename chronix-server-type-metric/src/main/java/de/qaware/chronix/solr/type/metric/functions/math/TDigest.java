@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.math;
+
+import java.util.Arrays;
+
+/**
+ * A merging t-digest to approximate percentiles in a single pass with bounded memory.
+ * See Dunning, Ertl: Computing Extremely Accurate Quantiles Using t-Digests.
+ * The values are buffered and merged into at most about compression centroids.
+ * Centroids near the tails are small, hence extreme percentiles are accurate.
+ * NaN values are ignored.
+ *
+ * @author f.lautenschlager
+ */
+public final class TDigest {
+
+    /**
+     * The default compression, i.e. roughly the number of centroids
+     */
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    private final double compression;
+
+    private double[] means;
+    private double[] weights;
+    private int centroids;
+    private double totalWeight;
+
+    private final double[] buffer;
+    private int buffered;
+
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates a t-digest with the default compression
+     */
+    public TDigest() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compression the compression, higher values are more accurate and need more memory
+     */
+    public TDigest(double compression) {
+        this.compression = compression;
+        int capacity = (int) Math.ceil(compression) + 1;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.buffer = new double[capacity * 5];
+    }
+
+    /**
+     * Creates a t-digest of the given values
+     *
+     * @param values the values
+     * @return the t-digest with the default compression
+     */
+    public static TDigest of(double[] values) {
+        TDigest digest = new TDigest();
+        for (double value : values) {
+            digest.add(value);
+        }
+        return digest;
+    }
+
+    /**
+     * @param value the value to add, NaN is ignored
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (buffered == buffer.length) {
+            merge();
+        }
+        buffer[buffered++] = value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * @return the number of added values
+     */
+    public long size() {
+        return (long) totalWeight + buffered;
+    }
+
+    /**
+     * Approximates the percentile
+     *
+     * @param percentile the percentile (0 - 1)
+     * @return the approximated value of the percentile or NaN if no values are added
+     */
+    public double quantile(double percentile) {
+        merge();
+
+        if (centroids == 0) {
+            return Double.NaN;
+        }
+        if (centroids == 1 || percentile <= 0) {
+            return percentile <= 0 ? min : means[0];
+        }
+        if (percentile >= 1) {
+            return max;
+        }
+
+        double index = percentile * totalWeight;
+
+        //between the min and the center of the first centroid
+        double firstCenter = weights[0] / 2;
+        if (index < firstCenter) {
+            return min + (means[0] - min) * index / firstCenter;
+        }
+
+        //between the centers of two centroids
+        double cumulated = 0;
+        for (int i = 0; i < centroids - 1; i++) {
+            double center = cumulated + weights[i] / 2;
+            double nextCenter = cumulated + weights[i] + weights[i + 1] / 2;
+            if (index < nextCenter) {
+                return means[i] + (means[i + 1] - means[i]) * (index - center) / (nextCenter - center);
+            }
+            cumulated += weights[i];
+        }
+
+        //between the center of the last centroid and the max
+        double lastCenter = totalWeight - weights[centroids - 1] / 2;
+        return means[centroids - 1] + (max - means[centroids - 1]) * (index - lastCenter) / (totalWeight - lastCenter);
+    }
+
+    /**
+     * Merges the buffered values into the centroids
+     */
+    private void merge() {
+        if (buffered == 0) {
+            return;
+        }
+        Arrays.sort(buffer, 0, buffered);
+
+        //merge the sorted centroids and the sorted buffer
+        int size = centroids + buffered;
+        double[] mergedMeans = new double[size];
+        double[] mergedWeights = new double[size];
+        int c = 0;
+        int b = 0;
+        for (int i = 0; i < size; i++) {
+            if (b == buffered || (c < centroids && means[c] <= buffer[b])) {
+                mergedMeans[i] = means[c];
+                mergedWeights[i] = weights[c++];
+            } else {
+                mergedMeans[i] = buffer[b++];
+                mergedWeights[i] = 1;
+            }
+        }
+        double total = totalWeight + buffered;
+        buffered = 0;
+
+        //compress the centroids, the size of a centroid is bounded by the scale function
+        int count = 0;
+        double currentMean = mergedMeans[0];
+        double currentWeight = mergedWeights[0];
+        double weightSoFar = 0;
+        double weightLimit = total * q(k(0) + 1);
+
+        for (int i = 1; i < size; i++) {
+            double proposedWeight = currentWeight + mergedWeights[i];
+            if (weightSoFar + proposedWeight <= weightLimit) {
+                currentMean += (mergedMeans[i] - currentMean) * mergedWeights[i] / proposedWeight;
+                currentWeight = proposedWeight;
+            } else {
+                count = emit(count, currentMean, currentWeight);
+                weightSoFar += currentWeight;
+                weightLimit = total * q(k(weightSoFar / total) + 1);
+                currentMean = mergedMeans[i];
+                currentWeight = mergedWeights[i];
+            }
+        }
+        centroids = emit(count, currentMean, currentWeight);
+        totalWeight = total;
+    }
+
+    private int emit(int index, double mean, double weight) {
+        if (index == means.length) {
+            means = Arrays.copyOf(means, index * 2);
+            weights = Arrays.copyOf(weights, index * 2);
+        }
+        means[index] = mean;
+        weights[index] = weight;
+        return index + 1;
+    }
+
+    /**
+     * The scale function k1 that maps a percentile to the index of a centroid
+     */
+    private double k(double q) {
+        return compression * (Math.asin(2 * q - 1) + Math.PI / 2) / Math.PI;
+    }
+
+    /**
+     * The inverse of the scale function
+     */
+    private double q(double k) {
+        return (Math.sin(Math.min(k, compression) * Math.PI / compression - Math.PI / 2) + 1) / 2;
+    }
+}
@@ -15,7 +15,7 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.transformation;
 
-import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.converter.common.DoubleList;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
@@ -30,7 +30,7 @@ import java.util.List;
  *
  * @author f.lautenschlager
  */
-public final class Add implements ChronixTransformation<MetricTimeSeries> {
+public final class Add implements ElementwiseTransformation {
 
     private double value;
 
@@ -56,17 +56,14 @@ public final class Add implements ChronixTransformation<MetricTimeSeries> {
                 continue;
             }
 
-            long[] timestamps = timeSeries.getTimestampsAsArray();
-            double[] values = timeSeries.getValuesAsArray();
-
-            timeSeries.clear();
-
-            for (int i = 0; i < values.length; i++) {
-                values[i] += value;
+            //update the values in place, the timestamps are not touched
+            DoubleList values = timeSeries.getValues();
+            int size = values.size();
+            double increment = value;
+            for (int i = 0; i < size; i++) {
+                values.set(i, values.get(i) + increment);
             }
 
-            timeSeries.addAll(timestamps, values);
-
             functionCtx.add(this, chronixTimeSeries.getJoinKey());
         }
     }
@@ -81,6 +78,11 @@ public final class Add implements ChronixTransformation<MetricTimeSeries> {
         return "metric";
     }
 
+    @Override
+    public double transformValue(double value) {
+        return value + this.value;
+    }
+
     /**
      * @param args [0] value as double to add
      */
@@ -61,6 +61,11 @@ public final class Bottom implements ChronixTransformation<MetricTimeSeries> {
         return "metric";
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
     /**
      * @param args the first parameter is the threshold for the lowest values
      */
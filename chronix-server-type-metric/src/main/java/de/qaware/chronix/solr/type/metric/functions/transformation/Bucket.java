@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation;
+
+import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.server.functions.FunctionCtx;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries;
+import de.qaware.chronix.solr.type.metric.Rollup;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * The bucket transformation. Aggregates the points of fixed time buckets (timeSpan * unit) to a single point.
+ * The buckets are aligned to the epoch, the timestamp of a point is the start of its bucket.
+ * Empty buckets do not result in a point.
+ * <p>
+ * The MIN, MAX, AVG, SUM and COUNT of a bucket can be computed from a {@link Rollup} with a resolution that
+ * divides the bucket width. The buckets of the rollup of a time series are added to the buckets of its points.
+ *
+ * @author f.lautenschlager
+ */
+public final class Bucket implements ChronixTransformation<MetricTimeSeries> {
+
+    private long timeSpan;
+    private ChronoUnit unit;
+    private long bucketTime;
+    private BucketAggregation aggregation;
+
+    /**
+     * Sorts the time series and aggregates the points of a bucket in a single pass.
+     *
+     * @param timeSeriesList the list with time series that is transformed
+     * @param functionCtx    the function context
+     */
+    @Override
+    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
+
+        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
+            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
+            Rollup rollup = rollup(chronixTimeSeries);
+
+            if (rollup != null) {
+                //the buckets of the rollup are part of the result
+                ((ChronixMetricTimeSeries) chronixTimeSeries).removeRollup();
+            }
+
+            if (rollup != null && !rollup.isEmpty()) {
+                bucketWithRollup(timeSeries, rollup);
+            } else if (!timeSeries.isEmpty()) {
+                bucket(timeSeries);
+            }
+
+            functionCtx.add(this, chronixTimeSeries.getJoinKey());
+        }
+    }
+
+    /**
+     * Sorts the time series and replaces the points of every bucket with a single point.
+     *
+     * @param timeSeries the non-empty time series
+     */
+    private void bucket(MetricTimeSeries timeSeries) {
+        //we need a sorted time series
+        timeSeries.sort();
+
+        long[] times = timeSeries.getTimestampsAsArray();
+        double[] values = timeSeries.getValuesAsArray();
+        int size = times.length;
+
+        //the points are written back into the arrays, a bucket is never written before it is read
+        int buckets = 0;
+        int start = 0;
+        while (start < size) {
+            long bucketStart = Math.floorDiv(times[start], bucketTime) * bucketTime;
+            long bucketEnd = bucketStart + bucketTime;
+
+            int end = start + 1;
+            while (end < size && times[end] < bucketEnd) {
+                end++;
+            }
+
+            times[buckets] = bucketStart;
+            values[buckets] = aggregation.aggregate(values, start, end);
+            buckets++;
+            start = end;
+        }
+
+        timeSeries.clear();
+        timeSeries.addAll(copy(times, buckets), copy(values, buckets));
+    }
+
+    /**
+     * Adds the buckets of the rollup to the buckets of the points. The rollup and the points
+     * belong to different buckets of this transformation, see {@link de.qaware.chronix.solr.type.metric.RollupAccumulator}.
+     *
+     * @param timeSeries the time series with the points outside of the rollup
+     * @param rollup     the rollup
+     */
+    private void bucketWithRollup(MetricTimeSeries timeSeries, Rollup rollup) {
+        if (!aggregation.rollup || bucketTime % rollup.getResolution() != 0) {
+            throw new IllegalStateException("The bucket transformation " + this + " can not use a rollup with the resolution " + rollup.getResolution() + " ms.");
+        }
+
+        //the buckets of the rollup
+        long[] rollupTimes = new long[rollup.size()];
+        double[] rollupValues = new double[rollup.size()];
+        int rollupBuckets = 0;
+        int start = 0;
+        while (start < rollup.size()) {
+            long bucketStart = Math.floorDiv(rollup.getTime(start), bucketTime) * bucketTime;
+            long bucketEnd = bucketStart + bucketTime;
+
+            int end = start + 1;
+            while (end < rollup.size() && rollup.getTime(end) < bucketEnd) {
+                end++;
+            }
+            rollupTimes[rollupBuckets] = bucketStart;
+            rollupValues[rollupBuckets] = aggregation.aggregate(rollup, start, end);
+            rollupBuckets++;
+            start = end;
+        }
+
+        //the buckets of the points
+        if (!timeSeries.isEmpty()) {
+            bucket(timeSeries);
+        }
+        long[] times = timeSeries.getTimestampsAsArray();
+        double[] values = timeSeries.getValuesAsArray();
+
+        //merge both sorted buckets
+        timeSeries.clear();
+        int point = 0;
+        int bucket = 0;
+        while (point < times.length || bucket < rollupBuckets) {
+            if (bucket == rollupBuckets || point < times.length && times[point] < rollupTimes[bucket]) {
+                timeSeries.add(times[point], values[point]);
+                point++;
+            } else {
+                timeSeries.add(rollupTimes[bucket], rollupValues[bucket]);
+                bucket++;
+            }
+        }
+    }
+
+    private static Rollup rollup(ChronixTimeSeries<MetricTimeSeries> timeSeries) {
+        if (timeSeries instanceof ChronixMetricTimeSeries) {
+            return ((ChronixMetricTimeSeries) timeSeries).getRollup();
+        }
+        return null;
+    }
+
+    /**
+     * @return the width of a bucket in milliseconds
+     */
+    public long getBucketTime() {
+        return bucketTime;
+    }
+
+    /**
+     * @return true if the aggregation of a bucket can be computed from a rollup
+     */
+    public boolean isRollupAggregation() {
+        return aggregation.rollup;
+    }
+
+    private static long[] copy(long[] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static double[] copy(double[] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        double[] copy = new double[length];
+        System.arraycopy(array, 0, copy, 0, length);
+        return copy;
+    }
+
+    @Override
+    public String getQueryName() {
+        return "bucket";
+    }
+
+    @Override
+    public String getType() {
+        return "metric";
+    }
+
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
+    /**
+     * @param args the first value is the time span e.g. 5, 10, the second one is the unit of the time span,
+     *             the third one is the aggregation of the points in a bucket (MIN, MAX, AVG, SUM, COUNT, FIRST, LAST)
+     */
+    @Override
+    public void setArguments(String[] args) {
+        this.timeSpan = Long.parseLong(args[0]);
+        this.unit = ChronoUnit.valueOf(args[1].toUpperCase());
+        this.bucketTime = unit.getDuration().toMillis() * timeSpan;
+        if (bucketTime <= 0) {
+            throw new IllegalArgumentException("The bucket time must be positive but was " + bucketTime + " ms.");
+        }
+        this.aggregation = BucketAggregation.valueOf(args[2].toUpperCase());
+    }
+
+    @Override
+    public String[] getArguments() {
+        return new String[]{"timeSpan=" + timeSpan, "unit=" + unit.name(), "aggregation=" + aggregation.name()};
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("timeSpan", timeSpan)
+                .append("unit", unit)
+                .append("aggregation", aggregation)
+                .toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        if (obj.getClass() != getClass()) {
+            return false;
+        }
+        Bucket rhs = (Bucket) obj;
+        return new EqualsBuilder()
+                .append(this.timeSpan, rhs.timeSpan)
+                .append(this.unit, rhs.unit)
+                .append(this.bucketTime, rhs.bucketTime)
+                .append(this.aggregation, rhs.aggregation)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(timeSpan)
+                .append(unit)
+                .append(bucketTime)
+                .append(aggregation)
+                .toHashCode();
+    }
+
+    /**
+     * The aggregation of the values within a bucket
+     */
+    enum BucketAggregation {
+        MIN(true) {
+            @Override
+            double aggregate(double[] values, int start, int end) {
+                double min = values[start];
+                for (int i = start + 1; i < end; i++) {
+                    min = Math.min(min, values[i]);
+                }
+                return min;
+            }
+
+            @Override
+            double aggregate(Rollup rollup, int start, int end) {
+                double min = rollup.getMin(start);
+                for (int i = start + 1; i < end; i++) {
+                    min = Math.min(min, rollup.getMin(i));
+                }
+                return min;
+            }
+        },
+        MAX(true) {
+            @Override
+            double aggregate(double[] values, int start, int end) {
+                double max = values[start];
+                for (int i = start + 1; i < end; i++) {
+                    max = Math.max(max, values[i]);
+                }
+                return max;
+            }
+
+            @Override
+            double aggregate(Rollup rollup, int start, int end) {
+                double max = rollup.getMax(start);
+                for (int i = start + 1; i < end; i++) {
+                    max = Math.max(max, rollup.getMax(i));
+                }
+                return max;
+            }
+        },
+        AVG(true) {
+            @Override
+            double aggregate(double[] values, int start, int end) {
+                return SUM.aggregate(values, start, end) / (end - start);
+            }
+
+            @Override
+            double aggregate(Rollup rollup, int start, int end) {
+                return SUM.aggregate(rollup, start, end) / COUNT.aggregate(rollup, start, end);
+            }
+        },
+        SUM(true) {
+            @Override
+            double aggregate(double[] values, int start, int end) {
+                double sum = 0;
+                for (int i = start; i < end; i++) {
+                    sum += values[i];
+                }
+                return sum;
+            }
+
+            @Override
+            double aggregate(Rollup rollup, int start, int end) {
+                double sum = 0;
+                for (int i = start; i < end; i++) {
+                    sum += rollup.getSum(i);
+                }
+                return sum;
+            }
+        },
+        COUNT(true) {
+            @Override
+            double aggregate(double[] values, int start, int end) {
+                return end - start;
+            }
+
+            @Override
+            double aggregate(Rollup rollup, int start, int end) {
+                double count = 0;
+                for (int i = start; i < end; i++) {
+                    count += rollup.getCount(i);
+                }
+                return count;
+            }
+        },
+        FIRST(false) {
+            @Override
+            double aggregate(double[] values, int start, int end) {
+                return values[start];
+            }
+        },
+        LAST(false) {
+            @Override
+            double aggregate(double[] values, int start, int end) {
+                return values[end - 1];
+            }
+        };
+
+        private final boolean rollup;
+
+        /**
+         * @param rollup true if the aggregation can be computed from a rollup
+         */
+        BucketAggregation(boolean rollup) {
+            this.rollup = rollup;
+        }
+
+        /**
+         * @param rollup the rollup
+         * @param start  the first index of the bucket, inclusive
+         * @param end    the last index of the bucket, exclusive
+         * @return the aggregated value of the bucket
+         */
+        double aggregate(Rollup rollup, int start, int end) {
+            throw new UnsupportedOperationException("The aggregation " + name() + " can not be computed from a rollup.");
+        }
+
+        /**
+         * @param values the values
+         * @param start  the first index of the bucket, inclusive
+         * @param end    the last index of the bucket, exclusive
+         * @return the aggregated value of the bucket
+         */
+        abstract double aggregate(double[] values, int start, int end);
+    }
+}
@@ -82,6 +82,11 @@ public final class Derivative implements ChronixTransformation<MetricTimeSeries>
         return "metric";
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
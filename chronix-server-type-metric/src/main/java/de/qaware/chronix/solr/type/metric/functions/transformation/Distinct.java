@@ -20,6 +20,7 @@ import de.qaware.chronix.converter.common.LongList;
 import de.qaware.chronix.server.functions.ChronixTransformation;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.solr.type.metric.functions.math.DoubleHashSet;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -35,6 +36,7 @@ public final class Distinct implements ChronixTransformation<MetricTimeSeries> {
     /**
      * Transforms a time series into a representation with distinct values.
      * The distinct operation uses the first occurrence of a point.
+     * Values are compared like {@link Double#equals(Object)}, i.e. NaN is a single value and -0.0 differs from 0.0.
      *
      * @param timeSeriesList  a list with time series
      * @param functionCtx the function value map
@@ -51,17 +53,18 @@ public final class Distinct implements ChronixTransformation<MetricTimeSeries> {
 
             timeSeries.sort();
 
-            LongList timeList = new LongList(timeSeries.size());
-            DoubleList valueList = new DoubleList(timeSeries.size());
+            long[] times = timeSeries.getTimestampsAsArray();
+            double[] values = timeSeries.getValuesAsArray();
 
-            //We should use a other data structure...
+            LongList timeList = new LongList(times.length);
+            DoubleList valueList = new DoubleList(values.length);
+            DoubleHashSet distinctValues = new DoubleHashSet();
 
-            for (int i = 0; i < timeSeries.size(); i++) {
-                double value = timeSeries.getValue(i);
-
-                if (!valueList.contains(value)) {
-                    timeList.add(timeSeries.getTime(i));
-                    valueList.add(value);
+            for (int i = 0; i < values.length; i++) {
+                //only the first occurrence is added
+                if (distinctValues.add(values[i])) {
+                    timeList.add(times[i]);
+                    valueList.add(values[i]);
                 }
             }
             timeSeries.clear();
@@ -81,6 +84,11 @@ public final class Distinct implements ChronixTransformation<MetricTimeSeries> {
         return "metric";
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
 
     @Override
     public boolean equals(Object obj) {
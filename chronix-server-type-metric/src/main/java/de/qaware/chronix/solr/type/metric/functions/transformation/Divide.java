@@ -15,7 +15,7 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.transformation;
 
-import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.converter.common.DoubleList;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
@@ -29,7 +29,7 @@ import java.util.List;
  *
  * @author f.lautenschlager
  */
-public final class Divide implements ChronixTransformation<MetricTimeSeries> {
+public final class Divide implements ElementwiseTransformation {
 
     private double value;
 
@@ -39,17 +39,14 @@ public final class Divide implements ChronixTransformation<MetricTimeSeries> {
         for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
             MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
 
-            //Get a copy of the values
-            double[] values = timeSeries.getValuesAsArray();
-            //Get a copy of the timestamps
-            long[] times = timeSeries.getTimestampsAsArray();
-            for (int i = 0; i < timeSeries.size(); i++) {
+            //Update the values in place, the timestamps are not touched
+            DoubleList values = timeSeries.getValues();
+            int size = values.size();
+            double divisor = value;
+            for (int i = 0; i < size; i++) {
                 //simply divide the original value
-                values[i] = values[i] / value;
+                values.set(i, values.get(i) / divisor);
             }
-            //Clear the original time series and add the values
-            timeSeries.clear();
-            timeSeries.addAll(times, values);
 
             functionCtx.add(this, chronixTimeSeries.getJoinKey());
         }
@@ -65,6 +62,11 @@ public final class Divide implements ChronixTransformation<MetricTimeSeries> {
         return "metric";
     }
 
+    @Override
+    public double transformValue(double value) {
+        return value / this.value;
+    }
+
     /**
      * @param args the first value is the divisor
      */
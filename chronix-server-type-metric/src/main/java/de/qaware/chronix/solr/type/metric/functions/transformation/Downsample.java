@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation;
+
+import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.server.functions.FunctionCtx;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.solr.type.metric.functions.math.Downsampling;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.List;
+
+/**
+ * The downsample transformation. Reduces a time series to at most the given number of points
+ * while keeping its visual shape. Time series with fewer points are not changed.
+ *
+ * @author f.lautenschlager
+ */
+public final class Downsample implements ChronixTransformation<MetricTimeSeries> {
+
+    /**
+     * Keeps the first, last, minimum and maximum point per time bucket
+     */
+    public static final String M4 = "M4";
+    /**
+     * Largest-Triangle-Three-Buckets
+     */
+    public static final String LTTB = "LTTB";
+
+    private int points;
+    private String algorithm = LTTB;
+
+    @Override
+    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
+
+        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
+            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
+
+            if (timeSeries.size() > points) {
+                //we need a sorted time series
+                timeSeries.sort();
+
+                long[] times = timeSeries.getTimestampsAsArray();
+                double[] values = timeSeries.getValuesAsArray();
+
+                int[] selected = M4.equals(algorithm)
+                        ? Downsampling.m4(times, values, points)
+                        : Downsampling.lttb(times, values, points);
+
+                long[] selectedTimes = new long[selected.length];
+                double[] selectedValues = new double[selected.length];
+                for (int i = 0; i < selected.length; i++) {
+                    selectedTimes[i] = times[selected[i]];
+                    selectedValues[i] = values[selected[i]];
+                }
+
+                timeSeries.clear();
+                timeSeries.addAll(selectedTimes, selectedValues);
+            }
+            functionCtx.add(this, chronixTimeSeries.getJoinKey());
+        }
+    }
+
+    @Override
+    public String getQueryName() {
+        return "downsample";
+    }
+
+    @Override
+    public String getType() {
+        return "metric";
+    }
+
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
+    /**
+     * @param args the first value is the maximum number of points,
+     *             the optional second one is the algorithm (LTTB, the default, or M4)
+     */
+    @Override
+    public void setArguments(String[] args) {
+        this.points = Integer.parseInt(args[0]);
+        if (args.length > 1) {
+            this.algorithm = args[1].toUpperCase();
+        }
+        if (!M4.equals(algorithm) && !LTTB.equals(algorithm)) {
+            throw new IllegalArgumentException("Unknown downsampling algorithm '" + args[1] + "'. Use LTTB or M4.");
+        }
+        int minimum = M4.equals(algorithm) ? 4 : 3;
+        if (points < minimum) {
+            throw new IllegalArgumentException(algorithm + " needs at least " + minimum + " points but was " + points + ".");
+        }
+    }
+
+    @Override
+    public String[] getArguments() {
+        return new String[]{"points=" + points, "algorithm=" + algorithm};
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("points", points)
+                .append("algorithm", algorithm)
+                .toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        if (obj.getClass() != getClass()) {
+            return false;
+        }
+        Downsample rhs = (Downsample) obj;
+        return new EqualsBuilder()
+                .append(this.points, rhs.points)
+                .append(this.algorithm, rhs.algorithm)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(points)
+                .append(algorithm)
+                .toHashCode();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation;
+
+import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+/**
+ * A transformation that changes every point independent of all other points, e.g. add or timeshift.
+ * Consecutive element-wise transformations are fused into a single pass, see {@link FusedTransformation}.
+ * The methods must return the same result as the execution of the transformation.
+ *
+ * @author f.lautenschlager
+ */
+public interface ElementwiseTransformation extends ChronixTransformation<MetricTimeSeries> {
+
+    /**
+     * @param value the value of a point
+     * @return the transformed value
+     */
+    default double transformValue(double value) {
+        return value;
+    }
+
+    /**
+     * @param timestamp the timestamp of a point
+     * @return the transformed timestamp
+     */
+    default long transformTimestamp(long timestamp) {
+        return timestamp;
+    }
+
+    /**
+     * @return true if {@link #transformTimestamp(long)} changes the timestamps, otherwise only the values are changed in place
+     */
+    default boolean transformsTimestamps() {
+        return false;
+    }
+
+    @Override
+    default boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation;
+
+import de.qaware.chronix.converter.common.DoubleList;
+import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.server.functions.FunctionCtx;
+import de.qaware.chronix.server.types.ChronixTimeSeries;
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+import org.apache.commons.lang3.builder.EqualsBuilder;
+import org.apache.commons.lang3.builder.HashCodeBuilder;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Executes a chain of element-wise transformations in a single pass over the points of a time series.
+ * The result and the function context are equal to the sequential execution of the chain.
+ * The fused transformation is created by the metric type and is not part of the query language.
+ *
+ * @author f.lautenschlager
+ */
+public final class FusedTransformation implements ChronixTransformation<MetricTimeSeries> {
+
+    private final ElementwiseTransformation[] transformations;
+    private final boolean transformsTimestamps;
+
+    /**
+     * @param transformations the element-wise transformations in the order of execution
+     */
+    public FusedTransformation(List<ElementwiseTransformation> transformations) {
+        this.transformations = transformations.toArray(new ElementwiseTransformation[transformations.size()]);
+        this.transformsTimestamps = transformations.stream().anyMatch(ElementwiseTransformation::transformsTimestamps);
+    }
+
+    /**
+     * Fuses the consecutive element-wise transformations of the given chain.
+     * All other transformations are kept in their place.
+     *
+     * @param transformations the transformations in the order of execution
+     * @return the transformations with fused element-wise transformations
+     */
+    public static List<ChronixTransformation<MetricTimeSeries>> fuse(List<ChronixTransformation<MetricTimeSeries>> transformations) {
+        List<ChronixTransformation<MetricTimeSeries>> fused = new ArrayList<>(transformations.size());
+        List<ElementwiseTransformation> elementwise = new ArrayList<>();
+
+        for (ChronixTransformation<MetricTimeSeries> transformation : transformations) {
+            if (transformation instanceof ElementwiseTransformation) {
+                elementwise.add((ElementwiseTransformation) transformation);
+            } else {
+                addFused(fused, elementwise);
+                fused.add(transformation);
+            }
+        }
+        addFused(fused, elementwise);
+        return fused;
+    }
+
+    private static void addFused(List<ChronixTransformation<MetricTimeSeries>> fused, List<ElementwiseTransformation> elementwise) {
+        if (elementwise.size() == 1) {
+            //nothing to fuse
+            fused.add(elementwise.get(0));
+        } else if (elementwise.size() > 1) {
+            fused.add(new FusedTransformation(elementwise));
+        }
+        elementwise.clear();
+    }
+
+    /**
+     * Transforms every point with all transformations of the chain.
+     * Each time series is read and written once.
+     *
+     * @param timeSeriesList the time series
+     * @param functionCtx    to add the transformations of the chain to.
+     */
+    @Override
+    public void execute(List<ChronixTimeSeries<MetricTimeSeries>> timeSeriesList, FunctionCtx functionCtx) {
+
+        for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
+
+            MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
+
+            if (timeSeries.isEmpty()) {
+                //There is nothing to fuse.
+                //The transformations differ in how they handle empty time series, hence we delegate.
+                List<ChronixTimeSeries<MetricTimeSeries>> single = Collections.singletonList(chronixTimeSeries);
+                for (ElementwiseTransformation transformation : transformations) {
+                    transformation.execute(single, functionCtx);
+                }
+                continue;
+            }
+
+            if (transformsTimestamps) {
+                transformPoints(timeSeries);
+            } else {
+                transformValues(timeSeries);
+            }
+
+            for (ElementwiseTransformation transformation : transformations) {
+                functionCtx.add(transformation, chronixTimeSeries.getJoinKey());
+            }
+        }
+    }
+
+    /**
+     * Updates the values in place, the timestamps are not touched
+     */
+    private void transformValues(MetricTimeSeries timeSeries) {
+        DoubleList values = timeSeries.getValues();
+        int size = values.size();
+        for (int i = 0; i < size; i++) {
+            double value = values.get(i);
+            for (ElementwiseTransformation transformation : transformations) {
+                value = transformation.transformValue(value);
+            }
+            values.set(i, value);
+        }
+    }
+
+    /**
+     * Changed timestamps may change the order of the points, hence they are copied and added again
+     */
+    private void transformPoints(MetricTimeSeries timeSeries) {
+        long[] timestamps = timeSeries.getTimestampsAsArray();
+        double[] values = timeSeries.getValuesAsArray();
+
+        timeSeries.clear();
+
+        for (int i = 0; i < values.length; i++) {
+            long timestamp = timestamps[i];
+            double value = values[i];
+            for (ElementwiseTransformation transformation : transformations) {
+                timestamp = transformation.transformTimestamp(timestamp);
+                value = transformation.transformValue(value);
+            }
+            timestamps[i] = timestamp;
+            values[i] = value;
+        }
+
+        timeSeries.addAll(timestamps, values);
+    }
+
+    @Override
+    public String getQueryName() {
+        return "fused";
+    }
+
+    @Override
+    public String getType() {
+        return "metric";
+    }
+
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
+    /**
+     * The fused transformation has no arguments. The arguments are part of the fused transformations.
+     *
+     * @param args ignored
+     */
+    @Override
+    public void setArguments(String[] args) {
+        //the fused transformations hold the arguments
+    }
+
+    @Override
+    public String[] getArguments() {
+        return new String[0];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (obj == this) {
+            return true;
+        }
+        if (obj.getClass() != getClass()) {
+            return false;
+        }
+        FusedTransformation rhs = (FusedTransformation) obj;
+        return new EqualsBuilder()
+                .append(this.transformations, rhs.transformations)
+                .isEquals();
+    }
+
+    @Override
+    public int hashCode() {
+        return new HashCodeBuilder()
+                .append(transformations)
+                .toHashCode();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("transformations", transformations)
+                .toString();
+    }
+}
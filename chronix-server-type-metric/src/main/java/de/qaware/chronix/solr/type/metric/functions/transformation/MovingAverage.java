@@ -46,6 +46,7 @@ public final class MovingAverage implements ChronixTransformation<MetricTimeSeri
      * of the remaining points are evaluated. If the next point also not within the window, again the first point is
      * dropped and so on until the end of the window is greater equals the time series end.
      * We do this as time series can have gaps that are larger than the defined window.
+     * The window sums are updated while sliding, hence the transformation is linear in the number of points.
      *
      * @param timeSeriesList the list with time series that is transformed
      */
@@ -55,6 +56,12 @@ public final class MovingAverage implements ChronixTransformation<MetricTimeSeri
         for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
             MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
 
+            if (timeSeries.size() <= 1) {
+                //nothing to average
+                functionCtx.add(this, chronixTimeSeries.getJoinKey());
+                continue;
+            }
+
             //we need a sorted time series
             timeSeries.sort();
 
@@ -66,6 +73,8 @@ public final class MovingAverage implements ChronixTransformation<MetricTimeSeri
             //remove the old values
             timeSeries.clear();
 
+            SlidingWindow window = new SlidingWindow(times, values);
+
             int startIdx = 0;
             long current = times[0];
             long currentWindowEnd = current + windowTime;
@@ -84,7 +93,7 @@ public final class MovingAverage implements ChronixTransformation<MetricTimeSeri
                 i -= 1;
 
                 //calculate the average of the values and the time
-                evaluateAveragesAndAddToTimeSeries(timeSeries, values, times, startIdx, i);
+                window.addAverage(startIdx, i);
 
                 //slide the window
                 startIdx++;
@@ -99,46 +108,17 @@ public final class MovingAverage implements ChronixTransformation<MetricTimeSeri
             }
 
             if (lastWindowOnlyOnePoint) {
-                timeSeries.add(times[timeSeriesSize - 1], values[timeSeriesSize - 1]);
+                window.addPoint(timeSeriesSize - 1);
             } else {
                 //add the last window
-                evaluateAveragesAndAddToTimeSeries(timeSeries, values, times, startIdx, timeSeriesSize);
+                window.addAverage(startIdx, timeSeriesSize);
             }
+            window.addTo(timeSeries);
 
             functionCtx.add(this, chronixTimeSeries.getJoinKey());
         }
     }
 
-    /**
-     * Calculates the average time stamp and value for the given window (start, end) and adds it to the given time series
-     *
-     * @param timeSeries the time series to add the moving averages
-     * @param values     the values
-     * @param times      the time stamps
-     * @param startIdx   the start index of the window
-     * @param end        the end index of the window
-     */
-    private void evaluateAveragesAndAddToTimeSeries(MetricTimeSeries timeSeries, double[] values, long[] times, int startIdx, int end) {
-
-        //If the indices are equals, just return the value at the index position
-        if (startIdx == end) {
-            timeSeries.add(times[startIdx], values[startIdx]);
-        }
-
-        double valueSum = 0;
-        long timeSum = 0;
-
-
-        for (int i = startIdx; i < end; i++) {
-            valueSum += values[i];
-            timeSum += times[i];
-        }
-        int amount = end - startIdx;
-
-
-        timeSeries.add(timeSum / amount, valueSum / amount);
-    }
-
     private boolean outsideWindow(long currentWindow, long windowTime) {
         return currentWindow < windowTime;
     }
@@ -153,6 +133,11 @@ public final class MovingAverage implements ChronixTransformation<MetricTimeSeri
         return "metric";
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
     /**
      * @param args the first value is the time span e.g. 5, 10, the second one is the unit of the time span
      */
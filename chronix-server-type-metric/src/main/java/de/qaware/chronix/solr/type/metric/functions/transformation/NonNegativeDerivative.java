@@ -81,6 +81,11 @@ public final class NonNegativeDerivative implements ChronixTransformation<Metric
         return "metric";
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == null) {
@@ -44,6 +44,7 @@ public final class SampleMovingAverage implements ChronixTransformation<MetricTi
      * /**
      * Transforms a time series using a moving average that is based on a window with a fixed amount of samples.
      * The last window contains equals or a lower amount samples.
+     * The window sums are updated while sliding, hence the transformation is linear in the number of points.
      *
      * @param timeSeriesList the list with time series that is transformed
      */
@@ -64,53 +65,29 @@ public final class SampleMovingAverage implements ChronixTransformation<MetricTi
             //remove the old values
             timeSeries.clear();
 
+            SlidingWindow window = new SlidingWindow(times, values);
+
             //the start is already set
             for (int start = 0; start < timeSeriesSize; start++) {
 
-                int end = start + samples;
+                int end = Math.min(start + samples, timeSeriesSize);
                 //calculate the average of the values and the time
-                evaluteAveragesAndAddToTimeSeries(timeSeries, values, times, start, end);
+                window.addAverage(start, end);
 
                 //check if window end is larger than time series
                 if (end + 1 >= timeSeriesSize) {
-                    evaluteAveragesAndAddToTimeSeries(timeSeries, values, times, start + 1, timeSeriesSize);
+                    if (start + 1 < timeSeriesSize) {
+                        window.addAverage(start + 1, timeSeriesSize);
+                    }
                     break;
                 }
             }
+            window.addTo(timeSeries);
 
             functionCtx.add(this, chronixTimeSeries.getJoinKey());
         }
     }
 
-    /**
-     * Calculates the average time stamp and value for the given window (start, end) and adds it to the given time series
-     *
-     * @param timeSeries the time series to add the moving averages
-     * @param values     the values
-     * @param times      the time stamps
-     * @param startIdx   the start index of the window
-     * @param end        the end index of the window
-     */
-    private void evaluteAveragesAndAddToTimeSeries(MetricTimeSeries timeSeries, double[] values, long[] times, int startIdx, int end) {
-
-        //If the indices are equals, just return the value at the index position
-        if (startIdx == end) {
-            timeSeries.add(times[startIdx], values[startIdx]);
-        }
-
-        double valueSum = 0;
-        long timeSum = 0;
-
-
-        for (int i = startIdx; i < end; i++) {
-            valueSum += values[i];
-            timeSum += times[i];
-        }
-        int amount = end - startIdx;
-
-        timeSeries.add(timeSum / amount, valueSum / amount);
-    }
-
 
     @Override
     public String getQueryName() {
@@ -122,6 +99,11 @@ public final class SampleMovingAverage implements ChronixTransformation<MetricTi
         return "metric";
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
     /**
      * @param args the first value is the amount of samples within a sliding window
      */
@@ -15,7 +15,7 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.transformation;
 
-import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.converter.common.DoubleList;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
@@ -30,7 +30,7 @@ import java.util.List;
  *
  * @author f.lautenschlager
  */
-public final class Scale implements ChronixTransformation<MetricTimeSeries> {
+public final class Scale implements ElementwiseTransformation {
 
     private double value;
 
@@ -40,17 +40,14 @@ public final class Scale implements ChronixTransformation<MetricTimeSeries> {
         for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
             MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
 
-            //get a copy of the values
-            double[] values = timeSeries.getValuesAsArray();
-            //get a copy of timestamps
-            long[] times = timeSeries.getTimestampsAsArray();
-            for (int i = 0; i < timeSeries.size(); i++) {
+            //update the values in place, the timestamps are not touched
+            DoubleList values = timeSeries.getValues();
+            int size = values.size();
+            double factor = value;
+            for (int i = 0; i < size; i++) {
                 //scale the original value
-                values[i] = values[i] * value;
+                values.set(i, values.get(i) * factor);
             }
-            //clear and delete the time series
-            timeSeries.clear();
-            timeSeries.addAll(times, values);
 
             functionCtx.add(this, chronixTimeSeries.getJoinKey());
         }
@@ -67,6 +64,11 @@ public final class Scale implements ChronixTransformation<MetricTimeSeries> {
         return "metric";
     }
 
+    @Override
+    public double transformValue(double value) {
+        return value * this.value;
+    }
+
     /**
      * @param args the first value is the factor
      */
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation;
+
+import de.qaware.chronix.timeseries.MetricTimeSeries;
+
+import java.util.Arrays;
+
+/**
+ * A window that slides over the points of a time series and collects the averages of the windows.
+ * The sums of the window are updated with the points that enter and leave the window,
+ * hence sliding over the whole time series is linear in the number of points.
+ * The value sum is compensated (Neumaier) to avoid the drift of adding and subtracting.
+ *
+ * @author f.lautenschlager
+ */
+final class SlidingWindow {
+
+    private final long[] times;
+    private final double[] values;
+
+    //the current window [start, end)
+    private int start;
+    private int end;
+    private long timeSum;
+    private double valueSum;
+    private double compensation;
+
+    //the averages
+    private final long[] averageTimes;
+    private final double[] averageValues;
+    private int averages;
+
+    /**
+     * @param times  the sorted time stamps
+     * @param values the belonging values
+     */
+    SlidingWindow(long[] times, double[] values) {
+        this.times = times;
+        this.values = values;
+        this.averageTimes = new long[times.length + 1];
+        this.averageValues = new double[values.length + 1];
+    }
+
+    /**
+     * Moves the window to the given indices and adds the average time stamp and value of the window.
+     * If the window is empty, the point at the start index is added.
+     *
+     * @param windowStart the start index of the window
+     * @param windowEnd   the end index of the window (exclusive)
+     */
+    void addAverage(int windowStart, int windowEnd) {
+        if (windowStart == windowEnd) {
+            addPoint(windowStart);
+            return;
+        }
+
+        moveTo(windowStart, windowEnd);
+
+        int amount = windowEnd - windowStart;
+        averageTimes[averages] = timeSum / amount;
+        averageValues[averages] = (valueSum + compensation) / amount;
+        averages++;
+    }
+
+    /**
+     * Adds the point at the given index as it is
+     *
+     * @param index the index of the point
+     */
+    void addPoint(int index) {
+        averageTimes[averages] = times[index];
+        averageValues[averages] = values[index];
+        averages++;
+    }
+
+    /**
+     * Adds the collected averages to the given time series
+     *
+     * @param timeSeries the time series
+     */
+    void addTo(MetricTimeSeries timeSeries) {
+        timeSeries.addAll(Arrays.copyOf(averageTimes, averages), Arrays.copyOf(averageValues, averages));
+    }
+
+    private void moveTo(int windowStart, int windowEnd) {
+        //the window never slides back, but we do not rely on it
+        if (windowStart < start || windowEnd < end || windowStart > end) {
+            start = windowStart;
+            end = windowStart;
+            timeSum = 0;
+            valueSum = 0;
+            compensation = 0;
+        }
+
+        while (end < windowEnd) {
+            timeSum += times[end];
+            add(values[end]);
+            end++;
+        }
+        while (start < windowStart) {
+            timeSum -= times[start];
+            add(-values[start]);
+            start++;
+        }
+    }
+
+    private void add(double value) {
+        double sum = valueSum + value;
+        if (Math.abs(valueSum) >= Math.abs(value)) {
+            compensation += (valueSum - sum) + value;
+        } else {
+            compensation += (value - sum) + valueSum;
+        }
+        valueSum = sum;
+    }
+}
@@ -15,7 +15,7 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.transformation;
 
-import de.qaware.chronix.server.functions.ChronixTransformation;
+import de.qaware.chronix.converter.common.DoubleList;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
@@ -30,7 +30,7 @@ import java.util.List;
  *
  * @author f.lautenschlager
  */
-public final class Subtract implements ChronixTransformation<MetricTimeSeries> {
+public final class Subtract implements ElementwiseTransformation {
 
     private double value;
 
@@ -45,16 +45,15 @@ public final class Subtract implements ChronixTransformation<MetricTimeSeries> {
 
         for (ChronixTimeSeries<MetricTimeSeries> chronixTimeSeries : timeSeriesList) {
             MetricTimeSeries timeSeries = chronixTimeSeries.getRawTimeSeries();
-            long[] timestamps = timeSeries.getTimestampsAsArray();
-            double[] values = timeSeries.getValuesAsArray();
 
-            timeSeries.clear();
-
-            for (int i = 0; i < values.length; i++) {
-                values[i] -= value;
+            //update the values in place, the timestamps are not touched
+            DoubleList values = timeSeries.getValues();
+            int size = values.size();
+            double decrement = value;
+            for (int i = 0; i < size; i++) {
+                values.set(i, values.get(i) - decrement);
             }
 
-            timeSeries.addAll(timestamps, values);
             functionCtx.add(this, chronixTimeSeries.getJoinKey());
         }
     }
@@ -69,6 +68,11 @@ public final class Subtract implements ChronixTransformation<MetricTimeSeries> {
         return "metric";
     }
 
+    @Override
+    public double transformValue(double value) {
+        return value - this.value;
+    }
+
     /**
      * @param args the first value is the amount that is subtracted
      */
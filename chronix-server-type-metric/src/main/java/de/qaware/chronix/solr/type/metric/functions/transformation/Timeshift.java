@@ -15,7 +15,6 @@
  */
 package de.qaware.chronix.solr.type.metric.functions.transformation;
 
-import de.qaware.chronix.server.functions.ChronixTransformation;
 import de.qaware.chronix.server.functions.FunctionCtx;
 import de.qaware.chronix.server.types.ChronixTimeSeries;
 import de.qaware.chronix.timeseries.MetricTimeSeries;
@@ -31,7 +30,7 @@ import java.util.List;
  *
  * @author f.lautenschlager
  */
-public final class Timeshift implements ChronixTransformation<MetricTimeSeries> {
+public final class Timeshift implements ElementwiseTransformation {
 
     private ChronoUnit unit;
     private long amount;
@@ -72,6 +71,16 @@ public final class Timeshift implements ChronixTransformation<MetricTimeSeries>
         return "metric";
     }
 
+    @Override
+    public long transformTimestamp(long timestamp) {
+        return timestamp + shift;
+    }
+
+    @Override
+    public boolean transformsTimestamps() {
+        return true;
+    }
+
     /**
      * @param args the first value is the amount, e.g 10, the second one is the unit, e.g HOURS
      */
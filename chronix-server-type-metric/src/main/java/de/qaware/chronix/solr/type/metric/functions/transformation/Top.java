@@ -66,6 +66,11 @@ public final class Top implements ChronixTransformation<MetricTimeSeries> {
         return "metric";
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
 
     /**
      * @param args number of largest values that are returned
@@ -130,6 +130,11 @@ public final class Vectorization implements ChronixTransformation<MetricTimeSeri
         return "metric";
     }
 
+    @Override
+    public boolean isIndependentPerTimeSeries() {
+        return true;
+    }
+
     /**
      * @param args the first value is used to decide if the distance of values is almost equals.
      */
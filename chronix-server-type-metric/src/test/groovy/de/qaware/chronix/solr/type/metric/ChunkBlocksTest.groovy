@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+/**
+ * Unit test for the block layout of the metric records
+ * @author f.lautenschlager
+ */
+class ChunkBlocksTest extends Specification {
+
+    @Unroll
+    def "test encode and decode #size points in blocks of 10"() {
+        given:
+        def blocks = ChunkBlocks.encode(chunk(size), 10)
+
+        when:
+        def decoded = new MetricTimeSeries.Builder(null, null)
+        def count = ChunkBlocks.decode(blocks.data, blocks.index, Long.MIN_VALUE, Long.MAX_VALUE, decoded)
+        def ts = decoded.build()
+
+        then:
+        count == expectedBlocks
+        blocks.index.length == expectedBlocks * 24
+        ts.getTimestamps().toArray() == (0..<size).collect { it * 10 as long } as long[]
+        ts.getValues().toArray() == (0..<size).collect { it as double } as double[]
+
+        where:
+        size << [1, 10, 25]
+        expectedBlocks << [1, 1, 3]
+    }
+
+    def "test only the blocks overlapping the query range are decoded"() {
+        given:
+        def blocks = ChunkBlocks.encode(chunk(50), 10)
+        //the first and the last block are corrupted, hence they must not be decoded
+        def index = ByteBuffer.wrap(blocks.index)
+        def firstEnd = index.getLong(16) as int
+        def lastStart = index.getLong(3 * 24 + 16) as int
+        (0..<firstEnd).each { blocks.data[it] = 0 }
+        (lastStart..<blocks.data.length).each { blocks.data[it] = 0 }
+
+        when:
+        def decoded = new MetricTimeSeries.Builder(null, null)
+        def count = ChunkBlocks.decode(blocks.data, blocks.index, 150, 349, decoded)
+        def ts = decoded.build()
+
+        then:
+        count == 3
+        ts.getTimestamps().toArray() == (15..34).collect { it * 10 as long } as long[]
+    }
+
+    def "test unblock a record"() {
+        given:
+        def blocks = ChunkBlocks.encode(chunk(25), 10)
+        def record = ["start": 0l, "end": 240l, "data": ByteBuffer.wrap(blocks.data), (ChunkBlocks.INDEX): blocks.index] as Map<String, Object>
+
+        when:
+        ChunkBlocks.unblock(record)
+        def decoded = new MetricTimeSeries.Builder(null, null)
+        SolrDocumentBuilder.decode(record, 0, Long.MAX_VALUE, decoded)
+
+        then:
+        !ChunkBlocks.isIndexed(record)
+        !record.containsKey(ChunkBlocks.INDEX)
+        record.get("data") instanceof ByteBuffer
+        decoded.build().getTimestamps().toArray() == (0..<25).collect { it * 10 as long } as long[]
+    }
+
+    def "test index field"() {
+        expect:
+        ChunkBlocks.isIndexField(ChunkBlocks.INDEX)
+        !ChunkBlocks.isIndexField("data")
+    }
+
+    def chunk(int size) {
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+        size.times { ts.point(it * 10, it) }
+        ts.build()
+    }
+}
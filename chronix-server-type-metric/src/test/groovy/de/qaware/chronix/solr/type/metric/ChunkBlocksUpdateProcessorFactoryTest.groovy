@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.converter.common.Compression
+import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import org.apache.solr.common.SolrInputDocument
+import org.apache.solr.common.util.NamedList
+import org.apache.solr.request.SolrQueryRequest
+import org.apache.solr.schema.BinaryField
+import org.apache.solr.schema.IndexSchema
+import org.apache.solr.schema.SchemaField
+import org.apache.solr.update.AddUpdateCommand
+import org.apache.solr.update.processor.UpdateRequestProcessor
+import spock.lang.Specification
+
+/**
+ * Unit test for the chunk blocks update processor
+ * @author f.lautenschlager
+ */
+class ChunkBlocksUpdateProcessorFactoryTest extends Specification {
+
+    def "test processor stores the record in blocks and calls the next processor"() {
+        given:
+        def next = Mock(UpdateRequestProcessor)
+        def factory = new ChunkBlocksUpdateProcessorFactory()
+        def args = new NamedList()
+        args.add("blockSize", 4)
+        factory.init(args)
+        def processor = factory.getInstance(request(true), null, next)
+        def cmd = new AddUpdateCommand(null)
+        cmd.solrDoc = document("metric", 100, 190)
+
+        when:
+        processor.processAdd(cmd)
+
+        then:
+        1 * next.processAdd(cmd)
+        (cmd.solrDoc.getFieldValue(ChunkBlocks.INDEX) as byte[]).length == 3 * 24
+        decode(cmd.solrDoc, 130, 160).getTimestamps().toArray() == [130, 140, 150, 160] as long[]
+        decode(cmd.solrDoc, 0, Long.MAX_VALUE).getValues().toArray() == (10..19).collect { it as double } as double[]
+    }
+
+    def "test the block layout is only written if the schema declares the block index"() {
+        given:
+        def next = Mock(UpdateRequestProcessor)
+        def factory = new ChunkBlocksUpdateProcessorFactory()
+        factory.init(new NamedList())
+
+        when:
+        def processor = factory.getInstance(request(false), null, next)
+
+        then:
+        processor.is(next)
+    }
+
+    def "test processor with unblock stores the records in a single chunk"() {
+        given:
+        def next = Mock(UpdateRequestProcessor)
+        def factory = new ChunkBlocksUpdateProcessorFactory()
+        def args = new NamedList()
+        args.add("blockSize", 4)
+        args.add("unblock", true)
+        factory.init(args)
+        def processor = factory.getInstance(request(true), null, next)
+
+        def blocked = new AddUpdateCommand(null)
+        blocked.solrDoc = document("metric", 100, 190)
+        ChunkBlocksUpdateProcessorFactory.block(blocked.solrDoc, 4)
+        def single = new AddUpdateCommand(null)
+        single.solrDoc = document("metric", 100, 190)
+        def data = single.solrDoc.getFieldValue("data")
+
+        when:
+        processor.processAdd(blocked)
+        processor.processAdd(single)
+
+        then:
+        1 * next.processAdd(blocked)
+        1 * next.processAdd(single)
+        !blocked.solrDoc.containsKey(ChunkBlocks.INDEX)
+        decode(blocked.solrDoc, 0, Long.MAX_VALUE).getTimestamps().toArray() == (100..190).step(10) as long[]
+        !single.solrDoc.containsKey(ChunkBlocks.INDEX)
+        single.solrDoc.getFieldValue("data").is(data)
+    }
+
+    def "test records with a single block are not changed"() {
+        given:
+        def doc = document("metric", 100, 190)
+        def data = doc.getFieldValue("data")
+
+        when:
+        ChunkBlocksUpdateProcessorFactory.block(doc, 10)
+
+        then:
+        !doc.containsKey(ChunkBlocks.INDEX)
+        doc.getFieldValue("data").is(data)
+    }
+
+    def "test records whose range differs from their points are not stored in blocks"() {
+        given:
+        def doc = document("metric", 0, 190)
+
+        when:
+        ChunkBlocksUpdateProcessorFactory.block(doc, 4)
+
+        then:
+        !doc.containsKey(ChunkBlocks.INDEX)
+    }
+
+    def "test stale blocks are removed"() {
+        given:
+        def doc = document("metric", 100, 190)
+        ChunkBlocksUpdateProcessorFactory.block(doc, 4)
+
+        when:
+        ChunkBlocksUpdateProcessorFactory.block(doc, 10)
+
+        then:
+        !doc.containsKey(ChunkBlocks.INDEX)
+        decode(doc, 0, Long.MAX_VALUE).getTimestamps().toArray() == (100..190).step(10) as long[]
+    }
+
+    def "test other types and records without data are not stored in blocks"() {
+        given:
+        def other = document("log", 100, 190)
+        def withoutData = document("metric", 100, 190)
+        withoutData.removeField("data")
+
+        when:
+        ChunkBlocksUpdateProcessorFactory.block(other, 4)
+        ChunkBlocksUpdateProcessorFactory.block(withoutData, 4)
+
+        then:
+        !other.containsKey(ChunkBlocks.INDEX)
+        !withoutData.containsKey(ChunkBlocks.INDEX)
+    }
+
+    def "test the block size has to be positive"() {
+        given:
+        def args = new NamedList()
+        args.add("blockSize", 0)
+
+        when:
+        new ChunkBlocksUpdateProcessorFactory().init(args)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def request(boolean blocks) {
+        def schema = Stub(IndexSchema) {
+            getFieldOrNull(ChunkBlocks.INDEX) >> (blocks ? new SchemaField(ChunkBlocks.INDEX, new BinaryField()) : null)
+        }
+        Stub(SolrQueryRequest) {
+            getSchema() >> schema
+        }
+    }
+
+    def decode(SolrInputDocument doc, long queryStart, long queryEnd) {
+        def record = [:] as Map<String, Object>
+        doc.getFieldNames().each { record.put(it, doc.getFieldValue(it)) }
+        def builder = new MetricTimeSeries.Builder(null, null)
+        SolrDocumentBuilder.decode(record, queryStart, queryEnd, builder)
+        builder.build()
+    }
+
+    def document(String type, long start, long end) {
+        def ts = new MetricTimeSeries.Builder("cpu", type)
+        10.times { ts.point(100 + it * 10, 10 + it) }
+
+        def doc = new SolrInputDocument()
+        doc.setField("name", "cpu")
+        doc.setField("type", type)
+        doc.setField("start", start)
+        doc.setField("end", end)
+        doc.setField("data", Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(ts.build().points().iterator())))
+        doc
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+
+/**
+ * Unit test for the merge of the chunks of a time series
+ * @author f.lautenschlager
+ */
+class ChunkMergerTest extends Specification {
+
+    def "test merge ordered chunks"() {
+        given:
+        def merger = new ChunkMerger()
+        merger.add(chunk([1, 2, 3], [1, 2, 3]))
+        merger.add(chunk([4, 5], [4, 5]))
+        merger.add(chunk([], []))
+
+        when:
+        def ts = merger.mergeInto(new MetricTimeSeries.Builder("cpu", "metric")).build()
+
+        then:
+        merger.size() == 5
+        ts.getTimestampsAsArray() == [1, 2, 3, 4, 5] as long[]
+        ts.getValuesAsArray() == [1, 2, 3, 4, 5] as double[]
+    }
+
+    def "test merge overlapping chunks"() {
+        given:
+        def merger = new ChunkMerger()
+        merger.add(chunk([10, 20, 30], [1, 2, 3]))
+        merger.add(chunk([0, 15, 25, 40], [0, 1.5, 2.5, 4]))
+        //same first timestamp as the first chunk
+        merger.add(chunk([10, 11], [1.1, 1.2]))
+
+        when:
+        def ts = merger.mergeInto(new MetricTimeSeries.Builder("cpu", "metric")).build()
+
+        then:
+        ts.getTimestampsAsArray() == [0, 10, 10, 11, 15, 20, 25, 30, 40] as long[]
+        ts.getValuesAsArray() == [0, 1, 1.1, 1.2, 1.5, 2, 2.5, 3, 4] as double[]
+    }
+
+    def "test merge drops the duplicates of later chunks"() {
+        given:
+        def merger = new ChunkMerger()
+        merger.add(chunk([1, 2, 2, 3], [1, 2, 2, 3]))
+        //re-imported points and a new value for an existing timestamp
+        merger.add(chunk([0, 2, 3], [0, 2, 3.5]))
+        merger.add(chunk([1, 2, 3], [1, 2, 3]))
+
+        when:
+        def ts = merger.mergeInto(new MetricTimeSeries.Builder("cpu", "metric")).build()
+
+        then:
+        //the duplicates within a chunk are kept
+        ts.getTimestampsAsArray() == [0, 1, 2, 2, 3, 3] as long[]
+        ts.getValuesAsArray() == [0, 1, 2, 2, 3, 3.5] as double[]
+    }
+
+    def "test merge sorts an unsorted chunk"() {
+        given:
+        def merger = new ChunkMerger()
+        merger.add(chunk([3, 1, 2], [3, 1, 2]))
+
+        when:
+        def ts = merger.mergeInto(new MetricTimeSeries.Builder("cpu", "metric")).build()
+
+        then:
+        ts.getTimestampsAsArray() == [1, 2, 3] as long[]
+        ts.getValuesAsArray() == [1, 2, 3] as double[]
+    }
+
+    def "test merge equals concatenate and sort"() {
+        given:
+        def random = new Random(7)
+        def merger = new ChunkMerger()
+        def expected = []
+        50.times {
+            def times = (0..<random.nextInt(100)).collect { random.nextInt(100000) as long }.sort()
+            //distinct values, hence there are no duplicates
+            def values = times.collect { (it + random.nextDouble()) as double }
+            merger.add(chunk(times, values))
+            times.eachWithIndex { time, i -> expected << [time, values[i]] }
+        }
+
+        when:
+        def ts = merger.mergeInto(new MetricTimeSeries.Builder("cpu", "metric")).build()
+
+        then:
+        ts.getTimestampsAsArray() == expected.collect { it[0] }.sort() as long[]
+        ts.getTimestampsAsArray() as List == (ts.getTimestampsAsArray() as List).sort()
+        ts.getValuesAsArray() as Set == expected.collect { it[1] } as Set
+    }
+
+    def chunk(List times, List values) {
+        def builder = new MetricTimeSeries.Builder("cpu", "metric")
+        times.eachWithIndex { time, i -> builder.point(time as long, values[i] as double) }
+        builder.build()
+    }
+}
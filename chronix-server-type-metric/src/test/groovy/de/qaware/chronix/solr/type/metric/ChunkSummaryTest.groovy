@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import org.apache.solr.common.SolrInputDocument
+import spock.lang.Specification
+
+/**
+ * Unit test for the chunk summary
+ * @author f.lautenschlager
+ */
+class ChunkSummaryTest extends Specification {
+
+    def "test summary of an unsorted chunk"() {
+        given:
+        def chunk = new MetricTimeSeries.Builder(null, null)
+                .point(30, 4)
+                .point(10, 2)
+                .point(40, -1)
+                .point(20, 7)
+                .build()
+
+        when:
+        def summary = ChunkSummary.of(chunk)
+
+        then:
+        summary.start == 10
+        summary.end == 40
+        summary.count == 4
+        summary.min == -1d
+        summary.max == 7d
+        summary.sum == 12d
+        summary.first == 2d
+        summary.last == -1d
+    }
+
+    def "test summary of an empty chunk"() {
+        expect:
+        ChunkSummary.of(new MetricTimeSeries.Builder(null, null).build()) == null
+    }
+
+    def "test write and read a summary"() {
+        given:
+        def chunk = new MetricTimeSeries.Builder(null, null).point(10, 2).point(20, 3).build()
+        def doc = new SolrInputDocument()
+
+        when:
+        ChunkSummary.of(chunk).write(doc)
+        def record = [start: 10l, end: 20l]
+        doc.getFieldNames().each { record.put(it, doc.getFieldValue(it)) }
+        def summary = ChunkSummary.read(record)
+
+        then:
+        doc.getFieldNames() as Set == ChunkSummary.fields() as Set
+        summary.start == 10
+        summary.end == 20
+        summary.count == 2
+        summary.sum == 5d
+        summary.first == 2d
+        summary.last == 3d
+
+        when:
+        ChunkSummary.remove(doc)
+
+        then:
+        doc.isEmpty()
+    }
+
+    def "test read a record without summary"() {
+        expect:
+        ChunkSummary.read([start: 0l, end: 10l, chunk_count: 1l]) == null
+    }
+
+    def "test merge summaries"() {
+        given:
+        def earlier = ChunkSummary.of(new MetricTimeSeries.Builder(null, null).point(10, 2).point(20, 3).build())
+        def later = ChunkSummary.of(new MetricTimeSeries.Builder(null, null).point(30, 9).point(40, -4).build())
+
+        when:
+        def merged = later.merge(earlier)
+
+        then:
+        merged.start == 10
+        merged.end == 40
+        merged.count == 4
+        merged.min == -4d
+        merged.max == 9d
+        merged.sum == 10d
+        merged.first == 2d
+        merged.last == -4d
+    }
+
+    def "test is summary field"() {
+        expect:
+        ChunkSummary.isSummaryField(field) == expected
+
+        where:
+        field << ["chunk_count", "chunk_last", "host", "data"]
+        expected << [true, true, false, false]
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.converter.common.Compression
+import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import org.apache.solr.common.SolrInputDocument
+import org.apache.solr.update.AddUpdateCommand
+import org.apache.solr.update.processor.UpdateRequestProcessor
+import spock.lang.Specification
+
+/**
+ * Unit test for the chunk summary update processor
+ * @author f.lautenschlager
+ */
+class ChunkSummaryUpdateProcessorFactoryTest extends Specification {
+
+    def "test processor writes the summary and calls the next processor"() {
+        given:
+        def next = Mock(UpdateRequestProcessor)
+        def processor = new ChunkSummaryUpdateProcessorFactory().getInstance(null, null, next)
+        def cmd = new AddUpdateCommand(null)
+        cmd.solrDoc = document("metric", 100, 190)
+
+        when:
+        processor.processAdd(cmd)
+
+        then:
+        1 * next.processAdd(cmd)
+        cmd.solrDoc.getFieldValue(ChunkSummary.COUNT) == 10l
+        cmd.solrDoc.getFieldValue(ChunkSummary.MIN) == 10d
+        cmd.solrDoc.getFieldValue(ChunkSummary.MAX) == 19d
+        cmd.solrDoc.getFieldValue(ChunkSummary.SUM) == 145d
+        cmd.solrDoc.getFieldValue(ChunkSummary.FIRST) == 10d
+        cmd.solrDoc.getFieldValue(ChunkSummary.LAST) == 19d
+    }
+
+    def "test summary is removed if the range of the record differs from its points"() {
+        given:
+        def doc = document("metric", 0, 190)
+        doc.setField(ChunkSummary.COUNT, 42l)
+
+        when:
+        ChunkSummaryUpdateProcessorFactory.summarize(doc)
+
+        then:
+        ChunkSummary.fields().every { !doc.containsKey(it) }
+    }
+
+    def "test other types and records without data are not summarized"() {
+        given:
+        def other = document("log", 100, 190)
+        def withoutData = document("metric", 100, 190)
+        withoutData.removeField("data")
+
+        when:
+        ChunkSummaryUpdateProcessorFactory.summarize(other)
+        ChunkSummaryUpdateProcessorFactory.summarize(withoutData)
+
+        then:
+        !other.containsKey(ChunkSummary.COUNT)
+        !withoutData.containsKey(ChunkSummary.COUNT)
+    }
+
+    def document(String type, long start, long end) {
+        def ts = new MetricTimeSeries.Builder("cpu", type)
+        10.times { ts.point(100 + it * 10, 10 + it) }
+
+        def doc = new SolrInputDocument()
+        doc.setField("name", "cpu")
+        doc.setField("type", type)
+        doc.setField("start", start)
+        doc.setField("end", end)
+        doc.setField("data", Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(ts.build().points().iterator())))
+        doc
+    }
+}
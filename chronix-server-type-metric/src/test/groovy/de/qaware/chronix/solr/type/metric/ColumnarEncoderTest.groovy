@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+
+/**
+ * Unit test for the columnar encoding of a metric time series
+ * @author f.lautenschlager
+ */
+class ColumnarEncoderTest extends Specification {
+
+    def "test encode"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+                .point(1000, 1.0d)
+                .point(2000, 1.0d)
+                .point(3000, 2.5d)
+                .point(3500, -4.25d)
+                .point(10000, Double.NaN)
+                .point(9000, 0.0d)
+                .build()
+
+        when:
+        def columns = new ChronixMetricTimeSeries("cpu", ts).dataAsColumns()
+
+        then:
+        //the client of the chronix server decodes the same bytes
+        columns.encodeHex().toString() == "0000000600000000000003e8d00f00e707e05d97753ff000000000000080067ff406801506bfe9067ff8"
+    }
+
+    def "test encode empty time series"() {
+        when:
+        def columns = ColumnarEncoder.encode(new MetricTimeSeries.Builder("cpu", "metric").build())
+
+        then:
+        columns == [0, 0, 0, 0] as byte[]
+    }
+
+    def "test regular time series are compact"() {
+        given:
+        def builder = new MetricTimeSeries.Builder("cpu", "metric")
+        10000.times { builder.point(it * 1000L, 42 + (it % 4)) }
+
+        when:
+        def columns = ColumnarEncoder.encode(builder.build())
+
+        then:
+        //a byte per timestamp, at most three bytes per value
+        columns.length < 10000 * 4 + 20
+        columns.length < 10000 * 2 * 8 / 3
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.converter.common.Compression
+import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer
+import de.qaware.chronix.server.types.ChronixRecordLoader
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import org.apache.solr.common.SolrDocument
+import org.apache.solr.common.SolrInputDocument
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+import java.util.function.Consumer
+
+/**
+ * Unit test for the metric time series accumulator
+ * @author f.lautenschlager
+ */
+class MetricTimeSeriesAccumulatorTest extends Specification {
+
+    @Unroll
+    def "test accumulate records in order: #inOrder"() {
+        given:
+        def accumulator = new MetricTimeSeriesAccumulator("join-key", 0, Long.MAX_VALUE, true)
+        def records = [record(0, "laptop"), record(1, "server"), record(2, "laptop")]
+        if (!inOrder) {
+            records = records.reverse()
+        }
+
+        when:
+        records.each { accumulator.add(it) }
+        def ts = accumulator.build()
+
+        then:
+        ts.joinKey == "join-key"
+        ts.name == "cpu"
+        ts.type == "metric"
+        ts.rawTimeSeries.size() == 30
+        ts.rawTimeSeries.getTimestamps().toArray() == (0..29).collect { it * 10 as long } as long[]
+        ts.rawTimeSeries.getValues().toArray() == (0..29).collect { it as double } as double[]
+        ts.attributes.get("host") as Set == ["laptop", "server"] as Set
+        ts.attributes.get("bytes") instanceof Set
+        !ts.attributes.containsKey("_version_")
+
+        where:
+        inOrder << [true, false]
+    }
+
+    def "test accumulate records filtered by the query range"() {
+        given:
+        def accumulator = new MetricTimeSeriesAccumulator("join-key", 50, 149, true)
+
+        when:
+        3.times { accumulator.add(record(it, "laptop")) }
+        def ts = accumulator.build()
+
+        then:
+        ts.rawTimeSeries.size() == 10
+        ts.start == 50
+        ts.end == 140
+    }
+
+    def "test accumulate records without data"() {
+        given:
+        def accumulator = new MetricTimeSeriesAccumulator("join-key", 0, Long.MAX_VALUE, false)
+
+        when:
+        3.times { accumulator.add(record(it, "laptop")) }
+        def ts = accumulator.build()
+
+        then:
+        ts.rawTimeSeries.size() == 0
+        ts.attributes.get("host") as List == ["laptop"]
+    }
+
+    def "test accumulate binary attributes of sliced and read-only buffers"() {
+        given:
+        def accumulator = new MetricTimeSeriesAccumulator("join-key", 0, Long.MAX_VALUE, false)
+        def record = record(0, "laptop")
+        record.put("bytes", ByteBuffer.wrap("xxsome_bytesxx".bytes, 2, 10).slice().asReadOnlyBuffer())
+
+        when:
+        accumulator.add(record)
+        def ts = accumulator.build()
+
+        then:
+        (ts.attributes.get("bytes") as List)[0] == "some_bytes".bytes
+    }
+
+    def "test accumulator is equal to the reduced time series"() {
+        given:
+        def records = [record(1, "server"), record(0, "laptop"), record(2, "laptop")]
+        def accumulator = new MetricType().accumulator("join-key", 0, Long.MAX_VALUE, true)
+
+        when:
+        records.each { accumulator.add(it) }
+        def accumulated = accumulator.build().rawTimeSeries
+        def reduced = SolrDocumentBuilder.reduceDocumentToTimeSeries(0, Long.MAX_VALUE, records, true)
+
+        then:
+        accumulated.getTimestamps().toArray() == reduced.getTimestamps().toArray()
+        accumulated.getValues().toArray() == reduced.getValues().toArray()
+        accumulated.attributes().keySet() == reduced.attributes().keySet()
+    }
+
+    def "test summarizing accumulator only decodes the records at the boundaries of the query range"() {
+        given:
+        def records = (0..4).collect { summarized(record(it, "laptop")) }
+        def loader = new RecordLoader(records: records.collect { new HashMap(it) })
+        def accumulator = new MetricType().summaryAccumulator("join-key", 150, 449, loader)
+        def needsData = records.collect { new MetricType().summaryNeedsData(it, 150, 449) }
+        //the data of the summarized records within the query range is not read
+        records.eachWithIndex { record, i -> if (!needsData[i]) record.remove("data") }
+
+        when:
+        records.eachWithIndex { record, i ->
+            loader.doc = i
+            accumulator.add(record)
+        }
+        def ts = accumulator.build() as ChronixMetricTimeSeries
+
+        then:
+        needsData == [false, true, false, false, true]
+        loader.loaded.isEmpty()
+        ts.rawTimeSeries.getTimestamps().toArray() == ((150..190).step(10) + (400..440).step(10)) as long[]
+        ts.summary.count == 20
+        ts.summary.sum == (20..39).sum() as double
+        ts.start == 150
+        ts.end == 440
+        !ts.attributes.containsKey(ChunkSummary.COUNT)
+    }
+
+    def "test summarizing accumulator loads the summarized records by their doc ids if the records overlap"() {
+        given:
+        def records = [record(0, "laptop"), record(1, "laptop"), record(1, "server")].collect { summarized(it) }
+        def loader = new RecordLoader(records: records.collect { new HashMap(it) })
+        def accumulator = new MetricType().summaryAccumulator("join-key", 0, Long.MAX_VALUE, loader)
+
+        when:
+        records.eachWithIndex { record, i ->
+            assert !new MetricType().summaryNeedsData(record, 0, Long.MAX_VALUE)
+            record.remove("data")
+            loader.doc = i
+            accumulator.add(record)
+        }
+        def ts = accumulator.build() as ChronixMetricTimeSeries
+
+        then:
+        loader.loaded == [0, 1, 2]
+        ts.summary == null
+        //the duplicate points of the overlapping records are dropped
+        ts.rawTimeSeries.size() == 20
+    }
+
+    def "test records need their data if they have no summary"() {
+        given:
+        def withSummary = summarized(record(1, "laptop"))
+        def withoutSummary = record(1, "laptop")
+
+        expect:
+        !MetricTimeSeriesAccumulator.needsData(withSummary, 0, 1000)
+        MetricTimeSeriesAccumulator.needsData(withoutSummary, 0, 1000)
+        //records outside of the query range are skipped
+        !MetricTimeSeriesAccumulator.needsData(withoutSummary, 500, 1000)
+    }
+
+    def summarized(SolrDocument record) {
+        def doc = new SolrInputDocument()
+        record.each { doc.setField(it.key, it.value) }
+        ChunkSummaryUpdateProcessorFactory.summarize(doc)
+        ChunkSummary.fields().each { record.put(it, doc.getFieldValue(it)) }
+        record
+    }
+
+    def record(int chunk, String host) {
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+        10.times {
+            def index = chunk * 10 + it
+            ts.point(index * 10, index)
+        }
+
+        def doc = new SolrDocument()
+        doc.put("start", chunk * 100 as long)
+        doc.put("end", chunk * 100 + 90 as long)
+        doc.put("name", "cpu")
+        doc.put("type", "metric")
+        doc.put("host", host)
+        doc.put("bytes", ByteBuffer.wrap("some_bytes".bytes))
+        doc.put("_version_", 1l)
+
+        def data = ProtoBufMetricTimeSeriesSerializer.to(ts.build().points().iterator())
+        doc.put("data", ByteBuffer.wrap(Compression.compress(data)))
+        doc
+    }
+
+    /**
+     * Loads the records by their index in the list
+     */
+    static class RecordLoader implements ChronixRecordLoader {
+        List<Map<String, Object>> records
+        List<Integer> loaded = []
+        int doc
+
+        @Override
+        int current() {
+            doc
+        }
+
+        @Override
+        void load(int[] docIds, Consumer<Map<String, Object>> consumer) {
+            docIds.each {
+                loaded << it
+                consumer.accept(records[it])
+            }
+        }
+    }
+}
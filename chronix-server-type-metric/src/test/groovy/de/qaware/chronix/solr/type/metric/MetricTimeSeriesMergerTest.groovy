@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit test for the k-way merge of metric time series
+ * @author f.lautenschlager
+ */
+class MetricTimeSeriesMergerTest extends Specification {
+
+    @Unroll
+    def "test merge with #aggregation"() {
+        given:
+        def first = new MetricTimeSeries.Builder("cpu", "metric")
+                .point(61000, 3)
+                .point(0, 1)
+                .point(30000, 2)
+                .attribute("host", ["a"] as LinkedHashSet)
+                .build()
+        def second = new MetricTimeSeries.Builder("cpu", "metric")
+                .point(0, 10)
+                .point(62000, 20)
+                .attribute("host", ["b"] as LinkedHashSet)
+                .build()
+        def third = new MetricTimeSeries.Builder("cpu", "metric")
+                .point(120000, 7)
+                .build()
+
+        when:
+        def merged = MetricTimeSeriesMerger.merge([first, second, third], aggregation, percentile, 60000)
+
+        then:
+        merged.getName() == "cpu"
+        merged.getType() == "metric"
+        merged.attribute("host") == ["a", "b"] as LinkedHashSet
+        merged.getTimestampsAsArray() == [0, 60000, 120000] as long[]
+        merged.getValuesAsArray() == expected as double[]
+
+        where:
+        aggregation << ["SUM", "AVG", "MIN", "MAX", "COUNT", "P"]
+        percentile << [0, 0, 0, 0, 0, 0.5]
+        expected << [[13, 23, 7], [13d / 3, 11.5, 7], [1, 3, 7], [10, 20, 7], [3, 2, 1], [2, 11.5, 7]]
+    }
+
+    def "test merge equal timestamps"() {
+        given:
+        def timeSeriesList = (0..<5).collect { series ->
+            def builder = new MetricTimeSeries.Builder("cpu", "metric")
+            100.times { builder.point(99 - it, series) }
+            builder.build()
+        }
+
+        when:
+        def merged = MetricTimeSeriesMerger.merge(timeSeriesList, "SUM", 0, 1)
+
+        then:
+        merged.size() == 100
+        merged.getTimestampsAsArray() == (0..<100) as long[]
+        merged.getValuesAsArray().every { it == 10d }
+    }
+
+    def "test merge equals concatenate and sort"() {
+        given:
+        def random = new Random(42)
+        def timeSeriesList = (0..<20).collect {
+            def builder = new MetricTimeSeries.Builder("cpu", "metric")
+            random.nextInt(200).times { builder.point(random.nextInt(10000) - 5000, random.nextInt(100)) }
+            builder.build()
+        }
+        def expected = new TreeMap<Long, Double>()
+        timeSeriesList.each { ts ->
+            ts.size().times { i ->
+                long bucket = Math.floorDiv(ts.getTime(i), 100L) * 100L
+                expected.put(bucket, Math.max(expected.getOrDefault(bucket, Double.NEGATIVE_INFINITY), ts.getValue(i)))
+            }
+        }
+
+        when:
+        def merged = MetricTimeSeriesMerger.merge(timeSeriesList, "MAX", 0, 100)
+
+        then:
+        merged.getTimestampsAsArray() == expected.keySet() as long[]
+        merged.getValuesAsArray() == expected.values() as double[]
+    }
+
+    def "test merge unknown aggregation"() {
+        given:
+        def timeSeries = new MetricTimeSeries.Builder("cpu", "metric").point(1, 1).build()
+
+        when:
+        MetricTimeSeriesMerger.merge([timeSeries], "MEDIAN", 0, 1)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    def "test private constructor"() {
+        when:
+        MetricTimeSeriesMerger.newInstance()
+
+        then:
+        noExceptionThrown()
+    }
+}
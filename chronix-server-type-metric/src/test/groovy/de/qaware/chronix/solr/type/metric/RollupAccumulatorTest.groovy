@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.converter.common.Compression
+import de.qaware.chronix.converter.serializer.protobuf.ProtoBufMetricTimeSeriesSerializer
+import de.qaware.chronix.server.functions.FunctionCtx
+import de.qaware.chronix.solr.type.metric.functions.transformation.Bucket
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import org.apache.solr.common.SolrDocument
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.nio.ByteBuffer
+
+/**
+ * Unit test for the rollup accumulator
+ * @author f.lautenschlager
+ */
+class RollupAccumulatorTest extends Specification {
+
+    @Unroll
+    def "test bucket #aggregation from rollups and the raw records at the edges"() {
+        given:
+        //a point every 10 ms, the records hold one second, the first three seconds are rolled up.
+        //the last rolled up point ends a bucket, hence the bucket is complete
+        def rollup = new Rollup.Builder(100)
+        (0..2).each { chunk -> points(chunk).each { rollup.add(it[0] as long, it[1]) } }
+        def accumulator = new RollupAccumulator("cpu", 500, 3990, 100, 1000)
+
+        when:
+        accumulator.add(rollupRecord(rollup))
+        accumulator.add(record(0))
+        //the covered records are never decoded
+        accumulator.add(notDecodable(1))
+        accumulator.add(notDecodable(2))
+        accumulator.add(record(3))
+        def ts = accumulator.build()
+
+        def bucket = new Bucket()
+        bucket.setArguments(["1", "SECONDS", aggregation] as String[])
+        bucket.execute([ts], new FunctionCtx(0, 0, 1))
+
+        then:
+        ts.rollup == null
+        ts.rawTimeSeries.getTimestampsAsArray() == [0, 1000, 2000, 3000] as long[]
+        ts.rawTimeSeries.getValuesAsArray() == expected(aggregation, 500, 3990) as double[]
+        ts.rawTimeSeries.attribute("host") == ["laptop"] as Set
+        !ts.rawTimeSeries.attributes().containsKey("rollup")
+
+        where:
+        aggregation << ["MIN", "MAX", "SUM", "COUNT", "AVG"]
+    }
+
+    def "test overlapping rollups fall back to the raw records"() {
+        given:
+        def rollup = new Rollup.Builder(100)
+        points(0).each { rollup.add(it[0] as long, it[1]) }
+        def accumulator = new RollupAccumulator("cpu", 0, 1999, 100, 1000)
+
+        when:
+        accumulator.add(rollupRecord(rollup))
+        accumulator.add(rollupRecord(rollup))
+        accumulator.add(record(0))
+        accumulator.add(record(1))
+        def ts = accumulator.build()
+
+        then:
+        ts.rollup == null
+        ts.rawTimeSeries.size() == 200
+    }
+
+    def "test an incomplete bucket at the end of the rollup is read from the raw records"() {
+        given:
+        def rollup = new Rollup.Builder(100)
+        points(0).findAll { it[0] < 500 }.each { rollup.add(it[0] as long, it[1]) }
+        def accumulator = new RollupAccumulator("cpu", 0, 999, 100, 1000)
+
+        when:
+        accumulator.add(rollupRecord(rollup))
+        accumulator.add(record(0))
+        def ts = accumulator.build()
+
+        then:
+        ts.rollup == null
+        ts.rawTimeSeries.size() == 100
+    }
+
+    def "test rollups with another resolution are ignored"() {
+        given:
+        def rollup = new Rollup.Builder(500)
+        points(0).each { rollup.add(it[0] as long, it[1]) }
+        def accumulator = new RollupAccumulator("cpu", 0, 1999, 100, 1000)
+
+        when:
+        accumulator.add(rollupRecord(rollup))
+        accumulator.add(record(0))
+        def ts = accumulator.build()
+
+        then:
+        ts.rollup == null
+        ts.rawTimeSeries.size() == 100
+    }
+
+    def "test the points of records written after the compaction are added to the rollup"() {
+        given:
+        def rollup = new Rollup.Builder(100)
+        (0..1).each { chunk -> points(chunk).each { rollup.add(it[0] as long, it[1]) } }
+        def accumulator = new RollupAccumulator("cpu", 0, 1999, 100, 1000)
+        def late = record(1)
+        late.put("_version_", 11l)
+
+        when:
+        accumulator.add(rollupRecord(rollup))
+        accumulator.add(notDecodable(0))
+        accumulator.add(notDecodable(1))
+        accumulator.add(late)
+        def ts = accumulator.build()
+
+        def bucket = new Bucket()
+        bucket.setArguments(["1", "SECONDS", "COUNT"] as String[])
+        bucket.execute([ts], new FunctionCtx(0, 0, 1))
+
+        then:
+        ts.rawTimeSeries.getTimestampsAsArray() == [0, 1000] as long[]
+        ts.rawTimeSeries.getValuesAsArray() == [100, 200] as double[]
+    }
+
+    def "test rollups without versions are ignored"() {
+        given:
+        def rollup = new Rollup.Builder(100)
+        points(0).each { rollup.add(it[0] as long, it[1]) }
+        def accumulator = new RollupAccumulator("cpu", 0, 999, 100, 1000)
+        def unversioned = rollupRecord(rollup)
+        unversioned.remove(Rollup.FIRST_VERSION)
+        unversioned.remove(Rollup.LAST_VERSION)
+
+        when:
+        accumulator.add(unversioned)
+        accumulator.add(record(0))
+        def ts = accumulator.build()
+
+        then:
+        ts.rollup == null
+        ts.rawTimeSeries.size() == 100
+    }
+
+    def "test rollups and binary attributes of sliced and read-only buffers"() {
+        given:
+        def rollup = new Rollup.Builder(100)
+        points(0).each { rollup.add(it[0] as long, it[1]) }
+        def accumulator = new RollupAccumulator("cpu", 0, 999, 100, 1000)
+        def raw = notDecodable(0)
+        raw.put("bytes", ByteBuffer.wrap("some_bytes".bytes))
+
+        when:
+        accumulator.add(sliced(rollupRecord(rollup)))
+        accumulator.add(sliced(raw))
+        def ts = accumulator.build()
+
+        def bucket = new Bucket()
+        bucket.setArguments(["1", "SECONDS", "SUM"] as String[])
+        bucket.execute([ts], new FunctionCtx(0, 0, 1))
+
+        then:
+        ts.rawTimeSeries.getValuesAsArray() == [points(0).sum { it[1] }] as double[]
+        (ts.rawTimeSeries.attribute("bytes") as List)[0] == "some_bytes".bytes
+    }
+
+    def "test the bucket must be a multiple of the resolution"() {
+        when:
+        new RollupAccumulator("cpu", 0, 1000, 300, 1000)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    List<double[]> points(int chunk) {
+        (0..99).collect { [chunk * 1000 + it * 10 + 9, (it * 7) % 13] as double[] }
+    }
+
+    List<Double> expected(String aggregation, long start, long end) {
+        def buckets = (0..3).collect { chunk -> points(chunk).findAll { it[0] >= start && it[0] <= end }.collect { it[1] } }
+        buckets.collect { values ->
+            switch (aggregation) {
+                case "MIN": return values.min()
+                case "MAX": return values.max()
+                case "SUM": return values.sum()
+                case "COUNT": return values.size() as double
+                default: return values.sum() / values.size()
+            }
+        }
+    }
+
+    SolrDocument rollupRecord(Rollup.Builder rollup) {
+        def template = new MetricTimeSeries.Builder("cpu", "metric").attribute("host", "laptop").build()
+        //the rollup is built from the records with the versions 1 to 10
+        def doc = rollup.add(template).versions(1, 10).toInputDocument()
+        def record = new SolrDocument()
+        doc.getFieldNames().each {
+            def value = doc.getFieldValue(it)
+            record.put(it, value instanceof byte[] ? ByteBuffer.wrap(value) : value)
+        }
+        record
+    }
+
+    SolrDocument sliced(SolrDocument record) {
+        //the buffers of a record may be slices of a larger array and read-only
+        record.keySet().findAll { record.get(it) instanceof ByteBuffer }.each {
+            def bytes = ((ByteBuffer) record.get(it)).array()
+            def array = new byte[bytes.length + 4]
+            System.arraycopy(bytes, 0, array, 2, bytes.length)
+            record.put(it, ByteBuffer.wrap(array, 2, bytes.length).slice().asReadOnlyBuffer())
+        }
+        record
+    }
+
+    SolrDocument record(int chunk) {
+        def ts = new MetricTimeSeries.Builder("cpu", "metric")
+        points(chunk).each { ts.point(it[0] as long, it[1]) }
+        def doc = notDecodable(chunk)
+        doc.put("data", ByteBuffer.wrap(Compression.compress(ProtoBufMetricTimeSeriesSerializer.to(ts.build().points().iterator()))))
+        doc
+    }
+
+    SolrDocument notDecodable(int chunk) {
+        def doc = new SolrDocument()
+        doc.put("start", chunk * 1000 + 9 as long)
+        doc.put("end", chunk * 1000 + 999 as long)
+        doc.put("name", "cpu")
+        doc.put("type", "metric")
+        doc.put("host", "laptop")
+        doc.put("_version_", 5l)
+        doc.put("data", ByteBuffer.wrap("not compressed".bytes))
+        doc
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric
+
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+
+/**
+ * Unit test for the rollup of a metric time series
+ * @author f.lautenschlager
+ */
+class RollupTest extends Specification {
+
+    def "test build a rollup from unsorted points"() {
+        given:
+        def builder = new Rollup.Builder(10)
+                .add(25, 4)
+                .add(3, 2)
+                .add(-1, 1)
+                .add(21, -3)
+                .add(9, 6)
+
+        when:
+        def rollup = builder.build()
+
+        then:
+        rollup.resolution == 10
+        rollup.size() == 3
+        rollup.start == -10
+        rollup.end == 25
+        (0..2).collect { rollup.getTime(it) } == [-10l, 0l, 20l]
+        (0..2).collect { rollup.getMin(it) } == [1d, 2d, -3d]
+        (0..2).collect { rollup.getMax(it) } == [1d, 6d, 4d]
+        (0..2).collect { rollup.getSum(it) } == [1d, 8d, 1d]
+        (0..2).collect { rollup.getCount(it) } == [1d, 2d, 2d]
+    }
+
+    def "test write and read a rollup record"() {
+        given:
+        def chunk = new MetricTimeSeries.Builder("cpu", "metric")
+                .attribute("host", "laptop")
+                .attribute("chunk_count", 3l)
+                .point(100, 1)
+                .point(150, 3)
+                .point(290, 5)
+                .build()
+
+        when:
+        def doc = new Rollup.Builder(100).add(chunk).versions(3, 7).toInputDocument()
+        def record = [:]
+        doc.getFieldNames().each {
+            def value = doc.getFieldValue(it)
+            record.put(it, value instanceof byte[] ? ByteBuffer.wrap(value) : value)
+        }
+        def rollup = Rollup.read(record)
+
+        then:
+        doc.getFieldValue("name") == "cpu"
+        doc.getFieldValue("type") == "metric"
+        doc.getFieldValue("host") == "laptop"
+        doc.getFieldValue("start") == 100l
+        doc.getFieldValue("end") == 290l
+        !doc.containsKey("chunk_count")
+        Rollup.isRollup(record)
+        Rollup.resolution(record) == 100
+        rollup.size() == 2
+        rollup.getTime(1) == 200
+        rollup.getSum(0) == 4d
+        rollup.getCount(0) == 2d
+        rollup.getMax(1) == 5d
+        rollup.hasVersions()
+        rollup.isBuiltFrom(3) && rollup.isBuiltFrom(7)
+        !rollup.isBuiltFrom(8)
+        !new Rollup.Builder(100).add(chunk).toInputDocument().containsKey(Rollup.FIRST_VERSION)
+    }
+
+    def "test concat and filter rollups"() {
+        given:
+        def first = new Rollup.Builder(10).add(0, 1).add(10, 2).build()
+        def second = new Rollup.Builder(10).add(20, 3).add(35, 4).build()
+
+        when:
+        def rollup = Rollup.concat([second, first])
+        def filtered = rollup.filter { it >= 10 && it < 30 }
+
+        then:
+        rollup.size() == 4
+        rollup.start == 0
+        rollup.end == 35
+        (0..3).collect { rollup.getSum(it) } == [1d, 2d, 3d, 4d]
+        filtered.size() == 2
+        filtered.getTime(0) == 10
+        filtered.getMin(1) == 3d
+    }
+
+    def "test merge rollups"() {
+        given:
+        def rollup = new Rollup.Builder(10).add(0, 1).add(10, 2).build()
+        def late = new Rollup.Builder(10).add(15, 5).add(20, 3).build()
+
+        when:
+        def merged = rollup.merge(late)
+
+        then:
+        merged.size() == 3
+        merged.end == 20
+        (0..2).collect { merged.getTime(it) } == [0l, 10l, 20l]
+        (0..2).collect { merged.getSum(it) } == [1d, 7d, 3d]
+        (0..2).collect { merged.getCount(it) } == [1d, 2d, 1d]
+        merged.getMax(1) == 5d
+        merged.getMin(1) == 2d
+    }
+
+    def "test the version of a raw record"() {
+        expect:
+        Rollup.version([_version_: 42l]) == 42
+        Rollup.version([name: "cpu"]) == -1
+    }
+
+    def "test record without rollup"() {
+        expect:
+        !Rollup.isRollup([name: "cpu"])
+        Rollup.isRollupField("rollup_sum")
+        !Rollup.isRollupField("host")
+    }
+
+    def "test invalid resolution"() {
+        when:
+        new Rollup.Builder(0)
+
+        then:
+        thrown IllegalArgumentException
+    }
+}
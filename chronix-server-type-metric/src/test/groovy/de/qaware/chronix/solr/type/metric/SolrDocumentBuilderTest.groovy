@@ -71,6 +71,38 @@ class SolrDocumentBuilderTest extends Specification {
 
     }
 
+    def "test reduce overlapping chunks to a sorted time series"() {
+        given:
+        def solrDocuments = fillDocs()
+        //a late arriving chunk with the same first timestamp as the first chunk
+        def converter = new MetricTimeSeriesConverter()
+        def late = new MetricTimeSeries.Builder("groovy", "metric")
+                .point(1, 4711)
+                .point(2, 4712)
+                .build()
+        solrDocuments.add(asSolrDoc(converter.to(late)))
+
+        when:
+        def ts = SolrDocumentBuilder.reduceDocumentToTimeSeries(0l, 100l, solrDocuments, true)
+
+        then:
+        ts.size() == 72
+        def timestamps = ts.getTimestampsAsArray()
+        timestamps == (timestamps as List).sort() as long[]
+        ts.getValuesAsArray().contains(4711d)
+        ts.getValuesAsArray().contains(4712d)
+    }
+
+    def "test chunk overlaps the query range"() {
+        expect:
+        SolrDocumentBuilder.overlaps(chunkStart, chunkEnd, 100, 200) == overlaps
+
+        where:
+        chunkStart << [0, 0, 150, 200, 201, 0]
+        chunkEnd << [99, 100, 160, 300, 300, 1000]
+        overlaps << [false, true, true, true, false, true]
+    }
+
     def emtpyFunctionValueMap() {
         return new FunctionCtx(0, 0, 0)
     }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.aggregations
+
+import de.qaware.chronix.server.functions.FunctionCtx
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
+import de.qaware.chronix.solr.type.metric.ChunkSummary
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit test for the fused aggregation
+ * @author f.lautenschlager
+ */
+class FusedAggregationTest extends Specification {
+
+    def aggregations() {
+        [new Min(), new Max(), new Sum(), new Count(), new Avg(), new StdDev(),
+         new First(), new Last(), new Range(), new Difference(), new SignedDifference(),
+         percentile("0.5"), percentile("0.99"), percentile("0.5"), percentile("0.25", "APPROX"),
+         new Regression(Regression.Statistic.SLOPE), new Regression(Regression.Statistic.INTERCEPT),
+         new Regression(Regression.Statistic.RSQUARED)]
+    }
+
+    def percentile(String... args) {
+        def percentile = new Percentile()
+        percentile.setArguments(args)
+        percentile
+    }
+
+    @Unroll
+    def "test fused aggregation equals single aggregations for #description"() {
+        given:
+        def fusable = aggregations()
+        def fused = new FusedAggregation(fusable)
+
+        def counter = 0
+        def fusedTimeSeries = timeSeries.collect { new ChronixMetricTimeSeries("join-" + counter++, copy(it)) }
+        def fusedCtx = new FunctionCtx(fusable.size(), 0, 0)
+
+        when:
+        fused.execute(fusedTimeSeries, fusedCtx)
+
+        then:
+        timeSeries.eachWithIndex { MetricTimeSeries ts, int index ->
+            def joinKey = "join-" + index
+            def actual = fusedCtx.getContextFor(joinKey)
+            assert actual.sizeOfAggregations() == fusable.size()
+
+            fusable.eachWithIndex { aggregation, int i ->
+                def singleCtx = new FunctionCtx(1, 0, 0)
+                aggregation.execute([new ChronixMetricTimeSeries(joinKey, copy(ts))], singleCtx)
+                def expected = singleCtx.getContextFor(joinKey)
+
+                assert actual.getAggregation(i).is(aggregation)
+                assert Double.doubleToLongBits(actual.getAggregationValue(i)) == Double.doubleToLongBits(expected.getAggregationValue(0))
+            }
+        }
+
+        where:
+        description << ["random values", "values with NaN", "a single value", "unsorted values", "an empty time series"]
+        timeSeries << [[randomTimeSeries(new Random(1), 1000, false), randomTimeSeries(new Random(2), 17, false)],
+                       [randomTimeSeries(new Random(3), 100, true)],
+                       [new MetricTimeSeries.Builder("single", "metric").point(1, -4.5).build()],
+                       [new MetricTimeSeries.Builder("unsorted", "metric").point(5, 1).point(1, -3).point(3, 7).point(2, 0).build()],
+                       [new MetricTimeSeries.Builder("empty", "metric").build()]]
+    }
+
+    @Unroll
+    def "test fused aggregation with a summary equals single aggregations for #description"() {
+        given:
+        def summarizable = [new Min(), new Max(), new Sum(), new Count(), new Avg(), new First(), new Last(),
+                            new Range(), new Difference(), new SignedDifference()]
+        def random = new Random(4)
+        def all = new MetricTimeSeries.Builder("all", "metric")
+        def points = new MetricTimeSeries.Builder("points", "metric")
+        def chunk = new MetricTimeSeries.Builder(null, null)
+        100.times {
+            double value = random.nextInt(200) - 100
+            all.point(it, value)
+            (summarized.contains(it) ? chunk : points).point(it, value)
+        }
+        def timeSeries = new ChronixMetricTimeSeries("key", points.build(), ChunkSummary.of(chunk.build()))
+        def functionCtx = new FunctionCtx(summarizable.size(), 0, 0)
+
+        when:
+        new FusedAggregation(summarizable).execute([timeSeries], functionCtx)
+
+        then:
+        summarizable.eachWithIndex { aggregation, int i ->
+            def singleCtx = new FunctionCtx(1, 0, 0)
+            aggregation.execute([new ChronixMetricTimeSeries("key", copy(all.build()))], singleCtx)
+            assert functionCtx.getContextFor("key").getAggregationValue(i) == singleCtx.getContextFor("key").getAggregationValue(0)
+        }
+        timeSeries.start == 0
+        timeSeries.end == 99
+
+        where:
+        description << ["a summary in the middle", "a summary at the start", "a summary at the end", "only a summary"]
+        summarized << [20..79, 0..49, 50..99, 0..99]
+    }
+
+    def "test summarizable aggregations"() {
+        expect:
+        FusedAggregation.summarizable([new Min(), new Count(), new First(), new Range()])
+        !FusedAggregation.summarizable([new Min(), new StdDev()])
+        !FusedAggregation.summarizable([new Integral()])
+        !FusedAggregation.summarizable([])
+    }
+
+    def "test fused aggregation sorts the time series once"() {
+        given:
+        def timeSeries = new MetricTimeSeries.Builder("unsorted", "metric").point(5, 1).point(1, -3).point(3, 7).build()
+        def functionCtx = new FunctionCtx(3, 0, 0)
+
+        when:
+        new FusedAggregation([new First(), new Last(), new Min()]).execute([new ChronixMetricTimeSeries("key", timeSeries)], functionCtx)
+
+        then:
+        timeSeries.getTimestampsAsArray() == [1, 3, 5] as long[]
+        functionCtx.getContextFor("key").getAggregationValue(0) == -3
+        functionCtx.getContextFor("key").getAggregationValue(1) == 1
+        functionCtx.getContextFor("key").getAggregationValue(2) == -3
+    }
+
+    def "test fuse"() {
+        given:
+        def min = new Min()
+        def max = new Max()
+        def percentile = new Percentile()
+        percentile.setArguments(["0.5"] as String[])
+        def integral = new Integral()
+
+        when:
+        def result = FusedAggregation.fuse([integral, min, percentile, max])
+
+        then:
+        result == [integral, new FusedAggregation([min, percentile, max])]
+        result.every { it.isIndependentPerTimeSeries() }
+    }
+
+    def "test fuse with less than two fusable aggregations"() {
+        given:
+        def aggregations = [new Integral(), new Min()]
+
+        expect:
+        FusedAggregation.fuse(aggregations).is(aggregations)
+        FusedAggregation.fuse([]).isEmpty()
+    }
+
+    def "test getQueryName"() {
+        expect:
+        new FusedAggregation([]).getQueryName() == "fused"
+        new FusedAggregation([]).getType() == "metric"
+    }
+
+    def "test equals and hash code"() {
+        given:
+        def function = new FusedAggregation([new Min(), new Max()])
+        def sameFunction = new FusedAggregation([new Min(), new Max()])
+        def otherFunction = new FusedAggregation([new Min(), new Sum()])
+
+        expect:
+        function != null
+        function != new Object()
+        function == function
+        function == sameFunction
+        function.hashCode() == sameFunction.hashCode()
+        function != otherFunction
+    }
+
+    def "test string representation"() {
+        expect:
+        new FusedAggregation([new Min()]).toString() contains("aggregations")
+    }
+
+    static def randomTimeSeries(Random random, int size, boolean withNaN) {
+        def builder = new MetricTimeSeries.Builder("random", "metric")
+        size.times {
+            builder.point(it * 1000 + random.nextInt(1000), withNaN && it % 7 == 3 ? Double.NaN : random.nextGaussian() * 100)
+        }
+        builder.build()
+    }
+
+    static def copy(MetricTimeSeries timeSeries) {
+        new MetricTimeSeries.Builder(timeSeries.getName(), timeSeries.getType())
+                .points(timeSeries.getTimestamps(), timeSeries.getValues())
+                .build()
+    }
+}
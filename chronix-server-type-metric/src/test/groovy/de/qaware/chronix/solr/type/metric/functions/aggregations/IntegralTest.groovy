@@ -26,7 +26,7 @@ import spock.lang.Specification
  * @author f.lautenschlager
  */
 class IntegralTest extends Specification {
-    def "test get last value"() {
+    def "test integral over the timestamps"() {
 
         given:
         def timeSeries = new MetricTimeSeries.Builder("Integral","metric")
@@ -40,7 +40,54 @@ class IntegralTest extends Specification {
         new Integral().execute(new ArrayList<ChronixTimeSeries<MetricTimeSeries>>(Arrays.asList(new ChronixMetricTimeSeries("", timeSeries.build()))), analysisResult)
 
         then:
-        analysisResult.getContextFor("").getAggregationValue(0) == 36.000022888183594d
+        analysisResult.getContextFor("").getAggregationValue(0) == 40.5d
+    }
+
+    def "test integral of a parabola over irregular timestamps"() {
+        given:
+        def timeSeries = new MetricTimeSeries.Builder("Integral", "metric")
+        timestamps.each { timeSeries.point(it, it * it) }
+        def analysisResult = new FunctionCtx(1, 1, 1)
+        def integral = new Integral()
+        integral.setArguments(arguments as String[])
+
+        when:
+        integral.execute(new ArrayList<ChronixTimeSeries<MetricTimeSeries>>(Arrays.asList(new ChronixMetricTimeSeries("", timeSeries.build()))), analysisResult)
+
+        then:
+        Math.abs(analysisResult.getContextFor("").getAggregationValue(0) - expected) < 1e-9
+
+        where:
+        timestamps             | arguments     || expected
+        [0, 1, 3, 4, 7]        | []            || 343d / 3
+        [0, 1, 3, 4, 7, 8]     | []            || 512d / 3
+        [0, 3]                 | []            || 13.5d
+        [8, 0, 3, 1, 4, 7]     | []            || 512d / 3
+        [0, 1, 3, 4, 7]        | ["TRAPEZOID"] || 0.5d + 10 + 12.5 + 97.5
+    }
+
+    def "test integral with duplicate timestamps"() {
+        given:
+        def timeSeries = new MetricTimeSeries.Builder("Integral", "metric")
+                .point(0, 1).point(2, 1).point(2, 1).point(4, 1).point(6, 1)
+        def analysisResult = new FunctionCtx(1, 1, 1)
+
+        when:
+        new Integral().execute(new ArrayList<ChronixTimeSeries<MetricTimeSeries>>(Arrays.asList(new ChronixMetricTimeSeries("", timeSeries.build()))), analysisResult)
+
+        then:
+        analysisResult.getContextFor("").getAggregationValue(0) == 6d
+    }
+
+    def "test integral of a single point"() {
+        given:
+        def analysisResult = new FunctionCtx(1, 1, 1)
+
+        when:
+        new Integral().execute(new ArrayList<ChronixTimeSeries<MetricTimeSeries>>(Arrays.asList(new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Single", "metric").point(1, 5).build()))), analysisResult)
+
+        then:
+        analysisResult.getContextFor("").getAggregationValue(0) == 0d
     }
 
     def "test for empty time series"() {
@@ -57,6 +104,10 @@ class IntegralTest extends Specification {
     def "test arguments"() {
         expect:
         new Integral().getArguments().length == 0
+
+        def trapezoid = new Integral()
+        trapezoid.setArguments(["TRAPEZOID"] as String[])
+        trapezoid.getArguments() == ["rule=trapezoid"] as String[]
     }
 
     def "test type"() {
@@ -72,5 +123,9 @@ class IntegralTest extends Specification {
         last.equals(last)
         last.equals(new Integral())
         new Integral().hashCode() == new Integral().hashCode()
+
+        def trapezoid = new Integral()
+        trapezoid.setArguments(["TRAPEZOID"] as String[])
+        !trapezoid.equals(new Integral())
     }
 }
@@ -45,6 +45,34 @@ class PercentileTest extends Specification {
         analysisResult.getContextFor("").getAggregationValue(0) == 50.0d
     }
 
+    def "test execute approximated"() {
+        given:
+        def random = new Random(7)
+        MetricTimeSeries.Builder timeSeries = new MetricTimeSeries.Builder("P", "metric")
+        100000.times {
+            timeSeries.point(it, random.nextGaussian())
+        }
+        MetricTimeSeries ts = timeSeries.build()
+        def analysisResult = new FunctionCtx(2, 1, 1)
+
+        def exact = new Percentile()
+        exact.setArguments(["0.99"] as String[])
+        def approximated = new Percentile()
+        approximated.setArguments(["0.99", "APPROX"] as String[])
+
+        when:
+        exact.execute([new ChronixMetricTimeSeries("", ts)], analysisResult)
+        approximated.execute([new ChronixMetricTimeSeries("", ts)], analysisResult)
+
+        then:
+        def exactValue = analysisResult.getContextFor("").getAggregationValue(0)
+        def approximatedValue = analysisResult.getContextFor("").getAggregationValue(1)
+        //the approximation has a rank error below 0.1%
+        def rank = ts.getValuesAsArray().findAll { it <= approximatedValue }.size() / ts.size()
+        Math.abs(rank - 0.99) < 0.001
+        Math.abs(exactValue - approximatedValue) < 0.05
+    }
+
     def "test for empty time series"() {
         given:
         def analysisResult = new FunctionCtx(1, 1, 1)
@@ -65,6 +93,14 @@ class PercentileTest extends Specification {
         percentile.getArguments().size() == 1
     }
 
+    def "test approximated arguments"() {
+        expect:
+        Percentile percentile = new Percentile()
+        percentile.setArguments(["0.5", "APPROX"] as String[])
+        percentile.getArguments() == ["percentile=0.5", "approximate=true"] as String[]
+        percentile != new Percentile().with { setArguments(["0.5"] as String[]); it }
+    }
+
     def "test type"() {
         expect:
         Percentile percentile = new Percentile()
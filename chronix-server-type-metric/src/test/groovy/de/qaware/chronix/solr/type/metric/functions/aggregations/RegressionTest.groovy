@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.aggregations
+
+import de.qaware.chronix.server.functions.FunctionCtx
+import de.qaware.chronix.server.types.ChronixTimeSeries
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Regression aggregations unit test
+ * @author f.lautenschlager
+ */
+class RegressionTest extends Specification {
+
+    @Unroll
+    def "test #statistic aggregation"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("Regression", "metric")
+                .point(5, 2.25).point(1, 1).point(3, 1.3).point(2, 2).point(4, 3.75)
+                .build()
+        def analysisResult = new FunctionCtx(1, 1, 1)
+
+        when:
+        new Regression(statistic).execute(new ArrayList<ChronixTimeSeries<MetricTimeSeries>>(Arrays.asList(new ChronixMetricTimeSeries("", ts))), analysisResult)
+
+        then:
+        Math.abs(analysisResult.getContextFor("").getAggregationValue(0) - expected) < 1e-6
+
+        where:
+        statistic                       || expected
+        Regression.Statistic.SLOPE      || 0.425d
+        Regression.Statistic.INTERCEPT  || 0.785d + 0.425d
+        Regression.Statistic.RSQUARED   || 0.3929193d
+    }
+
+    def "test intercept at the first epoch timestamp"() {
+        given:
+        def start = 1_500_000_000_000L
+        def ts = new MetricTimeSeries.Builder("Regression", "metric")
+                .point(start + 2000, 7).point(start, 3).point(start + 1000, 5)
+                .build()
+        def analysisResult = new FunctionCtx(1, 1, 1)
+
+        when:
+        new Regression(Regression.Statistic.INTERCEPT).execute(new ArrayList<ChronixTimeSeries<MetricTimeSeries>>(Arrays.asList(new ChronixMetricTimeSeries("", ts))), analysisResult)
+
+        then:
+        Math.abs(analysisResult.getContextFor("").getAggregationValue(0) - 3d) < 1e-9
+    }
+
+    @Unroll
+    def "test #statistic for empty time series"() {
+        given:
+        def analysisResult = new FunctionCtx(1, 1, 1)
+        when:
+        new Regression(statistic).execute(new ArrayList<ChronixTimeSeries<MetricTimeSeries>>(Arrays.asList(new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Empty", "metric").build()))), analysisResult)
+        then:
+        analysisResult.getContextFor("").getAggregationValue(0) == Double.NaN
+
+        where:
+        statistic << Regression.Statistic.values()
+    }
+
+    @Unroll
+    def "test arguments and type of #statistic"() {
+        expect:
+        new Regression(statistic).getArguments().length == 0
+        new Regression(statistic).getQueryName() == queryName
+        new Regression(statistic).getType() == "metric"
+
+        where:
+        statistic                       || queryName
+        Regression.Statistic.SLOPE      || "slope"
+        Regression.Statistic.INTERCEPT  || "intercept"
+        Regression.Statistic.RSQUARED   || "rsquared"
+    }
+
+    def "test equals and hash code"() {
+        expect:
+        def function = new Regression(Regression.Statistic.SLOPE)
+        !function.equals(null)
+        !function.equals(new Object())
+        function.equals(function)
+        function == new Regression(Regression.Statistic.SLOPE)
+        function != new Regression(Regression.Statistic.INTERCEPT)
+        function.hashCode() == new Regression(Regression.Statistic.SLOPE).hashCode()
+    }
+}
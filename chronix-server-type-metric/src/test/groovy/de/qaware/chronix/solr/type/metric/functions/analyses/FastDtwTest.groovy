@@ -19,8 +19,10 @@ import de.qaware.chronix.server.functions.FunctionCtx
 import de.qaware.chronix.server.types.ChronixTimeSeries
 import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
 import de.qaware.chronix.timeseries.MetricTimeSeries
-import org.apache.solr.common.util.Pair
-import spock.lang.Ignore
+import de.qaware.chronix.distance.DistanceFunctionEnum
+import de.qaware.chronix.distance.DistanceFunctionFactory
+import de.qaware.chronix.dtw.FastDTW
+import de.qaware.chronix.timeseries.MultivariateTimeSeries
 import spock.lang.Specification
 
 /**
@@ -64,27 +66,30 @@ class FastDtwTest extends Specification {
         entry.getAnalysisValue(0)
     }
 
-    @Ignore
     def "test time series with equal timestamps"() {
+        given:
         MetricTimeSeries.Builder timeSeries = new MetricTimeSeries.Builder("FastDTW-1", "metric")
         timeSeries.point(0, 2)
         3.times {
             timeSeries.point(1, it)
         }
         timeSeries.point(2, 2)
+        timeSeries.attribute("host", "production-01")
+
+        MetricTimeSeries.Builder other = new MetricTimeSeries.Builder("FastDTW-2", "metric")
+                .point(0, 2).point(1, 1).point(2, 2)
+                .attribute("host", "production-02")
 
-        def ts1 = timeSeries.build()
-        def analysisResult = new FunctionCtx(1, 1, 1)
+        def analysisResult = new FunctionCtx(0, 1, 0)
+        def fastDtw = fastDtw("compare(host=production-01)", "5", "0")
 
         when:
-        new FastDtw(["", "5", "20"] as String[]).execute(new Pair(ts1, ts1), analysisResult)
+        fastDtw.execute(chronixTimeSeries(timeSeries.build(), other.build()), analysisResult)
 
         then:
-        analysisResult.getAnalysisValue(0)
-
+        analysisResult.getContextFor("join-0").getAnalysisValue(0)
     }
 
-    @Ignore
     def "test execute for -1 as result"() {
         given:
         MetricTimeSeries.Builder timeSeries = new MetricTimeSeries.Builder("FastDTW-1", "metric")
@@ -93,30 +98,70 @@ class FastDtwTest extends Specification {
             timeSeries.point(it, it * 10)
             secondTimeSeries.point(it, it * -10)
         }
-        def ts1 = timeSeries.build()
-        def ts2 = secondTimeSeries.build()
-        def analysisResult = new FunctionCtx(1, 1, 1)
+        timeSeries.attribute("host", "production-01")
+        secondTimeSeries.attribute("host", "production-02")
+        def analysisResult = new FunctionCtx(0, 1, 0)
+
+        when:
+        fastDtw("compare(host=production-01)", "5", "0").execute(chronixTimeSeries(timeSeries.build(), secondTimeSeries.build()), analysisResult)
+        then:
+        !analysisResult.getContextFor("join-0").getAnalysisValue(0)
+    }
+
+    def "test lower bounds do not change the result"() {
+        given:
+        def random = new Random(42)
+        def series = []
+        //three left side and nine right side time series with different shapes and offsets
+        12.times { ts ->
+            def builder = new MetricTimeSeries.Builder("FastDTW-" + ts, "metric")
+                    .attribute("host", ts < 3 ? "left" : "right-" + ts)
+            def offset = random.nextInt(3) * 5
+            def size = 20 + random.nextInt(20)
+            size.times {
+                builder.point(it * 1000, offset + Math.sin(it / 3d) + random.nextGaussian() * 0.1)
+            }
+            series << builder.build()
+        }
+        def analysisResult = new FunctionCtx(0, 9, 0)
+        def fastDtw = fastDtw("compare(host=left)", "2", "0.5")
 
         when:
-        new FastDtw(["", "5", "0"] as String[]).execute(new Pair(ts1, ts2), analysisResult)
+        fastDtw.execute(chronixTimeSeries(series as MetricTimeSeries[]), analysisResult)
+
         then:
-        !analysisResult.getAnalysisValue(0)
+        3.times { left ->
+            def context = analysisResult.getContextFor("join-" + left)
+            assert context.sizeOfAnalyses() == 9
+            9.times { right ->
+                def expected = FastDTW.getWarpInfoBetween(multivariate(series[left]), multivariate(series[right + 3]), 2,
+                        DistanceFunctionFactory.getDistanceFunction(DistanceFunctionEnum.EUCLIDEAN)).getNormalizedDistance() <= 0.5d
+                assert context.getAnalysisValue(right) == expected
+            }
+        }
+        //the offsets make some pairs similar and others not
+        def results = (0..<3).collectMany { left -> (0..<9).collect { analysisResult.getContextFor("join-" + left).getAnalysisValue(it) } }
+        results.contains(true)
+        results.contains(false)
     }
 
+    def "test need subquery"() {
+        expect:
+        !new FastDtw().needSubquery()
+        new FastDtw().getSubquery() == null
+    }
 
-    @Ignore
     def "test arguments"() {
         expect:
-        new FastDtw().getArguments().length == 0
+        fastDtw("compare(host=production-01)", "5", "20").getArguments() ==
+                ["search radius=5", "max warping cost=20.0", "distance function=EUCLIDEAN"] as String[]
     }
 
-    @Ignore
     def "test type"() {
         expect:
-        new FastDtw(["(query)", "5", "20"] as String[]).getQueryName() == "fastdtw"
+        fastDtw("compare(host=production-01)", "5", "20").getQueryName() == "fastdtw"
     }
 
-    @Ignore
     def "test equals and hash code"() {
         when:
         def equals = dtw1.equals(dtw2)
@@ -128,22 +173,41 @@ class FastDtwTest extends Specification {
         !dtw1.equals(new Object())
         !dtw1.equals(null)
         equals == result
-        dtw1Hash == dtw2Hash == result
+        (dtw1Hash == dtw2Hash) == result
 
         where:
-        dtw1 << [new FastDtw(["", "5", "20"] as String[]), new FastDtw(["metric:a", "5", "20"] as String[]), new FastDtw(["metric:a", "5", "20"] as String[]), new FastDtw(["metric:a", "5", "20"] as String[])]
-        dtw2 << [new FastDtw(["", "5", "20"] as String[]), new FastDtw(["metric:b", "5", "20"] as String[]), new FastDtw(["metric:a", "6", "20"] as String[]), new FastDtw(["metric:a", "5", "21"] as String[])]
+        dtw1 << [fastDtw("compare(host=a)", "5", "20"), fastDtw("compare(host=a)", "5", "20"), fastDtw("compare(host=a)", "5", "20"), fastDtw("compare(host=a)", "5", "20")]
+        dtw2 << [fastDtw("compare(host=a)", "5", "20"), fastDtw("compare(host=b)", "5", "20"), fastDtw("compare(host=a)", "6", "20"), fastDtw("compare(host=a)", "5", "21")]
 
         result << [true, false, false, false]
     }
 
-    @Ignore
     def "test to string"() {
         when:
-        def stringRepresentation = new FastDtw(["metric:a", "5", "20"] as String[]).toString()
+        def stringRepresentation = fastDtw("compare(host=a)", "5", "20").toString()
         then:
-        stringRepresentation.contains("metric:a")
+        stringRepresentation.contains("host=a")
         stringRepresentation.contains("5")
         stringRepresentation.contains("20")
     }
+
+    def fastDtw(String... args) {
+        def fastDtw = new FastDtw()
+        fastDtw.setArguments(args)
+        fastDtw
+    }
+
+    def chronixTimeSeries(MetricTimeSeries... series) {
+        def counter = 0
+        def result = new ArrayList<ChronixTimeSeries<MetricTimeSeries>>()
+        series.each { result.add(new ChronixMetricTimeSeries("join-" + counter++, it)) }
+        result
+    }
+
+    def multivariate(MetricTimeSeries series) {
+        def multivariate = new MultivariateTimeSeries(1)
+        series.sort()
+        series.size().times { multivariate.add(series.getTime(it), [series.getValue(it)] as double[]) }
+        multivariate
+    }
 }
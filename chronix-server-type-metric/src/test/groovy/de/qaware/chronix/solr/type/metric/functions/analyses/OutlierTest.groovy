@@ -43,6 +43,27 @@ class OutlierTest extends Specification {
         analysisResult.getContextFor("").getAnalysisValue(0)
     }
 
+    def "test execute on several time series"() {
+        given:
+        def withOutlier = new MetricTimeSeries.Builder("Out", "metric")
+        def withoutOutlier = new MetricTimeSeries.Builder("Out", "metric")
+        10.times {
+            withOutlier.point(it, it * 10)
+            withoutOutlier.point(it, 4711)
+        }
+        withOutlier.point(11, 9999)
+        def analysisResult = new FunctionCtx(1, 1, 1)
+
+        when:
+        new Outlier().execute([new ChronixMetricTimeSeries("empty", new MetricTimeSeries.Builder("Out", "metric").build()),
+                               new ChronixMetricTimeSeries("without", withoutOutlier.build()),
+                               new ChronixMetricTimeSeries("with", withOutlier.build())], analysisResult)
+        then:
+        !analysisResult.getContextFor("empty").getAnalysisValue(0)
+        !analysisResult.getContextFor("without").getAnalysisValue(0)
+        analysisResult.getContextFor("with").getAnalysisValue(0)
+    }
+
     def "test execute with a time series that has no outlier"() {
         given:
         MetricTimeSeries.Builder timeSeries = new MetricTimeSeries.Builder("Out","metric")
@@ -42,6 +42,19 @@ class TrendTest extends Specification {
         analysisResult.getContextFor("").getAnalysisValue(0)
     }
 
+    def "test execute on unsorted time series"() {
+        given:
+        def ts = new MetricTimeSeries.Builder("Trend", "metric")
+                .point(5, 1).point(1, 5).point(3, 3).point(4, 2).point(2, 4)
+                .build()
+        def analysisResult = new FunctionCtx(1, 1, 1)
+
+        when:
+        new Trend().execute(new ArrayList<ChronixTimeSeries<MetricTimeSeries>>(Arrays.asList(new ChronixMetricTimeSeries("", ts))), analysisResult)
+        then:
+        !analysisResult.getContextFor("").getAnalysisValue(0)
+    }
+
     def "test need subquery"() {
         expect:
         !new Trend().needSubquery()
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.math
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the primitive double hash set
+ * @author f.lautenschlager
+ */
+class DoubleHashSetTest extends Specification {
+
+    //a literal -0.0d is the positive zero in groovy
+    static final double NEGATIVE_ZERO = Double.longBitsToDouble(Long.MIN_VALUE)
+
+    def "test add and contains"() {
+        given:
+        def set = new DoubleHashSet()
+
+        when:
+        def added = values.collect { set.add(it) }
+
+        then:
+        added == expectedAdded
+        set.size() == expectedAdded.count { it }
+        values.every { set.contains(it) }
+        !set.contains(4711)
+
+        where:
+        values << [[1d, 2d, 1d, 3d, 2d],
+                   [Double.NaN, Double.longBitsToDouble(0x7ff8000000000001L), Double.NaN],
+                   [0.0d, NEGATIVE_ZERO, 0.0d, NEGATIVE_ZERO],
+                   [Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.MAX_VALUE, Double.MIN_VALUE, Double.POSITIVE_INFINITY]]
+        expectedAdded << [[true, true, false, true, false],
+                          [true, false, false],
+                          [true, true, false, false],
+                          [true, true, true, true, false]]
+    }
+
+    def "test grow"() {
+        given:
+        def set = new DoubleHashSet(2)
+        def random = new Random(42)
+        def values = (0..<100000).collect { random.nextDouble() * 1000 }
+
+        when:
+        values.each { set.add(it) }
+
+        then:
+        set.size() == (values as Set).size()
+        values.every { set.contains(it) }
+        !set.contains(-1d)
+        !set.contains(0.0d)
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.math
+
+import spock.lang.Specification
+
+/**
+ * Unit test for the downsampling algorithms
+ * @author f.lautenschlager
+ */
+class DownsamplingTest extends Specification {
+
+    def "test m4 keeps first, min, max and last of every bucket"() {
+        given:
+        def times = [0, 1, 2, 3, 4, 5, 6, 7, 8, 9] as long[]
+        def values = [5, 9, 1, 4, 3, 3, 8, 0, 2, 6] as double[]
+
+        when:
+        def selected = Downsampling.m4(times, values, 8)
+
+        then:
+        //buckets [0,5) and [5,10)
+        selected == [0, 1, 2, 4, 5, 6, 7, 9] as int[]
+    }
+
+    def "test m4 selects each point once"() {
+        given:
+        def times = [0, 1, 2, 3, 4, 5, 100, 101] as long[]
+        def values = [0, 1, 2, 3, 4, 5, 6, 7] as double[]
+
+        when:
+        def selected = Downsampling.m4(times, values, 4)
+
+        then:
+        //a single bucket where the first point is the minimum and the last point is the maximum
+        selected == [0, 7] as int[]
+    }
+
+    def "test lttb keeps the first and the last point and the peaks"() {
+        given:
+        def times = [0, 1, 2, 3, 4, 5, 6, 7, 8, 9] as long[]
+        def values = [0, 0, 10, 0, 0, 0, 0, -10, 0, 0] as double[]
+
+        when:
+        def selected = Downsampling.lttb(times, values, 4)
+
+        then:
+        selected == [0, 2, 7, 9] as int[]
+    }
+
+    def "test lttb uses relative timestamps"() {
+        given:
+        def start = 1_500_000_000_000L
+        def times = (0..<9).collect { start + it * 1000L } as long[]
+        def values = [0, 1, 0, 0, 5, 0, 0, 1, 0] as double[]
+
+        when:
+        def selected = Downsampling.lttb(times, values, 3)
+
+        then:
+        selected == [0, 4, 8] as int[]
+    }
+
+    def "test small inputs are not downsampled"() {
+        given:
+        def times = [0, 1, 2] as long[]
+        def values = [0, 1, 2] as double[]
+
+        expect:
+        Downsampling.m4(times, values, 4) == [0, 1, 2] as int[]
+        Downsampling.lttb(times, values, 3) == [0, 1, 2] as int[]
+    }
+
+    def "test private constructor"() {
+        when:
+        Downsampling.newInstance()
+
+        then:
+        noExceptionThrown()
+    }
+}
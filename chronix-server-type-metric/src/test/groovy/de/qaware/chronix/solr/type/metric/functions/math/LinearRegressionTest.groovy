@@ -39,4 +39,66 @@ class LinearRegressionTest extends Specification {
         then:
         slope == 2d
     }
+
+    def "test intercept and r squared"() {
+        given:
+        def regression = new LinearRegression()
+        [[1L, 1d], [2L, 2d], [3L, 1.3d], [4L, 3.75d], [5L, 2.25d]].each { regression.add(it[0] as long, it[1] as double) }
+
+        expect:
+        regression.count() == 5
+        Math.abs(regression.slope() - 0.425d) < 1e-12
+        Math.abs(regression.intercept() - 0.785d) < 1e-12
+        Math.abs(regression.rSquared() - 0.3929193d) < 1e-6
+    }
+
+    def "test regression over epoch timestamps in any order and in chunks"() {
+        given:
+        def random = new Random(7)
+        def start = 1_500_000_000_000L
+        def times = new LongList()
+        def values = new DoubleList()
+        10_000.times {
+            times.add(start + it * 1000L)
+            values.add(3.5d + 0.002d * it * 1000 + random.nextGaussian())
+        }
+        def shuffled = (0..<times.size()).toList()
+        Collections.shuffle(shuffled, random)
+
+        def chunked = new LinearRegression()
+        shuffled.collate(1000).each { chunk ->
+            chunked.addAll(new LongList(chunk.collect { times.get(it) } as long[], chunk.size()),
+                    new DoubleList(chunk.collect { values.get(it) } as double[], chunk.size()))
+        }
+        def regression = new LinearRegression(times, values)
+
+        expect:
+        Math.abs(regression.slope() - 0.002d) < 1e-5
+        Math.abs((regression.intercept() + regression.slope() * start) - 3.5d) < 0.1
+        regression.start() == start
+        Math.abs(regression.valueAt(start) - 3.5d) < 0.1
+        Math.abs(chunked.valueAt(start) - regression.valueAt(start)) < 1e-9
+        regression.rSquared() > 0.99
+        Math.abs(chunked.slope() - regression.slope()) < 1e-12
+        Math.abs(chunked.rSquared() - regression.rSquared()) < 1e-12
+    }
+
+    def "test degenerated regressions"() {
+        given:
+        def regression = new LinearRegression()
+        points.each { regression.add(it[0] as long, it[1] as double) }
+
+        expect:
+        Double.isNaN(regression.slope()) == nan
+        Double.isNaN(regression.intercept()) == nan
+        Double.isNaN(regression.valueAt(1)) == nan
+        regression.rSquared() == rSquared
+
+        where:
+        points                     || nan   | rSquared
+        []                         || true  | Double.NaN
+        [[1L, 2d]]                 || true  | Double.NaN
+        [[1L, 2d], [1L, 3d]]       || true  | Double.NaN
+        [[1L, 2d], [5L, 2d]]       || false | 1d
+    }
 }
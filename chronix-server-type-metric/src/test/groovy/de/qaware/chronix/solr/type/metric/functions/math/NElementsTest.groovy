@@ -16,6 +16,7 @@
 package de.qaware.chronix.solr.type.metric.functions.math
 
 import spock.lang.Specification
+import spock.lang.Unroll
 
 /**
  * Unit test for the value top / bottom elements helper
@@ -50,6 +51,47 @@ class NElementsTest extends Specification {
         result.NValues[2] == 19d
     }
 
+    @Unroll
+    def "test #type #n of #size values equals the sorted selection"() {
+        given:
+        def random = new Random(size)
+        def times = (0..<size).collect { it * 10L } as long[]
+        //few distinct values to have many equal values
+        def values = (0..<size).collect { random.nextInt(50) - 25 as double } as double[]
+
+        when:
+        def result = NElements.calc(type, n, times, values)
+
+        then:
+        //stable sort of the indices by value
+        def sorted = (0..<size).sort(false) { a, b -> values[a] <=> values[b] }
+        def expected = type == NElements.NElementsCalculation.TOP ? sorted.reverse().take(n) : sorted.take(n)
+        result.NTimes == expected.collect { times[it] } as long[]
+        result.NValues == expected.collect { values[it] } as double[]
+
+        where:
+        type                                  | n   | size
+        NElements.NElementsCalculation.TOP    | 10  | 1000
+        NElements.NElementsCalculation.BOTTOM | 10  | 1000
+        NElements.NElementsCalculation.TOP    | 1   | 100
+        NElements.NElementsCalculation.BOTTOM | 100 | 100
+        NElements.NElementsCalculation.TOP    | 0   | 100
+    }
+
+    def "test calc with more elements than values"() {
+        given:
+        def times = [1, 2, 3] as long[]
+        def values = [3, Double.NaN, 1] as double[]
+
+        when:
+        def top = NElements.calc(NElements.NElementsCalculation.TOP, 5, times, values)
+        def bottom = NElements.calc(NElements.NElementsCalculation.BOTTOM, 5, times, values)
+
+        then:
+        top.NTimes == [2, 1, 3] as long[]
+        bottom.NTimes == [3, 1, 2] as long[]
+    }
+
     def "test equals and hashCode of internal points"() {
         given:
         NElements.Pair pair = new NElements.Pair(0, 1)
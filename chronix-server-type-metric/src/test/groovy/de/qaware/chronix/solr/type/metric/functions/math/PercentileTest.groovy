@@ -17,6 +17,7 @@ package de.qaware.chronix.solr.type.metric.functions.math
 
 import de.qaware.chronix.converter.common.DoubleList
 import spock.lang.Specification
+import spock.lang.Unroll
 
 /**
  * Unit test for the percentile class
@@ -24,6 +25,9 @@ import spock.lang.Specification
  */
 class PercentileTest extends Specification {
 
+    //a literal -0.0d is the positive zero in groovy
+    static final double NEGATIVE_ZERO = Double.longBitsToDouble(Long.MIN_VALUE)
+
     def "test private constructor"() {
         when:
         Percentile.newInstance()
@@ -47,6 +51,56 @@ class PercentileTest extends Specification {
         expected << [10.5, 10]
     }
 
+    @Unroll
+    def "test selection equals the evaluation on sorted values for #description"() {
+        given:
+        def percentiles = [0, 0.01, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999, 1] as double[]
+        def sorted = values.clone() as double[]
+        Arrays.sort(sorted)
+
+        when:
+        def result = Percentile.evaluate(values.clone() as double[], percentiles)
+
+        then:
+        percentiles.eachWithIndex { double p, int i ->
+            assert Double.doubleToLongBits(result[i]) == Double.doubleToLongBits(sortedPercentile(sorted, p))
+        }
+
+        where:
+        description << ["random values", "duplicates", "NaN and signed zeros", "a single value", "sorted values", "reversed values"]
+        values << [randomValues(new Random(1), 10001),
+                   (0..<5000).collect { (it % 3) as double } as double[],
+                   [0.0d, NEGATIVE_ZERO, Double.NaN, 1, -1, NEGATIVE_ZERO, Double.NaN, 0.0d, 2, -2] as double[],
+                   [4711] as double[],
+                   (0..<1000).collect { it as double } as double[],
+                   (0..<1000).collect { 1000 - it as double } as double[]]
+    }
+
+    def "test evaluate several percentiles"() {
+        when:
+        def result = Percentile.evaluate([6, 5, 4, 3, 3, 3, 2, 2, 1] as double[], 0.25, 0.75, 0.25)
+
+        then:
+        result == [2, 4, 2] as double[]
+    }
+
+    /**
+     * The quantile type 7 on fully sorted values
+     */
+    static double sortedPercentile(double[] sorted, double percentile) {
+        double index = ((sorted.length - 1) * percentile) + 1
+        int floor = (int) Math.floor(index - 1)
+        double weight = index - Math.floor(index)
+        if (weight > 0) {
+            return sorted[floor] + weight * (sorted[floor + 1] - sorted[floor])
+        }
+        return sorted[floor]
+    }
+
+    static double[] randomValues(Random random, int size) {
+        (0..<size).collect { random.nextGaussian() * 100 } as double[]
+    }
+
     def onePoint() {
         def values = new DoubleList()
         values.add(10)
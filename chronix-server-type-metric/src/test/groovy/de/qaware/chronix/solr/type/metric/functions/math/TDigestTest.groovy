@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.math
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit test for the t-digest
+ * @author f.lautenschlager
+ */
+class TDigestTest extends Specification {
+
+    @Unroll
+    def "test quantile #percentile of #size values"() {
+        given:
+        def random = new Random(size)
+        def values = (0..<size).collect { random.nextGaussian() * 100 + 50 } as double[]
+        def digest = TDigest.of(values)
+
+        when:
+        def approximated = digest.quantile(percentile)
+
+        then:
+        digest.size() == size
+        //the rank error of the approximation
+        def rank = values.findAll { it <= approximated }.size() / size
+        Math.abs(rank - percentile) < maxRankError
+
+        where:
+        percentile | size   | maxRankError
+        0.5        | 100000 | 0.005
+        0.99       | 100000 | 0.001
+        0.999      | 100000 | 0.0005
+        0.01       | 100000 | 0.001
+        0.5        | 100    | 0.02
+    }
+
+    def "test bounds"() {
+        given:
+        def digest = TDigest.of([3, 1, 2, Double.NaN, 5, 4] as double[])
+
+        expect:
+        digest.size() == 5
+        digest.quantile(0) == 1
+        digest.quantile(1) == 5
+        digest.quantile(0.5) >= 2
+        digest.quantile(0.5) <= 4
+    }
+
+    def "test empty and single value"() {
+        expect:
+        Double.isNaN(new TDigest().quantile(0.5))
+        TDigest.of([4711] as double[]).quantile(0.5) == 4711
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation
+
+import de.qaware.chronix.server.functions.FunctionCtx
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
+import de.qaware.chronix.solr.type.metric.Rollup
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit test for the bucket transformation
+ * @author f.lautenschlager
+ */
+class BucketTest extends Specification {
+
+    @Unroll
+    def "test transform with #aggregation"() {
+        given:
+        def timeSeries = new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Bucket", "metric")
+                .point(2500, 7)
+                .point(1000, 4)
+                .point(1500, 2)
+                .point(1999, 6)
+                .point(7000, 1)
+                .build())
+        def analysisResult = new FunctionCtx(1, 1, 1)
+
+        def bucket = new Bucket()
+        bucket.setArguments(["1", "SECONDS", aggregation] as String[])
+
+        when:
+        bucket.execute(timeSeries as List, analysisResult)
+
+        then:
+        timeSeries.getRawTimeSeries().getTimestampsAsArray() == [1000, 2000, 7000] as long[]
+        timeSeries.getRawTimeSeries().getValuesAsArray() == expected as double[]
+        analysisResult.getContextFor("").getTransformation(0) == bucket
+
+        where:
+        aggregation << ["MIN", "MAX", "AVG", "SUM", "COUNT", "FIRST", "LAST", "avg"]
+        expected << [[2, 7, 1], [6, 7, 1], [4, 7, 1], [12, 7, 1], [3, 1, 1], [4, 7, 1], [6, 7, 1], [4, 7, 1]]
+    }
+
+    def "test transform aligns negative timestamps to the bucket start"() {
+        given:
+        def timeSeries = new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Bucket", "metric")
+                .point(-1, 1)
+                .point(0, 2)
+                .point(59999, 3)
+                .build())
+        def bucket = new Bucket()
+        bucket.setArguments(["1", "MINUTES", "SUM"] as String[])
+
+        when:
+        bucket.execute([timeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        timeSeries.getRawTimeSeries().getTimestampsAsArray() == [-60000, 0] as long[]
+        timeSeries.getRawTimeSeries().getValuesAsArray() == [1, 5] as double[]
+    }
+
+    def "test transform an empty time series"() {
+        given:
+        def timeSeries = new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Bucket", "metric").build())
+        def analysisResult = new FunctionCtx(1, 1, 1)
+        def bucket = new Bucket()
+        bucket.setArguments(["5", "MINUTES", "AVG"] as String[])
+
+        when:
+        bucket.execute([timeSeries], analysisResult)
+
+        then:
+        timeSeries.getRawTimeSeries().isEmpty()
+        analysisResult.getContextFor("").getTransformation(0) == bucket
+    }
+
+    def "test invalid arguments"() {
+        when:
+        new Bucket().setArguments(arguments as String[])
+
+        then:
+        thrown IllegalArgumentException
+
+        where:
+        arguments << [["0", "MINUTES", "AVG"], ["5", "MINUTES", "MEDIAN"]]
+    }
+
+    def "test getType"() {
+        when:
+        def bucket = new Bucket()
+        bucket.setArguments(["5", "MINUTES", "AVG"] as String[])
+
+        then:
+        bucket.getQueryName() == "bucket"
+        bucket.getType() == "metric"
+        bucket.isIndependentPerTimeSeries()
+    }
+
+    def "test getArguments"() {
+        when:
+        def bucket = new Bucket()
+        bucket.setArguments(["5", "minutes", "max"] as String[])
+
+        then:
+        bucket.getArguments() == ["timeSpan=5", "unit=MINUTES", "aggregation=MAX"] as String[]
+    }
+
+    @Unroll
+    def "test transform adds the buckets of the rollup with #aggregation"() {
+        given:
+        def rollup = new Rollup.Builder(500).add(1000, 3).add(1499, 5).add(1500, 1).add(2000, 9).build()
+        def timeSeries = new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Bucket", "metric")
+                .point(3500, 2)
+                .point(500, 4)
+                .point(3000, 6)
+                .build(), null, rollup)
+
+        def bucket = new Bucket()
+        bucket.setArguments(["1", "SECONDS", aggregation] as String[])
+
+        when:
+        bucket.execute([timeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        timeSeries.rollup == null
+        timeSeries.getRawTimeSeries().getTimestampsAsArray() == [0, 1000, 2000, 3000] as long[]
+        timeSeries.getRawTimeSeries().getValuesAsArray() == expected as double[]
+
+        where:
+        aggregation << ["MIN", "MAX", "AVG", "SUM", "COUNT"]
+        expected << [[4, 1, 9, 2], [4, 5, 9, 6], [4, 3, 9, 4], [4, 9, 9, 8], [1, 3, 1, 2]]
+    }
+
+    def "test transform with a rollup of an unsupported aggregation"() {
+        given:
+        def rollup = new Rollup.Builder(500).add(1000, 3).build()
+        def timeSeries = new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Bucket", "metric").build(), null, rollup)
+        def bucket = new Bucket()
+        bucket.setArguments(["1", "SECONDS", "FIRST"] as String[])
+
+        when:
+        bucket.execute([timeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        thrown IllegalStateException
+        !bucket.isRollupAggregation()
+    }
+
+    def "test toString"() {
+        expect:
+        def bucket = new Bucket()
+        bucket.setArguments(["5", "MINUTES", "AVG"] as String[])
+        def stringRepresentation = bucket.toString()
+        stringRepresentation.contains("timeSpan")
+        stringRepresentation.contains("unit")
+        stringRepresentation.contains("aggregation")
+    }
+
+    def "test equals and hash code"() {
+        expect:
+        def function = new Bucket()
+        def avg5 = new Bucket()
+        def sum5 = new Bucket()
+        def avg5sec = new Bucket()
+        function.setArguments(["5", "MINUTES", "AVG"] as String[])
+        avg5.setArguments(["5", "MINUTES", "AVG"] as String[])
+        sum5.setArguments(["5", "MINUTES", "SUM"] as String[])
+        avg5sec.setArguments(["5", "SECONDS", "AVG"] as String[])
+        !function.equals(null)
+        !function.equals(new Object())
+        function.equals(function)
+        function.equals(avg5)
+        !function.equals(sum5)
+        function.hashCode() == avg5.hashCode()
+        function.hashCode() != sum5.hashCode()
+        function.hashCode() != avg5sec.hashCode()
+    }
+}
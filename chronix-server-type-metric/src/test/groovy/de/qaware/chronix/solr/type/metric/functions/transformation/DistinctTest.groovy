@@ -25,6 +25,9 @@ import spock.lang.Specification
  * @author f.lautenschlager
  */
 class DistinctTest extends Specification {
+
+    //a literal -0.0d is the positive zero in groovy
+    static final double NEGATIVE_ZERO = Double.longBitsToDouble(Long.MIN_VALUE)
     def "test transform"() {
         given:
         def timeSeriesBuilder = new MetricTimeSeries.Builder("Distinct","metric")
@@ -55,6 +58,46 @@ class DistinctTest extends Specification {
         analysisResult.getContextFor("").getTransformation(0) == distinct
     }
 
+    def "test transform keeps the first occurrence of NaN and signed zeros"() {
+        given:
+        def timeSeriesBuilder = new MetricTimeSeries.Builder("Distinct", "metric")
+                .point(7, 1)
+                .point(1, Double.NaN)
+                .point(2, 0.0d)
+                .point(3, NEGATIVE_ZERO)
+                .point(4, Double.NaN)
+                .point(5, 0.0d)
+                .point(6, NEGATIVE_ZERO)
+        def timeSeries = new ChronixMetricTimeSeries("", timeSeriesBuilder.build())
+
+        when:
+        new Distinct().execute([timeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        timeSeries.getRawTimeSeries().getTimestampsAsArray() == [1, 2, 3, 7] as long[]
+        def values = timeSeries.getRawTimeSeries().getValuesAsArray()
+        Double.isNaN(values[0])
+        Double.doubleToLongBits(values[1]) == Double.doubleToLongBits(0.0d)
+        Double.doubleToLongBits(values[2]) == Double.doubleToLongBits(NEGATIVE_ZERO)
+        values[3] == 1d
+    }
+
+    def "test transform many distinct values"() {
+        given:
+        def timeSeriesBuilder = new MetricTimeSeries.Builder("Distinct", "metric")
+        500000.times {
+            timeSeriesBuilder.point(it, it % 250000)
+        }
+        def timeSeries = new ChronixMetricTimeSeries("", timeSeriesBuilder.build())
+
+        when:
+        new Distinct().execute([timeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        timeSeries.getRawTimeSeries().size() == 250000
+        timeSeries.getRawTimeSeries().getTime(249999) == 249999
+    }
+
     def "test getType"() {
         expect:
         new Distinct().getQueryName() == "distinct"
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation
+
+import de.qaware.chronix.server.functions.FunctionCtx
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit test for the downsample transformation
+ * @author f.lautenschlager
+ */
+class DownsampleTest extends Specification {
+
+    @Unroll
+    def "test transform with #algorithm"() {
+        given:
+        def timeSeriesBuilder = new MetricTimeSeries.Builder("Downsample", "metric")
+        1000.times {
+            timeSeriesBuilder.point(999 - it, Math.sin((999 - it) / 50d))
+        }
+        def timeSeries = new ChronixMetricTimeSeries("", timeSeriesBuilder.build())
+        def analysisResult = new FunctionCtx(1, 1, 1)
+
+        def downsample = new Downsample()
+        downsample.setArguments(["100", algorithm] as String[])
+
+        when:
+        downsample.execute(timeSeries as List, analysisResult)
+
+        then:
+        def times = timeSeries.getRawTimeSeries().getTimestampsAsArray()
+        times.length <= 100
+        times.length >= minimum
+        times[0] == 0
+        times[times.length - 1] == 999
+        times == (times as List).sort() as long[]
+        timeSeries.getRawTimeSeries().getValuesAsArray().toList().max() > 0.99
+        timeSeries.getRawTimeSeries().getValuesAsArray().toList().min() < -0.99
+        analysisResult.getContextFor("").getTransformation(0) == downsample
+
+        where:
+        algorithm << ["LTTB", "M4"]
+        //M4 selects a point once if it is the first and the minimum or the last and the maximum of a bucket
+        minimum << [100, 50]
+    }
+
+    def "test transform keeps small time series"() {
+        given:
+        def timeSeries = new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Downsample", "metric")
+                .point(3, 1)
+                .point(1, 2)
+                .point(2, 3)
+                .build())
+        def downsample = new Downsample()
+        downsample.setArguments(["3"] as String[])
+
+        when:
+        downsample.execute([timeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        timeSeries.getRawTimeSeries().size() == 3
+    }
+
+    def "test invalid arguments"() {
+        when:
+        new Downsample().setArguments(arguments as String[])
+
+        then:
+        thrown IllegalArgumentException
+
+        where:
+        arguments << [["2", "LTTB"], ["3", "M4"], ["100", "MINMAX"]]
+    }
+
+    def "test getType"() {
+        when:
+        def downsample = new Downsample()
+        downsample.setArguments(["100"] as String[])
+
+        then:
+        downsample.getQueryName() == "downsample"
+        downsample.getType() == "metric"
+        downsample.isIndependentPerTimeSeries()
+    }
+
+    def "test getArguments"() {
+        when:
+        def lttb = new Downsample()
+        lttb.setArguments(["100"] as String[])
+        def m4 = new Downsample()
+        m4.setArguments(["100", "m4"] as String[])
+
+        then:
+        lttb.getArguments() == ["points=100", "algorithm=LTTB"] as String[]
+        m4.getArguments() == ["points=100", "algorithm=M4"] as String[]
+    }
+
+    def "test toString"() {
+        expect:
+        def downsample = new Downsample()
+        downsample.setArguments(["100", "M4"] as String[])
+        def stringRepresentation = downsample.toString()
+        stringRepresentation.contains("points")
+        stringRepresentation.contains("algorithm")
+    }
+
+    def "test equals and hash code"() {
+        expect:
+        def function = new Downsample()
+        def lttb100 = new Downsample()
+        def m4 = new Downsample()
+        def lttb50 = new Downsample()
+        function.setArguments(["100"] as String[])
+        lttb100.setArguments(["100", "LTTB"] as String[])
+        m4.setArguments(["100", "M4"] as String[])
+        lttb50.setArguments(["50"] as String[])
+        !function.equals(null)
+        !function.equals(new Object())
+        function.equals(function)
+        function.equals(lttb100)
+        !function.equals(m4)
+        function.hashCode() == lttb100.hashCode()
+        function.hashCode() != m4.hashCode()
+        function.hashCode() != lttb50.hashCode()
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 QAware GmbH
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package de.qaware.chronix.solr.type.metric.functions.transformation
+
+import de.qaware.chronix.server.functions.FunctionCtx
+import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
+import de.qaware.chronix.timeseries.MetricTimeSeries
+import spock.lang.Specification
+import spock.lang.Unroll
+
+/**
+ * Unit test for the fused transformation
+ * @author f.lautenschlager
+ */
+class FusedTransformationTest extends Specification {
+
+    @Unroll
+    def "test fused execution equals sequential execution with timeshift: #withTimeshift"() {
+        given:
+        def random = new Random(42)
+        def chain = [transformation(new Add(), "4.5"),
+                     transformation(new Timeshift(), "3", "SECONDS"),
+                     transformation(new Scale(), "0.1"),
+                     transformation(new Subtract(), "1.7"),
+                     transformation(new Divide(), "3")]
+        if (!withTimeshift) {
+            //only the values are changed in place
+            chain.remove(1)
+        }
+
+        def sequential = []
+        def fused = []
+        5.times { ts ->
+            def builder = new MetricTimeSeries.Builder("Fused" + ts, "metric")
+            //the last time series is empty
+            if (ts < 4) {
+                100.times {
+                    builder.point(it * 1000 + random.nextInt(1000), it % 17 == 0 ? Double.NaN : random.nextGaussian() * 1000)
+                }
+            }
+            def timeSeries = builder.build()
+            sequential << new ChronixMetricTimeSeries("join-" + ts, copy(timeSeries))
+            fused << new ChronixMetricTimeSeries("join-" + ts, copy(timeSeries))
+        }
+        def sequentialCtx = new FunctionCtx(0, 0, chain.size())
+        def fusedCtx = new FunctionCtx(0, 0, chain.size())
+
+        when:
+        chain.each { it.execute(sequential, sequentialCtx) }
+        new FusedTransformation(chain).execute(fused, fusedCtx)
+
+        then:
+        5.times { ts ->
+            def expected = sequential[ts].getRawTimeSeries()
+            def actual = fused[ts].getRawTimeSeries()
+            assert actual.getTimestampsAsArray() == expected.getTimestampsAsArray()
+            assert Arrays.equals(actual.getValuesAsArray(), expected.getValuesAsArray())
+
+            def expectedCtx = sequentialCtx.getContextFor("join-" + ts)
+            def actualCtx = fusedCtx.getContextFor("join-" + ts)
+            assert actualCtx.sizeOfTransformations() == expectedCtx.sizeOfTransformations()
+            expectedCtx.sizeOfTransformations().times {
+                assert actualCtx.getTransformation(it).is(expectedCtx.getTransformation(it))
+            }
+        }
+
+        where:
+        withTimeshift << [true, false]
+    }
+
+    def "test fuse"() {
+        given:
+        def add = transformation(new Add(), "1")
+        def scale = transformation(new Scale(), "2")
+        def timeshift = transformation(new Timeshift(), "1", "SECONDS")
+        def derivative = new Derivative()
+        def distinct = new Distinct()
+
+        when:
+        def result = FusedTransformation.fuse([add, scale, derivative, timeshift, distinct, add, scale, timeshift])
+
+        then:
+        result.size() == 5
+        result[0] == new FusedTransformation([add, scale])
+        result[1] == derivative
+        result[2] == timeshift
+        result[3] == distinct
+        result[4] == new FusedTransformation([add, scale, timeshift])
+        result.every { it.isIndependentPerTimeSeries() }
+    }
+
+    def "test fuse without element-wise transformations"() {
+        expect:
+        FusedTransformation.fuse([]).isEmpty()
+        FusedTransformation.fuse([new Derivative()]) == [new Derivative()]
+    }
+
+    def "test getQueryName"() {
+        expect:
+        new FusedTransformation([]).getQueryName() == "fused"
+        new FusedTransformation([]).getType() == "metric"
+        new FusedTransformation([]).getArguments().length == 0
+    }
+
+    def "test equals and hash code"() {
+        given:
+        def function = new FusedTransformation([transformation(new Add(), "4"), transformation(new Scale(), "2")])
+        def sameFunction = new FusedTransformation([transformation(new Add(), "4"), transformation(new Scale(), "2")])
+        def otherFunction = new FusedTransformation([transformation(new Scale(), "2"), transformation(new Add(), "4")])
+
+        expect:
+        function != null
+        function != new Object()
+        function == function
+        function == sameFunction
+        function.hashCode() == sameFunction.hashCode()
+        function != otherFunction
+    }
+
+    def "test string representation"() {
+        expect:
+        new FusedTransformation([new Add()]).toString() contains("transformations")
+    }
+
+    def transformation(ElementwiseTransformation transformation, String... args) {
+        transformation.setArguments(args)
+        transformation
+    }
+
+    def copy(MetricTimeSeries timeSeries) {
+        new MetricTimeSeries.Builder(timeSeries.getName(), timeSeries.getType())
+                .points(timeSeries.getTimestamps(), timeSeries.getValues())
+                .build()
+    }
+}
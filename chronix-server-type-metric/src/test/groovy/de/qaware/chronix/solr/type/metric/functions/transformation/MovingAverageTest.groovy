@@ -19,6 +19,7 @@ import de.qaware.chronix.server.functions.FunctionCtx
 import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
 import de.qaware.chronix.timeseries.MetricTimeSeries
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import java.time.Instant
 
@@ -178,6 +179,104 @@ class MovingAverageTest extends Specification {
     }
 
 
+    @Unroll
+    def "test transform equals the former implementation for random time series #seed"() {
+        given:
+        def random = new Random(seed)
+        def timeSeriesBuilder = new MetricTimeSeries.Builder("Moving average", "metric")
+        def size = 2 + random.nextInt(2000)
+        long time = Instant.now().toEpochMilli()
+        size.times {
+            //gaps that are smaller and larger than the window
+            time += random.nextInt(10) == 0 ? random.nextInt(60000) : random.nextInt(2000)
+            timeSeriesBuilder.point(time, random.nextGaussian() * 1000)
+        }
+        def timeSeries = timeSeriesBuilder.build()
+        def seconds = 1 + random.nextInt(30)
+        def movAvg = new MovingAverage()
+        movAvg.setArguments([seconds as String, "SECONDS"] as String[])
+
+        def expected = formerMovingAverage(timeSeries.getTimestampsAsArray(), timeSeries.getValuesAsArray(), seconds * 1000L)
+        def chronixTimeSeries = new ChronixMetricTimeSeries("", timeSeries)
+
+        when:
+        movAvg.execute([chronixTimeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        def result = chronixTimeSeries.getRawTimeSeries()
+        result.getTimestampsAsArray() == expected[0]
+        def values = result.getValuesAsArray()
+        values.length == expected[1].length
+        values.eachWithIndex { double value, int i -> assert Math.abs(value - expected[1][i]) < 1e-9 }
+
+        where:
+        seed << (1..20)
+    }
+
+    def "test transform a single point and an empty time series"() {
+        given:
+        def movAvg = new MovingAverage()
+        movAvg.setArguments(["5", "SECONDS"] as String[])
+        def single = new ChronixMetricTimeSeries("single", new MetricTimeSeries.Builder("Moving average", "metric").point(4711, 42).build())
+        def empty = new ChronixMetricTimeSeries("empty", new MetricTimeSeries.Builder("Moving average", "metric").build())
+
+        when:
+        movAvg.execute([single, empty], new FunctionCtx(1, 1, 1))
+
+        then:
+        single.getRawTimeSeries().getTimestampsAsArray() == [4711] as long[]
+        single.getRawTimeSeries().getValuesAsArray() == [42] as double[]
+        empty.getRawTimeSeries().isEmpty()
+    }
+
+    /**
+     * The former implementation that sums up the whole window for every average
+     */
+    static List formerMovingAverage(long[] times, double[] values, long windowTime) {
+        def resultTimes = []
+        def resultValues = []
+        def evaluate = { int startIdx, int end ->
+            double valueSum = 0
+            long timeSum = 0
+            for (int i = startIdx; i < end; i++) {
+                valueSum += values[i]
+                timeSum += times[i]
+            }
+            int amount = end - startIdx
+            resultTimes << (long) (timeSum.intdiv(amount))
+            resultValues << valueSum / amount
+        }
+
+        int size = times.length
+        int startIdx = 0
+        long current = times[0]
+        long currentWindowEnd = current + windowTime
+        long last = times[size - 1]
+        boolean lastWindowOnlyOnePoint = true
+
+        for (int i = 0; i < size; i++) {
+            while (i < size && !(currentWindowEnd < current)) {
+                current = times[i++]
+            }
+            i -= 1
+            evaluate(startIdx, i)
+            startIdx++
+            currentWindowEnd = times[startIdx] + windowTime
+            if (currentWindowEnd >= last) {
+                lastWindowOnlyOnePoint = false
+                break
+            }
+        }
+
+        if (lastWindowOnlyOnePoint) {
+            resultTimes << times[size - 1]
+            resultValues << values[size - 1]
+        } else {
+            evaluate(startIdx, size)
+        }
+        [resultTimes as long[], resultValues as double[]]
+    }
+
     long dateOf(format) {
         Instant.parse(format as String).toEpochMilli()
     }
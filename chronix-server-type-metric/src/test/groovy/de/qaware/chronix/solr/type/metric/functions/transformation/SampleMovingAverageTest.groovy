@@ -19,6 +19,7 @@ import de.qaware.chronix.server.functions.FunctionCtx
 import de.qaware.chronix.solr.type.metric.ChronixMetricTimeSeries
 import de.qaware.chronix.timeseries.MetricTimeSeries
 import spock.lang.Specification
+import spock.lang.Unroll
 
 import java.time.Instant
 
@@ -78,6 +79,82 @@ class SampleMovingAverageTest extends Specification {
         Instant.parse(format as String).toEpochMilli()
     }
 
+    @Unroll
+    def "test transform equals the former implementation for random time series #seed"() {
+        given:
+        def random = new Random(seed)
+        def timeSeriesBuilder = new MetricTimeSeries.Builder("Sample moving average", "metric")
+        def size = 2 + random.nextInt(2000)
+        size.times {
+            timeSeriesBuilder.point(it * 1000 + random.nextInt(1000), random.nextGaussian() * 1000)
+        }
+        def timeSeries = timeSeriesBuilder.build()
+        def samples = 1 + random.nextInt(size - 1)
+        def smovAvg = new SampleMovingAverage()
+        smovAvg.setArguments([samples as String] as String[])
+
+        def expected = formerSampleMovingAverage(timeSeries.getTimestampsAsArray(), timeSeries.getValuesAsArray(), samples)
+        def chronixTimeSeries = new ChronixMetricTimeSeries("", timeSeries)
+
+        when:
+        smovAvg.execute([chronixTimeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        def result = chronixTimeSeries.getRawTimeSeries()
+        result.getTimestampsAsArray() == expected[0]
+        def values = result.getValuesAsArray()
+        values.length == expected[1].length
+        values.eachWithIndex { double value, int i -> assert Math.abs(value - expected[1][i]) < 1e-9 }
+
+        where:
+        seed << (1..20)
+    }
+
+    def "test transform with more samples than points"() {
+        given:
+        def smovAvg = new SampleMovingAverage()
+        smovAvg.setArguments(["5"] as String[])
+        def timeSeries = new ChronixMetricTimeSeries("", new MetricTimeSeries.Builder("Sample moving average", "metric")
+                .point(1, 1).point(3, 3).point(5, 5).build())
+
+        when:
+        smovAvg.execute([timeSeries], new FunctionCtx(1, 1, 1))
+
+        then:
+        timeSeries.getRawTimeSeries().getTimestampsAsArray() == [3, 4] as long[]
+        timeSeries.getRawTimeSeries().getValuesAsArray() == [3, 4] as double[]
+    }
+
+    /**
+     * The former implementation that sums up the whole window for every average
+     */
+    static List formerSampleMovingAverage(long[] times, double[] values, int samples) {
+        def resultTimes = []
+        def resultValues = []
+        def evaluate = { int startIdx, int end ->
+            double valueSum = 0
+            long timeSum = 0
+            for (int i = startIdx; i < end; i++) {
+                valueSum += values[i]
+                timeSum += times[i]
+            }
+            int amount = end - startIdx
+            resultTimes << (long) (timeSum.intdiv(amount))
+            resultValues << valueSum / amount
+        }
+
+        int size = times.length
+        for (int start = 0; start < size; start++) {
+            int end = start + samples
+            evaluate(start, end)
+            if (end + 1 >= size) {
+                evaluate(start + 1, size)
+                break
+            }
+        }
+        [resultTimes as long[], resultValues as double[]]
+    }
+
     def "test getType"() {
         when:
         def movAvg = new SampleMovingAverage()